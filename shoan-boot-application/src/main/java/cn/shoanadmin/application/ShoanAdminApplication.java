@@ -3,9 +3,11 @@ package cn.shoanadmin.application;
 import org.mybatis.spring.annotation.MapperScan;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication(scanBasePackages = "cn.shoanadmin")
 @MapperScan("cn.shoanadmin.infrastructure.mapper")
+@EnableScheduling
 public class ShoanAdminApplication {
     public static void main(String[] args) {
         SpringApplication.run(ShoanAdminApplication.class, args);
@@ -0,0 +1,53 @@
+package cn.shoanadmin.application.runner;
+
+import cn.shoanadmin.common.config.UserImportConfig;
+import cn.shoanadmin.service.WechatUserImportService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.nio.file.Path;
+
+/**
+ * 用户批量导入任务
+ * 只在 import profile 下生效，以独立进程运行，不启动Web服务，不影响对外服务的实例启动：
+ * java -jar shoan-boot-application.jar --spring.profiles.active=prod,import --app.user-import.file=/path/users.jsonl
+ * 导入完成后进程退出，成功时退出码为0，失败时为1；中途停止后以相同参数重新运行即可从断点继续
+ *
+ * @author FruitPieces
+ * @since 2024-01-20
+ */
+@Slf4j
+@Component
+@Profile("import")
+@RequiredArgsConstructor
+public class UserImportRunner implements ApplicationRunner {
+
+    private final UserImportConfig userImportConfig;
+    private final WechatUserImportService wechatUserImportService;
+    private final ConfigurableApplicationContext applicationContext;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        int exitCode = 1;
+        try {
+            if (!StringUtils.hasText(userImportConfig.getFile())) {
+                log.error("未指定导入文件，请通过 --app.user-import.file 指定");
+            } else {
+                wechatUserImportService.importUsers(Path.of(userImportConfig.getFile()));
+                exitCode = 0;
+            }
+        } catch (Exception e) {
+            log.error("导入用户失败：file={}", userImportConfig.getFile(), e);
+        }
+        // 定时任务等非守护线程会阻止进程退出，关闭上下文后显式退出
+        int code = exitCode;
+        System.exit(SpringApplication.exit(applicationContext, () -> code));
+    }
+}
@@ -0,0 +1,100 @@
+package cn.shoanadmin.benchmark;
+
+import cn.shoanadmin.infrastructure.mapper.WechatUserMapper;
+import com.alibaba.druid.pool.DruidDataSource;
+import com.baomidou.mybatisplus.core.MybatisConfiguration;
+import com.baomidou.mybatisplus.core.config.GlobalConfig;
+import com.baomidou.mybatisplus.extension.spring.MybatisSqlSessionFactoryBean;
+import org.apache.ibatis.type.JdbcType;
+import org.mybatis.spring.SqlSessionTemplate;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.util.UUID;
+
+/**
+ * 基准测试使用的数据源与Mapper
+ * 未指定JDBC地址时使用H2内存库（MySQL模式），Druid与MyBatis-Plus配置与生产一致
+ *
+ * @author FruitPieces
+ * @since 2024-01-20
+ */
+final class BenchmarkDatabase {
+
+    private BenchmarkDatabase() {
+    }
+
+    /**
+     * 是否使用H2内存库
+     *
+     * @param jdbcUrl JDBC连接地址
+     * @return true-使用H2内存库
+     */
+    static boolean embedded(String jdbcUrl) {
+        return jdbcUrl.isEmpty();
+    }
+
+    /**
+     * 创建并初始化Druid数据源
+     *
+     * @param name     H2内存库名前缀
+     * @param jdbcUrl  JDBC连接地址，为空时使用H2内存库
+     * @param username 用户名
+     * @param password 密码
+     * @param filters  Druid过滤器
+     * @return 数据源
+     */
+    static DruidDataSource open(String name, String jdbcUrl, String username, String password, String filters)
+            throws Exception {
+        boolean embedded = embedded(jdbcUrl);
+        DruidDataSource dataSource = new DruidDataSource();
+        dataSource.setUrl(embedded ? "jdbc:h2:mem:" + name + "-" + UUID.randomUUID()
+                + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1" : jdbcUrl);
+        dataSource.setUsername(embedded ? "sa" : username);
+        dataSource.setPassword(embedded ? "" : password);
+        dataSource.setFilters(filters);
+        dataSource.setConnectionProperties("druid.stat.mergeSql=true;druid.stat.slowSqlMillis=5000");
+        dataSource.init();
+        return dataSource;
+    }
+
+    /**
+     * 在H2内存库中创建 wechat_user 表
+     *
+     * @param jdbc JdbcTemplate
+     */
+    static void createUserTable(JdbcTemplate jdbc) {
+        jdbc.execute("CREATE TABLE wechat_user ("
+                + "id VARCHAR(32) NOT NULL PRIMARY KEY, openid VARCHAR(64) NOT NULL, unionid VARCHAR(64),"
+                + " nickname VARCHAR(64), avatar_url VARCHAR(512), gender INT, country VARCHAR(64),"
+                + " province VARCHAR(64), city VARCHAR(64), language VARCHAR(32), session_key VARCHAR(128),"
+                + " last_login_time BIGINT, last_login_ip VARCHAR(64), user_agent VARCHAR(512), status INT,"
+                + " created_time BIGINT, updated_time BIGINT, deleted INT NOT NULL DEFAULT 0,"
+                + " CONSTRAINT uk_openid UNIQUE (openid))");
+    }
+
+    /**
+     * 创建用户Mapper，配置与 application.yml 中的 mybatis-plus 配置一致
+     *
+     * @param dataSource 数据源
+     * @return 用户Mapper
+     */
+    static WechatUserMapper wechatUserMapper(DataSource dataSource) throws Exception {
+        MybatisConfiguration configuration = new MybatisConfiguration();
+        configuration.setMapUnderscoreToCamelCase(true);
+        configuration.setCacheEnabled(false);
+        configuration.setCallSettersOnNulls(true);
+        configuration.setJdbcTypeForNull(JdbcType.NULL);
+        GlobalConfig.DbConfig dbConfig = new GlobalConfig.DbConfig();
+        dbConfig.setLogicDeleteField("deleted");
+        dbConfig.setLogicDeleteValue("1");
+        dbConfig.setLogicNotDeleteValue("0");
+        MybatisSqlSessionFactoryBean factory = new MybatisSqlSessionFactoryBean();
+        factory.setDataSource(dataSource);
+        factory.setConfiguration(configuration);
+        factory.setGlobalConfig(new GlobalConfig().setDbConfig(dbConfig));
+        factory.setMapperLocations(new PathMatchingResourcePatternResolver().getResources("classpath*:/mapper/*.xml"));
+        return new SqlSessionTemplate(factory.getObject()).getMapper(WechatUserMapper.class);
+    }
+}
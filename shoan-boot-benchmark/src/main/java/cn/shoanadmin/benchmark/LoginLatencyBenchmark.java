@@ -0,0 +1,259 @@
+package cn.shoanadmin.benchmark;
+
+import cn.shoanadmin.common.util.SingleFlight;
+import cn.shoanadmin.domain.dto.UserProfileView;
+import cn.shoanadmin.domain.entity.WechatUser;
+import cn.shoanadmin.infrastructure.mapper.WechatUserMapper;
+import com.alibaba.druid.pool.DruidDataSource;
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * 登录延迟基准测试
+ * 写库部分对比原来的多次往返（按openid查询、新用户插入、按ID查询、整行更新）与 WechatUserManager.saveLogin 使用的
+ * 单语句写入（updateLoginByOpenid，或 upsertLogin 加资料查询）。登录写入使用MySQL的 INSERT ... ON DUPLICATE KEY UPDATE，
+ * H2不支持，必须通过 -p jdbcUrl=... 指定已有 wechat_user 表的MySQL库；测试数据的openid以 bench- 开头，结束后删除。
+ * retryBurst* 模拟客户端用同一授权码并发提交 retries 次登录，微信接口以固定延迟代替：
+ * Direct 每次都调用微信接口并写库，Coalesced 按 WechatAuthServiceImpl 的方式经 {@link SingleFlight} 合并并缓存结果，
+ * 测得的是整批重试全部返回的时间
+ *
+ * @author FruitPieces
+ * @since 2024-01-20
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoginLatencyBenchmark {
+
+    /**
+     * MySQL连接地址
+     */
+    @Param("")
+    public String jdbcUrl;
+
+    @Param("root")
+    public String username;
+
+    @Param("")
+    public String password;
+
+    /**
+     * Druid过滤器，与 spring.datasource.druid.filters 一致
+     */
+    @Param("stat,wall,slf4j")
+    public String filters;
+
+    /**
+     * 已有用户数，登录已有用户时依次轮换
+     */
+    @Param("10000")
+    public int users;
+
+    /**
+     * 模拟的微信接口延迟（毫秒）
+     */
+    @Param("50")
+    public int wechatLatencyMillis;
+
+    /**
+     * 同一授权码的并发重试次数
+     */
+    @Param("4")
+    public int retries;
+
+    private final AtomicLong sequence = new AtomicLong();
+    private final SingleFlight<String, UserProfileView> loginFlight = new SingleFlight<>();
+    private final Cache<String, UserProfileView> loginResults = Caffeine.newBuilder()
+            .maximumSize(10000)
+            .expireAfterWrite(Duration.ofSeconds(10))
+            .build();
+
+    private DruidDataSource dataSource;
+    private WechatUserMapper mapper;
+    private ExecutorService clients;
+    private String[] openids;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        if (BenchmarkDatabase.embedded(jdbcUrl)) {
+            throw new IllegalStateException("登录写入依赖MySQL语法，请通过 -p jdbcUrl=... 指定MySQL库");
+        }
+        dataSource = BenchmarkDatabase.open("login", jdbcUrl, username, password, filters);
+        mapper = BenchmarkDatabase.wechatUserMapper(dataSource);
+        List<String> created = new ArrayList<>(users);
+        for (int i = 0; i < users; i++) {
+            WechatUser user = newLoginUser("bench-" + UUID.randomUUID());
+            mapper.upsertLogin(user);
+            created.add(user.getOpenid());
+        }
+        openids = created.toArray(String[]::new);
+        clients = Executors.newFixedThreadPool(retries);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        clients.shutdownNow();
+        new JdbcTemplate(dataSource).update("DELETE FROM wechat_user WHERE openid LIKE 'bench-%'");
+        dataSource.close();
+    }
+
+    /**
+     * 原写法，已有用户：按openid查询、按ID查询、整行更新，3次往返
+     */
+    @Benchmark
+    public WechatUser legacyExistingUser() {
+        return legacyLogin(openids[nextIndex()]);
+    }
+
+    /**
+     * 原写法，新用户：按openid查询、插入、按ID查询、整行更新，4次往返
+     */
+    @Benchmark
+    public WechatUser legacyNewUser() {
+        return legacyLogin("bench-" + UUID.randomUUID());
+    }
+
+    /**
+     * 单语句写入，已有用户：按openid更新登录信息，1次往返（saveLogin 已知用户存在时的路径）
+     */
+    @Benchmark
+    public int upsertExistingUser() {
+        return mapper.updateLoginByOpenid(newLoginUser(openids[nextIndex()]));
+    }
+
+    /**
+     * 单语句写入，新用户：upsertLogin 后查询资料，2次往返
+     */
+    @Benchmark
+    public UserProfileView upsertNewUser() {
+        WechatUser user = newLoginUser("bench-" + UUID.randomUUID());
+        mapper.upsertLogin(user);
+        return mapper.selectProfileByOpenid(user.getOpenid());
+    }
+
+    /**
+     * 同一授权码的并发重试各自调用微信接口并写库
+     */
+    @Benchmark
+    public Object retryBurstDirect() {
+        String openid = openids[nextIndex()];
+        return burst(() -> wechatLogin(openid));
+    }
+
+    /**
+     * 同一授权码的并发重试合并为一次微信调用，后续重试直接返回缓存的结果
+     */
+    @Benchmark
+    public Object retryBurstCoalesced() {
+        String code = "code-" + sequence.incrementAndGet();
+        String openid = openids[nextIndex()];
+        return burst(() -> {
+            UserProfileView memoized = loginResults.getIfPresent(code);
+            if (memoized != null) {
+                return memoized;
+            }
+            return loginFlight.execute(code, () -> {
+                UserProfileView cached = loginResults.getIfPresent(code);
+                if (cached != null) {
+                    return cached;
+                }
+                UserProfileView user = wechatLogin(openid);
+                loginResults.put(code, user);
+                return user;
+            });
+        });
+    }
+
+    /**
+     * 模拟一次登录：等待微信接口返回后单语句写库
+     */
+    private UserProfileView wechatLogin(String openid) {
+        LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(wechatLatencyMillis));
+        WechatUser user = newLoginUser(openid);
+        mapper.upsertLogin(user);
+        return mapper.selectProfileByOpenid(openid);
+    }
+
+    private Object burst(Supplier<UserProfileView> login) {
+        CompletableFuture<?>[] requests = new CompletableFuture<?>[retries];
+        for (int i = 0; i < retries; i++) {
+            requests[i] = CompletableFuture.supplyAsync(login, clients);
+        }
+        return CompletableFuture.allOf(requests).join();
+    }
+
+    private WechatUser legacyLogin(String openid) {
+        LambdaQueryWrapper<WechatUser> query = new LambdaQueryWrapper<>();
+        query.eq(WechatUser::getOpenid, openid);
+        WechatUser user = mapper.selectOne(query);
+        if (user == null) {
+            user = newLoginUser(openid);
+            mapper.insert(user);
+        }
+        WechatUser existing = mapper.selectById(user.getId());
+        long now = System.currentTimeMillis();
+        existing.setLastLoginTime(now);
+        existing.setLastLoginIp("127.0.0.1");
+        existing.setUserAgent("benchmark");
+        existing.setUpdatedTime(now);
+        mapper.updateById(existing);
+        return existing;
+    }
+
+    private WechatUser newLoginUser(String openid) {
+        long now = System.currentTimeMillis();
+        return WechatUser.builder()
+                .id(String.format("FP%015d", sequence.incrementAndGet()))
+                .openid(openid)
+                .sessionKey("session-key-" + now)
+                .nickname("微信用户")
+                .avatarUrl("")
+                .lastLoginTime(now)
+                .lastLoginIp("127.0.0.1")
+                .userAgent("benchmark")
+                .status(1)
+                .createdTime(now)
+                .updatedTime(now)
+                .build();
+    }
+
+    /**
+     * 依次轮换已有用户，默认单线程运行
+     */
+    private int nextIndex() {
+        int index = next;
+        next = index + 1 == openids.length ? 0 : index + 1;
+        return index;
+    }
+}
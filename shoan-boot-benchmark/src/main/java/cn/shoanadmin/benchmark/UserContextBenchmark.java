@@ -0,0 +1,154 @@
+package cn.shoanadmin.benchmark;
+
+import cn.shoanadmin.domain.dto.UserContext;
+import cn.shoanadmin.domain.dto.UserProfileView;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * 用户上下文基准测试
+ * 按一个请求的顺序执行 UserContextFilter 与 AuthInterceptor 对 {@link UserContext} 的操作：绑定作用域、设置用户ID与令牌、
+ * 读取、清理；backend 为 threadLocal 或 scopedValue（需 --enable-preview，已在fork参数中加入）。
+ * *OnVirtualThread 在新建的虚拟线程中执行同样的操作，对应每个请求一个虚拟线程的部署，
+ * 减去 virtualThreadOnly 即为上下文本身的开销；资料加载器直接返回内存中的对象，不包含查询耗时
+ *
+ * @author FruitPieces
+ * @since 2024-01-20
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = "--enable-preview")
+public class UserContextBenchmark {
+
+    private static final String USER_ID = "FP0C5T3K1W9R0003F";
+    private static final String TOKEN = "access-token";
+    private static final UserProfileView PROFILE = UserProfileView.builder()
+            .id(USER_ID).openid("oGZUI0egBJY1zhBYw2KhdUfwVJJE").nickname("微信用户").avatarUrl("").status(1).build();
+    private static final Function<String, UserProfileView> LOADER = userId -> PROFILE;
+
+    private static final Callable<String> USER_ID_ONLY = () -> {
+        try {
+            UserContext.setCurrentUser(USER_ID, LOADER);
+            UserContext.setCurrentToken(TOKEN);
+            return UserContext.getCurrentUserId();
+        } finally {
+            UserContext.clear();
+        }
+    };
+
+    private static final Callable<UserProfileView> LAZY_PROFILE = () -> {
+        try {
+            UserContext.setCurrentUser(USER_ID, LOADER);
+            UserContext.setCurrentToken(TOKEN);
+            UserContext.getCurrentUser();
+            return UserContext.getCurrentUser();
+        } finally {
+            UserContext.clear();
+        }
+    };
+
+    private static final Callable<UserProfileView> EAGER_PROFILE = () -> {
+        try {
+            UserContext.setCurrentUser(PROFILE);
+            UserContext.setCurrentToken(TOKEN);
+            UserContext.getCurrentUser();
+            return UserContext.getCurrentUser();
+        } finally {
+            UserContext.clear();
+        }
+    };
+
+    @Param({"threadLocal", "scopedValue"})
+    private String backend;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        if ("scopedValue".equals(backend) && !UserContext.enableScopedValue()) {
+            throw new IllegalStateException("当前JDK不支持ScopedValue");
+        }
+    }
+
+    /**
+     * 只使用用户ID的请求：设置、读取用户ID、清理，不加载用户资料
+     */
+    @Benchmark
+    public String userIdOnly() throws Exception {
+        return UserContext.callInScope(USER_ID_ONLY);
+    }
+
+    /**
+     * 需要用户资料的请求：延迟加载并在同一请求内读取两次
+     */
+    @Benchmark
+    public UserProfileView lazyProfile() throws Exception {
+        return UserContext.callInScope(LAZY_PROFILE);
+    }
+
+    /**
+     * 认证时直接放入用户资料的写法，读取两次
+     */
+    @Benchmark
+    public UserProfileView eagerProfile() throws Exception {
+        return UserContext.callInScope(EAGER_PROFILE);
+    }
+
+    /**
+     * 在新建的虚拟线程中执行 {@link #userIdOnly()}
+     */
+    @Benchmark
+    public String userIdOnlyOnVirtualThread() throws Exception {
+        return onVirtualThread(() -> UserContext.callInScope(USER_ID_ONLY));
+    }
+
+    /**
+     * 在新建的虚拟线程中执行 {@link #lazyProfile()}
+     */
+    @Benchmark
+    public UserProfileView lazyProfileOnVirtualThread() throws Exception {
+        return onVirtualThread(() -> UserContext.callInScope(LAZY_PROFILE));
+    }
+
+    /**
+     * 只创建并等待虚拟线程，作为 *OnVirtualThread 的基线
+     */
+    @Benchmark
+    public String virtualThreadOnly() throws Exception {
+        return onVirtualThread(() -> USER_ID);
+    }
+
+    private static <T> T onVirtualThread(Callable<T> task) throws Exception {
+        Object[] result = new Object[1];
+        Exception[] failure = new Exception[1];
+        Thread thread = Thread.ofVirtual().start(() -> {
+            try {
+                result[0] = task.call();
+            } catch (Exception e) {
+                failure[0] = e;
+            }
+        });
+        thread.join();
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+        @SuppressWarnings("unchecked")
+        T value = (T) result[0];
+        return value;
+    }
+}
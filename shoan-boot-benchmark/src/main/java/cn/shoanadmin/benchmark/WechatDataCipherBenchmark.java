@@ -0,0 +1,86 @@
+package cn.shoanadmin.benchmark;
+
+import cn.shoanadmin.common.config.AppCacheConfig;
+import cn.shoanadmin.common.security.WechatDataCipher;
+import cn.shoanadmin.domain.dto.WechatUserInfo;
+import com.alibaba.fastjson2.JSON;
+import com.alibaba.fastjson2.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 微信开放数据解密基准测试
+ * 对比每次调用新建Cipher与SecretKeySpec、解析为JSONObject的写法，与 {@link WechatDataCipher} 复用Cipher、缓存密钥、
+ * 直接解析为DTO的写法；数据为微信官方文档中的示例
+ *
+ * @author FruitPieces
+ * @since 2024-01-20
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class WechatDataCipherBenchmark {
+
+    private static final String SESSION_KEY = "tiihtNczf5v6AKRyjwEUhQ==";
+    private static final String IV = "r7BXXKkLb8qrSNn05n0qiA==";
+    private static final String ENCRYPTED_DATA = "CiyLU1Aw2KjvrjMdj8YKliAjtP4gsMZMQmRzooG2xrDcvSnxIMXFufNstNGTyaGS9uT5geRa0W4oTOb1WT7fJlAC+oNPdbB+3hVbJSRgv+4lGOETKUQz6OYStslQ142dNCuabNPGBzlooOmB231qMM85d2/fV6ChevvXvQP8Hkue1poOFtnEtpyxVLW1zAo6/1Xx1COxFvrc2d7UL/lmHInNlxuacJXwu0fjpXfz/YqYzBIBzD6WUfTIF9GRHpOn/Hz7saL8xz+W//FRAUid1OksQaQx4CMs8LOddcQhULW4ucetDf96JcR3g0gfRK4PC7E/r7Z6xNrXd2UIeorGj5Ef7b1pJAYB6Y5anaHqZ9J6nKEBvB4DnNLIVWSgARns/8wR2SiRS7MNACwTyrGvt9ts8p12PKFdlqYTopNHR1Vf7XjfhQlVsAJdNiKdYmYVoKlaRv85IfVunYzO0IKXsyl7JCUjCpoG20f0a04COwfneQAGGwd5oa+T8yO5hzuyDb/XcxxmK01EpqOyuxINew==";
+
+    private final WechatDataCipher cipher = new WechatDataCipher(new AppCacheConfig());
+
+    /**
+     * 每次调用新建Cipher与SecretKeySpec，解析为JSONObject
+     */
+    @Benchmark
+    public JSONObject newCipherToJsonObject() throws Exception {
+        return JSON.parseObject(new String(newCipherDecrypt(), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 每次调用新建Cipher与SecretKeySpec，只解密
+     */
+    @Benchmark
+    public byte[] newCipherDecryptOnly() throws Exception {
+        return newCipherDecrypt();
+    }
+
+    /**
+     * 复用Cipher与缓存的密钥，只解密
+     */
+    @Benchmark
+    public byte[] pooledCipherDecryptOnly() {
+        return cipher.decrypt(SESSION_KEY, ENCRYPTED_DATA, IV);
+    }
+
+    /**
+     * 复用Cipher与缓存的密钥，解析为DTO
+     */
+    @Benchmark
+    public WechatUserInfo pooledCipherToDto() {
+        return cipher.decrypt(SESSION_KEY, ENCRYPTED_DATA, IV, WechatUserInfo.class);
+    }
+
+    private static byte[] newCipherDecrypt() throws Exception {
+        Base64.Decoder decoder = Base64.getDecoder();
+        Cipher newCipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+        newCipher.init(Cipher.DECRYPT_MODE, new SecretKeySpec(decoder.decode(SESSION_KEY), "AES"),
+                new IvParameterSpec(decoder.decode(IV)));
+        return newCipher.doFinal(decoder.decode(ENCRYPTED_DATA));
+    }
+}
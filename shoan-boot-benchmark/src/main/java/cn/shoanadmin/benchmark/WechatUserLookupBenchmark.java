@@ -0,0 +1,157 @@
+package cn.shoanadmin.benchmark;
+
+import cn.shoanadmin.domain.entity.WechatUser;
+import cn.shoanadmin.infrastructure.mapper.WechatUserMapper;
+import com.alibaba.druid.pool.DruidDataSource;
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 用户缓存未命中时的查询基准测试
+ * 对比按openid、按用户ID查询时每次构造LambdaQueryWrapper的写法，与 WechatUserManager 使用的固定语句
+ * （selectByOpenid 与 MyBatis-Plus 注入的 selectById）。数据源为Druid，过滤器默认与生产配置一致。
+ * 默认使用H2内存库并写入测试数据；测量MySQL时通过 -p jdbcUrl=... -p username=... -p password=... 指定，
+ * 从已有的 wechat_user 表中读取查询键。配合 -prof gc 可得到每次查询的分配字节数
+ *
+ * @author FruitPieces
+ * @since 2024-01-20
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WechatUserLookupBenchmark {
+
+    /**
+     * JDBC连接地址，为空时使用H2内存库
+     */
+    @Param("")
+    public String jdbcUrl;
+
+    @Param("root")
+    public String username;
+
+    @Param("")
+    public String password;
+
+    /**
+     * Druid过滤器，与 spring.datasource.druid.filters 一致
+     */
+    @Param("stat,wall,slf4j")
+    public String filters;
+
+    /**
+     * 参与查询的用户数
+     */
+    @Param("10000")
+    public int users;
+
+    private DruidDataSource dataSource;
+    private WechatUserMapper mapper;
+    private String[] ids;
+    private String[] openids;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dataSource = BenchmarkDatabase.open("lookup", jdbcUrl, username, password, filters);
+        JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+        if (BenchmarkDatabase.embedded(jdbcUrl)) {
+            BenchmarkDatabase.createUserTable(jdbc);
+            createUsers(jdbc);
+        }
+        List<String> loadedIds = new ArrayList<>(users);
+        List<String> loadedOpenids = new ArrayList<>(users);
+        jdbc.query("SELECT id, openid FROM wechat_user WHERE deleted = 0 ORDER BY id LIMIT " + users, rs -> {
+            loadedIds.add(rs.getString(1));
+            loadedOpenids.add(rs.getString(2));
+        });
+        if (loadedIds.isEmpty()) {
+            throw new IllegalStateException("wechat_user 表中没有可查询的用户");
+        }
+        ids = loadedIds.toArray(String[]::new);
+        openids = loadedOpenids.toArray(String[]::new);
+        mapper = BenchmarkDatabase.wechatUserMapper(dataSource);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        dataSource.close();
+    }
+
+    /**
+     * 每次查询构造LambdaQueryWrapper按openid查询
+     */
+    @Benchmark
+    public WechatUser openidWrapper() {
+        LambdaQueryWrapper<WechatUser> query = new LambdaQueryWrapper<>();
+        query.eq(WechatUser::getOpenid, openids[nextIndex()]);
+        return mapper.selectOne(query);
+    }
+
+    /**
+     * 固定语句按openid查询
+     */
+    @Benchmark
+    public WechatUser openidStatement() {
+        return mapper.selectByOpenid(openids[nextIndex()]);
+    }
+
+    /**
+     * 每次查询构造LambdaQueryWrapper按用户ID查询
+     */
+    @Benchmark
+    public WechatUser idWrapper() {
+        LambdaQueryWrapper<WechatUser> query = new LambdaQueryWrapper<>();
+        query.eq(WechatUser::getId, ids[nextIndex()]);
+        return mapper.selectOne(query);
+    }
+
+    /**
+     * 固定语句按用户ID查询
+     */
+    @Benchmark
+    public WechatUser idStatement() {
+        return mapper.selectById(ids[nextIndex()]);
+    }
+
+    /**
+     * 依次轮换查询键，默认单线程运行
+     */
+    private int nextIndex() {
+        int index = next;
+        next = index + 1 == ids.length ? 0 : index + 1;
+        return index;
+    }
+
+    private void createUsers(JdbcTemplate jdbc) {
+        List<Object[]> rows = new ArrayList<>(users);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < users; i++) {
+            rows.add(new Object[]{String.format("FP%015d", i), "openid-" + UUID.randomUUID(), "user-" + i,
+                    "https://thirdwx.qlogo.cn/mmopen/" + i, "session-key-" + i, now, now, now});
+        }
+        jdbc.batchUpdate("INSERT INTO wechat_user (id, openid, nickname, avatar_url, session_key, last_login_time,"
+                + " status, created_time, updated_time, deleted) VALUES (?, ?, ?, ?, ?, ?, 1, ?, ?, 0)", rows);
+    }
+}
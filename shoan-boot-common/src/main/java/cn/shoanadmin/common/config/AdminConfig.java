@@ -0,0 +1,23 @@
+package cn.shoanadmin.common.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 管理接口配置类
+ * 对应配置前缀 app.admin；/api/v1/admin/** 接口供运营后台与数据分析任务调用，通过请求头中的管理令牌鉴权
+ *
+ * @author FruitPieces
+ * @since 2024-01-20
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "app.admin")
+public class AdminConfig {
+
+    /**
+     * 管理令牌，未配置时拒绝所有管理接口请求
+     */
+    private String token;
+}
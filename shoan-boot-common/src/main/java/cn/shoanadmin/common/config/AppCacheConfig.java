@@ -0,0 +1,68 @@
+package cn.shoanadmin.common.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 应用缓存配置类
+ * 对应配置前缀 app.cache，TTL单位均为秒
+ *
+ * @author FruitPieces
+ * @since 2024-01-20
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "app.cache")
+public class AppCacheConfig {
+
+    /**
+     * 默认缓存过期时间（秒）
+     */
+    private Long defaultTtl = 3600L;
+
+    /**
+     * 链接信息缓存过期时间（秒）
+     */
+    private Long linkInfoTtl = 86400L;
+
+    /**
+     * 用户信息缓存过期时间（秒）
+     */
+    private Long userInfoTtl = 1800L;
+
+    /**
+     * 本地用户缓存最大条目数
+     */
+    private Long userMaxSize = 10000L;
+
+    /**
+     * 是否启用Redis二级用户缓存及跨节点失效通知
+     */
+    private Boolean userRedisEnabled = true;
+
+    /**
+     * 用户缓存失效通知频道
+     */
+    private String userInvalidateChannel = "wechat:user:invalidate";
+
+    /**
+     * 登录结果按授权码缓存的时间（秒），客户端重试同一授权码时直接返回，0表示不缓存
+     */
+    private Long loginResultTtl = 10L;
+
+    /**
+     * 登录结果缓存最大条目数
+     */
+    private Long loginResultMaxSize = 10000L;
+
+    /**
+     * 按会话密钥缓存的解密密钥最大条目数
+     */
+    private Long sessionKeyMaxSize = 10000L;
+
+    /**
+     * 解密密钥在最后一次使用后的保留时间（秒）
+     */
+    private Long sessionKeyTtl = 600L;
+}
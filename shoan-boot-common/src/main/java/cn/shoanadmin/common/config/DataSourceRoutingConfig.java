@@ -0,0 +1,80 @@
+package cn.shoanadmin.common.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 读写分离数据源配置类
+ * 对应配置前缀 app.datasource-routing；主库沿用 spring.datasource，从库连接池参数沿用 spring.datasource.druid
+ *
+ * @author FruitPieces
+ * @since 2024-01-20
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "app.datasource-routing")
+public class DataSourceRoutingConfig {
+
+    /**
+     * 是否启用读写分离，关闭时所有读写都走主库
+     */
+    private Boolean enabled = false;
+
+    /**
+     * 从库列表
+     */
+    private List<Replica> replicas = new ArrayList<>();
+
+    /**
+     * 允许的最大复制延迟（毫秒），超出的从库移出读轮询
+     */
+    private Long maxLag = 1000L;
+
+    /**
+     * 复制延迟探测间隔（毫秒），延迟的测量精度为一个探测间隔
+     */
+    private Long lagProbeInterval = 1000L;
+
+    /**
+     * 延迟探测查询超时（秒）
+     */
+    private Integer lagProbeTimeout = 2;
+
+    /**
+     * 用户写操作后读主库的时间窗口（毫秒），应不小于 maxLag + lagProbeInterval
+     */
+    private Long stickyWindow = 3000L;
+
+    /**
+     * 读主库窗口内同时记录的最大用户数
+     */
+    private Long stickyMaxSize = 100000L;
+
+    @Data
+    public static class Replica {
+
+        /**
+         * 从库名称，用于日志与监控
+         */
+        private String name;
+
+        /**
+         * JDBC连接地址
+         */
+        private String url;
+
+        /**
+         * 用户名，未配置时沿用主库
+         */
+        private String username;
+
+        /**
+         * 密码，未配置时沿用主库
+         */
+        private String password;
+    }
+}
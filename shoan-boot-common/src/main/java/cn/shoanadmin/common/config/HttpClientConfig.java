@@ -1,32 +1,209 @@
 package cn.shoanadmin.common.config;
 
+import cn.shoanadmin.common.util.AdaptiveTimeout;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.httpcomponents.hc5.PoolingHttpClientConnectionManagerMetricsBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.hc.client5.http.HttpRoute;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.protocol.HttpClientContext;
+import org.apache.hc.client5.http.io.ConnectionEndpoint;
+import org.apache.hc.client5.http.io.LeaseRequest;
+import org.apache.hc.client5.http.socket.ConnectionSocketFactory;
+import org.apache.hc.client5.http.socket.PlainConnectionSocketFactory;
+import org.apache.hc.client5.http.ssl.SSLConnectionSocketFactory;
+import org.apache.hc.core5.http.URIScheme;
+import org.apache.hc.core5.http.config.RegistryBuilder;
+import org.apache.hc.core5.http.io.SocketConfig;
+import org.apache.hc.core5.http.protocol.HttpContext;
+import org.apache.hc.core5.pool.PoolConcurrencyPolicy;
+import org.apache.hc.core5.pool.PoolReusePolicy;
+import org.apache.hc.core5.ssl.SSLContexts;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.boot.web.client.RestTemplateBuilder;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 import org.springframework.web.client.RestTemplate;
 
+import javax.net.ssl.SSLContext;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
 /**
  * HTTP客户端配置类
  * 配置RestTemplate等HTTP客户端相关Bean
- * 
+ * 基于Apache HttpClient 5连接池：长连接复用、按路由限制连接数、后台清理空闲连接，
+ * 所有连接共用同一个SSLContext，新建连接时可复用TLS会话；参数来自 {@link WechatMiniappConfig}
+ *
  * @author FruitPieces
  * @since 2024-01-20
  */
+@Slf4j
 @Configuration
 public class HttpClientConfig {
 
+    private static final String CLIENT_NAME = "wechat";
+
+    /**
+     * 微信API连接池
+     * 指标：httpcomponents.httpclient.pool.*（连接数、等待数）、http.client.pool.lease（获取连接等待时间）、
+     * http.client.tls.handshake（TLS握手次数与耗时）
+     *
+     * @return 连接池
+     */
+    @Bean(destroyMethod = "close")
+    public PoolingHttpClientConnectionManager wechatConnectionManager(WechatMiniappConfig wechatConfig,
+                                                                      MeterRegistry meterRegistry) {
+        SSLContext sslContext = SSLContexts.createSystemDefault();
+        Timer handshakeTimer = Timer.builder("http.client.tls.handshake")
+                .description("新建连接时的TLS握手耗时")
+                .tag("client", CLIENT_NAME)
+                .register(meterRegistry);
+        RegistryBuilder<ConnectionSocketFactory> registry = RegistryBuilder.<ConnectionSocketFactory>create()
+                .register(URIScheme.HTTP.id, PlainConnectionSocketFactory.getSocketFactory())
+                .register(URIScheme.HTTPS.id, new MeteredSslSocketFactory(sslContext, handshakeTimer));
+
+        Timer leaseTimer = Timer.builder("http.client.pool.lease")
+                .description("从连接池获取连接的等待时间")
+                .tag("client", CLIENT_NAME)
+                .register(meterRegistry);
+        MeteredConnectionManager connectionManager = new MeteredConnectionManager(registry, leaseTimer);
+        connectionManager.setMaxTotal(wechatConfig.getMaxConnTotal());
+        connectionManager.setDefaultMaxPerRoute(wechatConfig.getMaxConnPerRoute());
+        connectionManager.setDefaultSocketConfig(SocketConfig.custom()
+                .setTcpNoDelay(true)
+                .build());
+        connectionManager.setDefaultConnectionConfig(ConnectionConfig.custom()
+                .setConnectTimeout(Timeout.ofMilliseconds(wechatConfig.getConnectTimeout()))
+                .setSocketTimeout(Timeout.ofMilliseconds(wechatConfig.getReadTimeout()))
+                .setValidateAfterInactivity(TimeValue.ofMilliseconds(wechatConfig.getValidateAfterInactivity()))
+                .build());
+
+        new PoolingHttpClientConnectionManagerMetricsBinder(connectionManager, CLIENT_NAME).bindTo(meterRegistry);
+        log.info("初始化微信HTTP连接池：maxTotal={}, maxPerRoute={}", wechatConfig.getMaxConnTotal(),
+                wechatConfig.getMaxConnPerRoute());
+        return connectionManager;
+    }
+
+    /**
+     * 微信API HTTP客户端
+     *
+     * @return HTTP客户端
+     */
+    @Bean(destroyMethod = "close")
+    public CloseableHttpClient wechatHttpClient(PoolingHttpClientConnectionManager wechatConnectionManager,
+                                                WechatMiniappConfig wechatConfig) {
+        return HttpClients.custom()
+                .setConnectionManager(wechatConnectionManager)
+                .setDefaultRequestConfig(requestConfig(wechatConfig, wechatConfig.getReadTimeout()))
+                .evictExpiredConnections()
+                .evictIdleConnections(TimeValue.ofMilliseconds(wechatConfig.getMaxIdleTime()))
+                .build();
+    }
+
     /**
      * 配置RestTemplate Bean
      * 用于HTTP请求调用，如微信API调用
+     * 每个请求的响应超时取自适应超时的当前值，请求耗时同时回写用于计算P99
      * 
      * @return RestTemplate实例
      */
     @Bean
-    public RestTemplate restTemplate() {
-        SimpleClientHttpRequestFactory factory = new SimpleClientHttpRequestFactory();
-        factory.setConnectTimeout(5000); // 连接超时5秒
-        factory.setReadTimeout(10000);   // 读取超时10秒
-        
-        return new RestTemplate(factory);
+    public RestTemplate restTemplate(RestTemplateBuilder restTemplateBuilder, CloseableHttpClient wechatHttpClient,
+                                     WechatMiniappConfig wechatConfig, AdaptiveTimeout wechatAdaptiveTimeout) {
+        return restTemplateBuilder
+                .requestFactory(() -> {
+                    HttpComponentsClientHttpRequestFactory factory = new HttpComponentsClientHttpRequestFactory(wechatHttpClient);
+                    factory.setHttpContextFactory((method, uri) -> {
+                        HttpClientContext context = HttpClientContext.create();
+                        context.setRequestConfig(requestConfig(wechatConfig, wechatAdaptiveTimeout.currentMillis()));
+                        return context;
+                    });
+                    return factory;
+                })
+                .additionalInterceptors((request, body, execution) -> {
+                    long start = System.nanoTime();
+                    try {
+                        return execution.execute(request, body);
+                    } finally {
+                        wechatAdaptiveTimeout.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                    }
+                })
+                .build();
+    }
+
+    private static RequestConfig requestConfig(WechatMiniappConfig wechatConfig, long responseTimeoutMillis) {
+        return RequestConfig.custom()
+                .setConnectionRequestTimeout(Timeout.ofMilliseconds(wechatConfig.getConnectionRequestTimeout()))
+                .setResponseTimeout(Timeout.ofMilliseconds(responseTimeoutMillis))
+                .setConnectionKeepAlive(TimeValue.ofMilliseconds(wechatConfig.getKeepAliveTime()))
+                .build();
+    }
+
+    /**
+     * 记录获取连接等待时间的连接池
+     */
+    private static class MeteredConnectionManager extends PoolingHttpClientConnectionManager {
+
+        private final Timer leaseTimer;
+
+        MeteredConnectionManager(RegistryBuilder<ConnectionSocketFactory> registry, Timer leaseTimer) {
+            super(registry.build(), PoolConcurrencyPolicy.STRICT, PoolReusePolicy.LIFO, TimeValue.NEG_ONE_MILLISECOND);
+            this.leaseTimer = leaseTimer;
+        }
+
+        @Override
+        public LeaseRequest lease(String id, HttpRoute route, Timeout requestTimeout, Object state) {
+            LeaseRequest leaseRequest = super.lease(id, route, requestTimeout, state);
+            long start = System.nanoTime();
+            return new LeaseRequest() {
+                @Override
+                public ConnectionEndpoint get(Timeout timeout)
+                        throws InterruptedException, ExecutionException, TimeoutException {
+                    try {
+                        return leaseRequest.get(timeout);
+                    } finally {
+                        leaseTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                    }
+                }
+
+                @Override
+                public boolean cancel() {
+                    return leaseRequest.cancel();
+                }
+            };
+        }
+    }
+
+    /**
+     * 记录TLS握手的SSL连接工厂，握手只发生在新建连接时，复用连接不计入
+     */
+    private static class MeteredSslSocketFactory extends SSLConnectionSocketFactory {
+
+        private final Timer handshakeTimer;
+
+        MeteredSslSocketFactory(SSLContext sslContext, Timer handshakeTimer) {
+            super(sslContext);
+            this.handshakeTimer = handshakeTimer;
+        }
+
+        @Override
+        public Socket createLayeredSocket(Socket socket, String target, int port, Object attachment, HttpContext context)
+                throws IOException {
+            long start = System.nanoTime();
+            Socket layered = super.createLayeredSocket(socket, target, port, attachment, context);
+            handshakeTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            return layered;
+        }
     }
-}
\ No newline at end of file
+}
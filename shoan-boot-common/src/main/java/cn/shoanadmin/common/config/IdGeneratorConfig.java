@@ -0,0 +1,59 @@
+package cn.shoanadmin.common.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 用户ID生成配置类
+ * 对应配置前缀 app.id-generator
+ *
+ * @author FruitPieces
+ * @since 2024-01-20
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "app.id-generator")
+public class IdGeneratorConfig {
+
+    /**
+     * 生成方式：snowflake-按工作节点ID生成，segment-从数据库号段表按段预分配，适用于无法协调工作节点ID的部署
+     */
+    private String type = "snowflake";
+
+    /**
+     * 工作节点ID（0~1023），小于0时通过Redis租约自动分配
+     */
+    private Long workerId = -1L;
+
+    /**
+     * 工作节点ID租约时长（秒），每三分之一租约时长续约一次
+     */
+    private Long workerLeaseTtl = 60L;
+
+    /**
+     * 未取得工作节点ID租约（Redis不可用或租约过期未续上）时，是否按主机名与进程号散列出节点ID继续生成；
+     * 散列值不保证节点间不冲突，默认不开启，此时拒绝生成ID直到后台重新取得租约
+     */
+    private Boolean allowUnleasedWorker = false;
+
+    /**
+     * 可容忍的时钟回拨（毫秒），回拨期间沿用上次时间继续生成，超出后拒绝生成
+     */
+    private Long maxClockBackwardMillis = 5000L;
+
+    /**
+     * 号段表中的业务标识
+     */
+    private String segmentBizTag = "wechat_user";
+
+    /**
+     * 每次从号段表预留的ID数量
+     */
+    private Integer segmentStep = 1000;
+
+    /**
+     * 当前号段使用比例达到该值时异步预取下一号段
+     */
+    private Double segmentPrefetchRatio = 0.8;
+}
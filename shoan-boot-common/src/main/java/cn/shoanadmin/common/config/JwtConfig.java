@@ -0,0 +1,91 @@
+package cn.shoanadmin.common.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 访问令牌签名配置类
+ * 对应配置前缀 app.jwt
+ *
+ * @author FruitPieces
+ * @since 2024-01-20
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "app.jwt")
+public class JwtConfig {
+
+    /**
+     * 签名密钥，未配置keys时作为默认密钥使用
+     */
+    private String secret;
+
+    /**
+     * 访问令牌有效期（毫秒），默认7天
+     */
+    private Long expiration = 7 * 24 * 60 * 60 * 1000L;
+
+    /**
+     * 刷新令牌有效期（毫秒）
+     */
+    private Long refreshExpiration = 7 * 24 * 60 * 60 * 1000L;
+
+    /**
+     * 签名使用的密钥ID
+     */
+    private String activeKeyId = "default";
+
+    /**
+     * 密钥列表，key为密钥ID，value为密钥
+     * 轮换密钥时先加入新密钥并切换activeKeyId，旧密钥保留到其签发的令牌全部过期后再移除
+     */
+    private Map<String, String> keys = new LinkedHashMap<>();
+
+    /**
+     * 已验签令牌缓存的最大条目数
+     */
+    private Long verifiedCacheSize = 100000L;
+
+    /**
+     * 已验签令牌缓存时间（秒）
+     */
+    private Long verifiedCacheTtl = 600L;
+
+    /**
+     * 是否兼容旧版未签名令牌（仅用于过渡期）
+     */
+    private Boolean legacyTokenEnabled = false;
+
+    /**
+     * 令牌吊销配置
+     */
+    private Revocation revocation = new Revocation();
+
+    @Data
+    public static class Revocation {
+
+        /**
+         * 预计同时有效的吊销令牌数量，用于计算布隆过滤器大小
+         */
+        private Long expectedTokens = 100000L;
+
+        /**
+         * 布隆过滤器误判率
+         */
+        private Double falsePositiveRate = 0.01;
+
+        /**
+         * 吊销通知频道
+         */
+        private String channel = "wechat:token:revoke";
+
+        /**
+         * 从数据库全量同步吊销记录并清理过期记录的间隔（毫秒）
+         */
+        private Long refreshInterval = 300000L;
+    }
+}
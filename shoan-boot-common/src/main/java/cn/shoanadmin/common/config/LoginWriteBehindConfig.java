@@ -0,0 +1,43 @@
+package cn.shoanadmin.common.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 登录信息异步写入配置类
+ * 对应配置前缀 app.login-write-behind，时间单位均为毫秒
+ *
+ * @author FruitPieces
+ * @since 2024-01-20
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "app.login-write-behind")
+public class LoginWriteBehindConfig {
+
+    /**
+     * 是否异步批量写入登录信息，关闭后每次登录同步写库
+     */
+    private Boolean enabled = true;
+
+    /**
+     * 待写入的用户数上限，超出后新的登录回退为同步写库
+     */
+    private Integer capacity = 10000;
+
+    /**
+     * 每批写入的最大条数，待写入数达到该值时立即触发写入
+     */
+    private Integer batchSize = 200;
+
+    /**
+     * 定时写入间隔（毫秒）
+     */
+    private Long flushInterval = 1000L;
+
+    /**
+     * 停机时等待剩余数据写入的最长时间（毫秒）
+     */
+    private Long shutdownTimeout = 10000L;
+}
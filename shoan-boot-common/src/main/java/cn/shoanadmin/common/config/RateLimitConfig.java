@@ -0,0 +1,68 @@
+package cn.shoanadmin.common.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 登录限流配置类
+ * 对应配置前缀 app.rate-limit；本地令牌桶按节点限流，全局限流基于Redis按固定时间窗口计数
+ *
+ * @author FruitPieces
+ * @since 2024-01-20
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "app.rate-limit")
+public class RateLimitConfig {
+
+    /**
+     * 是否启用登录限流
+     */
+    private Boolean enabled = true;
+
+    /**
+     * 单个IP每秒恢复的登录次数
+     */
+    private Double ipPermitsPerSecond = 2.0;
+
+    /**
+     * 单个IP允许的突发登录次数
+     */
+    private Integer ipBurst = 20;
+
+    /**
+     * 单个openid每秒恢复的登录次数
+     */
+    private Double openidPermitsPerSecond = 0.2;
+
+    /**
+     * 单个openid允许的突发登录次数
+     */
+    private Integer openidBurst = 5;
+
+    /**
+     * 本地令牌桶最大数量，超出后淘汰最久未使用的
+     */
+    private Long maxBuckets = 100000L;
+
+    /**
+     * 是否启用基于Redis的集群全局限流
+     */
+    private Boolean globalEnabled = false;
+
+    /**
+     * 全局限流时间窗口（秒）
+     */
+    private Long globalWindow = 60L;
+
+    /**
+     * 单个IP在一个时间窗口内的全局登录次数上限
+     */
+    private Long globalIpLimit = 300L;
+
+    /**
+     * 单个openid在一个时间窗口内的全局登录次数上限
+     */
+    private Long globalOpenidLimit = 30L;
+}
@@ -0,0 +1,107 @@
+package cn.shoanadmin.common.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 用户分片配置类
+ * 对应配置前缀 app.sharding；用户按openid散列到固定的1024个桶，桶按路由表映射到物理分片（数据源 + 表）。
+ * 路由表 user_shard_route 中没有记录的桶按分片顺序平均分成连续区间，例如4个分片时桶0~255属于第1个分片
+ *
+ * @author FruitPieces
+ * @since 2024-01-20
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "app.sharding")
+public class ShardingConfig {
+
+    /**
+     * 是否启用分片，关闭时所有读写都使用 wechat_user 单表
+     */
+    private Boolean enabled = false;
+
+    /**
+     * 物理分片，名称写入路由表，已有数据的分片不能改名或删除
+     */
+    private List<Shard> shards = new ArrayList<>();
+
+    /**
+     * 分片使用的其他数据源，连接池参数沿用 spring.datasource.druid；主库名称固定为 primary，不需要在此配置
+     */
+    private List<ShardDataSource> dataSources = new ArrayList<>();
+
+    /**
+     * 路由表刷新间隔（毫秒）
+     */
+    private Long routeRefreshInterval = 10000L;
+
+    /**
+     * 路由表最长可用时间（毫秒），超过该时间未刷新成功时拒绝写入，避免在迁移期间按过期路由写入旧分片；
+     * 迁移分片桶时冻结写入后等待该时长再复制数据，应大于 routeRefreshInterval
+     */
+    private Long routeMaxStaleness = 30000L;
+
+    /**
+     * 单次写入（语句或事务）的最长执行时间（毫秒），迁移分片桶时在 routeMaxStaleness 之外再等待该时长，
+     * 使按旧路由开始的写入都已提交；超过该时长才提交的写入由复制后的逐行校验修正
+     */
+    private Long maxWriteDuration = 30000L;
+
+    /**
+     * 跨分片导出时每个分片每次查询的行数
+     */
+    private Integer mergeFetchSize = 500;
+
+    /**
+     * 迁移分片桶时每批复制的行数
+     */
+    private Integer migrationBatchSize = 1000;
+
+    @Data
+    public static class Shard {
+
+        /**
+         * 分片名称
+         */
+        private String name;
+
+        /**
+         * 数据源名称，默认为主库 primary
+         */
+        private String dataSource = "primary";
+
+        /**
+         * 物理表名，表结构与 wechat_user 相同
+         */
+        private String table;
+    }
+
+    @Data
+    public static class ShardDataSource {
+
+        /**
+         * 数据源名称，与 shards[].data-source 对应
+         */
+        private String name;
+
+        /**
+         * JDBC连接地址
+         */
+        private String url;
+
+        /**
+         * 用户名，未配置时沿用主库
+         */
+        private String username;
+
+        /**
+         * 密码，未配置时沿用主库
+         */
+        private String password;
+    }
+}
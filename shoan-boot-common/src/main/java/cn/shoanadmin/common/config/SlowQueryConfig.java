@@ -0,0 +1,48 @@
+package cn.shoanadmin.common.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 慢SQL采集配置类
+ * 对应配置前缀 app.slow-query；采集结果通过 /actuator/slowqueries 查看（默认不暴露），执行耗时按语句输出到 mybatis.statement 指标
+ *
+ * @author FruitPieces
+ * @since 2024-01-20
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "app.slow-query")
+public class SlowQueryConfig {
+
+    /**
+     * 是否采集语句耗时与慢SQL
+     */
+    private Boolean enabled = true;
+
+    /**
+     * 执行耗时超过该阈值记为慢SQL（毫秒）
+     */
+    private Long thresholdMillis = 500L;
+
+    /**
+     * 保留的最近慢SQL条数
+     */
+    private Integer bufferSize = 200;
+
+    /**
+     * 是否对新出现的慢SQL形态异步执行EXPLAIN
+     */
+    private Boolean explainEnabled = true;
+
+    /**
+     * 跟踪的慢SQL形态（语句ID + SQL文本）数量上限，超出后的新形态只记入最近慢SQL，不再统计与EXPLAIN
+     */
+    private Integer maxShapes = 500;
+
+    /**
+     * EXPLAIN的查询超时（秒）
+     */
+    private Integer explainTimeoutSeconds = 5;
+}
@@ -0,0 +1,28 @@
+package cn.shoanadmin.common.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 用户导出配置类
+ * 对应配置前缀 app.user-export
+ *
+ * @author FruitPieces
+ * @since 2024-01-20
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "app.user-export")
+public class UserExportConfig {
+
+    /**
+     * 每条查询读取的最大行数；每页结束后归还连接，客户端中断时最多丢弃一页未读完的结果
+     */
+    private Integer pageSize = 5000;
+
+    /**
+     * 同时进行的导出数上限，每个导出占用一个数据库连接
+     */
+    private Integer maxConcurrent = 2;
+}
@@ -0,0 +1,38 @@
+package cn.shoanadmin.common.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 用户批量导入配置类
+ * 对应配置前缀 app.user-import
+ *
+ * @author FruitPieces
+ * @since 2024-01-20
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "app.user-import")
+public class UserImportConfig {
+
+    /**
+     * 导入的文件（.csv 或 .jsonl），以 import profile 运行导入任务时必须指定
+     */
+    private String file;
+
+    /**
+     * 每批读取、校验并写入的记录数，内存中同时只保留一批
+     */
+    private Integer batchSize = 500;
+
+    /**
+     * 并行校验的线程数，小于等于0时使用CPU核数
+     */
+    private Integer parallelism = 0;
+
+    /**
+     * 每处理多少条记录输出一次进度日志
+     */
+    private Long progressLogInterval = 100000L;
+}
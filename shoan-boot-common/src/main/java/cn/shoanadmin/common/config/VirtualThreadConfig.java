@@ -0,0 +1,33 @@
+package cn.shoanadmin.common.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 虚拟线程配置类
+ * 对应配置前缀 app.virtual-thread；虚拟线程模式本身由 spring.threads.virtual.enabled 开启
+ *
+ * @author FruitPieces
+ * @since 2024-01-20
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "app.virtual-thread")
+public class VirtualThreadConfig {
+
+    /**
+     * 是否监控虚拟线程固定（pinning）事件
+     */
+    private Boolean pinnedMonitorEnabled = true;
+
+    /**
+     * 固定时长超过该阈值才记录（毫秒）
+     */
+    private Long pinnedThresholdMillis = 20L;
+
+    /**
+     * 按代码位置区分的指标数量上限，超出后归入 other
+     */
+    private Integer pinnedMaxFrames = 100;
+}
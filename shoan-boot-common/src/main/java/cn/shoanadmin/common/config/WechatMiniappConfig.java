@@ -46,6 +46,41 @@ public class WechatMiniappConfig {
      */
     private Integer readTimeout = 10000;
 
+    /**
+     * 从连接池获取连接的最长等待时间（毫秒）
+     */
+    private Integer connectionRequestTimeout = 1000;
+
+    /**
+     * 连接池最大连接数
+     */
+    private Integer maxConnTotal = 200;
+
+    /**
+     * 每个路由（目标主机）的最大连接数
+     */
+    private Integer maxConnPerRoute = 50;
+
+    /**
+     * 服务端未声明Keep-Alive时连接保持时间（毫秒），应小于服务端空闲断开时间
+     */
+    private Long keepAliveTime = 30000L;
+
+    /**
+     * 空闲连接超过该时间由后台线程关闭（毫秒）
+     */
+    private Long maxIdleTime = 60000L;
+
+    /**
+     * 连接空闲超过该时间后复用前先校验是否可用（毫秒）
+     */
+    private Long validateAfterInactivity = 2000L;
+
+    /**
+     * 微信接口容错配置
+     */
+    private Resilience resilience = new Resilience();
+
     /**
      * 获取完整的jscode2session接口URL
      * 
@@ -54,4 +89,68 @@ public class WechatMiniappConfig {
     public String getJscode2sessionUrl() {
         return apiBaseUrl + tokenUrl;
     }
-}
\ No newline at end of file
+
+    @Data
+    public static class Resilience {
+
+        /**
+         * 失败率阈值（百分比），超过后熔断
+         */
+        private Float failureRateThreshold = 50f;
+
+        /**
+         * 慢调用率阈值（百分比），超过后熔断
+         */
+        private Float slowCallRateThreshold = 80f;
+
+        /**
+         * 慢调用判定时长（毫秒）
+         */
+        private Long slowCallDuration = 3000L;
+
+        /**
+         * 熔断统计窗口内的调用次数
+         */
+        private Integer slidingWindowSize = 50;
+
+        /**
+         * 开始计算失败率前的最少调用次数
+         */
+        private Integer minimumNumberOfCalls = 20;
+
+        /**
+         * 熔断后等待多久进入半开状态（毫秒）
+         */
+        private Long waitDurationInOpenState = 10000L;
+
+        /**
+         * 半开状态允许的试探调用次数
+         */
+        private Integer permittedCallsInHalfOpenState = 5;
+
+        /**
+         * 同时调用微信接口的最大并发数
+         */
+        private Integer maxConcurrentCalls = 50;
+
+        /**
+         * 并发已满时的最长等待时间（毫秒），0表示立即拒绝
+         */
+        private Long maxWaitDuration = 0L;
+
+        /**
+         * 自适应超时：超时 = P99耗时 × 该系数，限制在[min-timeout, read-timeout]之间
+         */
+        private Double timeoutMultiplier = 3.0;
+
+        /**
+         * 自适应超时下限（毫秒）
+         */
+        private Long minTimeout = 1000L;
+
+        /**
+         * 自适应超时统计的最近调用次数
+         */
+        private Integer timeoutWindowSize = 500;
+    }
+}
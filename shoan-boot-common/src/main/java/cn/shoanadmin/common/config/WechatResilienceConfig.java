@@ -0,0 +1,85 @@
+package cn.shoanadmin.common.config;
+
+import cn.shoanadmin.common.util.AdaptiveTimeout;
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadConfig;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.micrometer.tagged.TaggedBulkheadMetrics;
+import io.github.resilience4j.micrometer.tagged.TaggedCircuitBreakerMetrics;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * 微信接口容错配置类
+ * 熔断器：失败率或慢调用率超过阈值后快速失败；隔离舱：限制同时调用微信接口的并发数，避免登录占满请求线程；
+ * 自适应超时：按最近调用的P99调整响应超时。参数来自 wechat.miniapp.resilience
+ *
+ * @author FruitPieces
+ * @since 2024-01-20
+ */
+@Slf4j
+@Configuration
+public class WechatResilienceConfig {
+
+    private static final String WECHAT_API = "wechatApi";
+
+    @Bean
+    public CircuitBreaker wechatCircuitBreaker(WechatMiniappConfig wechatConfig, MeterRegistry meterRegistry) {
+        WechatMiniappConfig.Resilience resilience = wechatConfig.getResilience();
+        CircuitBreakerConfig config = CircuitBreakerConfig.custom()
+                .failureRateThreshold(resilience.getFailureRateThreshold())
+                .slowCallRateThreshold(resilience.getSlowCallRateThreshold())
+                .slowCallDurationThreshold(Duration.ofMillis(resilience.getSlowCallDuration()))
+                .slidingWindowType(CircuitBreakerConfig.SlidingWindowType.COUNT_BASED)
+                .slidingWindowSize(resilience.getSlidingWindowSize())
+                .minimumNumberOfCalls(resilience.getMinimumNumberOfCalls())
+                .waitDurationInOpenState(Duration.ofMillis(resilience.getWaitDurationInOpenState()))
+                .permittedNumberOfCallsInHalfOpenState(resilience.getPermittedCallsInHalfOpenState())
+                // 并发已满是本地限流，不代表微信接口异常
+                .ignoreExceptions(BulkheadFullException.class)
+                .build();
+        CircuitBreakerRegistry registry = CircuitBreakerRegistry.of(config);
+        TaggedCircuitBreakerMetrics.ofCircuitBreakerRegistry(registry).bindTo(meterRegistry);
+        CircuitBreaker circuitBreaker = registry.circuitBreaker(WECHAT_API);
+        circuitBreaker.getEventPublisher().onStateTransition(event ->
+                log.warn("微信接口熔断器状态变化：{}", event.getStateTransition()));
+        return circuitBreaker;
+    }
+
+    @Bean
+    public Bulkhead wechatBulkhead(WechatMiniappConfig wechatConfig, MeterRegistry meterRegistry) {
+        WechatMiniappConfig.Resilience resilience = wechatConfig.getResilience();
+        BulkheadConfig config = BulkheadConfig.custom()
+                .maxConcurrentCalls(resilience.getMaxConcurrentCalls())
+                .maxWaitDuration(Duration.ofMillis(resilience.getMaxWaitDuration()))
+                .build();
+        BulkheadRegistry registry = BulkheadRegistry.of(config);
+        TaggedBulkheadMetrics.ofBulkheadRegistry(registry).bindTo(meterRegistry);
+        return registry.bulkhead(WECHAT_API);
+    }
+
+    @Bean
+    public AdaptiveTimeout wechatAdaptiveTimeout(WechatMiniappConfig wechatConfig, MeterRegistry meterRegistry) {
+        WechatMiniappConfig.Resilience resilience = wechatConfig.getResilience();
+        int windowSize = resilience.getTimeoutWindowSize();
+        AdaptiveTimeout adaptiveTimeout = new AdaptiveTimeout(windowSize, Math.min(50, windowSize),
+                Math.max(1, windowSize / 10), resilience.getTimeoutMultiplier(),
+                resilience.getMinTimeout(), wechatConfig.getReadTimeout());
+        Gauge.builder("wechat.api.timeout", adaptiveTimeout, AdaptiveTimeout::currentMillis)
+                .description("微信接口当前响应超时（毫秒）")
+                .register(meterRegistry);
+        Gauge.builder("wechat.api.latency.p99", adaptiveTimeout, AdaptiveTimeout::percentileMillis)
+                .description("微信接口最近调用P99耗时（毫秒）")
+                .register(meterRegistry);
+        return adaptiveTimeout;
+    }
+}
@@ -2,4 +2,6 @@ package cn.shoanadmin.common.constant;
 
 public interface ComStrConstant {
     String colon = ":";
+    String authTokenHeader = "en-bit-token";
+    String adminTokenHeader = "en-bit-admin-token";
 }
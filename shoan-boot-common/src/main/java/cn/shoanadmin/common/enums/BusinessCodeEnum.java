@@ -18,6 +18,9 @@ public enum BusinessCodeEnum {
     AUTH_TOKEN_EXPIRED("AU004", "访问令牌已过期"),
     AUTH_USER_NOT_FOUND("AU005", "用户不存在"),
     AUTH_USER_DISABLED("AU006", "用户已被禁用"),
+    AUTH_TOKEN_REVOKED("AU007", "访问令牌已注销"),
+    AUTH_RATE_LIMITED("AU008", "登录过于频繁，请稍后再试"),
+    AUTH_ADMIN_DENIED("AU009", "管理令牌无效"),
 
     // 参数相关错误
     PARAM_ERROR("PA001", "参数错误"),
@@ -25,6 +28,7 @@ public enum BusinessCodeEnum {
     // 微信相关错误
     WECHAT_LOGIN_FAILED("WE001", "微信登录失败"),
     WECHAT_API_ERROR("WE002", "微信接口调用失败"),
+    WECHAT_DECRYPT_FAILED("WE003", "微信数据解密失败"),
 
     // 收藏分类相关错误
     CATEGORY_NAME_EXISTS("CA001", "分类名称已存在"),
@@ -33,7 +37,8 @@ public enum BusinessCodeEnum {
     SYSTEM_CATEGORY_NOT_DELETABLE("CA004", "系统分类不允许删除"),
 
     // 系统相关错误
-    SYSTEM_ERROR("SY001", "系统错误");
+    SYSTEM_ERROR("SY001", "系统错误"),
+    SYSTEM_BUSY("SY002", "系统繁忙，请稍后再试");
 
     private final String code;
     private final String message;
@@ -0,0 +1,118 @@
+package cn.shoanadmin.common.monitor;
+
+import cn.shoanadmin.common.config.VirtualThreadConfig;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingStream;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * 虚拟线程固定监控
+ * 通过JFR事件流订阅 jdk.VirtualThreadPinned，按发生固定的应用代码位置输出指标 jvm.threads.virtual.pinned，
+ * 每个位置首次出现时打印一次调用栈，用于定位 synchronized 块内的阻塞I/O（如连接池、JDBC驱动）
+ *
+ * @author FruitPieces
+ * @since 2024-01-20
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(prefix = "spring.threads.virtual", name = "enabled", havingValue = "true")
+public class VirtualThreadPinnedMonitor implements SmartLifecycle {
+
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+    private static final String METRIC_NAME = "jvm.threads.virtual.pinned";
+    private static final String OTHER_FRAME = "other";
+    private static final int LOGGED_STACK_DEPTH = 20;
+
+    private final MeterRegistry meterRegistry;
+    private final VirtualThreadConfig virtualThreadConfig;
+    private final Set<String> reportedFrames = ConcurrentHashMap.newKeySet();
+
+    private volatile RecordingStream recordingStream;
+
+    @Override
+    public void start() {
+        if (!Boolean.TRUE.equals(virtualThreadConfig.getPinnedMonitorEnabled())) {
+            return;
+        }
+        RecordingStream stream = new RecordingStream();
+        stream.enable(PINNED_EVENT)
+                .withThreshold(Duration.ofMillis(virtualThreadConfig.getPinnedThresholdMillis()))
+                .withStackTrace();
+        stream.onEvent(PINNED_EVENT, this::record);
+        stream.startAsync();
+        recordingStream = stream;
+        log.info("虚拟线程固定监控已启动：threshold={}ms", virtualThreadConfig.getPinnedThresholdMillis());
+    }
+
+    @Override
+    public void stop() {
+        RecordingStream stream = recordingStream;
+        if (stream != null) {
+            recordingStream = null;
+            stream.close();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return recordingStream != null;
+    }
+
+    private void record(RecordedEvent event) {
+        RecordedStackTrace stackTrace = event.getStackTrace();
+        String frame = pinnedFrame(stackTrace);
+        if (!reportedFrames.contains(frame) && reportedFrames.size() >= virtualThreadConfig.getPinnedMaxFrames()) {
+            frame = OTHER_FRAME;
+        }
+        Timer.builder(METRIC_NAME)
+                .description("虚拟线程被固定在载体线程上的时长")
+                .tag("frame", frame)
+                .register(meterRegistry)
+                .record(event.getDuration());
+        if (reportedFrames.add(frame) && stackTrace != null) {
+            log.warn("虚拟线程被固定：frame={}, duration={}ms\n{}", frame, event.getDuration().toMillis(),
+                    formatStack(stackTrace.getFrames()));
+        }
+    }
+
+    /**
+     * 取调用栈中第一个非JDK的方法作为固定位置
+     */
+    private static String pinnedFrame(RecordedStackTrace stackTrace) {
+        if (stackTrace == null || stackTrace.getFrames().isEmpty()) {
+            return "unknown";
+        }
+        List<RecordedFrame> frames = stackTrace.getFrames();
+        for (RecordedFrame frame : frames) {
+            String className = frame.getMethod().getType().getName();
+            if (!className.startsWith("java.") && !className.startsWith("jdk.") && !className.startsWith("sun.")) {
+                return className + "." + frame.getMethod().getName();
+            }
+        }
+        RecordedFrame top = frames.get(0);
+        return top.getMethod().getType().getName() + "." + top.getMethod().getName();
+    }
+
+    private static String formatStack(List<RecordedFrame> frames) {
+        return frames.stream()
+                .limit(LOGGED_STACK_DEPTH)
+                .map(frame -> "\tat " + frame.getMethod().getType().getName() + "." + frame.getMethod().getName()
+                        + ":" + frame.getLineNumber())
+                .collect(Collectors.joining("\n"));
+    }
+}
@@ -0,0 +1,211 @@
+package cn.shoanadmin.common.security;
+
+import cn.shoanadmin.common.config.JwtConfig;
+import cn.shoanadmin.common.constant.ComStrConstant;
+import cn.shoanadmin.common.enums.BusinessCodeEnum;
+import cn.shoanadmin.common.exception.BusinessException;
+import cn.shoanadmin.common.util.ObjectPool;
+import cn.shoanadmin.common.util.TokenUtil;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 访问令牌服务
+ * 令牌格式：{密钥ID}.{Base64Url(声明)}.{Base64Url(HMAC-SHA256签名)}
+ * 验证只依赖内存中的密钥，签名错误或过期的令牌无需任何I/O即可拒绝
+ *
+ * @author FruitPieces
+ * @since 2024-01-20
+ */
+@Slf4j
+@Component
+public class AccessTokenService {
+
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+    private static final char SEGMENT_SEPARATOR = '.';
+
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private final JwtConfig jwtConfig;
+    private final Map<String, SecretKeySpec> signingKeys;
+    private final Cache<String, TokenClaims> verifiedTokens;
+
+    /**
+     * 按密钥ID复用Mac实例，避免每次签名或验签都重新查找算法提供者；
+     * 使用对象池而非ThreadLocal，虚拟线程每个请求一个线程时依然能复用
+     */
+    private final Map<String, ObjectPool<Mac>> macPools;
+
+    public AccessTokenService(JwtConfig jwtConfig) {
+        this.jwtConfig = jwtConfig;
+        this.signingKeys = buildSigningKeys(jwtConfig);
+        if (!signingKeys.containsKey(jwtConfig.getActiveKeyId())) {
+            throw new IllegalStateException("app.jwt.active-key-id 未在密钥列表中：" + jwtConfig.getActiveKeyId());
+        }
+        int poolSize = Runtime.getRuntime().availableProcessors() * 2;
+        Map<String, ObjectPool<Mac>> pools = new HashMap<>(signingKeys.size() * 2);
+        signingKeys.keySet().forEach(keyId -> pools.put(keyId, new ObjectPool<>(poolSize, () -> createMac(keyId))));
+        this.macPools = pools;
+        this.verifiedTokens = Caffeine.newBuilder()
+                .maximumSize(jwtConfig.getVerifiedCacheSize())
+                .expireAfterWrite(Duration.ofSeconds(jwtConfig.getVerifiedCacheTtl()))
+                .build();
+        log.info("初始化访问令牌服务：activeKeyId={}, keyIds={}", jwtConfig.getActiveKeyId(), signingKeys.keySet());
+    }
+
+    /**
+     * 生成访问令牌
+     *
+     * @param userId     用户ID
+     * @param deviceType 设备类型
+     * @return 访问令牌
+     */
+    public String generateToken(String userId, String deviceType) {
+        long issuedAt = System.currentTimeMillis();
+        long expiresAt = issuedAt + jwtConfig.getExpiration();
+        String payload = TokenClaims.USER_ID_CLAIM + ComStrConstant.colon + userId
+                + ComStrConstant.colon + TokenClaims.DEVICE_TYPE_CLAIM + ComStrConstant.colon + deviceType
+                + ComStrConstant.colon + TokenClaims.ISSUED_AT_CLAIM + ComStrConstant.colon + issuedAt
+                + ComStrConstant.colon + TokenClaims.EXPIRE_TIME_CLAIM + ComStrConstant.colon + expiresAt
+                + ComStrConstant.colon + TokenClaims.TOKEN_ID_CLAIM + ComStrConstant.colon + nextTokenId();
+        String keyId = jwtConfig.getActiveKeyId();
+        String signingInput = keyId + SEGMENT_SEPARATOR + ENCODER.encodeToString(payload.getBytes(StandardCharsets.UTF_8));
+        byte[] signingBytes = signingInput.getBytes(StandardCharsets.US_ASCII);
+        return signingInput + SEGMENT_SEPARATOR + ENCODER.encodeToString(sign(keyId, signingBytes, signingBytes.length));
+    }
+
+    /**
+     * 验证访问令牌
+     *
+     * @param token 访问令牌
+     * @return 令牌声明
+     * @throws BusinessException 令牌无效或已过期时抛出
+     */
+    public TokenClaims verify(String token) {
+        if (!StringUtils.hasText(token)) {
+            throw new BusinessException(BusinessCodeEnum.AUTH_TOKEN_MISSING);
+        }
+        TokenClaims claims = verifiedTokens.getIfPresent(token);
+        if (claims == null) {
+            claims = token.indexOf(SEGMENT_SEPARATOR) < 0 ? parseLegacy(token) : verifySignature(token);
+            verifiedTokens.put(token, claims);
+        }
+        if (claims.isExpired(System.currentTimeMillis())) {
+            throw new BusinessException(BusinessCodeEnum.AUTH_TOKEN_EXPIRED);
+        }
+        return claims;
+    }
+
+    private TokenClaims verifySignature(String token) {
+        int keyEnd = token.indexOf(SEGMENT_SEPARATOR);
+        int payloadEnd = token.indexOf(SEGMENT_SEPARATOR, keyEnd + 1);
+        if (keyEnd <= 0 || payloadEnd < 0 || token.indexOf(SEGMENT_SEPARATOR, payloadEnd + 1) >= 0) {
+            throw new BusinessException(BusinessCodeEnum.AUTH_TOKEN_INVALID);
+        }
+        String keyId = token.substring(0, keyEnd);
+        if (!signingKeys.containsKey(keyId)) {
+            log.warn("访问令牌密钥ID未知：{}", keyId);
+            throw new BusinessException(BusinessCodeEnum.AUTH_TOKEN_INVALID);
+        }
+        try {
+            // 令牌只转换一次字节，签名与声明都在同一数组的区间上处理
+            byte[] tokenBytes = token.getBytes(StandardCharsets.US_ASCII);
+            byte[] expected = sign(keyId, tokenBytes, payloadEnd);
+            byte[] actual = decode(tokenBytes, payloadEnd + 1, tokenBytes.length);
+            if (!MessageDigest.isEqual(expected, actual)) {
+                throw new BusinessException(BusinessCodeEnum.AUTH_TOKEN_INVALID);
+            }
+            return TokenClaims.parse(decode(tokenBytes, keyEnd + 1, payloadEnd), keyId, null);
+        } catch (IllegalArgumentException e) {
+            // Base64格式错误或声明格式错误
+            throw new BusinessException(BusinessCodeEnum.AUTH_TOKEN_INVALID);
+        }
+    }
+
+    private TokenClaims parseLegacy(String token) {
+        if (!Boolean.TRUE.equals(jwtConfig.getLegacyTokenEnabled())) {
+            throw new BusinessException(BusinessCodeEnum.AUTH_TOKEN_INVALID);
+        }
+        TokenClaims claims = TokenUtil.parseClaims(token);
+        if (claims == null) {
+            throw new BusinessException(BusinessCodeEnum.AUTH_TOKEN_INVALID);
+        }
+        return claims;
+    }
+
+    private byte[] sign(String keyId, byte[] input, int length) {
+        ObjectPool<Mac> pool = macPools.get(keyId);
+        Mac mac = pool.borrow();
+        mac.update(input, 0, length);
+        // doFinal会重置Mac，之后即可归还复用
+        byte[] signature = mac.doFinal();
+        pool.release(mac);
+        return signature;
+    }
+
+    private static String nextTokenId() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return Long.toString(random.nextLong() & Long.MAX_VALUE, 36) + Long.toString(random.nextLong() & Long.MAX_VALUE, 36);
+    }
+
+    private static byte[] decode(byte[] bytes, int from, int to) {
+        ByteBuffer decoded = DECODER.decode(ByteBuffer.wrap(bytes, from, to - from));
+        return decoded.hasArray() && decoded.arrayOffset() == 0 && decoded.remaining() == decoded.array().length
+                ? decoded.array()
+                : Arrays.copyOfRange(decoded.array(), decoded.arrayOffset() + decoded.position(),
+                decoded.arrayOffset() + decoded.limit());
+    }
+
+    private Mac createMac(String keyId) {
+        try {
+            Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+            mac.init(signingKeys.get(keyId));
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("初始化HMAC失败：keyId=" + keyId, e);
+        }
+    }
+
+    private static Map<String, SecretKeySpec> buildSigningKeys(JwtConfig jwtConfig) {
+        Map<String, String> secrets = new LinkedHashMap<>(jwtConfig.getKeys());
+        if (secrets.isEmpty() && StringUtils.hasText(jwtConfig.getSecret())) {
+            secrets.put(jwtConfig.getActiveKeyId(), jwtConfig.getSecret());
+        }
+        if (secrets.isEmpty()) {
+            throw new IllegalStateException("未配置访问令牌签名密钥：app.jwt.secret 或 app.jwt.keys");
+        }
+        Map<String, SecretKeySpec> keys = new HashMap<>(secrets.size() * 2);
+        secrets.forEach((keyId, secret) -> {
+            if (!StringUtils.hasText(keyId) || keyId.indexOf(SEGMENT_SEPARATOR) >= 0) {
+                throw new IllegalStateException("访问令牌密钥ID不能为空或包含'.'：" + keyId);
+            }
+            if (!StringUtils.hasText(secret)) {
+                throw new IllegalStateException("访问令牌密钥不能为空：keyId=" + keyId);
+            }
+            byte[] secretBytes = secret.getBytes(StandardCharsets.UTF_8);
+            if (secretBytes.length < 32) {
+                log.warn("访问令牌密钥长度不足32字节，建议使用更长的密钥：keyId={}", keyId);
+            }
+            keys.put(keyId, new SecretKeySpec(secretBytes, HMAC_ALGORITHM));
+        });
+        return keys;
+    }
+}
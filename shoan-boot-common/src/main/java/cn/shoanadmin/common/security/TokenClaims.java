@@ -0,0 +1,159 @@
+package cn.shoanadmin.common.security;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 访问令牌声明
+ * 令牌验证通过后得到的不可变结果
+ * 声明原文格式为 key:value:key:value，{@link #parse} 直接在解码后的字节上单遍扫描，
+ * 不经过中间Map或分割字符串，只为userId、deviceType和jti创建字符串
+ *
+ * @author FruitPieces
+ * @since 2024-01-20
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public final class TokenClaims {
+
+    public static final String USER_ID_CLAIM = "userId";
+    public static final String DEVICE_TYPE_CLAIM = "deviceType";
+    public static final String ISSUED_AT_CLAIM = "iat";
+    public static final String EXPIRE_TIME_CLAIM = "expires_in";
+    public static final String TOKEN_ID_CLAIM = "jti";
+
+    private static final byte SEPARATOR = ':';
+    private static final byte[] USER_ID_KEY = USER_ID_CLAIM.getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] DEVICE_TYPE_KEY = DEVICE_TYPE_CLAIM.getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] ISSUED_AT_KEY = ISSUED_AT_CLAIM.getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] EXPIRE_TIME_KEY = EXPIRE_TIME_CLAIM.getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] TOKEN_ID_KEY = TOKEN_ID_CLAIM.getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * 用户ID
+     */
+    private final String userId;
+
+    /**
+     * 设备类型
+     */
+    private final String deviceType;
+
+    /**
+     * 签发时间（毫秒时间戳），旧版令牌为0
+     */
+    private final long issuedAt;
+
+    /**
+     * 过期时间（毫秒时间戳）
+     */
+    private final long expiresAt;
+
+    /**
+     * 签名密钥ID，旧版令牌为null
+     */
+    private final String keyId;
+
+    /**
+     * 令牌ID，用于吊销；旧版令牌没有该声明，使用令牌原文代替
+     */
+    private final String tokenId;
+
+    /**
+     * 是否已过期
+     *
+     * @param now 当前时间戳
+     * @return true-已过期，false-未过期
+     */
+    public boolean isExpired(long now) {
+        return expiresAt < now;
+    }
+
+    /**
+     * 从解码后的声明字节中解析令牌声明
+     *
+     * @param payload        声明字节（UTF-8）
+     * @param keyId          签名密钥ID，旧版令牌传null
+     * @param defaultTokenId 声明中没有令牌ID时使用的值
+     * @return 令牌声明
+     * @throws IllegalArgumentException 声明格式错误、缺少userId或过期时间时抛出
+     */
+    public static TokenClaims parse(byte[] payload, String keyId, String defaultTokenId) {
+        String userId = null;
+        String deviceType = null;
+        String tokenId = defaultTokenId;
+        long issuedAt = 0L;
+        long expiresAt = -1L;
+
+        int pos = 0;
+        int end = payload.length;
+        while (pos < end) {
+            int keyEnd = indexOf(payload, pos, end);
+            if (keyEnd < 0) {
+                throw new IllegalArgumentException("令牌声明格式错误");
+            }
+            int valueStart = keyEnd + 1;
+            int valueEnd = indexOf(payload, valueStart, end);
+            if (valueEnd < 0) {
+                valueEnd = end;
+            }
+            if (keyEquals(payload, pos, keyEnd, USER_ID_KEY)) {
+                userId = new String(payload, valueStart, valueEnd - valueStart, StandardCharsets.UTF_8);
+            } else if (keyEquals(payload, pos, keyEnd, DEVICE_TYPE_KEY)) {
+                deviceType = new String(payload, valueStart, valueEnd - valueStart, StandardCharsets.UTF_8);
+            } else if (keyEquals(payload, pos, keyEnd, ISSUED_AT_KEY)) {
+                issuedAt = parseLong(payload, valueStart, valueEnd);
+            } else if (keyEquals(payload, pos, keyEnd, EXPIRE_TIME_KEY)) {
+                expiresAt = parseLong(payload, valueStart, valueEnd);
+            } else if (keyEquals(payload, pos, keyEnd, TOKEN_ID_KEY)) {
+                tokenId = new String(payload, valueStart, valueEnd - valueStart, StandardCharsets.UTF_8);
+            }
+            pos = valueEnd + 1;
+        }
+
+        if (userId == null || userId.isEmpty() || expiresAt < 0 || tokenId == null) {
+            throw new IllegalArgumentException("令牌声明缺少必要字段");
+        }
+        return new TokenClaims(userId, deviceType, issuedAt, expiresAt, keyId, tokenId);
+    }
+
+    private static int indexOf(byte[] bytes, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (bytes[i] == SEPARATOR) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean keyEquals(byte[] bytes, int from, int to, byte[] key) {
+        if (to - from != key.length) {
+            return false;
+        }
+        for (int i = 0; i < key.length; i++) {
+            if (bytes[from + i] != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long parseLong(byte[] bytes, int from, int to) {
+        if (from >= to || to - from > 18) {
+            throw new IllegalArgumentException("令牌时间戳格式错误");
+        }
+        long value = 0L;
+        for (int i = from; i < to; i++) {
+            int digit = bytes[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw new IllegalArgumentException("令牌时间戳格式错误");
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+}
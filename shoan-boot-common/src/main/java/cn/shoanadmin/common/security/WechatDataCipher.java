@@ -0,0 +1,134 @@
+package cn.shoanadmin.common.security;
+
+import cn.shoanadmin.common.config.AppCacheConfig;
+import cn.shoanadmin.common.enums.BusinessCodeEnum;
+import cn.shoanadmin.common.exception.BusinessException;
+import cn.shoanadmin.common.util.ObjectPool;
+import com.alibaba.fastjson2.JSON;
+import com.alibaba.fastjson2.JSONException;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.GeneralSecurityException;
+import java.time.Duration;
+import java.util.Base64;
+
+/**
+ * 微信开放数据解密
+ * 算法为 AES-128-CBC，PKCS#7填充（分组长度16字节时与JCE的PKCS5Padding相同），密钥为会话密钥，三者均为Base64编码。
+ * Cipher通过对象池复用，按会话密钥缓存SecretKeySpec，同一会话密钥重复解密时JDK会复用已展开的AES轮密钥
+ *
+ * @author FruitPieces
+ * @since 2024-01-20
+ */
+@Slf4j
+@Component
+public class WechatDataCipher {
+
+    private static final String ALGORITHM = "AES";
+    private static final String TRANSFORMATION = "AES/CBC/PKCS5Padding";
+    private static final int KEY_LENGTH = 16;
+    private static final int BLOCK_SIZE = 16;
+
+    private static final Base64.Decoder DECODER = Base64.getDecoder();
+
+    private final ObjectPool<Cipher> cipherPool;
+    private final Cache<String, SecretKeySpec> keys;
+
+    public WechatDataCipher(AppCacheConfig cacheConfig) {
+        this.cipherPool = new ObjectPool<>(Runtime.getRuntime().availableProcessors() * 2, WechatDataCipher::createCipher);
+        this.keys = Caffeine.newBuilder()
+                .maximumSize(cacheConfig.getSessionKeyMaxSize())
+                .expireAfterAccess(Duration.ofSeconds(cacheConfig.getSessionKeyTtl()))
+                .build();
+    }
+
+    /**
+     * 解密并解析为指定类型
+     *
+     * @param sessionKey    会话密钥（Base64）
+     * @param encryptedData 加密数据（Base64）
+     * @param iv            初始向量（Base64）
+     * @param type          结果类型
+     * @return 解析后的对象
+     * @throws BusinessException 参数格式错误、会话密钥不匹配或数据格式错误时抛出
+     */
+    public <T> T decrypt(String sessionKey, String encryptedData, String iv, Class<T> type) {
+        byte[] plaintext = decrypt(sessionKey, encryptedData, iv);
+        try {
+            T result = JSON.parseObject(plaintext, type);
+            if (result == null) {
+                throw new BusinessException(BusinessCodeEnum.WECHAT_DECRYPT_FAILED, "解密数据为空");
+            }
+            return result;
+        } catch (JSONException e) {
+            log.warn("解析微信解密数据失败：{}", e.getMessage());
+            throw new BusinessException(BusinessCodeEnum.WECHAT_DECRYPT_FAILED, "解密数据格式错误");
+        }
+    }
+
+    /**
+     * 解密
+     *
+     * @param sessionKey    会话密钥（Base64）
+     * @param encryptedData 加密数据（Base64）
+     * @param iv            初始向量（Base64）
+     * @return 明文字节（UTF-8 JSON）
+     * @throws BusinessException 参数格式错误或会话密钥不匹配时抛出
+     */
+    public byte[] decrypt(String sessionKey, String encryptedData, String iv) {
+        if (!StringUtils.hasText(sessionKey) || !StringUtils.hasText(encryptedData) || !StringUtils.hasText(iv)) {
+            throw new BusinessException(BusinessCodeEnum.PARAM_ERROR);
+        }
+        SecretKeySpec key = keys.get(sessionKey, WechatDataCipher::createKey);
+        byte[] ivBytes = decodeBase64(iv);
+        byte[] data = decodeBase64(encryptedData);
+        if (ivBytes.length != BLOCK_SIZE || data.length == 0 || data.length % BLOCK_SIZE != 0) {
+            throw new BusinessException(BusinessCodeEnum.WECHAT_DECRYPT_FAILED, "加密数据或初始向量长度错误");
+        }
+
+        Cipher cipher = cipherPool.borrow();
+        byte[] plaintext;
+        try {
+            cipher.init(Cipher.DECRYPT_MODE, key, new IvParameterSpec(ivBytes));
+            plaintext = cipher.doFinal(data);
+        } catch (GeneralSecurityException e) {
+            // 填充错误通常是会话密钥已更新，客户端需重新登录后再提交
+            log.warn("微信数据解密失败：{}", e.getMessage());
+            throw new BusinessException(BusinessCodeEnum.WECHAT_DECRYPT_FAILED, "会话密钥与加密数据不匹配");
+        }
+        // 只归还成功完成的Cipher，异常后的状态不复用
+        cipherPool.release(cipher);
+        return plaintext;
+    }
+
+    private static SecretKeySpec createKey(String sessionKey) {
+        byte[] keyBytes = decodeBase64(sessionKey);
+        if (keyBytes.length != KEY_LENGTH) {
+            throw new BusinessException(BusinessCodeEnum.WECHAT_DECRYPT_FAILED, "会话密钥长度错误");
+        }
+        return new SecretKeySpec(keyBytes, ALGORITHM);
+    }
+
+    private static byte[] decodeBase64(String value) {
+        try {
+            return DECODER.decode(value);
+        } catch (IllegalArgumentException e) {
+            throw new BusinessException(BusinessCodeEnum.WECHAT_DECRYPT_FAILED, "Base64格式错误");
+        }
+    }
+
+    private static Cipher createCipher() {
+        try {
+            return Cipher.getInstance(TRANSFORMATION);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("初始化AES解密失败", e);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package cn.shoanadmin.common.util;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 自适应超时
+ * 在环形缓冲区中保留最近的调用耗时，每记录一定次数后按P99乘以系数重新计算超时，并限制在[最小值, 最大值]之间
+ * 样本不足时使用最大值，记录与读取都是无锁的
+ *
+ * @author FruitPieces
+ * @since 2024-01-20
+ */
+public final class AdaptiveTimeout {
+
+    private static final double PERCENTILE = 0.99;
+
+    private final AtomicLongArray samples;
+    private final AtomicLong recorded = new AtomicLong();
+    private final long minMillis;
+    private final long maxMillis;
+    private final double multiplier;
+    private final int minSamples;
+    private final int recalculateEvery;
+
+    private volatile long currentMillis;
+    private volatile long percentileMillis;
+
+    /**
+     * @param windowSize       参与计算的最近样本数
+     * @param minSamples       开始自适应前需要的最少样本数
+     * @param recalculateEvery 每记录多少次重新计算一次
+     * @param multiplier       超时相对P99的倍数
+     * @param minMillis        超时下限（毫秒）
+     * @param maxMillis        超时上限（毫秒）
+     */
+    public AdaptiveTimeout(int windowSize, int minSamples, int recalculateEvery, double multiplier,
+                           long minMillis, long maxMillis) {
+        if (windowSize <= 0 || recalculateEvery <= 0 || minMillis <= 0 || maxMillis < minMillis) {
+            throw new IllegalArgumentException("自适应超时参数错误");
+        }
+        this.samples = new AtomicLongArray(windowSize);
+        this.minSamples = Math.min(minSamples, windowSize);
+        this.recalculateEvery = recalculateEvery;
+        this.multiplier = multiplier;
+        this.minMillis = minMillis;
+        this.maxMillis = maxMillis;
+        this.currentMillis = maxMillis;
+    }
+
+    /**
+     * 记录一次调用耗时，超时或失败的调用也应记录，使超时能随依赖变慢而放宽
+     *
+     * @param elapsedMillis 耗时（毫秒）
+     */
+    public void record(long elapsedMillis) {
+        long index = recorded.getAndIncrement();
+        samples.set((int) (index % samples.length()), elapsedMillis);
+        if ((index + 1) % recalculateEvery == 0) {
+            recalculate(index + 1);
+        }
+    }
+
+    /**
+     * 当前超时时间
+     *
+     * @return 超时（毫秒）
+     */
+    public long currentMillis() {
+        return currentMillis;
+    }
+
+    /**
+     * 最近一次计算得到的P99耗时，样本不足时为0
+     *
+     * @return P99（毫秒）
+     */
+    public long percentileMillis() {
+        return percentileMillis;
+    }
+
+    private void recalculate(long total) {
+        int size = (int) Math.min(total, samples.length());
+        if (size < minSamples) {
+            return;
+        }
+        long[] window = new long[size];
+        for (int i = 0; i < size; i++) {
+            window[i] = samples.get(i);
+        }
+        Arrays.sort(window);
+        long p99 = window[Math.max(0, (int) Math.ceil(size * PERCENTILE) - 1)];
+        percentileMillis = p99;
+        currentMillis = Math.max(minMillis, Math.min(maxMillis, Math.round(p99 * multiplier)));
+    }
+}
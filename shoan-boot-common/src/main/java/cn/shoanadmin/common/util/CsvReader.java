@@ -0,0 +1,130 @@
+package cn.shoanadmin.common.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 流式CSV读取器（RFC 4180）
+ * 字段以逗号分隔，记录以 \n 或 \r\n 分隔；双引号包裹的字段可包含逗号、换行，字段内的双引号写作两个双引号。
+ * 逐条读取，内存占用只与单条记录的长度有关；忽略文件开头的UTF-8 BOM
+ *
+ * @author FruitPieces
+ * @since 2024-01-20
+ */
+public final class CsvReader implements Closeable {
+
+    private static final char SEPARATOR = ',';
+    private static final char QUOTE = '"';
+    private static final char BOM = '\uFEFF';
+
+    private final Reader reader;
+    private final char[] buffer = new char[8192];
+    private final StringBuilder field = new StringBuilder(64);
+    private int position;
+    private int limit;
+    private long lineNumber;
+    private boolean started;
+
+    public CsvReader(Reader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * 读取下一条记录
+     *
+     * @return 字段列表，文件结束返回null；空行返回只含一个空字符串的列表
+     * @throws IOException 读取失败或引号未闭合时抛出
+     */
+    public List<String> readRecord() throws IOException {
+        int c = read();
+        if (c < 0) {
+            return null;
+        }
+        if (!started) {
+            started = true;
+            if (c == BOM) {
+                c = read();
+                if (c < 0) {
+                    return null;
+                }
+            }
+        }
+        lineNumber++;
+        long startLine = lineNumber;
+        List<String> record = new ArrayList<>();
+        field.setLength(0);
+        boolean quoted = false;
+        boolean afterQuote = false;
+        while (true) {
+            if (quoted) {
+                if (c < 0) {
+                    throw new IOException("第" + startLine + "行起的记录引号未闭合");
+                }
+                if (c == QUOTE) {
+                    int next = read();
+                    if (next == QUOTE) {
+                        field.append(QUOTE);
+                    } else {
+                        quoted = false;
+                        afterQuote = true;
+                        c = next;
+                        continue;
+                    }
+                } else {
+                    if (c == '\n') {
+                        lineNumber++;
+                    }
+                    field.append((char) c);
+                }
+            } else if (c < 0 || c == '\n') {
+                record.add(field.toString());
+                return record;
+            } else if (c == '\r') {
+                int next = read();
+                if (next != '\n' && next >= 0) {
+                    position--;
+                }
+                record.add(field.toString());
+                return record;
+            } else if (c == SEPARATOR) {
+                record.add(field.toString());
+                field.setLength(0);
+                afterQuote = false;
+            } else if (c == QUOTE && field.isEmpty() && !afterQuote) {
+                quoted = true;
+            } else {
+                field.append((char) c);
+            }
+            c = read();
+        }
+    }
+
+    /**
+     * 最近一条记录结束处的行号（从1开始），记录包含换行时大于记录的起始行号
+     *
+     * @return 行号
+     */
+    public long getLineNumber() {
+        return lineNumber;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    private int read() throws IOException {
+        if (position == limit) {
+            limit = reader.read(buffer, 0, buffer.length);
+            position = 0;
+            if (limit <= 0) {
+                limit = 0;
+                return -1;
+            }
+        }
+        return buffer[position++];
+    }
+}
@@ -0,0 +1,71 @@
+package cn.shoanadmin.common.util;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * 流式CSV写入器（RFC 4180），与 {@link CsvReader} 的格式对应
+ * 字段含逗号、双引号或换行时用双引号包裹，字段内的双引号写作两个双引号；null写作空字段，记录以 \r\n 结尾。
+ * 不做缓冲，需要时由调用方传入BufferedWriter
+ *
+ * @author FruitPieces
+ * @since 2024-01-20
+ */
+public final class CsvWriter {
+
+    private static final char SEPARATOR = ',';
+    private static final char QUOTE = '"';
+    private static final String LINE_END = "\r\n";
+
+    private final Writer writer;
+
+    public CsvWriter(Writer writer) {
+        this.writer = writer;
+    }
+
+    /**
+     * 写入一条记录
+     *
+     * @param fields 字段，null写作空字段
+     * @throws IOException 写入失败时抛出
+     */
+    public void writeRecord(Object... fields) throws IOException {
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) {
+                writer.write(SEPARATOR);
+            }
+            if (fields[i] != null) {
+                writeField(fields[i].toString());
+            }
+        }
+        writer.write(LINE_END);
+    }
+
+    private void writeField(String value) throws IOException {
+        if (!needsQuote(value)) {
+            writer.write(value);
+            return;
+        }
+        writer.write(QUOTE);
+        int start = 0;
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) == QUOTE) {
+                writer.write(value, start, i + 1 - start);
+                writer.write(QUOTE);
+                start = i + 1;
+            }
+        }
+        writer.write(value, start, value.length() - start);
+        writer.write(QUOTE);
+    }
+
+    private static boolean needsQuote(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == SEPARATOR || c == QUOTE || c == '\n' || c == '\r') {
+                return true;
+            }
+        }
+        return false;
+    }
+}
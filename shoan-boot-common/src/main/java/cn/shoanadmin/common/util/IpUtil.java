@@ -2,40 +2,20 @@ package cn.shoanadmin.common.util;
 
 import jakarta.servlet.http.HttpServletRequest;
 import lombok.experimental.UtilityClass;
-import org.springframework.util.StringUtils;
 
 @UtilityClass
 public class IpUtil {
 
     /**
      * 获取客户端真实IP地址
+     * X-Forwarded-For 等请求头由客户端任意填写，这里不直接读取；
+     * 经过反向代理时由容器按 server.forward-headers-strategy=native 启用的 RemoteIpValve 从最后一跳向前解析，
+     * 只跳过 server.tomcat.remoteip.internal-proxies 中可信的代理，解析结果写回 remoteAddr
      *
      * @param request HTTP请求
      * @return 客户端IP地址
      */
     public String getClientIp(HttpServletRequest request) {
-        String ip = request.getHeader("X-Forwarded-For");
-        if (!StringUtils.hasText(ip) || "unknown".equalsIgnoreCase(ip)) {
-            ip = request.getHeader("Proxy-Client-IP");
-        }
-        if (!StringUtils.hasText(ip) || "unknown".equalsIgnoreCase(ip)) {
-            ip = request.getHeader("WL-Proxy-Client-IP");
-        }
-        if (!StringUtils.hasText(ip) || "unknown".equalsIgnoreCase(ip)) {
-            ip = request.getHeader("HTTP_CLIENT_IP");
-        }
-        if (!StringUtils.hasText(ip) || "unknown".equalsIgnoreCase(ip)) {
-            ip = request.getHeader("HTTP_X_FORWARDED_FOR");
-        }
-        if (!StringUtils.hasText(ip) || "unknown".equalsIgnoreCase(ip)) {
-            ip = request.getRemoteAddr();
-        }
-
-        // 处理多个IP的情况，取第一个IP
-        if (StringUtils.hasText(ip) && ip.contains(",")) {
-            ip = ip.split(",")[0].trim();
-        }
-
-        return ip;
+        return request.getRemoteAddr();
     }
 }
@@ -0,0 +1,74 @@
+package cn.shoanadmin.common.util;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Supplier;
+
+/**
+ * 无锁有界对象池
+ * 用于复用创建成本高、非线程安全的对象（如Mac、Cipher）
+ * 与ThreadLocal缓存不同，对象数量不随线程数增长，适合每个请求一个虚拟线程的场景；
+ * 池为空时直接新建，池已满时归还的对象被丢弃，借出与归还都不会阻塞
+ *
+ * @author FruitPieces
+ * @since 2024-01-20
+ */
+public final class ObjectPool<T> {
+
+    private final AtomicReferenceArray<T> slots;
+    private final Supplier<T> factory;
+
+    /**
+     * @param capacity 池中最多保留的对象数量
+     * @param factory  对象创建函数
+     */
+    public ObjectPool(int capacity, Supplier<T> factory) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("对象池容量必须大于0: " + capacity);
+        }
+        this.slots = new AtomicReferenceArray<>(capacity);
+        this.factory = factory;
+    }
+
+    /**
+     * 借出对象，用完后需调用 {@link #release} 归还
+     *
+     * @return 池中对象，池为空时返回新建对象
+     */
+    public T borrow() {
+        int length = slots.length();
+        int start = probe(length);
+        for (int i = 0; i < length; i++) {
+            int index = (start + i) % length;
+            if (slots.getPlain(index) != null) {
+                T object = slots.getAndSet(index, null);
+                if (object != null) {
+                    return object;
+                }
+            }
+        }
+        return factory.get();
+    }
+
+    /**
+     * 归还对象，调用方需保证对象已恢复到可复用状态
+     *
+     * @param object 对象
+     */
+    public void release(T object) {
+        int length = slots.length();
+        int start = probe(length);
+        for (int i = 0; i < length; i++) {
+            int index = (start + i) % length;
+            if (slots.getPlain(index) == null && slots.compareAndSet(index, null, object)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 按线程分散起始位置，减少并发借还时在同一槽位上的竞争
+     */
+    private static int probe(int length) {
+        return (int) (Thread.currentThread().threadId() % length);
+    }
+}
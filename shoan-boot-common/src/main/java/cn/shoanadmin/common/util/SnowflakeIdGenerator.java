@@ -0,0 +1,112 @@
+package cn.shoanadmin.common.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 64位时间有序ID生成器（Snowflake）
+ * 结构：1位符号（恒为0）| 41位毫秒时间戳（相对 {@link #EPOCH}，约69年）| 10位工作节点ID | 12位序列号
+ * 时间戳与序列号合并保存在一个AtomicLong中，通过CAS推进，不加锁；
+ * 同一毫秒内序列号用尽时等待下一毫秒（单节点每毫秒最多4096个），时钟回拨不超过 maxBackwardMillis 时沿用上次的时间继续递增，
+ * 因此生成的ID在单个节点内严格递增，工作节点ID不同的节点之间不会重复
+ *
+ * @author FruitPieces
+ * @since 2024-01-20
+ */
+public final class SnowflakeIdGenerator {
+
+    /**
+     * 起始时间：2024-01-01T00:00:00Z
+     */
+    public static final long EPOCH = 1704067200000L;
+
+    public static final int WORKER_ID_BITS = 10;
+    public static final int SEQUENCE_BITS = 12;
+    public static final long MAX_WORKER_ID = (1L << WORKER_ID_BITS) - 1;
+
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+    private static final int TIMESTAMP_SHIFT = WORKER_ID_BITS + SEQUENCE_BITS;
+
+    private final long workerId;
+    private final long maxBackwardMillis;
+
+    /**
+     * 上次生成的 时间戳 << SEQUENCE_BITS | 序列号
+     */
+    private final AtomicLong lastState;
+
+    /**
+     * @param workerId          工作节点ID，取值 0 ~ {@link #MAX_WORKER_ID}
+     * @param maxBackwardMillis 可容忍的时钟回拨（毫秒），超出后拒绝生成
+     */
+    public SnowflakeIdGenerator(long workerId, long maxBackwardMillis) {
+        if (workerId < 0 || workerId > MAX_WORKER_ID) {
+            throw new IllegalArgumentException("工作节点ID超出范围[0, " + MAX_WORKER_ID + "]: " + workerId);
+        }
+        this.workerId = workerId;
+        this.maxBackwardMillis = maxBackwardMillis;
+        this.lastState = new AtomicLong(currentTimestamp() << SEQUENCE_BITS);
+    }
+
+    public long getWorkerId() {
+        return workerId;
+    }
+
+    /**
+     * 生成下一个ID
+     *
+     * @return ID，恒为正数
+     * @throws IllegalStateException 时钟回拨超过 maxBackwardMillis 时抛出
+     */
+    public long nextId() {
+        while (true) {
+            long now = currentTimestamp();
+            long last = lastState.get();
+            long lastTimestamp = last >>> SEQUENCE_BITS;
+            long next;
+            if (now > lastTimestamp) {
+                next = now << SEQUENCE_BITS;
+            } else {
+                // 时钟回拨期间沿用上次的时间继续递增；回拨过多时拒绝生成，避免节点重启后从较早的时间重新开始而产生重复ID
+                if (lastTimestamp - now > maxBackwardMillis) {
+                    throw new IllegalStateException("时钟回拨" + (lastTimestamp - now) + "ms，超过允许的"
+                            + maxBackwardMillis + "ms，拒绝生成ID");
+                }
+                // 当前毫秒的序列号已用尽，等待下一毫秒；回拨期间序列号溢出时进位到下一毫秒
+                if (now == lastTimestamp && (last & SEQUENCE_MASK) == SEQUENCE_MASK) {
+                    Thread.onSpinWait();
+                    continue;
+                }
+                next = last + 1;
+            }
+            if (lastState.compareAndSet(last, next)) {
+                return (next >>> SEQUENCE_BITS) << TIMESTAMP_SHIFT
+                        | workerId << SEQUENCE_BITS
+                        | (next & SEQUENCE_MASK);
+            }
+        }
+    }
+
+    /**
+     * 提取ID中的生成时间
+     *
+     * @param id ID
+     * @return 毫秒时间戳
+     */
+    public static long timestampOf(long id) {
+        return (id >>> TIMESTAMP_SHIFT) + EPOCH;
+    }
+
+    /**
+     * 提取ID中的工作节点ID
+     *
+     * @param id ID
+     * @return 工作节点ID
+     */
+    public static long workerIdOf(long id) {
+        return (id >>> SEQUENCE_BITS) & MAX_WORKER_ID;
+    }
+
+    private static long currentTimestamp() {
+        return System.currentTimeMillis() - EPOCH;
+    }
+}
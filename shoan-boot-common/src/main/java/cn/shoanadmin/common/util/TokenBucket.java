@@ -0,0 +1,51 @@
+package cn.shoanadmin.common.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 无锁令牌桶
+ * 以GCRA（通用信元速率算法）实现，只保存一个“理论到达时间”，取令牌时用CAS推进，不加锁也不需要后台补充线程；
+ * 桶满时可连续取出 capacity 个令牌，之后按 permitsPerSecond 的速率恢复
+ *
+ * @author FruitPieces
+ * @since 2024-01-20
+ */
+public final class TokenBucket {
+
+    private final long intervalNanos;
+    private final long capacityNanos;
+    private final AtomicLong theoreticalArrival;
+
+    /**
+     * @param permitsPerSecond 每秒恢复的令牌数
+     * @param capacity         桶容量，即允许的突发请求数
+     */
+    public TokenBucket(double permitsPerSecond, int capacity) {
+        if (permitsPerSecond <= 0 || capacity <= 0) {
+            throw new IllegalArgumentException("令牌桶速率与容量必须大于0: rate=" + permitsPerSecond + ", capacity=" + capacity);
+        }
+        this.intervalNanos = Math.max(1L, (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond));
+        this.capacityNanos = intervalNanos * capacity;
+        this.theoreticalArrival = new AtomicLong(System.nanoTime());
+    }
+
+    /**
+     * 尝试取一个令牌
+     *
+     * @return true-取到令牌，false-令牌不足
+     */
+    public boolean tryAcquire() {
+        long now = System.nanoTime();
+        while (true) {
+            long arrival = theoreticalArrival.get();
+            long next = (arrival - now > 0 ? arrival : now) + intervalNanos;
+            if (next - now > capacityNanos) {
+                return false;
+            }
+            if (theoreticalArrival.compareAndSet(arrival, next)) {
+                return true;
+            }
+        }
+    }
+}
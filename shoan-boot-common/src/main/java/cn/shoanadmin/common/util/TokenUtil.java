@@ -1,16 +1,18 @@
 package cn.shoanadmin.common.util;
 
 import cn.shoanadmin.common.constant.ComStrConstant;
+import cn.shoanadmin.common.security.TokenClaims;
 import lombok.experimental.UtilityClass;
 import lombok.extern.slf4j.Slf4j;
 
+import java.util.Base64;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Objects;
 
 /**
  * JWT工具类
- * 用于生成、验证和解析JWT令牌
+ * 用于生成、验证和解析旧版未签名令牌，新令牌请使用 {@link cn.shoanadmin.common.security.AccessTokenService}
  * 
  * @author FruitPieces
  * @since 2024-01-20
@@ -19,29 +21,41 @@ import java.util.Objects;
 @UtilityClass
 public class TokenUtil {
 
-    /**
-     * 7天的毫秒数
-     */
-    private static final String TOKEN_EXPIRE_TIME = "expires_in";
-    private static final String USER_ID_CLAIM = "userId";
-    private static final String DEVICE_TYPE_CLAIM = "deviceType";
-
     /**
      * 生成token令牌
      * 
      * @param userId 用户ID
      * @return JWT令牌
+     * @deprecated 令牌未签名可被伪造，请使用 {@link cn.shoanadmin.common.security.AccessTokenService#generateToken}
      */
+    @Deprecated
     public String generateToken(String userId, String deviceType) {
         Map<String, String> claims = new LinkedHashMap<>();
-        claims.put(USER_ID_CLAIM, userId);
-        claims.put(DEVICE_TYPE_CLAIM, deviceType);
-        claims.put(TOKEN_EXPIRE_TIME, String.valueOf(TimestampUtil.getCurrentTimestampAfterSevenDays()));
+        claims.put(TokenClaims.USER_ID_CLAIM, userId);
+        claims.put(TokenClaims.DEVICE_TYPE_CLAIM, deviceType);
+        claims.put(TokenClaims.EXPIRE_TIME_CLAIM, String.valueOf(TimestampUtil.getCurrentTimestampAfterSevenDays()));
         String str = MapUtil.mapToStringSeparated(claims, ComStrConstant.colon);
-        log.debug("generateToken claims: {}", JsonUtil.toJsonString(str));
+        log.debug("generateToken claims: {}", str);
         return Base64Util.encode(str);
     }
 
+    /**
+     * 解析令牌声明，令牌只解码一次
+     *
+     * @param token JWT令牌
+     * @return 令牌声明，令牌格式错误返回null
+     */
+    public TokenClaims parseClaims(String token) {
+        if (token == null || token.isEmpty()) {
+            return null;
+        }
+        try {
+            return TokenClaims.parse(Base64.getDecoder().decode(token), null, token);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
     /**
      * 从令牌中获取用户ID
      * 
@@ -49,9 +63,8 @@ public class TokenUtil {
      * @return 用户ID
      */
     public String getUserIdFromToken(String token) {
-        String decodeStr = Base64Util.decode(token);
-        Map<String, String> resultMap = MapUtil.stringToMapSeparated(decodeStr, ComStrConstant.colon);
-        return resultMap.get(USER_ID_CLAIM);
+        TokenClaims claims = parseClaims(token);
+        return claims == null ? null : claims.getUserId();
     }
 
     /**
@@ -61,9 +74,8 @@ public class TokenUtil {
      * @return 设备类型
      */
     public String getDeviceTypeFromToken(String token) {
-        String decodeStr = Base64Util.decode(token);
-        Map<String, String> resultMap = MapUtil.stringToMapSeparated(decodeStr, ComStrConstant.colon);
-        return resultMap.get(DEVICE_TYPE_CLAIM);
+        TokenClaims claims = parseClaims(token);
+        return claims == null ? null : claims.getDeviceType();
     }
 
     /**
@@ -73,10 +85,11 @@ public class TokenUtil {
      * @return 过期时间
      */
     public long getExpirationFromToken(String token) {
-        String decodeStr = Base64Util.decode(token);
-        Map<String, String> resultMap = MapUtil.stringToMapSeparated(decodeStr, ComStrConstant.colon);
-        String expireTime = resultMap.get(TOKEN_EXPIRE_TIME);
-        return Long.parseLong(expireTime);
+        TokenClaims claims = parseClaims(token);
+        if (claims == null) {
+            throw new IllegalArgumentException("无效的令牌");
+        }
+        return claims.getExpiresAt();
     }
 
     /**
@@ -86,14 +99,14 @@ public class TokenUtil {
      * @return true-有效，false-无效
      */
     public boolean validateToken(String token, String userId, String deviceType) {
-        long expirationFromToken = getExpirationFromToken(token);
-        if (expirationFromToken < System.currentTimeMillis()) {
+        TokenClaims claims = parseClaims(token);
+        if (claims == null || claims.isExpired(System.currentTimeMillis())) {
             return false;
         }
-        if (Objects.equals(userId, getUserIdFromToken(token))) {
+        if (Objects.equals(userId, claims.getUserId())) {
             return true;
         }
-        if (Objects.equals(deviceType, getDeviceTypeFromToken(token))) {
+        if (Objects.equals(deviceType, claims.getDeviceType())) {
             return true;
         }
         return false;
@@ -110,4 +123,4 @@ public class TokenUtil {
         return false;
     }
 
-}
\ No newline at end of file
+}
@@ -3,14 +3,20 @@ package cn.shoanadmin.common.util;
 import lombok.experimental.UtilityClass;
 import lombok.extern.slf4j.Slf4j;
 
+import java.nio.charset.StandardCharsets;
 import java.security.SecureRandom;
 import java.time.Instant;
+import java.util.Arrays;
 import java.util.function.Predicate;
+import java.util.zip.CRC32;
 
 /**
  * 用户ID生成器
- * 生成规则：FP{当前时间戳前4位}{随机数4位}
- * 示例：FP17351234 (时间戳前4位：1735，随机数：1234)
+ * 当前规则：FP{64位ID的13位Crockford Base32编码}{2位分片桶}，示例：FP0C5T3K1W9R0003F，
+ * 编码定长且字母表按ASCII升序，字符串顺序与生成时间顺序一致；ID由 {@link SnowflakeIdGenerator} 生成。
+ * 分片桶由openid散列得到（{@link #shardBucket}），按用户ID访问时无需查询即可定位分片
+ * 不带分片桶的规则：FP{13位Crockford Base32}，示例：FP0C5T3K1W9R000，已存在的ID继续有效
+ * 旧规则：FP{当前时间戳前4位}{随机数4位}，示例：FP17351234，已存在的旧ID继续有效
  * 
  * @author FruitPieces
  * @since 2024-01-20
@@ -23,10 +29,115 @@ public class UidGenerator {
     private static final SecureRandom RANDOM = new SecureRandom();
 
     /**
-     * 生成唯一用户ID
+     * 分片桶数，用户按openid散列到固定数量的桶，桶再由路由表映射到物理分片；已写入用户ID，不能修改
+     */
+    public static final int SHARD_BUCKETS = 1024;
+
+    private static final int LEGACY_LENGTH = 10;
+    private static final int ENCODED_LENGTH = 13;
+    private static final int BUCKET_LENGTH = 2;
+    private static final char[] CROCKFORD_ALPHABET = "0123456789ABCDEFGHJKMNPQRSTVWXYZ".toCharArray();
+    private static final byte[] CROCKFORD_VALUES = new byte[128];
+
+    static {
+        Arrays.fill(CROCKFORD_VALUES, (byte) -1);
+        for (int i = 0; i < CROCKFORD_ALPHABET.length; i++) {
+            CROCKFORD_VALUES[CROCKFORD_ALPHABET[i]] = (byte) i;
+        }
+    }
+
+    /**
+     * 把Snowflake ID编码为不带分片桶的用户ID
+     *
+     * @param id 非负的64位ID
+     * @return 用户ID，格式：FP{13位Crockford Base32}
+     */
+    public String formatUserId(long id) {
+        char[] chars = new char[PREFIX.length() + ENCODED_LENGTH];
+        encode(chars, id);
+        return new String(chars);
+    }
+
+    /**
+     * 把Snowflake ID与分片桶编码为用户ID
+     *
+     * @param id     非负的64位ID
+     * @param bucket 分片桶，取值 [0, {@link #SHARD_BUCKETS})
+     * @return 用户ID，格式：FP{13位Crockford Base32}{2位分片桶}
+     */
+    public String formatUserId(long id, int bucket) {
+        if (bucket < 0 || bucket >= SHARD_BUCKETS) {
+            throw new IllegalArgumentException("分片桶超出范围: " + bucket);
+        }
+        char[] chars = new char[PREFIX.length() + ENCODED_LENGTH + BUCKET_LENGTH];
+        encode(chars, id);
+        chars[chars.length - 2] = CROCKFORD_ALPHABET[bucket >>> 5];
+        chars[chars.length - 1] = CROCKFORD_ALPHABET[bucket & 31];
+        return new String(chars);
+    }
+
+    /**
+     * 把新格式的用户ID解码为Snowflake ID，带分片桶与不带分片桶的格式均可
+     *
+     * @param userId 用户ID
+     * @return 64位ID，不是新格式时返回-1
+     */
+    public long parseUserId(String userId) {
+        if (userId == null || !userId.startsWith(PREFIX) || (userId.length() != PREFIX.length() + ENCODED_LENGTH
+                && userId.length() != PREFIX.length() + ENCODED_LENGTH + BUCKET_LENGTH)) {
+            return -1L;
+        }
+        if (userId.length() > PREFIX.length() + ENCODED_LENGTH && parseShardBucket(userId) < 0) {
+            return -1L;
+        }
+        // 13位Base32共65位，首位只能是0~7才能落在非负long范围内
+        long value = 0L;
+        for (int i = PREFIX.length(); i < PREFIX.length() + ENCODED_LENGTH; i++) {
+            int digit = digit(userId.charAt(i));
+            if (digit < 0 || (i == PREFIX.length() && digit > 7)) {
+                return -1L;
+            }
+            value = value << 5 | digit;
+        }
+        return value;
+    }
+
+    /**
+     * 从用户ID中取出分片桶
+     *
+     * @param userId 用户ID
+     * @return 分片桶，ID不带分片桶（旧规则或不带分片桶的规则）时返回-1
+     */
+    public int parseShardBucket(String userId) {
+        if (userId == null || userId.length() != PREFIX.length() + ENCODED_LENGTH + BUCKET_LENGTH
+                || !userId.startsWith(PREFIX)) {
+            return -1;
+        }
+        int high = digit(userId.charAt(userId.length() - 2));
+        int low = digit(userId.charAt(userId.length() - 1));
+        return high < 0 || low < 0 ? -1 : high << 5 | low;
+    }
+
+    /**
+     * 计算openid所属的分片桶
+     * 取openid的UTF-8字节的CRC32对桶数取模，与MySQL中 CRC32(openid) % 1024 的结果一致，迁移分片时可直接在SQL中按桶筛选
+     *
+     * @param openid 微信openid
+     * @return 分片桶，取值 [0, {@link #SHARD_BUCKETS})
+     */
+    public int shardBucket(String openid) {
+        CRC32 crc = new CRC32();
+        crc.update(openid.getBytes(StandardCharsets.UTF_8));
+        return (int) (crc.getValue() % SHARD_BUCKETS);
+    }
+
+    /**
+     * 生成旧格式用户ID
      * 
      * @return 用户ID，格式：FP{时间戳前4位}{随机数4位}
+     * @deprecated 约3年只有1万个可用ID，极易冲突，请使用 {@link SnowflakeIdGenerator} 配合 {@link #formatUserId}
      */
+    @Deprecated
     public String generateUserId() {
         // 获取当前时间戳的前4位
         long timestamp = Instant.now().getEpochSecond();
@@ -52,7 +163,9 @@ public class UidGenerator {
      * @param existsChecker ID存在性检查器
      * @param maxRetries 最大重试次数
      * @return 唯一的用户ID
+     * @deprecated 每次重试都要查询数据库，请使用 {@link SnowflakeIdGenerator} 配合 {@link #formatUserId}
      */
+    @Deprecated
     public String generateUniqueUserId(Predicate<String> existsChecker, int maxRetries) {
         String userId;
         int retries = 0;
@@ -74,19 +187,31 @@ public class UidGenerator {
      * 
      * @param existsChecker ID存在性检查器
      * @return 唯一的用户ID
+     * @deprecated 请使用 {@link SnowflakeIdGenerator} 配合 {@link #formatUserId}
      */
+    @Deprecated
     public String generateUniqueUserId(Predicate<String> existsChecker) {
         return generateUniqueUserId(existsChecker, 3);
     }
 
     /**
-     * 验证用户ID格式是否正确
+     * 验证用户ID格式是否正确，新旧两种格式均可
      * 
      * @param userId 用户ID
      * @return true-格式正确，false-格式错误
      */
     public boolean isValidUserId(String userId) {
-        if (userId == null || userId.length() != 10) {
+        return isLegacyUserId(userId) || parseUserId(userId) >= 0;
+    }
+
+    /**
+     * 是否为旧格式用户ID：FP{8位数字}
+     * 
+     * @param userId 用户ID
+     * @return true-旧格式，false-不是旧格式
+     */
+    public boolean isLegacyUserId(String userId) {
+        if (userId == null || userId.length() != LEGACY_LENGTH) {
             return false;
         }
         
@@ -104,28 +229,45 @@ public class UidGenerator {
     }
 
     /**
-     * 从用户ID中提取时间戳部分
+     * 从旧格式用户ID中提取时间戳部分
      * 
      * @param userId 用户ID
      * @return 时间戳部分（4位数字）
      */
     public String extractTimestampPart(String userId) {
-        if (!isValidUserId(userId)) {
+        if (!isLegacyUserId(userId)) {
             throw new IllegalArgumentException("无效的用户ID格式: " + userId);
         }
         return userId.substring(2, 6);
     }
 
     /**
-     * 从用户ID中提取随机数部分
+     * 从旧格式用户ID中提取随机数部分
      * 
      * @param userId 用户ID
      * @return 随机数部分（4位数字）
      */
     public String extractRandomPart(String userId) {
-        if (!isValidUserId(userId)) {
+        if (!isLegacyUserId(userId)) {
             throw new IllegalArgumentException("无效的用户ID格式: " + userId);
         }
         return userId.substring(6, 10);
     }
+
+    private void encode(char[] chars, long id) {
+        if (id < 0) {
+            throw new IllegalArgumentException("ID不能为负数: " + id);
+        }
+        chars[0] = 'F';
+        chars[1] = 'P';
+        long value = id;
+        for (int i = PREFIX.length() + ENCODED_LENGTH - 1; i >= PREFIX.length(); i--) {
+            chars[i] = CROCKFORD_ALPHABET[(int) (value & 31)];
+            value >>>= 5;
+        }
+    }
+
+    private int digit(char c) {
+        return c < 128 ? CROCKFORD_VALUES[c] : -1;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,73 @@
+package cn.shoanadmin.domain.dto;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.Callable;
+
+/**
+ * 基于 ScopedValue 的上下文存储
+ * ScopedValue 在 Java 21 中仍是预览API，这里通过 MethodHandle 调用，避免整个工程必须以 --enable-preview 编译；
+ * 仅在 {@link UserContext#enableScopedValue()} 之后才会加载本类
+ *
+ * @author FruitPieces
+ * @since 2024-01-20
+ */
+final class ScopedContextSupport {
+
+    private static final MethodHandle WHERE;
+    private static final MethodHandle CALL;
+    private static final MethodHandle OR_ELSE;
+    private static final Object SCOPED_VALUE;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            Class<?> scopedValueClass = Class.forName("java.lang.ScopedValue");
+            Class<?> carrierClass = Class.forName("java.lang.ScopedValue$Carrier");
+            SCOPED_VALUE = lookup.findStatic(scopedValueClass, "newInstance", MethodType.methodType(scopedValueClass)).invoke();
+            WHERE = lookup.findStatic(scopedValueClass, "where",
+                    MethodType.methodType(carrierClass, scopedValueClass, Object.class));
+            CALL = lookup.findVirtual(carrierClass, "call", MethodType.methodType(Object.class, Callable.class));
+            OR_ELSE = lookup.findVirtual(scopedValueClass, "orElse", MethodType.methodType(Object.class, Object.class));
+        } catch (Throwable e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private ScopedContextSupport() {
+    }
+
+    /**
+     * 获取当前作用域绑定的上下文
+     *
+     * @return 上下文，不在作用域内时返回null
+     */
+    static Object current() {
+        try {
+            return OR_ELSE.invoke(SCOPED_VALUE, (Object) null);
+        } catch (Throwable e) {
+            throw new IllegalStateException("读取ScopedValue失败", e);
+        }
+    }
+
+    /**
+     * 绑定上下文并执行任务，任务结束后绑定自动解除
+     *
+     * @param context 上下文
+     * @param task    任务
+     * @return 任务结果
+     * @throws Exception 任务抛出的异常
+     */
+    @SuppressWarnings("unchecked")
+    static <T> T call(Object context, Callable<T> task) throws Exception {
+        try {
+            Object carrier = WHERE.invoke(SCOPED_VALUE, context);
+            return (T) CALL.invoke(carrier, task);
+        } catch (Exception | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
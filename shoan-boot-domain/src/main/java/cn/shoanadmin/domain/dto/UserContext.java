@@ -1,33 +1,106 @@
 package cn.shoanadmin.domain.dto;
 
-
-import cn.shoanadmin.domain.entity.WechatUser;
+import java.util.concurrent.Callable;
+import java.util.function.Function;
 
 /**
  * 用户上下文
- * 管理当前登录用户信息，使用ThreadLocal确保线程安全
+ * 管理当前登录用户信息，默认使用ThreadLocal确保线程安全
+ * 认证时只保存令牌中的用户ID，用户资料在首次调用 {@link #getCurrentUser()} 时才加载，且每个请求最多加载一次；
+ * 上下文中只保存 {@link UserProfileView}，需要完整用户时由业务代码按用户ID另行查询
+ * 启用 {@link #enableScopedValue()} 后，{@link #callInScope} 内的代码改用ScopedValue绑定的上下文，
+ * 作用域结束即失效，不依赖请求结束时的清理；作用域外仍回退到ThreadLocal
  */
 public class UserContext {
 
-    private static final ThreadLocal<WechatUser> USER_HOLDER = new ThreadLocal<>();
-    private static final ThreadLocal<String> TOKEN_HOLDER = new ThreadLocal<>();
+    private static final ThreadLocal<Holder> CONTEXT_HOLDER = new ThreadLocal<>();
+
+    private static volatile boolean scopedValueEnabled;
+
+    /**
+     * 启用ScopedValue上下文
+     *
+     * @return true-启用成功，false-当前JDK不支持ScopedValue，继续使用ThreadLocal
+     */
+    public static synchronized boolean enableScopedValue() {
+        if (!scopedValueEnabled) {
+            try {
+                ScopedContextSupport.current();
+                scopedValueEnabled = true;
+            } catch (LinkageError | RuntimeException e) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 是否已启用ScopedValue上下文
+     *
+     * @return true-已启用，false-使用ThreadLocal
+     */
+    public static boolean isScopedValueEnabled() {
+        return scopedValueEnabled;
+    }
+
+    /**
+     * 在新的上下文作用域内执行任务
+     * 未启用ScopedValue时直接执行任务，上下文仍由ThreadLocal保存
+     *
+     * @param task 任务
+     * @return 任务结果
+     * @throws Exception 任务抛出的异常
+     */
+    public static <T> T callInScope(Callable<T> task) throws Exception {
+        if (!scopedValueEnabled) {
+            return task.call();
+        }
+        return ScopedContextSupport.call(new Holder(), task);
+    }
+
+    /**
+     * 设置当前用户ID及用户加载方式
+     *
+     * @param userId     用户ID
+     * @param userLoader 按用户ID加载用户资料，仅在需要用户资料时调用
+     */
+    public static void setCurrentUser(String userId, Function<String, UserProfileView> userLoader) {
+        Holder holder = currentHolder();
+        holder.userId = userId;
+        holder.userLoader = userLoader;
+        holder.user = null;
+        holder.userLoaded = false;
+    }
 
     /**
      * 设置当前用户
      *
-     * @param user 用户信息
+     * @param user 用户资料
      */
-    public static void setCurrentUser(WechatUser user) {
-        USER_HOLDER.set(user);
+    public static void setCurrentUser(UserProfileView user) {
+        Holder holder = currentHolder();
+        holder.userId = user != null ? user.getId() : null;
+        holder.userLoader = null;
+        holder.user = user;
+        holder.userLoaded = true;
     }
 
     /**
      * 获取当前用户
+     * 首次调用时加载用户资料，同一请求内后续调用直接返回已加载的结果
      *
-     * @return 当前用户信息，如果未登录则返回null
+     * @return 当前用户资料，如果未登录或用户不存在则返回null
      */
-    public static WechatUser getCurrentUser() {
-        return USER_HOLDER.get();
+    public static UserProfileView getCurrentUser() {
+        Holder holder = boundHolder();
+        if (holder == null || holder.userId == null) {
+            return null;
+        }
+        if (!holder.userLoaded) {
+            holder.user = holder.userLoader != null ? holder.userLoader.apply(holder.userId) : null;
+            holder.userLoaded = true;
+        }
+        return holder.user;
     }
 
     /**
@@ -36,8 +109,8 @@ public class UserContext {
      * @return 当前用户ID，如果未登录则返回null
      */
     public static String getCurrentUserId() {
-        WechatUser user = getCurrentUser();
-        return user != null ? user.getId() : null;
+        Holder holder = boundHolder();
+        return holder != null ? holder.userId : null;
     }
 
     /**
@@ -46,7 +119,7 @@ public class UserContext {
      * @param token 访问令牌
      */
     public static void setCurrentToken(String token) {
-        TOKEN_HOLDER.set(token);
+        currentHolder().token = token;
     }
 
     /**
@@ -55,7 +128,8 @@ public class UserContext {
      * @return 当前访问令牌，如果未设置则返回null
      */
     public static String getCurrentToken() {
-        return TOKEN_HOLDER.get();
+        Holder holder = boundHolder();
+        return holder != null ? holder.token : null;
     }
 
     /**
@@ -64,7 +138,7 @@ public class UserContext {
      * @return true-已登录，false-未登录
      */
     public static boolean isLoggedIn() {
-        return getCurrentUser() != null;
+        return getCurrentUserId() != null;
     }
 
     /**
@@ -72,8 +146,13 @@ public class UserContext {
      * 通常在请求结束时调用
      */
     public static void clear() {
-        USER_HOLDER.remove();
-        TOKEN_HOLDER.remove();
+        if (scopedValueEnabled) {
+            Object scoped = ScopedContextSupport.current();
+            if (scoped != null) {
+                ((Holder) scoped).reset();
+            }
+        }
+        CONTEXT_HOLDER.remove();
     }
 
     /**
@@ -82,7 +161,7 @@ public class UserContext {
      * @return 用户昵称，如果未登录或昵称为空则返回"匿名用户"
      */
     public static String getCurrentUserNickname() {
-        WechatUser user = getCurrentUser();
+        UserProfileView user = getCurrentUser();
         if (user != null && user.getNickname() != null && !user.getNickname().trim().isEmpty()) {
             return user.getNickname();
         }
@@ -95,7 +174,45 @@ public class UserContext {
      * @return 用户OpenID，如果未登录则返回null
      */
     public static String getCurrentUserOpenId() {
-        WechatUser user = getCurrentUser();
+        UserProfileView user = getCurrentUser();
         return user != null ? user.getOpenid() : null;
     }
-}
\ No newline at end of file
+
+    private static Holder boundHolder() {
+        if (scopedValueEnabled) {
+            Object scoped = ScopedContextSupport.current();
+            if (scoped != null) {
+                return (Holder) scoped;
+            }
+        }
+        return CONTEXT_HOLDER.get();
+    }
+
+    private static Holder currentHolder() {
+        Holder holder = boundHolder();
+        if (holder == null) {
+            holder = new Holder();
+            CONTEXT_HOLDER.set(holder);
+        }
+        return holder;
+    }
+
+    /**
+     * 单个请求的上下文数据，只在处理请求的线程内访问
+     */
+    private static final class Holder {
+        private String userId;
+        private String token;
+        private Function<String, UserProfileView> userLoader;
+        private UserProfileView user;
+        private boolean userLoaded;
+
+        private void reset() {
+            userId = null;
+            token = null;
+            userLoader = null;
+            user = null;
+            userLoaded = false;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package cn.shoanadmin.domain.dto;
+
+import lombok.Data;
+
+/**
+ * 用户导出记录
+ * 只包含可对外提供的资料与状态字段，不含会话密钥、登录IP等敏感字段；字段名与 {@link UserImportRow} 一致，导出文件可直接重新导入
+ *
+ * @author FruitPieces
+ * @since 2024-01-20
+ */
+@Data
+public class UserExportRow {
+
+    /**
+     * 用户ID
+     */
+    private String id;
+
+    /**
+     * 微信openid
+     */
+    private String openid;
+
+    /**
+     * 微信unionid
+     */
+    private String unionid;
+
+    /**
+     * 用户昵称
+     */
+    private String nickname;
+
+    /**
+     * 头像URL
+     */
+    private String avatarUrl;
+
+    /**
+     * 性别：0-未知，1-男，2-女
+     */
+    private Integer gender;
+
+    /**
+     * 国家
+     */
+    private String country;
+
+    /**
+     * 省份
+     */
+    private String province;
+
+    /**
+     * 城市
+     */
+    private String city;
+
+    /**
+     * 语言
+     */
+    private String language;
+
+    /**
+     * 状态：0-禁用，1-正常
+     */
+    private Integer status;
+
+    /**
+     * 最后登录时间（时间戳）
+     */
+    private Long lastLoginTime;
+
+    /**
+     * 创建时间（时间戳）
+     */
+    private Long createdTime;
+
+    /**
+     * 更新时间（时间戳）
+     */
+    private Long updatedTime;
+}
@@ -0,0 +1,59 @@
+package cn.shoanadmin.domain.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 用户导入结果
+ *
+ * @author FruitPieces
+ * @since 2024-01-20
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class UserImportResult {
+
+    /**
+     * 导入文件
+     */
+    private String file;
+
+    /**
+     * 从断点恢复时跳过的记录数
+     */
+    private Long skipped;
+
+    /**
+     * 本次处理的记录数
+     */
+    private Long processed;
+
+    /**
+     * 新创建的用户数
+     */
+    private Long created;
+
+    /**
+     * 补全资料的已有用户数
+     */
+    private Long updated;
+
+    /**
+     * 同一批内openid重复、合并到先出现记录的记录数
+     */
+    private Long merged;
+
+    /**
+     * 校验失败的记录数，明细写入 {文件}.rejected
+     */
+    private Long rejected;
+
+    /**
+     * 耗时（毫秒）
+     */
+    private Long elapsedMillis;
+}
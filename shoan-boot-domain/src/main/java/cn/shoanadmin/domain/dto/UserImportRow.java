@@ -0,0 +1,59 @@
+package cn.shoanadmin.domain.dto;
+
+import lombok.Data;
+
+/**
+ * 用户导入记录
+ * CSV表头或JSONL字段名与属性名对应，CSV表头也可使用下划线形式（如 avatar_url）；未提供的字段为null，已有用户的对应字段保持不变
+ *
+ * @author FruitPieces
+ * @since 2024-01-20
+ */
+@Data
+public class UserImportRow {
+
+    /**
+     * 微信openid，必填
+     */
+    private String openid;
+
+    /**
+     * 微信unionid
+     */
+    private String unionid;
+
+    /**
+     * 用户昵称
+     */
+    private String nickname;
+
+    /**
+     * 头像URL
+     */
+    private String avatarUrl;
+
+    /**
+     * 性别：0-未知，1-男，2-女
+     */
+    private Integer gender;
+
+    /**
+     * 国家
+     */
+    private String country;
+
+    /**
+     * 省份
+     */
+    private String province;
+
+    /**
+     * 城市
+     */
+    private String city;
+
+    /**
+     * 语言
+     */
+    private String language;
+}
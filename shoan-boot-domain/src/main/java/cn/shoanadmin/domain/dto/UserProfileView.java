@@ -0,0 +1,76 @@
+package cn.shoanadmin.domain.dto;
+
+import cn.shoanadmin.domain.entity.WechatUser;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * 用户资料视图
+ * 认证后的请求上下文、用户信息接口与登录响应只需要这几列，由专用的投影查询读取并单独缓存；
+ * 不含会话密钥、登录IP、用户代理等大字段与敏感字段，需要完整用户时使用 {@link WechatUser}
+ *
+ * @author FruitPieces
+ * @since 2024-01-20
+ */
+@Data
+@Builder(toBuilder = true)
+@NoArgsConstructor
+@AllArgsConstructor
+public class UserProfileView implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 用户ID
+     */
+    private String id;
+
+    /**
+     * 微信openid
+     */
+    private String openid;
+
+    /**
+     * 用户昵称
+     */
+    private String nickname;
+
+    /**
+     * 头像URL
+     */
+    private String avatarUrl;
+
+    /**
+     * 状态：0-禁用，1-正常
+     */
+    private Integer status;
+
+    /**
+     * 最后登录时间（时间戳）
+     */
+    private Long lastLoginTime;
+
+    /**
+     * 从完整用户中取出资料视图的各列
+     *
+     * @param user 用户，可为null
+     * @return 资料视图，user为null时返回null
+     */
+    public static UserProfileView of(WechatUser user) {
+        if (user == null) {
+            return null;
+        }
+        return UserProfileView.builder()
+                .id(user.getId())
+                .openid(user.getOpenid())
+                .nickname(user.getNickname())
+                .avatarUrl(user.getAvatarUrl())
+                .status(user.getStatus())
+                .lastLoginTime(user.getLastLoginTime())
+                .build();
+    }
+}
@@ -0,0 +1,42 @@
+package cn.shoanadmin.domain.dto;
+
+import lombok.Data;
+
+import java.io.Serializable;
+
+/**
+ * 微信开放数据解密结果基类
+ * 所有解密数据都带有水印，用于校验数据是否属于当前小程序
+ *
+ * @author FruitPieces
+ * @since 2024-01-20
+ */
+@Data
+public abstract class WechatDecryptedData implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 数据水印
+     */
+    private Watermark watermark;
+
+    /**
+     * 数据水印
+     */
+    @Data
+    public static class Watermark implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * 小程序appid
+         */
+        private String appid;
+
+        /**
+         * 数据生成时间（秒级时间戳）
+         */
+        private Long timestamp;
+    }
+}
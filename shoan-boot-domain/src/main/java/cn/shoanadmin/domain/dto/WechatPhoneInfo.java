@@ -0,0 +1,33 @@
+package cn.shoanadmin.domain.dto;
+
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+/**
+ * 微信手机号解密结果
+ * 字段名与微信返回的JSON一致
+ *
+ * @author FruitPieces
+ * @since 2024-01-20
+ */
+@Data
+@EqualsAndHashCode(callSuper = true)
+public class WechatPhoneInfo extends WechatDecryptedData {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 带区号的手机号，境外手机号会有区号
+     */
+    private String phoneNumber;
+
+    /**
+     * 不带区号的手机号
+     */
+    private String purePhoneNumber;
+
+    /**
+     * 区号
+     */
+    private String countryCode;
+}
@@ -0,0 +1,63 @@
+package cn.shoanadmin.domain.dto;
+
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+/**
+ * 微信用户信息解密结果
+ * 字段名与微信返回的JSON一致
+ *
+ * @author FruitPieces
+ * @since 2024-01-20
+ */
+@Data
+@EqualsAndHashCode(callSuper = true)
+public class WechatUserInfo extends WechatDecryptedData {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 微信openid
+     */
+    private String openId;
+
+    /**
+     * 微信unionid，小程序绑定开放平台后才有
+     */
+    private String unionId;
+
+    /**
+     * 昵称
+     */
+    private String nickName;
+
+    /**
+     * 性别：0-未知，1-男，2-女
+     */
+    private Integer gender;
+
+    /**
+     * 语言
+     */
+    private String language;
+
+    /**
+     * 城市
+     */
+    private String city;
+
+    /**
+     * 省份
+     */
+    private String province;
+
+    /**
+     * 国家
+     */
+    private String country;
+
+    /**
+     * 头像URL
+     */
+    private String avatarUrl;
+}
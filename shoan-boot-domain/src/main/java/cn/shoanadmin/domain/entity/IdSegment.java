@@ -0,0 +1,47 @@
+package cn.shoanadmin.domain.entity;
+
+import com.baomidou.mybatisplus.annotation.*;
+import lombok.*;
+
+import java.io.Serializable;
+
+/**
+ * ID号段实体类
+ * 对应数据库表：id_segment，每个业务标识一行，max_id 为已分配出去的最大ID
+ *
+ * @author FruitPieces
+ * @since 2024-01-20
+ */
+@Data
+@TableName("id_segment")
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class IdSegment implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 业务标识
+     */
+    @TableId(value = "biz_tag", type = IdType.INPUT)
+    private String bizTag;
+
+    /**
+     * 已分配的最大ID
+     */
+    @TableField("max_id")
+    private Long maxId;
+
+    /**
+     * 本次预留的ID数量，不对应数据库字段
+     */
+    @TableField(exist = false)
+    private Integer step;
+
+    /**
+     * 更新时间
+     */
+    @TableField("updated_time")
+    private Long updatedTime;
+}
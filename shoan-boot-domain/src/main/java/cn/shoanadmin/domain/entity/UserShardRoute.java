@@ -0,0 +1,57 @@
+package cn.shoanadmin.domain.entity;
+
+import com.baomidou.mybatisplus.annotation.*;
+import lombok.*;
+
+import java.io.Serializable;
+
+/**
+ * 用户分片路由实体类
+ * 对应数据库表：user_shard_route，每个分片桶至多一行，记录该桶当前所在的分片；没有记录的桶使用默认分配
+ *
+ * @author FruitPieces
+ * @since 2024-01-20
+ */
+@Data
+@TableName("user_shard_route")
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class UserShardRoute implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 正常读写
+     */
+    public static final int STATUS_ACTIVE = 0;
+
+    /**
+     * 迁移中，只读，写入被拒绝
+     */
+    public static final int STATUS_MIGRATING = 1;
+
+    /**
+     * 分片桶
+     */
+    @TableId(value = "bucket", type = IdType.INPUT)
+    private Integer bucket;
+
+    /**
+     * 分片名称
+     */
+    @TableField("shard")
+    private String shard;
+
+    /**
+     * 状态：0-正常，1-迁移中
+     */
+    @TableField("status")
+    private Integer status;
+
+    /**
+     * 更新时间
+     */
+    @TableField("updated_time")
+    private Long updatedTime;
+}
@@ -15,7 +15,7 @@ import java.io.Serializable;
 @Data
 @EqualsAndHashCode(callSuper = false)
 @TableName("wechat_user")
-@Builder
+@Builder(toBuilder = true)
 @NoArgsConstructor
 @AllArgsConstructor
 public class WechatUser implements Serializable {
@@ -23,7 +23,7 @@ public class WechatUser implements Serializable {
     private static final long serialVersionUID = 1L;
 
     /**
-     * 用户ID（格式：FP+时间戳前4位+随机数4位）
+     * 用户ID（格式：FP+13位Crockford Base32+2位分片桶，见 UidGenerator）
      */
     @TableId(value = "id", type = IdType.INPUT)
     private String id;
@@ -0,0 +1,21 @@
+package cn.shoanadmin.domain.request;
+
+import cn.shoanadmin.domain.request.base.BaseReq;
+import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotNull;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+@EqualsAndHashCode(callSuper = true)
+@Data
+@Schema(description = "更新用户状态请求对象")
+public class UpdateUserStatusReq extends BaseReq {
+
+    @NotNull(message = "状态不能为空")
+    @Min(value = 0, message = "状态只能为0或1")
+    @Max(value = 1, message = "状态只能为0或1")
+    @Schema(description = "状态：0-禁用，1-正常", example = "0", required = true)
+    private Integer status;
+}
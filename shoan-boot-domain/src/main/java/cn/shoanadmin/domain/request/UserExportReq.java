@@ -0,0 +1,27 @@
+package cn.shoanadmin.domain.request;
+
+import cn.shoanadmin.domain.request.base.BaseReq;
+import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.Pattern;
+import jakarta.validation.constraints.Size;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+@EqualsAndHashCode(callSuper = true)
+@Data
+@Schema(description = "用户导出请求对象")
+public class UserExportReq extends BaseReq {
+
+    @Pattern(regexp = "ndjson|csv", message = "导出格式只支持ndjson或csv")
+    @Schema(description = "导出格式：ndjson（每行一个JSON对象）或csv", example = "ndjson")
+    private String format = "ndjson";
+
+    @Size(max = 64, message = "用户ID长度不能超过64个字符")
+    @Schema(description = "从该用户ID之后开始导出，导出中断后传入已收到的最后一个用户ID继续", example = "1790000000000000000")
+    private String afterId;
+
+    @Min(value = 1, message = "导出条数必须大于0")
+    @Schema(description = "最多导出的条数，不传时导出全部", example = "100000")
+    private Long limit;
+}
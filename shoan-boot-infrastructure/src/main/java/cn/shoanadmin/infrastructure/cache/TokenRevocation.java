@@ -0,0 +1,42 @@
+package cn.shoanadmin.infrastructure.cache;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 令牌吊销通知消息
+ *
+ * @author FruitPieces
+ * @since 2024-01-20
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TokenRevocation {
+
+    /**
+     * 发出通知的节点标识
+     */
+    private String nodeId;
+
+    /**
+     * 令牌ID，吊销单个令牌时设置
+     */
+    private String tokenId;
+
+    /**
+     * 令牌过期时间戳
+     */
+    private Long expiresAt;
+
+    /**
+     * 用户ID，吊销用户全部令牌时设置
+     */
+    private String userId;
+
+    /**
+     * 用户吊销时间戳
+     */
+    private Long revokedAt;
+}
@@ -0,0 +1,156 @@
+package cn.shoanadmin.infrastructure.cache;
+
+import cn.shoanadmin.common.config.JwtConfig;
+import cn.shoanadmin.common.util.BloomFilter;
+import cn.shoanadmin.common.util.JsonUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 已吊销令牌缓存
+ * 布隆过滤器挡住绝大多数未吊销令牌的查询，命中后再查精确集合，整个判断不涉及I/O
+ * 禁用或删除用户时按用户记录吊销时间，该用户在此之前签发的令牌全部失效
+ * 吊销操作通过Redis发布订阅同步到其他节点，并由服务层定期与 user_token 表全量对齐
+ *
+ * @author FruitPieces
+ * @since 2024-01-20
+ */
+@Slf4j
+@Component
+public class TokenRevocationCache {
+
+    /**
+     * 当前节点标识，用于忽略自己发出的吊销通知
+     */
+    private final String nodeId = UUID.randomUUID().toString();
+
+    /**
+     * 令牌ID -> 过期时间戳
+     */
+    private final Map<String, Long> revokedTokens = new ConcurrentHashMap<>();
+
+    /**
+     * 用户ID -> 吊销时间戳，签发时间不晚于该时间的令牌均已失效
+     */
+    private final Map<String, Long> revokedUsers = new ConcurrentHashMap<>();
+
+    private final JwtConfig.Revocation revocationConfig;
+    private final long tokenTtl;
+    private final StringRedisTemplate stringRedisTemplate;
+    private volatile BloomFilter bloomFilter;
+
+    public TokenRevocationCache(JwtConfig jwtConfig, StringRedisTemplate stringRedisTemplate) {
+        this.revocationConfig = jwtConfig.getRevocation();
+        this.tokenTtl = jwtConfig.getExpiration();
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.bloomFilter = newBloomFilter();
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * 判断令牌是否已吊销
+     *
+     * @param tokenId 令牌ID
+     * @return true-已吊销，false-未吊销
+     */
+    public boolean isRevoked(String tokenId) {
+        if (!bloomFilter.mightContain(tokenId)) {
+            return false;
+        }
+        return revokedTokens.containsKey(tokenId);
+    }
+
+    /**
+     * 判断令牌是否因用户被禁用或删除而失效
+     *
+     * @param userId   用户ID
+     * @param issuedAt 令牌签发时间戳，旧版令牌为0
+     * @return true-已吊销，false-未吊销
+     */
+    public boolean isUserRevoked(String userId, long issuedAt) {
+        Long revokedAt = revokedUsers.get(userId);
+        return revokedAt != null && issuedAt <= revokedAt;
+    }
+
+    /**
+     * 记录已吊销令牌
+     *
+     * @param tokenId   令牌ID
+     * @param expiresAt 令牌过期时间戳，过期后记录可被清理
+     */
+    public synchronized void add(String tokenId, long expiresAt) {
+        revokedTokens.put(tokenId, expiresAt);
+        bloomFilter.put(tokenId);
+    }
+
+    /**
+     * 记录用户吊销时间，已有更晚的记录时保留较晚的时间
+     *
+     * @param userId    用户ID
+     * @param revokedAt 吊销时间戳
+     */
+    public void addUser(String userId, long revokedAt) {
+        revokedUsers.merge(userId, revokedAt, Math::max);
+    }
+
+    /**
+     * 与持久化的吊销记录对齐：合并数据库记录、清理已过期记录并重建布隆过滤器
+     * 用户吊销记录在吊销时间加令牌有效期之后清理，此时之前签发的令牌都已过期
+     *
+     * @param persisted      数据库中未过期的吊销记录，令牌ID -> 过期时间戳
+     * @param persistedUsers 数据库中未过期的用户吊销记录，用户ID -> 吊销时间戳
+     */
+    public synchronized void reload(Map<String, Long> persisted, Map<String, Long> persistedUsers) {
+        long now = System.currentTimeMillis();
+        revokedTokens.putAll(persisted);
+        revokedTokens.values().removeIf(expiresAt -> expiresAt < now);
+        persistedUsers.forEach(this::addUser);
+        revokedUsers.values().removeIf(revokedAt -> revokedAt + tokenTtl < now);
+        BloomFilter rebuilt = newBloomFilter();
+        revokedTokens.keySet().forEach(rebuilt::put);
+        bloomFilter = rebuilt;
+        log.info("已吊销令牌缓存重建完成：size={}, users={}", revokedTokens.size(), revokedUsers.size());
+    }
+
+    /**
+     * 通知其他节点令牌已吊销，Redis异常只记录告警，由定期全量同步兜底
+     *
+     * @param tokenId   令牌ID
+     * @param expiresAt 令牌过期时间戳
+     */
+    public void publish(String tokenId, long expiresAt) {
+        try {
+            TokenRevocation message = new TokenRevocation(nodeId, tokenId, expiresAt, null, null);
+            stringRedisTemplate.convertAndSend(revocationConfig.getChannel(), JsonUtil.toJsonString(message));
+        } catch (Exception e) {
+            log.warn("发布令牌吊销通知失败：{}", e.getMessage());
+        }
+    }
+
+    /**
+     * 通知其他节点用户的令牌已全部吊销，Redis异常只记录告警，由定期全量同步兜底
+     *
+     * @param userId    用户ID
+     * @param revokedAt 吊销时间戳
+     */
+    public void publishUser(String userId, long revokedAt) {
+        try {
+            TokenRevocation message = new TokenRevocation(nodeId, null, null, userId, revokedAt);
+            stringRedisTemplate.convertAndSend(revocationConfig.getChannel(), JsonUtil.toJsonString(message));
+        } catch (Exception e) {
+            log.warn("发布用户令牌吊销通知失败：userId={}, {}", userId, e.getMessage());
+        }
+    }
+
+    private BloomFilter newBloomFilter() {
+        return BloomFilter.create(revocationConfig.getExpectedTokens(), revocationConfig.getFalsePositiveRate());
+    }
+}
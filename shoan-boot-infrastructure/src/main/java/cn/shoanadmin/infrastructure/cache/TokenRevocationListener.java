@@ -0,0 +1,46 @@
+package cn.shoanadmin.infrastructure.cache;
+
+import cn.shoanadmin.common.util.JsonUtil;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+
+/**
+ * 令牌吊销通知监听器
+ * 收到其他节点的令牌或用户吊销通知后写入本节点的吊销缓存
+ *
+ * @author FruitPieces
+ * @since 2024-01-20
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class TokenRevocationListener implements MessageListener {
+
+    private final TokenRevocationCache tokenRevocationCache;
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        TokenRevocation revocation = JsonUtil.parseObject(body, TokenRevocation.class);
+        boolean tokenRevocation = revocation != null
+                && revocation.getTokenId() != null && revocation.getExpiresAt() != null;
+        boolean userRevocation = revocation != null
+                && revocation.getUserId() != null && revocation.getRevokedAt() != null;
+        if (!tokenRevocation && !userRevocation) {
+            log.warn("忽略无法解析的令牌吊销通知：{}", body);
+            return;
+        }
+        if (Objects.equals(revocation.getNodeId(), tokenRevocationCache.getNodeId())) {
+            return;
+        }
+        if (tokenRevocation) {
+            tokenRevocationCache.add(revocation.getTokenId(), revocation.getExpiresAt());
+        } else {
+            tokenRevocationCache.addUser(revocation.getUserId(), revocation.getRevokedAt());
+        }
+    }
+}
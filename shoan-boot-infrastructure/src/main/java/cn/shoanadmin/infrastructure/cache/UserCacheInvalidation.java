@@ -0,0 +1,32 @@
+package cn.shoanadmin.infrastructure.cache;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 用户缓存失效通知消息
+ *
+ * @author FruitPieces
+ * @since 2024-01-20
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UserCacheInvalidation {
+
+    /**
+     * 发出通知的节点标识
+     */
+    private String nodeId;
+
+    /**
+     * 用户ID
+     */
+    private String userId;
+
+    /**
+     * 微信openid
+     */
+    private String openid;
+}
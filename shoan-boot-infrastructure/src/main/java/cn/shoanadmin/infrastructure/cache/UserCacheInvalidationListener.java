@@ -0,0 +1,43 @@
+package cn.shoanadmin.infrastructure.cache;
+
+import cn.shoanadmin.common.util.JsonUtil;
+import cn.shoanadmin.infrastructure.datasource.ReplicaReadRouter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+
+/**
+ * 用户缓存失效通知监听器
+ * 收到其他节点的写操作通知后失效本节点的本地缓存，并在读写分离时让该用户的后续读取暂时走主库
+ *
+ * @author FruitPieces
+ * @since 2024-01-20
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class UserCacheInvalidationListener implements MessageListener {
+
+    private final WechatUserCache wechatUserCache;
+    private final WechatUserRedisCache wechatUserRedisCache;
+    private final ReplicaReadRouter replicaReadRouter;
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        UserCacheInvalidation invalidation = JsonUtil.parseObject(body, UserCacheInvalidation.class);
+        if (invalidation == null) {
+            log.warn("忽略无法解析的用户缓存失效通知：{}", body);
+            return;
+        }
+        if (Objects.equals(invalidation.getNodeId(), wechatUserRedisCache.getNodeId())) {
+            return;
+        }
+        log.debug("收到用户缓存失效通知：userId={}, openid={}", invalidation.getUserId(), invalidation.getOpenid());
+        replicaReadRouter.markWritten(invalidation.getUserId(), invalidation.getOpenid());
+        wechatUserCache.evictLocal(invalidation.getUserId(), invalidation.getOpenid());
+    }
+}
@@ -0,0 +1,255 @@
+package cn.shoanadmin.infrastructure.cache;
+
+import cn.shoanadmin.common.config.AppCacheConfig;
+import cn.shoanadmin.domain.dto.UserProfileView;
+import cn.shoanadmin.domain.entity.WechatUser;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Function;
+
+/**
+ * 微信用户两级缓存
+ * 一级为本地缓存，按用户ID缓存用户信息并维护openid到用户ID的索引，容量与过期时间由 app.cache 配置；
+ * 二级为Redis共享缓存，写操作后通过发布订阅通知所有节点失效本地缓存。
+ * 认证后的请求只需要用户资料视图，单独按用户ID缓存投影查询的结果；完整用户只在登录与写操作时读取，两者同时失效
+ * 缓存中保存的是快照，读取时返回副本，避免调用方修改共享对象。
+ * 未命中时的加载不在缓存的锁内执行（见 {@link #getById}），按键记录失效代数：加载前读取代数，写入缓存后代数已变化
+ * 说明加载期间发生过失效，加载结果可能是旧数据，撤销本次写入的两级缓存
+ *
+ * @author FruitPieces
+ * @since 2024-01-20
+ */
+@Slf4j
+@Component
+public class WechatUserCache {
+
+    private static final String CACHE_BY_ID = "wechatUserById";
+    private static final String CACHE_BY_OPENID = "wechatUserIdByOpenid";
+    private static final String CACHE_PROFILE_BY_ID = "wechatUserProfileById";
+
+    /**
+     * 失效代数的分段数，用户ID与openid按哈希映射到分段，不同键落在同一分段时只会多撤销一次缓存写入
+     */
+    private static final int GENERATION_STRIPES = 4096;
+
+    private final Cache<String, WechatUser> userById;
+    private final Cache<String, String> userIdByOpenid;
+    private final Cache<String, UserProfileView> profileById;
+    private final WechatUserRedisCache redisCache;
+    private final AtomicLongArray generations = new AtomicLongArray(GENERATION_STRIPES);
+
+    public WechatUserCache(AppCacheConfig cacheConfig, MeterRegistry meterRegistry, WechatUserRedisCache redisCache) {
+        this.redisCache = redisCache;
+        Duration ttl = Duration.ofSeconds(cacheConfig.getUserInfoTtl());
+        long maxSize = cacheConfig.getUserMaxSize();
+        this.userById = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        this.userIdByOpenid = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        this.profileById = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, userById, CACHE_BY_ID);
+        CaffeineCacheMetrics.monitor(meterRegistry, userIdByOpenid, CACHE_BY_OPENID);
+        CaffeineCacheMetrics.monitor(meterRegistry, profileById, CACHE_PROFILE_BY_ID);
+        log.info("初始化用户本地缓存：maxSize={}, ttl={}s", maxSize, ttl.getSeconds());
+    }
+
+    /**
+     * 根据用户ID获取用户，未命中时通过loader加载并写入缓存
+     *
+     * @param userId 用户ID
+     * @param loader 数据加载函数，返回null时不缓存
+     * @return 用户信息副本，不存在返回null
+     */
+    public WechatUser getById(String userId, Function<String, WechatUser> loader) {
+        WechatUser cached = userById.getIfPresent(userId);
+        if (cached != null) {
+            return copyOf(cached);
+        }
+        // 不使用 Cache.get(key, loader)：加载过程在ConcurrentHashMap的synchronized块内执行，
+        // Redis与数据库I/O期间会把虚拟线程固定在载体线程上；与失效的竞争由失效代数处理
+        long generation = generation(userId);
+        WechatUser loaded = redisCache.getById(userId);
+        boolean fromRedis = loaded != null;
+        if (!fromRedis) {
+            loaded = loader.apply(userId);
+            redisCache.put(loaded);
+        }
+        putLocal(loaded);
+        if (generation(userId) != generation) {
+            discardLoaded(loaded, !fromRedis);
+        }
+        return copyOf(loaded);
+    }
+
+    /**
+     * 根据openid获取用户，未命中时通过loader加载并写入缓存
+     *
+     * @param openid 微信openid
+     * @param loader 数据加载函数，返回null时不缓存
+     * @return 用户信息副本，不存在返回null
+     */
+    public WechatUser getByOpenid(String openid, Function<String, WechatUser> loader) {
+        String userId = userIdByOpenid.getIfPresent(openid);
+        if (userId != null) {
+            WechatUser cached = userById.getIfPresent(userId);
+            if (cached != null) {
+                return copyOf(cached);
+            }
+        }
+        long generation = generation(openid);
+        WechatUser loaded = redisCache.getByOpenid(openid);
+        boolean fromRedis = loaded != null;
+        if (!fromRedis) {
+            loaded = loader.apply(openid);
+            redisCache.put(loaded);
+        }
+        putLocal(loaded);
+        if (generation(openid) != generation) {
+            discardLoaded(loaded, !fromRedis);
+        }
+        return copyOf(loaded);
+    }
+
+    /**
+     * 根据用户ID获取用户资料视图，未命中时通过loader加载并写入缓存
+     *
+     * @param userId 用户ID
+     * @param loader 数据加载函数，返回null时不缓存
+     * @return 用户资料副本，不存在返回null
+     */
+    public UserProfileView getProfileById(String userId, Function<String, UserProfileView> loader) {
+        UserProfileView cached = profileById.getIfPresent(userId);
+        if (cached != null) {
+            return cached.toBuilder().build();
+        }
+        long generation = generation(userId);
+        UserProfileView loaded = redisCache.getProfileById(userId);
+        boolean fromRedis = loaded != null;
+        if (!fromRedis) {
+            loaded = loader.apply(userId);
+            redisCache.putProfile(loaded);
+        }
+        if (loaded == null || loaded.getId() == null) {
+            return null;
+        }
+        profileById.put(loaded.getId(), loaded.toBuilder().build());
+        if (generation(userId) != generation) {
+            log.debug("加载期间用户缓存已失效，丢弃加载的用户资料：userId={}", loaded.getId());
+            profileById.invalidate(loaded.getId());
+            if (!fromRedis) {
+                redisCache.evict(loaded.getId(), null);
+            }
+        }
+        return loaded;
+    }
+
+    /**
+     * 写入本地缓存
+     *
+     * @param user 用户信息
+     */
+    private void putLocal(WechatUser user) {
+        if (user == null || user.getId() == null) {
+            return;
+        }
+        userById.put(user.getId(), copyOf(user));
+        if (user.getOpenid() != null) {
+            userIdByOpenid.put(user.getOpenid(), user.getId());
+        }
+    }
+
+    /**
+     * 撤销加载期间发生过失效的缓存写入：本地缓存由本次写入，Redis只在由本次加载写入时删除
+     */
+    private void discardLoaded(WechatUser user, boolean putToRedis) {
+        if (user == null || user.getId() == null) {
+            return;
+        }
+        log.debug("加载期间用户缓存已失效，丢弃加载结果：userId={}", user.getId());
+        evictLocalEntries(user.getId(), user.getOpenid());
+        if (putToRedis) {
+            redisCache.evict(user.getId(), user.getOpenid());
+        }
+    }
+
+    private long generation(String key) {
+        return generations.get(key.hashCode() & (GENERATION_STRIPES - 1));
+    }
+
+    private void nextGeneration(String key) {
+        generations.incrementAndGet(key.hashCode() & (GENERATION_STRIPES - 1));
+    }
+
+    /**
+     * 失效本地缓存，用于处理其他节点发出的失效通知
+     * 先递增失效代数再删除缓存，正在进行的加载写入缓存后能发现代数变化
+     *
+     * @param userId 用户ID，可为null
+     * @param openid 微信openid，可为null
+     */
+    public void evictLocal(String userId, String openid) {
+        if (userId != null) {
+            nextGeneration(userId);
+        }
+        if (openid != null) {
+            nextGeneration(openid);
+        }
+        evictLocalEntries(userId, openid);
+    }
+
+    private void evictLocalEntries(String userId, String openid) {
+        if (userId != null) {
+            userById.invalidate(userId);
+            profileById.invalidate(userId);
+        }
+        if (openid != null) {
+            userIdByOpenid.invalidate(openid);
+        }
+    }
+
+    /**
+     * 失效两级缓存并通知其他节点
+     * 若当前处于事务中，事务结束后会再次失效，避免提交前被其他线程回填旧数据
+     *
+     * @param userId 用户ID，可为null
+     * @param openid 微信openid，可为null
+     */
+    public void evict(String userId, String openid) {
+        Runnable eviction = () -> {
+            evictLocal(userId, openid);
+            redisCache.evictAndPublish(userId, openid);
+        };
+        eviction.run();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    eviction.run();
+                }
+            });
+        }
+    }
+
+    private WechatUser copyOf(WechatUser user) {
+        return user == null ? null : user.toBuilder().build();
+    }
+}
@@ -0,0 +1,197 @@
+package cn.shoanadmin.infrastructure.cache;
+
+import cn.shoanadmin.common.config.AppCacheConfig;
+import cn.shoanadmin.common.util.JsonUtil;
+import cn.shoanadmin.domain.dto.UserProfileView;
+import cn.shoanadmin.domain.entity.WechatUser;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * 微信用户Redis二级缓存
+ * 保存跨节点共享的用户快照，并通过发布订阅通知其他节点失效本地缓存。
+ * 快照不保存会话密钥，从Redis读到的用户 sessionKey 为null，需要时从库中读取
+ * Redis不可用时只记录告警，调用方回退到数据库，不影响主流程
+ *
+ * @author FruitPieces
+ * @since 2024-01-20
+ */
+@Slf4j
+@Component
+public class WechatUserRedisCache {
+
+    private static final String KEY_BY_ID = "wechat:user:id:";
+    private static final String KEY_BY_OPENID = "wechat:user:openid:";
+    private static final String KEY_PROFILE_BY_ID = "wechat:user:profile:";
+
+    /**
+     * 当前节点标识，用于忽略自己发出的失效通知
+     */
+    private final String nodeId = UUID.randomUUID().toString();
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final AppCacheConfig cacheConfig;
+    private final Duration ttl;
+
+    public WechatUserRedisCache(StringRedisTemplate stringRedisTemplate, AppCacheConfig cacheConfig) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.cacheConfig = cacheConfig;
+        this.ttl = Duration.ofSeconds(cacheConfig.getUserInfoTtl());
+    }
+
+    public boolean isEnabled() {
+        return Boolean.TRUE.equals(cacheConfig.getUserRedisEnabled());
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * 根据用户ID读取缓存
+     *
+     * @param userId 用户ID
+     * @return 用户信息，未命中或Redis异常返回null
+     */
+    public WechatUser getById(String userId) {
+        if (!isEnabled()) {
+            return null;
+        }
+        try {
+            return JsonUtil.parseObject(stringRedisTemplate.opsForValue().get(KEY_BY_ID + userId), WechatUser.class);
+        } catch (Exception e) {
+            log.warn("读取Redis用户缓存失败：userId={}, {}", userId, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 根据openid读取缓存
+     *
+     * @param openid 微信openid
+     * @return 用户信息，未命中或Redis异常返回null
+     */
+    public WechatUser getByOpenid(String openid) {
+        if (!isEnabled()) {
+            return null;
+        }
+        try {
+            String userId = stringRedisTemplate.opsForValue().get(KEY_BY_OPENID + openid);
+            return userId == null ? null : getById(userId);
+        } catch (Exception e) {
+            log.warn("读取Redis用户缓存失败：openid={}, {}", openid, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 写入缓存，不保存会话密钥
+     *
+     * @param user 用户信息
+     */
+    public void put(WechatUser user) {
+        if (!isEnabled() || user == null || user.getId() == null) {
+            return;
+        }
+        try {
+            WechatUser snapshot = user.toBuilder().sessionKey(null).build();
+            stringRedisTemplate.opsForValue().set(KEY_BY_ID + user.getId(), JsonUtil.toJsonString(snapshot), ttl);
+            if (user.getOpenid() != null) {
+                stringRedisTemplate.opsForValue().set(KEY_BY_OPENID + user.getOpenid(), user.getId(), ttl);
+            }
+        } catch (Exception e) {
+            log.warn("写入Redis用户缓存失败：userId={}, {}", user.getId(), e.getMessage());
+        }
+    }
+
+    /**
+     * 根据用户ID读取用户资料视图
+     *
+     * @param userId 用户ID
+     * @return 用户资料，未命中或Redis异常返回null
+     */
+    public UserProfileView getProfileById(String userId) {
+        if (!isEnabled()) {
+            return null;
+        }
+        try {
+            return JsonUtil.parseObject(stringRedisTemplate.opsForValue().get(KEY_PROFILE_BY_ID + userId),
+                    UserProfileView.class);
+        } catch (Exception e) {
+            log.warn("读取Redis用户资料缓存失败：userId={}, {}", userId, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 写入用户资料视图
+     *
+     * @param profile 用户资料
+     */
+    public void putProfile(UserProfileView profile) {
+        if (!isEnabled() || profile == null || profile.getId() == null) {
+            return;
+        }
+        try {
+            stringRedisTemplate.opsForValue().set(KEY_PROFILE_BY_ID + profile.getId(), JsonUtil.toJsonString(profile), ttl);
+        } catch (Exception e) {
+            log.warn("写入Redis用户资料缓存失败：userId={}, {}", profile.getId(), e.getMessage());
+        }
+    }
+
+    /**
+     * 删除共享缓存，不通知其他节点
+     *
+     * @param userId 用户ID，可为null
+     * @param openid 微信openid，可为null
+     */
+    public void evict(String userId, String openid) {
+        if (!isEnabled()) {
+            return;
+        }
+        try {
+            deleteKeys(userId, openid);
+        } catch (Exception e) {
+            log.warn("删除Redis用户缓存失败：userId={}, {}", userId, e.getMessage());
+        }
+    }
+
+    /**
+     * 删除共享缓存并通知所有节点失效本地缓存
+     *
+     * @param userId 用户ID，可为null
+     * @param openid 微信openid，可为null
+     */
+    public void evictAndPublish(String userId, String openid) {
+        if (!isEnabled()) {
+            return;
+        }
+        try {
+            deleteKeys(userId, openid);
+            UserCacheInvalidation message = new UserCacheInvalidation(nodeId, userId, openid);
+            stringRedisTemplate.convertAndSend(cacheConfig.getUserInvalidateChannel(), JsonUtil.toJsonString(message));
+        } catch (Exception e) {
+            log.warn("失效Redis用户缓存失败：userId={}, {}", userId, e.getMessage());
+        }
+    }
+
+    private void deleteKeys(String userId, String openid) {
+        List<String> keys = new ArrayList<>(3);
+        if (userId != null) {
+            keys.add(KEY_BY_ID + userId);
+            keys.add(KEY_PROFILE_BY_ID + userId);
+        }
+        if (openid != null) {
+            keys.add(KEY_BY_OPENID + openid);
+        }
+        if (!keys.isEmpty()) {
+            stringRedisTemplate.delete(keys);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package cn.shoanadmin.infrastructure.config;
+
+import cn.shoanadmin.common.config.DataSourceRoutingConfig;
+import cn.shoanadmin.infrastructure.datasource.ReadWriteRoutingDataSource;
+import cn.shoanadmin.infrastructure.datasource.ReplicaLagMonitor;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.util.StringUtils;
+
+import javax.sql.DataSource;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 读写分离数据源配置类
+ * app.datasource-routing.enabled=true 时生效：主库按 spring.datasource 创建，从库按 app.datasource-routing.replicas 创建，
+ * 连接池参数均沿用 spring.datasource.druid；对外的数据源为包裹路由数据源的LazyConnectionDataSourceProxy
+ *
+ * @author FruitPieces
+ * @since 2024-01-20
+ */
+@Slf4j
+@Configuration
+@ConditionalOnProperty(prefix = "app.datasource-routing", name = "enabled", havingValue = "true")
+public class ReadWriteDataSourceConfig {
+
+    private static final String POOL_PROPERTIES_PREFIX = "spring.datasource.druid";
+
+    @Bean
+    public ReadWriteRoutingDataSource readWriteRoutingDataSource(DataSourceProperties properties,
+                                                                 DataSourceRoutingConfig routingConfig,
+                                                                 Environment environment) {
+        List<DataSourceRoutingConfig.Replica> replicaConfigs = routingConfig.getReplicas();
+        if (replicaConfigs.isEmpty()) {
+            throw new IllegalStateException("已启用读写分离但未配置从库：app.datasource-routing.replicas");
+        }
+        DataSource primary = createDataSource(properties, environment,
+                properties.determineUrl(), properties.determineUsername(), properties.determinePassword());
+        Map<String, DataSource> replicas = new LinkedHashMap<>();
+        for (int i = 0; i < replicaConfigs.size(); i++) {
+            DataSourceRoutingConfig.Replica replica = replicaConfigs.get(i);
+            String name = StringUtils.hasText(replica.getName()) ? replica.getName() : "replica-" + i;
+            if (!StringUtils.hasText(replica.getUrl())) {
+                throw new IllegalStateException("从库未配置连接地址：" + name);
+            }
+            String username = replica.getUsername() != null ? replica.getUsername() : properties.determineUsername();
+            String password = replica.getPassword() != null ? replica.getPassword() : properties.determinePassword();
+            replicas.put(name, createDataSource(properties, environment, replica.getUrl(), username, password));
+        }
+        log.info("启用读写分离：replicas={}, maxLag={}ms, stickyWindow={}ms",
+                replicas.keySet(), routingConfig.getMaxLag(), routingConfig.getStickyWindow());
+        return new ReadWriteRoutingDataSource(primary, replicas);
+    }
+
+    /**
+     * 连接在第一条语句执行时才获取，此时事务状态与读路由均已确定；
+     * 事务内只用到缓存、未执行语句时也不会占用连接。启用分片时由 {@link ShardingDataSourceConfig} 以读写分离数据源为主库另行包裹
+     */
+    @Bean
+    @Primary
+    @ConditionalOnProperty(prefix = "app.sharding", name = "enabled", havingValue = "false", matchIfMissing = true)
+    public DataSource dataSource(ReadWriteRoutingDataSource readWriteRoutingDataSource) {
+        return new LazyConnectionDataSourceProxy(readWriteRoutingDataSource);
+    }
+
+    @Bean
+    public ReplicaLagMonitor replicaLagMonitor(ReadWriteRoutingDataSource readWriteRoutingDataSource,
+                                               DataSourceRoutingConfig routingConfig, MeterRegistry meterRegistry) {
+        return new ReplicaLagMonitor(readWriteRoutingDataSource, routingConfig, meterRegistry);
+    }
+
+    static DataSource createDataSource(DataSourceProperties properties, Environment environment,
+                                               String url, String username, String password) {
+        DataSource dataSource = properties.initializeDataSourceBuilder()
+                .url(url)
+                .username(username)
+                .password(password)
+                .build();
+        Binder.get(environment).bind(POOL_PROPERTIES_PREFIX, Bindable.ofInstance(dataSource));
+        return dataSource;
+    }
+}
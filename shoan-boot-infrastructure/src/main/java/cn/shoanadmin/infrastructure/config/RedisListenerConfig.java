@@ -0,0 +1,45 @@
+package cn.shoanadmin.infrastructure.config;
+
+import cn.shoanadmin.common.config.AppCacheConfig;
+import cn.shoanadmin.common.config.JwtConfig;
+import cn.shoanadmin.infrastructure.cache.TokenRevocationCache;
+import cn.shoanadmin.infrastructure.cache.TokenRevocationListener;
+import cn.shoanadmin.infrastructure.cache.UserCacheInvalidationListener;
+import cn.shoanadmin.infrastructure.cache.WechatUserCache;
+import cn.shoanadmin.infrastructure.cache.WechatUserRedisCache;
+import cn.shoanadmin.infrastructure.datasource.ReplicaReadRouter;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+/**
+ * Redis订阅配置类
+ * 注册跨节点通知的订阅容器：用户缓存失效通知、令牌吊销通知
+ *
+ * @author FruitPieces
+ * @since 2024-01-20
+ */
+@Configuration
+public class RedisListenerConfig {
+
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory connectionFactory,
+                                                                       AppCacheConfig cacheConfig,
+                                                                       JwtConfig jwtConfig,
+                                                                       WechatUserCache wechatUserCache,
+                                                                       WechatUserRedisCache wechatUserRedisCache,
+                                                                       TokenRevocationCache tokenRevocationCache,
+                                                                       ReplicaReadRouter replicaReadRouter) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        if (wechatUserRedisCache.isEnabled()) {
+            container.addMessageListener(new UserCacheInvalidationListener(wechatUserCache, wechatUserRedisCache, replicaReadRouter),
+                    new ChannelTopic(cacheConfig.getUserInvalidateChannel()));
+        }
+        container.addMessageListener(new TokenRevocationListener(tokenRevocationCache),
+                new ChannelTopic(jwtConfig.getRevocation().getChannel()));
+        return container;
+    }
+}
@@ -0,0 +1,83 @@
+package cn.shoanadmin.infrastructure.config;
+
+import cn.shoanadmin.common.config.ShardingConfig;
+import cn.shoanadmin.infrastructure.datasource.ReadWriteRoutingDataSource;
+import cn.shoanadmin.infrastructure.sharding.ShardRoutingDataSource;
+import cn.shoanadmin.infrastructure.sharding.UserShardRouter;
+import com.baomidou.mybatisplus.extension.plugins.MybatisPlusInterceptor;
+import com.baomidou.mybatisplus.extension.plugins.inner.DynamicTableNameInnerInterceptor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.util.StringUtils;
+
+import javax.sql.DataSource;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 用户分片数据源配置类
+ * app.sharding.enabled=true 时生效：主库沿用 spring.datasource（启用读写分离时为读写分离数据源），
+ * 其他分片数据源按 app.sharding.data-sources 创建，连接池参数沿用 spring.datasource.druid。
+ * 分片数据源不参与读写分离，其上的读写都访问该数据源本身
+ *
+ * @author FruitPieces
+ * @since 2024-01-20
+ */
+@Slf4j
+@Configuration
+@ConditionalOnProperty(prefix = "app.sharding", name = "enabled", havingValue = "true")
+public class ShardingDataSourceConfig {
+
+    @Bean
+    public ShardRoutingDataSource shardRoutingDataSource(DataSourceProperties properties,
+                                                         ShardingConfig shardingConfig,
+                                                         Environment environment,
+                                                         ObjectProvider<ReadWriteRoutingDataSource> readWriteProvider) {
+        ReadWriteRoutingDataSource readWrite = readWriteProvider.getIfAvailable();
+        DataSource primary = readWrite != null ? readWrite : ReadWriteDataSourceConfig.createDataSource(properties,
+                environment, properties.determineUrl(), properties.determineUsername(), properties.determinePassword());
+        Map<String, DataSource> dataSources = new LinkedHashMap<>();
+        for (ShardingConfig.ShardDataSource config : shardingConfig.getDataSources()) {
+            if (!StringUtils.hasText(config.getName()) || !StringUtils.hasText(config.getUrl())) {
+                throw new IllegalStateException("分片数据源未配置名称或连接地址：" + config.getName());
+            }
+            if (dataSources.containsKey(config.getName())) {
+                throw new IllegalStateException("分片数据源名称重复：" + config.getName());
+            }
+            String username = config.getUsername() != null ? config.getUsername() : properties.determineUsername();
+            String password = config.getPassword() != null ? config.getPassword() : properties.determinePassword();
+            dataSources.put(config.getName(), ReadWriteDataSourceConfig.createDataSource(properties, environment,
+                    config.getUrl(), username, password));
+        }
+        log.info("创建分片数据源：primary={}, dataSources={}",
+                readWrite != null ? "读写分离" : "spring.datasource", dataSources.keySet());
+        return new ShardRoutingDataSource(primary, readWrite == null, dataSources);
+    }
+
+    /**
+     * 连接在第一条语句执行时才获取，此时分片路由已确定
+     */
+    @Bean
+    @Primary
+    public DataSource dataSource(ShardRoutingDataSource shardRoutingDataSource) {
+        return new LazyConnectionDataSourceProxy(shardRoutingDataSource);
+    }
+
+    /**
+     * SQL中的 wechat_user 按当前分片替换为物理表
+     */
+    @Bean
+    public MybatisPlusInterceptor mybatisPlusInterceptor() {
+        MybatisPlusInterceptor interceptor = new MybatisPlusInterceptor();
+        interceptor.addInnerInterceptor(new DynamicTableNameInnerInterceptor(
+                (sql, tableName) -> UserShardRouter.physicalTable(tableName)));
+        return interceptor;
+    }
+}
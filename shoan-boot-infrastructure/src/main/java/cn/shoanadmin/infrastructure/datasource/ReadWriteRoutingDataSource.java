@@ -0,0 +1,145 @@
+package cn.shoanadmin.infrastructure.datasource;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * 读写分离路由数据源
+ * 默认路由到主库；只有在 {@link #readFrom} 范围内且不处于事务中的语句才路由到指定从库，事务内的读写始终走主库。
+ * 外层需包一层LazyConnectionDataSourceProxy，使连接在第一条语句执行时才按当时的路由获取。
+ * 参与读轮询的从库由 {@link ReplicaLagMonitor} 按复制延迟维护
+ *
+ * @author FruitPieces
+ * @since 2024-01-20
+ */
+@Slf4j
+public class ReadWriteRoutingDataSource extends AbstractRoutingDataSource implements AutoCloseable {
+
+    public static final String PRIMARY = "primary";
+
+    private static final ThreadLocal<String> CURRENT_REPLICA = new ThreadLocal<>();
+
+    private final DataSource primary;
+    private final Map<String, DataSource> replicas;
+    private final AtomicInteger cursor = new AtomicInteger();
+
+    /**
+     * 参与读轮询的从库名称，探测到延迟正常前为空
+     */
+    private volatile String[] available = new String[0];
+
+    /**
+     * @param primary  主库
+     * @param replicas 从库，按名称索引，名称不能为 {@link #PRIMARY}
+     */
+    public ReadWriteRoutingDataSource(DataSource primary, Map<String, DataSource> replicas) {
+        if (replicas.containsKey(PRIMARY)) {
+            throw new IllegalArgumentException("从库名称不能为" + PRIMARY);
+        }
+        this.primary = primary;
+        this.replicas = Collections.unmodifiableMap(replicas);
+        Map<Object, Object> targets = new HashMap<>(replicas);
+        targets.put(PRIMARY, primary);
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+        setLenientFallback(false);
+        initialize();
+    }
+
+    public DataSource getPrimary() {
+        return primary;
+    }
+
+    public Map<String, DataSource> getReplicas() {
+        return replicas;
+    }
+
+    /**
+     * 按轮询选择一个可用从库
+     *
+     * @return 从库名称，没有可用从库时返回null
+     */
+    public String nextReplica() {
+        String[] names = available;
+        if (names.length == 0) {
+            return null;
+        }
+        return names[(cursor.getAndIncrement() & Integer.MAX_VALUE) % names.length];
+    }
+
+    /**
+     * 在指定从库上执行查询，事务中执行时仍走主库
+     *
+     * @param replica 从库名称
+     * @param query   查询
+     * @return 查询结果
+     */
+    public <T> T readFrom(String replica, Supplier<T> query) {
+        String previous = CURRENT_REPLICA.get();
+        CURRENT_REPLICA.set(replica);
+        try {
+            return query.get();
+        } finally {
+            if (previous == null) {
+                CURRENT_REPLICA.remove();
+            } else {
+                CURRENT_REPLICA.set(previous);
+            }
+        }
+    }
+
+    /**
+     * 更新参与读轮询的从库
+     *
+     * @param names 从库名称
+     */
+    public void setAvailableReplicas(Collection<String> names) {
+        this.available = names.stream().filter(replicas::containsKey).toArray(String[]::new);
+    }
+
+    /**
+     * 从库查询失败时移出读轮询，下次探测正常后恢复
+     *
+     * @param name 从库名称
+     */
+    public void markUnavailable(String name) {
+        String[] names = available;
+        String[] remaining = Arrays.stream(names).filter(n -> !n.equals(name)).toArray(String[]::new);
+        if (remaining.length != names.length) {
+            this.available = remaining;
+            log.warn("从库移出读轮询：{}", name);
+        }
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        String replica = CURRENT_REPLICA.get();
+        return replica == null || TransactionSynchronizationManager.isActualTransactionActive() ? PRIMARY : replica;
+    }
+
+    @Override
+    public void close() {
+        replicas.forEach(ReadWriteRoutingDataSource::closeQuietly);
+        closeQuietly(PRIMARY, primary);
+    }
+
+    private static void closeQuietly(String name, DataSource dataSource) {
+        if (dataSource instanceof AutoCloseable closeable) {
+            try {
+                closeable.close();
+            } catch (Exception e) {
+                log.warn("关闭数据源失败：{}, {}", name, e.getMessage());
+            }
+        }
+    }
+}
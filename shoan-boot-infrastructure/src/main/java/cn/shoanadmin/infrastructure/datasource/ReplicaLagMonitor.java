@@ -0,0 +1,140 @@
+package cn.shoanadmin.infrastructure.datasource;
+
+import cn.shoanadmin.common.config.DataSourceRoutingConfig;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 从库复制延迟探测
+ * 各节点定时向主库心跳表写入当前时间（只增不减，节点间时钟偏差不会使心跳倒退），再从各从库读回心跳：
+ * 延迟 = 本节点上次写入的心跳 - 从库中的心跳，测量精度为一个探测间隔。
+ * 延迟不超过 maxLag 的从库参与读轮询，超出、心跳缺失或查询失败的从库移出，恢复后自动加回。心跳表需在主库创建并随复制同步到从库：
+ * CREATE TABLE ds_heartbeat (id INT NOT NULL PRIMARY KEY, heartbeat_time BIGINT NOT NULL);
+ *
+ * @author FruitPieces
+ * @since 2024-01-20
+ */
+@Slf4j
+public class ReplicaLagMonitor {
+
+    private static final String UPDATE_HEARTBEAT =
+            "UPDATE ds_heartbeat SET heartbeat_time = GREATEST(heartbeat_time, ?) WHERE id = 1";
+    private static final String INSERT_HEARTBEAT = "INSERT INTO ds_heartbeat (id, heartbeat_time) VALUES (1, ?)";
+    private static final String SELECT_HEARTBEAT = "SELECT heartbeat_time FROM ds_heartbeat WHERE id = 1";
+
+    private final ReadWriteRoutingDataSource routingDataSource;
+    private final DataSourceRoutingConfig config;
+
+    /**
+     * 各从库最近一次测得的延迟（毫秒），-1表示未知
+     */
+    private final Map<String, Long> lags = new ConcurrentHashMap<>();
+
+    /**
+     * 本节点上次成功写入的心跳，0表示尚未写入
+     */
+    private volatile long lastHeartbeat;
+
+    public ReplicaLagMonitor(ReadWriteRoutingDataSource routingDataSource, DataSourceRoutingConfig config,
+                             MeterRegistry meterRegistry) {
+        this.routingDataSource = routingDataSource;
+        this.config = config;
+        routingDataSource.getReplicas().keySet().forEach(name -> {
+            lags.put(name, -1L);
+            Gauge.builder("datasource.routing.replica.lag", lags, map -> map.getOrDefault(name, -1L))
+                    .description("从库复制延迟（毫秒），-1表示未知")
+                    .tag("replica", name)
+                    .baseUnit("milliseconds")
+                    .register(meterRegistry);
+        });
+        if (config.getStickyWindow() < config.getMaxLag() + config.getLagProbeInterval()) {
+            log.warn("app.datasource-routing.sticky-window({}ms)小于 max-lag + lag-probe-interval({}ms)，写后读可能读到旧数据",
+                    config.getStickyWindow(), config.getMaxLag() + config.getLagProbeInterval());
+        }
+    }
+
+    /**
+     * 先用上一轮写入的心跳评估各从库，再写入本轮心跳
+     */
+    @Scheduled(fixedDelayString = "${app.datasource-routing.lag-probe-interval:1000}")
+    public void probe() {
+        long heartbeat = lastHeartbeat;
+        List<String> available = new ArrayList<>();
+        routingDataSource.getReplicas().forEach((name, dataSource) -> {
+            long lag = heartbeat == 0 ? -1 : measureLag(name, dataSource, heartbeat);
+            long previous = lags.put(name, lag);
+            boolean healthy = lag >= 0 && lag <= config.getMaxLag();
+            boolean wasHealthy = previous >= 0 && previous <= config.getMaxLag();
+            if (healthy) {
+                available.add(name);
+                if (!wasHealthy) {
+                    log.info("从库加入读轮询：{}, lag={}ms", name, lag);
+                }
+            } else if (wasHealthy) {
+                log.warn("从库移出读轮询：{}, lag={}ms", name, lag);
+            }
+        });
+        routingDataSource.setAvailableReplicas(available);
+        writeHeartbeat();
+    }
+
+    /**
+     * 最近一次测得的各从库延迟
+     *
+     * @return 从库名称到延迟（毫秒）的映射，-1表示未知
+     */
+    public Map<String, Long> getLags() {
+        return Map.copyOf(lags);
+    }
+
+    private long measureLag(String name, DataSource dataSource, long heartbeat) {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(SELECT_HEARTBEAT)) {
+            statement.setQueryTimeout(config.getLagProbeTimeout());
+            try (ResultSet resultSet = statement.executeQuery()) {
+                if (!resultSet.next()) {
+                    log.warn("从库心跳缺失：{}", name);
+                    return -1;
+                }
+                return Math.max(0, heartbeat - resultSet.getLong(1));
+            }
+        } catch (SQLException e) {
+            log.warn("探测从库延迟失败：{}, {}", name, e.getMessage());
+            return -1;
+        }
+    }
+
+    private void writeHeartbeat() {
+        long now = System.currentTimeMillis();
+        try (Connection connection = routingDataSource.getPrimary().getConnection()) {
+            int updated;
+            try (PreparedStatement statement = connection.prepareStatement(UPDATE_HEARTBEAT)) {
+                statement.setQueryTimeout(config.getLagProbeTimeout());
+                statement.setLong(1, now);
+                updated = statement.executeUpdate();
+            }
+            if (updated == 0) {
+                // 首次写入；多个节点同时插入时主键冲突，下一轮改为更新
+                try (PreparedStatement statement = connection.prepareStatement(INSERT_HEARTBEAT)) {
+                    statement.setLong(1, now);
+                    statement.executeUpdate();
+                }
+            }
+            lastHeartbeat = now;
+        } catch (SQLException e) {
+            log.warn("写入主库心跳失败：{}", e.getMessage());
+        }
+    }
+}
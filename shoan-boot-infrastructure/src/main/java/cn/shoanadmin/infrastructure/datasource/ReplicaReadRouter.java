@@ -0,0 +1,118 @@
+package cn.shoanadmin.infrastructure.datasource;
+
+import cn.shoanadmin.common.config.DataSourceRoutingConfig;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.function.Supplier;
+
+/**
+ * 从库读路由
+ * 未启用读写分离时直接执行查询（走主库）；启用后按用户选择读库：
+ * 用户最近 stickyWindow 内有过写操作（本节点写入或收到其他节点的缓存失效通知）时读主库，保证读到自己的写入；
+ * 否则轮询一个延迟正常的从库，从库查询失败时移出读轮询并改读主库
+ *
+ * @author FruitPieces
+ * @since 2024-01-20
+ */
+@Slf4j
+@Component
+public class ReplicaReadRouter {
+
+    private final ReadWriteRoutingDataSource routingDataSource;
+    private final Cache<String, Boolean> recentWrites;
+    private final Counter replicaReads;
+    private final Counter primaryReads;
+    private final Counter replicaFailures;
+
+    public ReplicaReadRouter(DataSourceRoutingConfig config,
+                             ObjectProvider<ReadWriteRoutingDataSource> routingDataSourceProvider,
+                             MeterRegistry meterRegistry) {
+        this.routingDataSource = routingDataSourceProvider.getIfAvailable();
+        this.recentWrites = Caffeine.newBuilder()
+                .maximumSize(config.getStickyMaxSize())
+                .expireAfterWrite(Duration.ofMillis(config.getStickyWindow()))
+                .build();
+        this.replicaReads = Counter.builder("datasource.routing.reads")
+                .description("按用户路由的读查询数")
+                .tag("target", "replica")
+                .register(meterRegistry);
+        this.primaryReads = Counter.builder("datasource.routing.reads")
+                .description("按用户路由的读查询数")
+                .tag("target", "primary")
+                .register(meterRegistry);
+        this.replicaFailures = Counter.builder("datasource.routing.replica.failures")
+                .description("从库查询失败后改读主库的次数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 执行用户数据的读查询
+     *
+     * @param key   用户标识（用户ID或openid），与 {@link #markWritten} 传入的标识对应
+     * @param query 查询
+     * @return 查询结果
+     */
+    public <T> T read(String key, Supplier<T> query) {
+        if (routingDataSource == null) {
+            return query.get();
+        }
+        boolean primaryOnly = TransactionSynchronizationManager.isActualTransactionActive()
+                || key != null && recentWrites.getIfPresent(key) != null;
+        String replica = primaryOnly ? null : routingDataSource.nextReplica();
+        if (replica == null) {
+            primaryReads.increment();
+            return query.get();
+        }
+        try {
+            T result = routingDataSource.readFrom(replica, query);
+            replicaReads.increment();
+            return result;
+        } catch (DataAccessException e) {
+            replicaFailures.increment();
+            routingDataSource.markUnavailable(replica);
+            log.warn("从库查询失败，改读主库：replica={}, {}", replica, e.getMostSpecificCause().getMessage());
+            primaryReads.increment();
+            return query.get();
+        }
+    }
+
+    /**
+     * 记录用户的写操作，stickyWindow 内该用户的读查询走主库
+     * 若当前处于事务中，事务结束后重新开始计时，避免提交耗时挤占窗口
+     *
+     * @param userId 用户ID，可为null
+     * @param openid 微信openid，可为null
+     */
+    public void markWritten(String userId, String openid) {
+        if (routingDataSource == null) {
+            return;
+        }
+        Runnable mark = () -> {
+            if (userId != null) {
+                recentWrites.put(userId, Boolean.TRUE);
+            }
+            if (openid != null) {
+                recentWrites.put(openid, Boolean.TRUE);
+            }
+        };
+        mark.run();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    mark.run();
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package cn.shoanadmin.infrastructure.id;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * 号段ID分配器（双缓冲）
+ * 每次从号段表预留 step 个连续ID，在内存中通过AtomicLong逐个发放；当前号段使用到 prefetchRatio 时异步预留下一号段，
+ * 当前号段用尽时直接切换，通常无需等待数据库。预取失败时在号段用尽后同步预留。
+ * 单个节点内发放的ID严格递增，节点间号段互不重叠；节点重启时未发放完的号段被跳过
+ *
+ * @author FruitPieces
+ * @since 2024-01-20
+ */
+@Slf4j
+public final class SegmentIdAllocator {
+
+    private final LongSupplier reserver;
+    private final long step;
+    private final long prefetchOffset;
+    private final Executor prefetchExecutor;
+    private final ReentrantLock switchLock = new ReentrantLock();
+
+    private volatile Segment current = new Segment(1, 0, 0);
+
+    /**
+     * @param reserver         预留号段，返回预留后的最大ID，本次号段为 (返回值 - step, 返回值]
+     * @param step             每次预留的ID数量
+     * @param prefetchRatio    触发预取的使用比例，取值 (0, 1]
+     * @param prefetchExecutor 执行异步预取的线程池
+     */
+    public SegmentIdAllocator(LongSupplier reserver, int step, double prefetchRatio, Executor prefetchExecutor) {
+        if (step <= 0) {
+            throw new IllegalArgumentException("号段步长必须大于0: " + step);
+        }
+        if (prefetchRatio <= 0 || prefetchRatio > 1) {
+            throw new IllegalArgumentException("预取比例取值范围(0, 1]: " + prefetchRatio);
+        }
+        this.reserver = reserver;
+        this.step = step;
+        this.prefetchOffset = Math.max(0, (long) (step * prefetchRatio) - 1);
+        this.prefetchExecutor = prefetchExecutor;
+    }
+
+    /**
+     * 分配下一个ID
+     *
+     * @return ID，恒为正数
+     */
+    public long nextId() {
+        while (true) {
+            Segment segment = current;
+            long id = segment.cursor.getAndIncrement();
+            if (id <= segment.max) {
+                // 每个号段只有一个线程取到预取位置的ID，预取只触发一次
+                if (id == segment.prefetchAt) {
+                    prefetch(segment);
+                }
+                return id;
+            }
+            switchSegment(segment);
+        }
+    }
+
+    /**
+     * 预取结果挂在触发预取的号段上，切换时只使用用尽号段自己的预取结果：
+     * 预取提交晚于切换时（当前号段已同步预留了更大的号段），晚到的结果随旧号段丢弃，不会让ID倒退
+     */
+    private void prefetch(Segment segment) {
+        try {
+            segment.next = CompletableFuture.supplyAsync(this::reserve, prefetchExecutor);
+        } catch (RuntimeException e) {
+            log.warn("提交号段预取失败，号段用尽后同步预留：{}", e.getMessage());
+        }
+    }
+
+    /**
+     * 当前号段用尽时切换到预取的号段，未预取或预取失败时同步预留
+     */
+    private void switchSegment(Segment exhausted) {
+        switchLock.lock();
+        try {
+            if (current != exhausted) {
+                return;
+            }
+            Segment segment = null;
+            CompletableFuture<Segment> prefetched = exhausted.next;
+            if (prefetched != null) {
+                try {
+                    segment = prefetched.join();
+                } catch (CompletionException e) {
+                    log.warn("号段预取失败，同步预留：{}", e.getCause() == null ? e.getMessage() : e.getCause().getMessage());
+                }
+            }
+            current = segment != null ? segment : reserve();
+        } finally {
+            switchLock.unlock();
+        }
+    }
+
+    private Segment reserve() {
+        long max = reserver.getAsLong();
+        long start = max - step + 1;
+        if (start <= 0) {
+            throw new IllegalStateException("号段预留结果无效：maxId=" + max + ", step=" + step);
+        }
+        log.debug("预留号段：[{}, {}]", start, max);
+        return new Segment(start, max, start + prefetchOffset);
+    }
+
+    private static final class Segment {
+
+        private final AtomicLong cursor;
+        private final long max;
+        private final long prefetchAt;
+        private volatile CompletableFuture<Segment> next;
+
+        private Segment(long start, long max, long prefetchAt) {
+            this.cursor = new AtomicLong(start);
+            this.max = max;
+            this.prefetchAt = prefetchAt;
+        }
+    }
+}
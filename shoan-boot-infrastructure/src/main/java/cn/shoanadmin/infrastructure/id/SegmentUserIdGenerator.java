@@ -0,0 +1,83 @@
+package cn.shoanadmin.infrastructure.id;
+
+import cn.shoanadmin.common.config.IdGeneratorConfig;
+import cn.shoanadmin.common.util.UidGenerator;
+import cn.shoanadmin.domain.entity.IdSegment;
+import cn.shoanadmin.infrastructure.mapper.IdSegmentMapper;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 基于数据库号段的用户ID生成
+ * 适用于无法协调工作节点ID的部署：各节点从 id_segment 表预留互不重叠的号段，ID在节点内递增且整体紧凑，
+ * 不依赖时钟与Redis；业务标识行不存在时自动创建
+ *
+ * @author FruitPieces
+ * @since 2024-01-20
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "app.id-generator", name = "type", havingValue = "segment")
+public class SegmentUserIdGenerator implements UserIdGenerator {
+
+    private final IdGeneratorConfig config;
+    private final IdSegmentMapper idSegmentMapper;
+    private final TransactionTemplate transactionTemplate;
+    private final ExecutorService prefetchExecutor;
+    private final SegmentIdAllocator allocator;
+
+    public SegmentUserIdGenerator(IdGeneratorConfig config, IdSegmentMapper idSegmentMapper,
+                                  PlatformTransactionManager transactionManager) {
+        this.config = config;
+        this.idSegmentMapper = idSegmentMapper;
+        // 号段可能在调用方的事务中同步预留，使用独立事务避免行锁持有到调用方提交
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.prefetchExecutor = Executors.newSingleThreadExecutor(
+                Thread.ofPlatform().name("id-segment-prefetch").daemon(true).factory());
+        this.allocator = new SegmentIdAllocator(this::reserve, config.getSegmentStep(),
+                config.getSegmentPrefetchRatio(), prefetchExecutor);
+        log.info("初始化号段用户ID生成器：bizTag={}, step={}, prefetchRatio={}",
+                config.getSegmentBizTag(), config.getSegmentStep(), config.getSegmentPrefetchRatio());
+    }
+
+    @Override
+    public String nextUserId(String openid) {
+        return UidGenerator.formatUserId(allocator.nextId(), UidGenerator.shardBucket(openid));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        prefetchExecutor.shutdownNow();
+    }
+
+    private long reserve() {
+        Long maxId = transactionTemplate.execute(status -> {
+            IdSegment segment = IdSegment.builder()
+                    .bizTag(config.getSegmentBizTag())
+                    .step(config.getSegmentStep())
+                    .updatedTime(System.currentTimeMillis())
+                    .build();
+            if (idSegmentMapper.reserve(segment) == 0) {
+                log.info("号段业务标识不存在，创建：bizTag={}", segment.getBizTag());
+                idSegmentMapper.insertIfAbsent(segment);
+                if (idSegmentMapper.reserve(segment) == 0) {
+                    throw new IllegalStateException("预留号段失败：bizTag=" + segment.getBizTag());
+                }
+            }
+            return segment.getMaxId();
+        });
+        if (maxId == null) {
+            throw new IllegalStateException("预留号段失败：bizTag=" + config.getSegmentBizTag());
+        }
+        return maxId;
+    }
+}
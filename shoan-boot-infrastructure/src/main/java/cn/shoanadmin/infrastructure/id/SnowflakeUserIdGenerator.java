@@ -0,0 +1,213 @@
+package cn.shoanadmin.infrastructure.id;
+
+import cn.shoanadmin.common.config.IdGeneratorConfig;
+import cn.shoanadmin.common.util.SnowflakeIdGenerator;
+import cn.shoanadmin.common.util.UidGenerator;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 基于Snowflake的用户ID生成，默认实现
+ * 工作节点ID优先使用配置值；未配置时在Redis中以 SET NX 抢占 id:worker:{n} 租约并定时续约，
+ * 租约丢失时重新抢占新的节点ID。租约只在最近一次抢占或续约成功后的租约时长内有效，
+ * 未取得租约或租约过期时拒绝生成ID，并在续约任务中持续重新抢占；
+ * 开启 allow-unleased-worker 时改为按主机名与进程号散列出节点ID继续生成，此时不保证节点间不冲突
+ *
+ * @author FruitPieces
+ * @since 2024-01-20
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "app.id-generator", name = "type", havingValue = "snowflake", matchIfMissing = true)
+public class SnowflakeUserIdGenerator implements UserIdGenerator {
+
+    private static final String WORKER_KEY_PREFIX = "id:worker:";
+
+    /**
+     * 租约仍属于当前节点时续期
+     */
+    private static final RedisScript<Long> RENEW_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then return redis.call('EXPIRE', KEYS[1], ARGV[2]) end "
+                    + "return 0", Long.class);
+
+    /**
+     * 租约仍属于当前节点时释放
+     */
+    private static final RedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then return redis.call('DEL', KEYS[1]) end "
+                    + "return 0", Long.class);
+
+    private final IdGeneratorConfig config;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final String nodeId = UUID.randomUUID().toString();
+    private final Counter unleasedRejections;
+
+    private volatile SnowflakeIdGenerator generator;
+    private volatile boolean leased;
+
+    /**
+     * 租约有效期截止时间（毫秒），配置了工作节点ID时为 Long.MAX_VALUE，未取得租约时为0
+     */
+    private volatile long leaseValidUntil;
+
+    public SnowflakeUserIdGenerator(IdGeneratorConfig config, StringRedisTemplate stringRedisTemplate,
+                                    MeterRegistry meterRegistry) {
+        this.config = config;
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.unleasedRejections = Counter.builder("id.generator.unleased_rejections")
+                .description("未取得工作节点ID租约而拒绝生成用户ID的次数")
+                .register(meterRegistry);
+        Gauge.builder("id.generator.worker_leased", this, generator -> generator.hasValidWorkerId() ? 1 : 0)
+                .description("工作节点ID是否有效（配置值或租约有效期内），为0时拒绝生成或使用可能冲突的散列节点ID")
+                .register(meterRegistry);
+        if (config.getWorkerId() >= 0) {
+            this.leaseValidUntil = Long.MAX_VALUE;
+            this.generator = newGenerator(config.getWorkerId());
+        } else {
+            Lease lease = acquireLease();
+            this.generator = newGenerator(lease != null ? lease.workerId() : hashedWorkerId());
+            if (lease != null) {
+                this.leased = true;
+                this.leaseValidUntil = lease.validUntil();
+            }
+        }
+        log.info("初始化用户ID生成器：workerId={}, leased={}", generator.getWorkerId(), leased);
+    }
+
+    /**
+     * @throws IllegalStateException 未取得工作节点ID租约且不允许使用散列节点ID
+     */
+    @Override
+    public String nextUserId(String openid) {
+        if (!hasValidWorkerId() && !Boolean.TRUE.equals(config.getAllowUnleasedWorker())) {
+            unleasedRejections.increment();
+            throw new IllegalStateException("未取得工作节点ID租约，暂停生成用户ID");
+        }
+        return UidGenerator.formatUserId(generator.nextId(), UidGenerator.shardBucket(openid));
+    }
+
+    /**
+     * 续约工作节点ID；未取得租约时重新抢占，租约已被其他节点占用时切换到新的节点ID
+     */
+    @Scheduled(fixedDelayString = "#{${app.id-generator.worker-lease-ttl:60} * 1000 / 3}")
+    public void renewLease() {
+        if (config.getWorkerId() >= 0) {
+            return;
+        }
+        long workerId = generator.getWorkerId();
+        boolean lost = false;
+        if (leased) {
+            long start = System.currentTimeMillis();
+            try {
+                Long renewed = stringRedisTemplate.execute(RENEW_SCRIPT, List.of(WORKER_KEY_PREFIX + workerId),
+                        nodeId, String.valueOf(config.getWorkerLeaseTtl()));
+                if (renewed != null && renewed != 0L) {
+                    leaseValidUntil = start + config.getWorkerLeaseTtl() * 1000;
+                    return;
+                }
+                log.error("工作节点ID租约已丢失，重新分配：workerId={}", workerId);
+                leaseValidUntil = 0L;
+                leased = false;
+                lost = true;
+            } catch (Exception e) {
+                // 租约有效期内继续使用，过期后 nextUserId 拒绝生成，直到续约或重新抢占成功
+                log.warn("续约工作节点ID失败：workerId={}, {}", workerId, e.getMessage());
+                return;
+            }
+        }
+        Lease lease = acquireLease();
+        if (lease != null) {
+            // 先切换生成器再标记租约有效，避免其他线程以旧节点ID生成时被视为有效
+            this.generator = newGenerator(lease.workerId());
+            leased = true;
+            leaseValidUntil = lease.validUntil();
+            log.info("已取得工作节点ID租约：{} -> {}", workerId, lease.workerId());
+        } else if (lost) {
+            // 丢失的节点ID可能已被其他节点占用，允许散列节点ID时也不能继续使用
+            this.generator = newGenerator(hashedWorkerId());
+        }
+    }
+
+    @PreDestroy
+    public void releaseLease() {
+        if (!leased) {
+            return;
+        }
+        try {
+            stringRedisTemplate.execute(RELEASE_SCRIPT, List.of(WORKER_KEY_PREFIX + generator.getWorkerId()), nodeId);
+        } catch (Exception e) {
+            log.warn("释放工作节点ID失败：{}", e.getMessage());
+        }
+    }
+
+    boolean hasValidWorkerId() {
+        return System.currentTimeMillis() < leaseValidUntil;
+    }
+
+    /**
+     * 在Redis中抢占一个空闲的工作节点ID
+     *
+     * @return 租约，全部被占用或Redis不可用时返回null
+     */
+    private Lease acquireLease() {
+        try {
+            long maxWorkers = SnowflakeIdGenerator.MAX_WORKER_ID + 1;
+            long first = ThreadLocalRandom.current().nextLong(maxWorkers);
+            Duration ttl = Duration.ofSeconds(config.getWorkerLeaseTtl());
+            for (long i = 0; i < maxWorkers; i++) {
+                long workerId = (first + i) % maxWorkers;
+                long start = System.currentTimeMillis();
+                if (Boolean.TRUE.equals(stringRedisTemplate.opsForValue()
+                        .setIfAbsent(WORKER_KEY_PREFIX + workerId, nodeId, ttl))) {
+                    return new Lease(workerId, start + ttl.toMillis());
+                }
+            }
+            log.error("工作节点ID已全部被占用");
+        } catch (Exception e) {
+            log.warn("通过Redis分配工作节点ID失败：{}", e.getMessage());
+        }
+        if (Boolean.TRUE.equals(config.getAllowUnleasedWorker())) {
+            log.warn("未取得工作节点ID租约，使用散列节点ID继续生成，节点间可能冲突");
+        } else {
+            log.error("未取得工作节点ID租约，暂停生成用户ID，稍后重试");
+        }
+        return null;
+    }
+
+    private SnowflakeIdGenerator newGenerator(long workerId) {
+        return new SnowflakeIdGenerator(workerId, config.getMaxClockBackwardMillis());
+    }
+
+    private static long hashedWorkerId() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            host = "unknown";
+        }
+        String identity = host + "/" + ManagementFactory.getRuntimeMXBean().getPid();
+        return (identity.hashCode() & Integer.MAX_VALUE) % (SnowflakeIdGenerator.MAX_WORKER_ID + 1);
+    }
+
+    /**
+     * 抢占到的工作节点ID与租约有效期截止时间（从发出 SET NX 前开始计算）
+     */
+    private record Lease(long workerId, long validUntil) {
+    }
+}
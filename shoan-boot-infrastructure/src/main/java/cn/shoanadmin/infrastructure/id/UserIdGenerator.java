@@ -0,0 +1,19 @@
+package cn.shoanadmin.infrastructure.id;
+
+/**
+ * 用户ID生成接口
+ * 通过 app.id-generator.type 选择实现：snowflake（默认）或 segment
+ *
+ * @author FruitPieces
+ * @since 2024-01-20
+ */
+public interface UserIdGenerator {
+
+    /**
+     * 生成新用户ID，ID末尾带有openid所属的分片桶
+     *
+     * @param openid 新用户的微信openid
+     * @return 用户ID，格式：FP{13位Crockford Base32}{2位分片桶}
+     */
+    String nextUserId(String openid);
+}
@@ -0,0 +1,243 @@
+package cn.shoanadmin.infrastructure.manager;
+
+import cn.shoanadmin.common.config.LoginWriteBehindConfig;
+import cn.shoanadmin.domain.entity.WechatUser;
+import cn.shoanadmin.infrastructure.mapper.WechatUserMapper;
+import cn.shoanadmin.infrastructure.sharding.UserShard;
+import cn.shoanadmin.infrastructure.sharding.UserShardRouter;
+import com.baomidou.mybatisplus.extension.toolkit.SqlHelper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.logging.Log;
+import org.apache.ibatis.logging.LogFactory;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 登录信息异步批量写入
+ * 登录时间、IP与用户代理先合并到内存中，同一用户多次登录只保留最新一次；
+ * 后台线程在待写入数达到批量大小或到达写入间隔时，以JDBC批量UPDATE在一个事务中写入，登录请求不再等待数据库提交。
+ * 待写入数有上限，超出或组件未运行时 {@link #submit} 返回false，由调用方同步写库；停机时写完剩余数据。
+ * 启用分片时每批按用户所在的分片分组，各分片单独提交；分片桶迁移中的用户留待迁移完成后写入
+ * 异步写入不失效用户缓存，缓存中的登录信息可能滞后，直到缓存过期或用户信息被其他写操作更新
+ *
+ * @author FruitPieces
+ * @since 2024-01-20
+ */
+@Slf4j
+@Component
+public class LoginInfoWriteBehind implements SmartLifecycle {
+
+    private static final String UPDATE_STATEMENT = WechatUserMapper.class.getName() + ".updateLoginInfoById";
+    private static final Log BATCH_LOG = LogFactory.getLog(LoginInfoWriteBehind.class);
+
+    private final LoginWriteBehindConfig config;
+    private final SqlSessionFactory sqlSessionFactory;
+    private final TransactionTemplate transactionTemplate;
+    private final UserShardRouter shardRouter;
+    private final Map<String, WechatUser> pending = new ConcurrentHashMap<>();
+    private final Semaphore flushSignal = new Semaphore(0);
+    private final Timer flushTimer;
+    private final Counter coalescedCounter;
+    private final Counter rejectedCounter;
+    private final Counter failedCounter;
+
+    private volatile boolean running;
+    private volatile Thread flusher;
+
+    public LoginInfoWriteBehind(LoginWriteBehindConfig config, SqlSessionFactory sqlSessionFactory,
+                                PlatformTransactionManager transactionManager, UserShardRouter shardRouter,
+                                MeterRegistry meterRegistry) {
+        this.config = config;
+        this.sqlSessionFactory = sqlSessionFactory;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.shardRouter = shardRouter;
+        Gauge.builder("wechat.user.login.write_behind.pending", pending, Map::size)
+                .description("等待写入的登录信息数")
+                .register(meterRegistry);
+        this.flushTimer = Timer.builder("wechat.user.login.write_behind.flush")
+                .description("批量写入登录信息耗时")
+                .register(meterRegistry);
+        this.coalescedCounter = Counter.builder("wechat.user.login.write_behind.coalesced")
+                .description("被同一用户后续登录合并的登录信息数")
+                .register(meterRegistry);
+        this.rejectedCounter = Counter.builder("wechat.user.login.write_behind.rejected")
+                .description("队列已满回退为同步写入的登录信息数")
+                .register(meterRegistry);
+        this.failedCounter = Counter.builder("wechat.user.login.write_behind.failed")
+                .description("批量写入失败的登录信息数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 提交一次登录信息
+     *
+     * @param loginInfo 登录信息，需包含id、openid、lastLoginTime、lastLoginIp、userAgent、updatedTime
+     * @return true-已接收，稍后异步写入；false-未接收，调用方需同步写库
+     */
+    public boolean submit(WechatUser loginInfo) {
+        if (!running) {
+            return false;
+        }
+        String userId = loginInfo.getId();
+        if (pending.size() >= config.getCapacity() && !pending.containsKey(userId)) {
+            rejectedCounter.increment();
+            return false;
+        }
+        merge(loginInfo);
+        // 停机过程中提交的数据可能错过最后一次写入，撤回后交给调用方同步写
+        if (!running && pending.remove(userId, loginInfo)) {
+            return false;
+        }
+        if (pending.size() >= config.getBatchSize() && flushSignal.availablePermits() == 0) {
+            flushSignal.release();
+        }
+        return true;
+    }
+
+    @Override
+    public void start() {
+        if (!Boolean.TRUE.equals(config.getEnabled())) {
+            return;
+        }
+        running = true;
+        flusher = Thread.ofPlatform().name("login-write-behind").daemon(true).start(this::runFlusher);
+        log.info("登录信息异步写入已启动：capacity={}, batchSize={}, flushInterval={}ms",
+                config.getCapacity(), config.getBatchSize(), config.getFlushInterval());
+    }
+
+    @Override
+    public void stop() {
+        Thread thread = flusher;
+        if (thread == null) {
+            return;
+        }
+        running = false;
+        flushSignal.release();
+        try {
+            thread.join(config.getShutdownTimeout());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!pending.isEmpty()) {
+            log.warn("停机时仍有登录信息未写入：count={}", pending.size());
+        }
+        flusher = null;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return flusher != null;
+    }
+
+    private void runFlusher() {
+        while (running) {
+            try {
+                flushSignal.tryAcquire(config.getFlushInterval(), TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            flush();
+        }
+        long deadline = System.currentTimeMillis() + config.getShutdownTimeout();
+        while (!pending.isEmpty() && System.currentTimeMillis() < deadline && flush()) {
+            // 写完停机前剩余的数据
+        }
+    }
+
+    /**
+     * 分批写入当前所有待写入数据
+     *
+     * @return false-写入失败或有分片桶迁移中的数据，数据已放回等待下次写入
+     */
+    private boolean flush() {
+        List<WechatUser> deferred = new ArrayList<>();
+        try {
+            while (!pending.isEmpty()) {
+                List<WechatUser> batch = takeBatch();
+                batch.removeIf(loginInfo -> !shardRouter.isWritable(loginInfo.getOpenid()) && deferred.add(loginInfo));
+                if (!flushBatch(batch)) {
+                    return false;
+                }
+            }
+            return deferred.isEmpty();
+        } finally {
+            // 迁移中的数据在本轮结束后放回，避免同一轮内反复取出
+            deferred.forEach(this::merge);
+        }
+    }
+
+    /**
+     * 按分片分组写入一批数据，失败的分组放回，其他分组照常提交
+     *
+     * @return false-有分组写入失败
+     */
+    private boolean flushBatch(List<WechatUser> batch) {
+        if (batch.isEmpty()) {
+            return true;
+        }
+        Map<UserShard, List<WechatUser>> groups;
+        try {
+            groups = shardRouter.partitionByOpenid(batch, WechatUser::getOpenid, true);
+        } catch (RuntimeException e) {
+            batch.forEach(this::merge);
+            log.warn("登录信息暂不可写入，稍后重试：count={}, {}", batch.size(), e.getMessage());
+            return false;
+        }
+        boolean flushed = true;
+        for (Map.Entry<UserShard, List<WechatUser>> group : groups.entrySet()) {
+            List<WechatUser> loginInfos = group.getValue();
+            try {
+                flushTimer.record(() -> shardRouter.run(group.getKey(), () ->
+                        transactionTemplate.executeWithoutResult(status ->
+                                SqlHelper.executeBatch(sqlSessionFactory, BATCH_LOG, loginInfos, loginInfos.size(),
+                                        (sqlSession, loginInfo) -> sqlSession.update(UPDATE_STATEMENT, loginInfo)))));
+            } catch (RuntimeException e) {
+                failedCounter.increment(loginInfos.size());
+                loginInfos.forEach(this::merge);
+                log.error("批量写入登录信息失败，稍后重试：shard={}, count={}", group.getKey().getName(),
+                        loginInfos.size(), e);
+                flushed = false;
+            }
+        }
+        return flushed;
+    }
+
+    private List<WechatUser> takeBatch() {
+        int batchSize = config.getBatchSize();
+        List<WechatUser> batch = new ArrayList<>(Math.min(batchSize, pending.size()));
+        Iterator<String> userIds = pending.keySet().iterator();
+        while (batch.size() < batchSize && userIds.hasNext()) {
+            WechatUser loginInfo = pending.remove(userIds.next());
+            if (loginInfo != null) {
+                batch.add(loginInfo);
+            }
+        }
+        return batch;
+    }
+
+    /**
+     * 合并到待写入数据，同一用户保留登录时间较新的一条
+     */
+    private void merge(WechatUser loginInfo) {
+        pending.merge(loginInfo.getId(), loginInfo, (previous, current) -> {
+            coalescedCounter.increment();
+            return current.getLastLoginTime() >= previous.getLastLoginTime() ? current : previous;
+        });
+    }
+}
@@ -0,0 +1,50 @@
+package cn.shoanadmin.infrastructure.manager;
+
+import cn.shoanadmin.domain.dto.UserToken;
+import cn.shoanadmin.infrastructure.mapper.UserTokenMapper;
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class UserTokenManager {
+
+    /**
+     * 令牌状态：失效
+     */
+    public static final int STATUS_REVOKED = 0;
+
+    /**
+     * 用户吊销记录的令牌标识：该用户在记录创建时间之前签发的令牌全部失效
+     */
+    public static final String ALL_TOKENS = "*";
+
+    private final UserTokenMapper userTokenMapper;
+
+    public void saveRevokedToken(UserToken userToken) {
+        log.info("记录已吊销令牌：userId={}", userToken.getUserId());
+        userTokenMapper.insert(userToken);
+    }
+
+    /**
+     * 查询尚未过期的吊销记录，只取用户ID、令牌ID、过期时间与创建时间
+     * 令牌ID为 {@link #ALL_TOKENS} 的记录是用户吊销记录，创建时间即吊销时间
+     *
+     * @param now 当前时间
+     * @return 吊销记录
+     */
+    public List<UserToken> listUnexpiredRevokedTokens(LocalDateTime now) {
+        LambdaQueryWrapper<UserToken> queryWrapper = new LambdaQueryWrapper<>();
+        queryWrapper.select(UserToken::getUserId, UserToken::getAccessToken, UserToken::getAccessTokenExpiresAt,
+                        UserToken::getCreatedTime)
+                .eq(UserToken::getStatus, STATUS_REVOKED)
+                .gt(UserToken::getAccessTokenExpiresAt, now);
+        return userTokenMapper.selectList(queryWrapper);
+    }
+}
@@ -1,45 +1,458 @@
 package cn.shoanadmin.infrastructure.manager;
 
+import cn.shoanadmin.common.config.ShardingConfig;
 import cn.shoanadmin.common.enums.BusinessCodeEnum;
 import cn.shoanadmin.common.exception.BusinessException;
+import cn.shoanadmin.domain.dto.UserExportRow;
+import cn.shoanadmin.domain.dto.UserProfileView;
 import cn.shoanadmin.domain.entity.WechatUser;
+import cn.shoanadmin.infrastructure.cache.WechatUserCache;
+import cn.shoanadmin.infrastructure.datasource.ReplicaReadRouter;
 import cn.shoanadmin.infrastructure.mapper.WechatUserMapper;
-import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import cn.shoanadmin.infrastructure.sharding.UserShard;
+import cn.shoanadmin.infrastructure.sharding.UserShardRouter;
+import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
+import com.baomidou.mybatisplus.extension.toolkit.SqlHelper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.logging.Log;
+import org.apache.ibatis.logging.LogFactory;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.UncategorizedSQLException;
+import org.springframework.jdbc.support.SQLExceptionSubclassTranslator;
+import org.springframework.jdbc.support.SQLExceptionTranslator;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.util.StringUtils;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+
 @Component
 @Slf4j
 @RequiredArgsConstructor
 public class WechatUserManager {
+    private static final String INSERT_BATCH_STATEMENT = WechatUserMapper.class.getName() + ".insertForBatch";
+    private static final String UPDATE_PROFILE_BATCH_STATEMENT = WechatUserMapper.class.getName() + ".updateProfileForBatch";
+    private static final Log BATCH_LOG = LogFactory.getLog(WechatUserManager.class);
+    private static final SQLExceptionTranslator EXPORT_EXCEPTION_TRANSLATOR = new SQLExceptionSubclassTranslator();
+
     private final WechatUserMapper wechatUserMapper;
+    private final WechatUserCache wechatUserCache;
+    private final LoginInfoWriteBehind loginInfoWriteBehind;
+    private final ReplicaReadRouter replicaReadRouter;
+    private final SqlSessionFactory sqlSessionFactory;
+    private final TransactionTemplate transactionTemplate;
+    private final UserShardRouter shardRouter;
+    private final ShardingConfig shardingConfig;
 
     public WechatUser findByOpenid(String openid) {
-        log.info("根据openid查询用户：{}", openid);
-        LambdaQueryWrapper<WechatUser> queryWrapper = new LambdaQueryWrapper<>();
-        queryWrapper.eq(WechatUser::getOpenid, openid);
-        WechatUser wechatUser = wechatUserMapper.selectOne(queryWrapper);
-        return wechatUser;
+        return wechatUserCache.getByOpenid(openid, this::loadByOpenid);
     }
 
     public WechatUser findByUserId(String userId) {
-        log.info("根据用户ID查询用户：{}", userId);
-        LambdaQueryWrapper<WechatUser> queryWrapper = new LambdaQueryWrapper<>();
-        queryWrapper.eq(WechatUser::getId, userId);
-        WechatUser wechatUser = wechatUserMapper.selectOne(queryWrapper);
-        return wechatUser;
+        return wechatUserCache.getById(userId, this::loadByUserId);
+    }
+
+    /**
+     * 根据用户ID获取用户资料视图，只查询资料列并单独缓存，用于认证后的请求上下文
+     *
+     * @param userId 用户ID
+     * @return 用户资料，不存在返回null
+     */
+    public UserProfileView findProfileByUserId(String userId) {
+        return wechatUserCache.getProfileById(userId, this::loadProfileByUserId);
     }
 
     public void createUser(WechatUser wechatUser) {
         log.info("创建用户：{}", wechatUser);
-        wechatUserMapper.insert(wechatUser);
+        try {
+            shardRouter.writeByOpenid(wechatUser.getOpenid(), () -> wechatUserMapper.insert(wechatUser));
+        } finally {
+            evict(wechatUser.getId(), wechatUser.getOpenid());
+        }
     }
 
-    public int updateUser(WechatUser wechatUser) {
-        log.info("更新用户：{}", wechatUser);
-        return wechatUserMapper.updateById(wechatUser);
+    /**
+     * 部分更新用户
+     * 在主库（分片所在库）读取当前行逐列比较，UPDATE只包含值有变化的列与 updated_time，全部相同或用户不存在时不执行UPDATE。
+     * 有行被修改或执行失败时失效缓存；没有设置任何列时不访问数据库，没有变化时不失效缓存
+     *
+     * @param update 基于当前用户记录的修改
+     * @return 影响行数，没有设置任何列、没有变化或用户不存在时返回0
+     */
+    public int updateUser(WechatUserUpdate update) {
+        if (!update.hasUpdates()) {
+            log.debug("未设置要更新的列，跳过更新：userId={}", update.getUserId());
+            return 0;
+        }
+        int rows = -1;
+        try {
+            rows = shardRouter.writeByOpenid(update.getOpenid(), () -> {
+                WechatUser stored = wechatUserMapper.selectById(update.getUserId());
+                LambdaUpdateWrapper<WechatUser> wrapper = stored != null ? update.toUpdateWrapper(stored) : null;
+                return wrapper != null ? wechatUserMapper.update(null, wrapper) : 0;
+            });
+            if (rows > 0) {
+                log.info("更新用户：userId={}", update.getUserId());
+            } else {
+                log.info("用户资料无变化或用户不存在，跳过更新：userId={}", update.getUserId());
+            }
+            return rows;
+        } finally {
+            // 执行失败时无法确定是否已写入，同样失效缓存
+            if (rows != 0) {
+                evict(update.getUserId(), update.getOpenid());
+            }
+        }
     }
 
+    /**
+     * 批量创建用户
+     * 按 batchSize 分批以JDBC批量INSERT写入，全部在一个事务中提交；连接串开启 rewriteBatchedStatements 后每批只需一次往返。
+     * 任一用户的ID或openid与已有用户冲突时整体回滚并抛出DuplicateKeyException。新用户不在缓存中，无需失效。
+     * 启用分片时按分片分组，每个分片一个事务，某个分片失败时之前的分片已提交
+     *
+     * @param users     用户列表
+     * @param batchSize 每批条数
+     */
+    public void createUsers(List<WechatUser> users, int batchSize) {
+        if (users.isEmpty()) {
+            return;
+        }
+        log.info("批量创建用户：count={}", users.size());
+        shardRouter.partitionByOpenid(users, WechatUser::getOpenid, true).forEach((shard, shardUsers) ->
+                shardRouter.run(shard, () -> transactionTemplate.executeWithoutResult(status ->
+                        SqlHelper.executeBatch(sqlSessionFactory, BATCH_LOG, shardUsers, batchSize,
+                                (sqlSession, user) -> sqlSession.insert(INSERT_BATCH_STATEMENT, user)))));
+    }
+
+    /**
+     * 批量补全用户资料
+     * 按用户ID更新unionid、昵称、头像、性别、地区与语言，为null的字段保留原值；按 batchSize 分批，全部在一个事务中提交，
+     * 提交后逐个失效缓存。启用分片时按分片分组，每个分片一个事务
+     *
+     * @param users     用户资料，需包含id、openid、updatedTime
+     * @param batchSize 每批条数
+     */
+    public void updateUserProfiles(List<WechatUser> users, int batchSize) {
+        if (users.isEmpty()) {
+            return;
+        }
+        log.info("批量更新用户资料：count={}", users.size());
+        try {
+            shardRouter.partitionByOpenid(users, WechatUser::getOpenid, true).forEach((shard, shardUsers) ->
+                    shardRouter.run(shard, () -> transactionTemplate.executeWithoutResult(status ->
+                            SqlHelper.executeBatch(sqlSessionFactory, BATCH_LOG, shardUsers, batchSize,
+                                    (sqlSession, user) -> sqlSession.update(UPDATE_PROFILE_BATCH_STATEMENT, user)))));
+        } finally {
+            users.forEach(user -> evict(user.getId(), user.getOpenid()));
+        }
+    }
+
+    /**
+     * 根据openid批量查询已有用户，包含已删除用户，始终查询主库
+     *
+     * @param openids 微信openid
+     * @return 用户ID、openid与删除标记
+     */
+    public List<WechatUser> findIdsByOpenids(Collection<String> openids) {
+        if (openids.isEmpty()) {
+            return List.of();
+        }
+        if (!shardRouter.isEnabled()) {
+            return wechatUserMapper.selectIdsByOpenids(openids);
+        }
+        List<WechatUser> users = new ArrayList<>(openids.size());
+        shardRouter.partitionByOpenid(openids, openid -> openid, false).forEach((shard, shardOpenids) ->
+                users.addAll(shardRouter.execute(shard, () -> wechatUserMapper.selectIdsByOpenids(shardOpenids))));
+        return users;
+    }
+
+    /**
+     * 按用户ID顺序导出一页未删除用户
+     * 在读库上单独打开SqlSession逐行遍历游标，不依赖外部事务，本页读完即归还连接，内存中同时只有一行。
+     * 从库查询失败改读主库时，从已交给consumer的最后一个用户之后继续，不会重复输出
+     *
+     * @param afterId  从该用户ID之后开始，null表示从头开始
+     * @param limit    本页最多导出的行数
+     * @param consumer 逐行处理导出记录，抛出异常时中止本页，游标关闭时丢弃本页未读的行
+     * @return 本页导出的行数，小于limit表示已导出到最后一个用户
+     */
+    public int exportUsers(String afterId, int limit, Consumer<UserExportRow> consumer) {
+        if (shardRouter.isEnabled()) {
+            return exportShardedUsers(afterId, limit, consumer);
+        }
+        ExportProgress progress = new ExportProgress(afterId);
+        replicaReadRouter.read(null, () -> readExportPage(progress, limit, consumer));
+        return progress.count;
+    }
+
+    /**
+     * 登录写入
+     * 已有用户且会话密钥未变化时，登录信息交给 {@link LoginInfoWriteBehind} 异步批量写入，本次登录不写库；
+     * 会话密钥变化时一条UPDATE同步更新；新用户一条 INSERT ... ON DUPLICATE KEY UPDATE 插入，并发首次登录不会重复创建。
+     * 已有用户来自Redis缓存时不带会话密钥，比较前从库中单独读取。
+     * upsert的影响行数受驱动 useAffectedRows 配置影响，无法区分插入与主键冲突，插入后统一按openid回查
+     *
+     * @param loginUser 登录用户，id为新用户使用的ID
+     * @return 写入后的用户资料，openid对应的用户已被逻辑删除（或新ID与已有主键冲突）时返回null
+     */
+    public UserProfileView saveLogin(WechatUser loginUser) {
+        String openid = loginUser.getOpenid();
+        WechatUser existing = findByOpenid(openid);
+        if (existing != null && Objects.equals(sessionKeyOf(existing), loginUser.getSessionKey())
+                && loginInfoWriteBehind.submit(loginInfoOf(existing.getId(), loginUser))) {
+            return UserProfileView.of(applyLogin(existing, loginUser));
+        }
+        log.info("登录写入用户：openid={}", openid);
+        UserProfileView user = null;
+        try {
+            user = shardRouter.writeByOpenid(openid, () -> {
+                if (existing != null && wechatUserMapper.updateLoginByOpenid(loginUser) > 0) {
+                    return UserProfileView.of(applyLogin(existing, loginUser));
+                }
+                wechatUserMapper.upsertLogin(loginUser);
+                return wechatUserMapper.selectProfileByOpenid(openid);
+            });
+            return user;
+        } finally {
+            evict(user != null ? user.getId() : null, openid);
+        }
+    }
+
+    /**
+     * 更新登录时间、IP与用户代理，优先异步批量写入，队列已满时同步写库
+     * 异步批量写入与同步写库使用同一条固定列的UPDATE（updateLoginInfoById）：登录时间、IP与用户代理总是一起写入，
+     * 缓存中的登录信息可能滞后，不能据此省略未变化的列，否则库中会出现本次登录时间配上其他登录的IP与用户代理；
+     * 只在新的登录时间晚于库中记录时生效，不会覆盖异步写入的更新登录
+     *
+     * @param update 基于当前用户记录的登录信息修改，未设置任何列时直接返回
+     */
+    public void updateLoginInfo(WechatUserUpdate update) {
+        if (!update.hasUpdates()) {
+            return;
+        }
+        WechatUser loginUser = update.getUpdatedUser();
+        WechatUser loginInfo = loginInfoOf(loginUser.getId(), loginUser);
+        if (loginInfoWriteBehind.submit(loginInfo)) {
+            return;
+        }
+        log.info("同步更新用户登录信息：userId={}", loginUser.getId());
+        try {
+            shardRouter.writeByOpenid(loginUser.getOpenid(), () -> wechatUserMapper.updateLoginInfoById(loginInfo));
+        } finally {
+            evict(loginUser.getId(), loginUser.getOpenid());
+        }
+    }
+
+    /**
+     * 写操作后先标记该用户读主库，再失效缓存，避免缓存被从库中的旧数据回填
+     */
+    private void evict(String userId, String openid) {
+        replicaReadRouter.markWritten(userId, openid);
+        wechatUserCache.evict(userId, openid);
+    }
+
+    /**
+     * 用户的会话密钥：来自Redis的用户不带会话密钥，从库中读取
+     */
+    private String sessionKeyOf(WechatUser user) {
+        if (user.getSessionKey() != null) {
+            return user.getSessionKey();
+        }
+        String openid = user.getOpenid();
+        return replicaReadRouter.read(openid,
+                () -> shardRouter.readByOpenid(openid, () -> wechatUserMapper.selectSessionKeyByOpenid(openid)));
+    }
+
+    /**
+     * 把本次登录写入的字段合并到已有用户上，与 updateLoginByOpenid、upsertLogin 的更新列保持一致
+     */
+    private static WechatUser applyLogin(WechatUser existing, WechatUser loginUser) {
+        existing.setSessionKey(loginUser.getSessionKey());
+        existing.setLastLoginTime(loginUser.getLastLoginTime());
+        existing.setLastLoginIp(loginUser.getLastLoginIp());
+        existing.setUserAgent(loginUser.getUserAgent());
+        existing.setUpdatedTime(loginUser.getUpdatedTime());
+        return existing;
+    }
+
+    private static WechatUser loginInfoOf(String userId, WechatUser loginUser) {
+        return WechatUser.builder()
+                .id(userId)
+                .openid(loginUser.getOpenid())
+                .lastLoginTime(loginUser.getLastLoginTime())
+                .lastLoginIp(loginUser.getLastLoginIp())
+                .userAgent(loginUser.getUserAgent())
+                .updatedTime(loginUser.getUpdatedTime())
+                .build();
+    }
+
+    private ExportProgress readExportPage(ExportProgress progress, int limit, Consumer<UserExportRow> consumer) {
+        try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+            Cursor<UserExportRow> cursor;
+            try {
+                cursor = sqlSession.getMapper(WechatUserMapper.class)
+                        .selectExportPage(progress.lastId, limit - progress.count);
+            } catch (RuntimeException e) {
+                throw translateExportException(e);
+            }
+            try (cursor) {
+                for (UserExportRow row : cursor) {
+                    consumer.accept(row);
+                    progress.lastId = row.getId();
+                    progress.count++;
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } catch (RuntimeException e) {
+                RuntimeException translated = translateExportException(e);
+                if (translated != e) {
+                    // 流式结果集读到一半失败时（如连接中断，SQLState为S1000），驱动与连接池都不认为连接已失效，
+                    // 残留着未读完结果集的连接会被回收，之后借到它的查询全部失败；直接中止该连接，由连接池丢弃
+                    abortConnection(sqlSession);
+                }
+                throw translated;
+            }
+            return progress;
+        }
+    }
+
+    /**
+     * 分片导出：各分片按用户ID顺序分页读取，按用户ID归并，输出顺序与单表导出一致。
+     * 用户ID由大写字母与数字组成，字符串顺序与库中排序一致；每个分片同时只缓存一页，每页单独从读库查询。
+     * 只输出openid当前路由到所在分片的行，迁移后未清理的源分片副本与迁移中目标分片上的副本不会重复导出
+     */
+    private int exportShardedUsers(String afterId, int limit, Consumer<UserExportRow> consumer) {
+        int fetchSize = Math.min(shardingConfig.getMergeFetchSize(), limit);
+        PriorityQueue<ShardExportBuffer> buffers =
+                new PriorityQueue<>(Comparator.comparing((ShardExportBuffer buffer) -> buffer.rows.peekFirst().getId()));
+        for (UserShard shard : shardRouter.getShards()) {
+            ShardExportBuffer buffer = new ShardExportBuffer(shard, afterId);
+            if (fillExportBuffer(buffer, fetchSize)) {
+                buffers.add(buffer);
+            }
+        }
+        int count = 0;
+        while (count < limit && !buffers.isEmpty()) {
+            ShardExportBuffer buffer = buffers.poll();
+            consumer.accept(buffer.rows.pollFirst());
+            count++;
+            if (!buffer.rows.isEmpty() || count < limit && fillExportBuffer(buffer, fetchSize)) {
+                buffers.add(buffer);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 读取分片的下一页，整页都是其他分片的副本时继续读取
+     *
+     * @return false-该分片已读完
+     */
+    private boolean fillExportBuffer(ShardExportBuffer buffer, int fetchSize) {
+        while (!buffer.exhausted) {
+            String afterId = buffer.lastId;
+            List<UserExportRow> rows = replicaReadRouter.read(null, () -> shardRouter.execute(buffer.shard,
+                    () -> wechatUserMapper.selectExportRows(afterId, fetchSize)));
+            buffer.exhausted = rows.size() < fetchSize;
+            if (rows.isEmpty()) {
+                break;
+            }
+            buffer.lastId = rows.get(rows.size() - 1).getId();
+            for (UserExportRow row : rows) {
+                if (shardRouter.ownsOpenid(buffer.shard, row.getOpenid())) {
+                    buffer.rows.add(row);
+                }
+            }
+            if (!buffer.rows.isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 游标遍历中的SQLException只包装为RuntimeException，转换为DataAccessException后从库失败才能改读主库
+     */
+    private static RuntimeException translateExportException(RuntimeException e) {
+        if (e.getCause() instanceof SQLException sqlException && !(e instanceof DataAccessException)) {
+            DataAccessException translated = EXPORT_EXCEPTION_TRANSLATOR.translate("exportUsers", null, sqlException);
+            return translated != null ? translated : new UncategorizedSQLException("exportUsers", null, sqlException);
+        }
+        return e;
+    }
+
+    private static void abortConnection(SqlSession sqlSession) {
+        try {
+            sqlSession.getConnection().abort(Runnable::run);
+        } catch (SQLException | RuntimeException e) {
+            log.warn("中止导出连接失败：{}", e.getMessage());
+        }
+    }
+
+    /**
+     * 缓存未命中时的按键查询使用启动时即已确定SQL的静态语句（XML中的 selectByOpenid 与 MyBatis-Plus 注入的 selectById），
+     * 不再每次构造 LambdaQueryWrapper：省去条件对象、lambda列名解析与动态SQL渲染的开销
+     */
+    private WechatUser loadByOpenid(String openid) {
+        log.info("根据openid查询用户：{}", openid);
+        return replicaReadRouter.read(openid,
+                () -> shardRouter.readByOpenid(openid, () -> wechatUserMapper.selectByOpenid(openid)));
+    }
+
+    private UserProfileView loadProfileByUserId(String userId) {
+        log.info("根据用户ID查询用户资料：{}", userId);
+        return replicaReadRouter.read(userId,
+                () -> shardRouter.readByUserId(userId, () -> wechatUserMapper.selectProfileById(userId),
+                        UserProfileView::getOpenid));
+    }
+
+    private WechatUser loadByUserId(String userId) {
+        log.info("根据用户ID查询用户：{}", userId);
+        return replicaReadRouter.read(userId,
+                () -> shardRouter.readByUserId(userId, () -> wechatUserMapper.selectById(userId),
+                        WechatUser::getOpenid));
+    }
+
+    /**
+     * 导出进度：已交给consumer的最后一个用户ID与行数
+     */
+    private static final class ExportProgress {
+        private String lastId;
+        private int count;
+
+        private ExportProgress(String afterId) {
+            this.lastId = afterId;
+        }
+    }
+
+    /**
+     * 分片导出缓冲：已读取未输出的行与该分片读到的最后一个用户ID
+     */
+    private static final class ShardExportBuffer {
+        private final UserShard shard;
+        private final Deque<UserExportRow> rows = new ArrayDeque<>();
+        private String lastId;
+        private boolean exhausted;
+
+        private ShardExportBuffer(UserShard shard, String afterId) {
+            this.shard = shard;
+            this.lastId = afterId;
+        }
+    }
 }
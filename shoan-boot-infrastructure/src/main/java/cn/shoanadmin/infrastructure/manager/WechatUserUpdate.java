@@ -0,0 +1,184 @@
+package cn.shoanadmin.infrastructure.manager;
+
+import cn.shoanadmin.domain.dto.UserProfileView;
+import cn.shoanadmin.domain.entity.WechatUser;
+import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
+import com.baomidou.mybatisplus.core.toolkit.support.SFunction;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * 用户部分更新
+ * 记录调用方设置过的列，写入前与库中的当前行逐列比较，UPDATE只写入值有变化的列，全部相同时不执行UPDATE。
+ * 避免整行 updateById 把缓存中可能已过期的会话密钥、登录信息等列一并写回，也避免无变化的更新产生binlog。
+ * 基准用户可能来自已过期的缓存，只提供用户ID、openid与 {@link #getUpdatedUser()} 的其余字段，不参与比较。
+ * 有写入的列时自动写入 updated_time；基准用户不会被修改
+ *
+ * @author FruitPieces
+ * @since 2024-01-20
+ */
+public final class WechatUserUpdate {
+
+    private final WechatUser current;
+    private final WechatUser updated;
+
+    /**
+     * 设置过的列与值，按设置顺序写入；id、openid、创建时间与删除标记不允许通过部分更新修改，updated_time 自动写入
+     */
+    private final Map<String, ColumnValue> columns = new LinkedHashMap<>();
+    private final long updateTime = System.currentTimeMillis();
+
+    private WechatUserUpdate(WechatUser current) {
+        this.current = current;
+        this.updated = current.toBuilder().build();
+    }
+
+    /**
+     * @param current 当前用户，需包含id与openid
+     */
+    public static WechatUserUpdate of(WechatUser current) {
+        return new WechatUserUpdate(Objects.requireNonNull(current, "current"));
+    }
+
+    /**
+     * 以用户资料视图为基准，视图之外的列在基准用户中为null
+     *
+     * @param profile 当前用户资料，需包含id
+     */
+    public static WechatUserUpdate of(UserProfileView profile) {
+        Objects.requireNonNull(profile, "profile");
+        return new WechatUserUpdate(WechatUser.builder()
+                .id(profile.getId())
+                .openid(profile.getOpenid())
+                .nickname(profile.getNickname())
+                .avatarUrl(profile.getAvatarUrl())
+                .status(profile.getStatus())
+                .lastLoginTime(profile.getLastLoginTime())
+                .build());
+    }
+
+    public WechatUserUpdate unionid(String unionid) {
+        updated.setUnionid(unionid);
+        return set("unionid", WechatUser::getUnionid, unionid);
+    }
+
+    public WechatUserUpdate nickname(String nickname) {
+        updated.setNickname(nickname);
+        return set("nickname", WechatUser::getNickname, nickname);
+    }
+
+    public WechatUserUpdate avatarUrl(String avatarUrl) {
+        updated.setAvatarUrl(avatarUrl);
+        return set("avatarUrl", WechatUser::getAvatarUrl, avatarUrl);
+    }
+
+    public WechatUserUpdate gender(Integer gender) {
+        updated.setGender(gender);
+        return set("gender", WechatUser::getGender, gender);
+    }
+
+    public WechatUserUpdate country(String country) {
+        updated.setCountry(country);
+        return set("country", WechatUser::getCountry, country);
+    }
+
+    public WechatUserUpdate province(String province) {
+        updated.setProvince(province);
+        return set("province", WechatUser::getProvince, province);
+    }
+
+    public WechatUserUpdate city(String city) {
+        updated.setCity(city);
+        return set("city", WechatUser::getCity, city);
+    }
+
+    public WechatUserUpdate language(String language) {
+        updated.setLanguage(language);
+        return set("language", WechatUser::getLanguage, language);
+    }
+
+    public WechatUserUpdate sessionKey(String sessionKey) {
+        updated.setSessionKey(sessionKey);
+        return set("sessionKey", WechatUser::getSessionKey, sessionKey);
+    }
+
+    public WechatUserUpdate lastLoginTime(Long lastLoginTime) {
+        updated.setLastLoginTime(lastLoginTime);
+        return set("lastLoginTime", WechatUser::getLastLoginTime, lastLoginTime);
+    }
+
+    public WechatUserUpdate lastLoginIp(String lastLoginIp) {
+        updated.setLastLoginIp(lastLoginIp);
+        return set("lastLoginIp", WechatUser::getLastLoginIp, lastLoginIp);
+    }
+
+    public WechatUserUpdate userAgent(String userAgent) {
+        updated.setUserAgent(userAgent);
+        return set("userAgent", WechatUser::getUserAgent, userAgent);
+    }
+
+    public WechatUserUpdate status(Integer status) {
+        updated.setStatus(status);
+        return set("status", WechatUser::getStatus, status);
+    }
+
+    public String getUserId() {
+        return current.getId();
+    }
+
+    public String getOpenid() {
+        return current.getOpenid();
+    }
+
+    /**
+     * 是否设置了要写入的列
+     */
+    public boolean hasUpdates() {
+        return !columns.isEmpty();
+    }
+
+    /**
+     * 应用修改后的用户，有设置的列时 updatedTime 为本次更新时间
+     *
+     * @return 新的用户对象，与基准用户互不影响
+     */
+    public WechatUser getUpdatedUser() {
+        WechatUser user = updated.toBuilder().build();
+        if (hasUpdates()) {
+            user.setUpdatedTime(updateTime);
+        }
+        return user;
+    }
+
+    /**
+     * 生成只包含与库中当前行不同的列的更新条件，按用户ID更新，逻辑删除条件由MyBatis-Plus追加
+     *
+     * @param stored 库中的当前行
+     * @return 更新条件，没有设置任何列或设置的值与当前行全部相同时返回null
+     */
+    LambdaUpdateWrapper<WechatUser> toUpdateWrapper(WechatUser stored) {
+        LambdaUpdateWrapper<WechatUser> wrapper = new LambdaUpdateWrapper<>();
+        boolean changed = false;
+        for (ColumnValue column : columns.values()) {
+            if (!Objects.equals(column.getter().apply(stored), column.value())) {
+                wrapper.set(column.getter(), column.value());
+                changed = true;
+            }
+        }
+        if (!changed) {
+            return null;
+        }
+        return wrapper.set(WechatUser::getUpdatedTime, updateTime)
+                .eq(WechatUser::getId, current.getId());
+    }
+
+    private WechatUserUpdate set(String field, SFunction<WechatUser, ?> getter, Object value) {
+        columns.put(field, new ColumnValue(getter, value));
+        return this;
+    }
+
+    private record ColumnValue(SFunction<WechatUser, ?> getter, Object value) {
+    }
+}
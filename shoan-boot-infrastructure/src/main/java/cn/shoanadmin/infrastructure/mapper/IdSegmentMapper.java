@@ -0,0 +1,25 @@
+package cn.shoanadmin.infrastructure.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import cn.shoanadmin.domain.entity.IdSegment;
+import org.apache.ibatis.annotations.Mapper;
+
+@Mapper
+public interface IdSegmentMapper extends BaseMapper<IdSegment> {
+
+    /**
+     * 预留一个号段，max_id 增加 step，新的 max_id 回填到 segment.maxId
+     *
+     * @param segment 号段，需包含bizTag、step、updatedTime
+     * @return 影响行数，0表示业务标识不存在，此时 maxId 无意义
+     */
+    int reserve(IdSegment segment);
+
+    /**
+     * 业务标识不存在时插入初始行，已存在时忽略
+     *
+     * @param segment 号段，需包含bizTag、updatedTime
+     * @return 影响行数
+     */
+    int insertIfAbsent(IdSegment segment);
+}
@@ -0,0 +1,26 @@
+package cn.shoanadmin.infrastructure.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import cn.shoanadmin.domain.entity.UserShardRoute;
+import org.apache.ibatis.annotations.Mapper;
+
+import java.util.List;
+
+@Mapper
+public interface UserShardRouteMapper extends BaseMapper<UserShardRoute> {
+
+    /**
+     * 查询全部路由记录
+     *
+     * @return 路由记录
+     */
+    List<UserShardRoute> selectRoutes();
+
+    /**
+     * 写入分片桶的路由，已存在时覆盖
+     *
+     * @param route 路由，需包含bucket、shard、status、updatedTime
+     * @return 影响行数
+     */
+    int upsertRoute(UserShardRoute route);
+}
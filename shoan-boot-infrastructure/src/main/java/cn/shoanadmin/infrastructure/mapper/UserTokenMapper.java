@@ -0,0 +1,10 @@
+package cn.shoanadmin.infrastructure.mapper;
+
+import cn.shoanadmin.domain.dto.UserToken;
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Mapper;
+
+@Mapper
+public interface UserTokenMapper extends BaseMapper<UserToken> {
+
+}
@@ -1,10 +1,162 @@
 package cn.shoanadmin.infrastructure.mapper;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import cn.shoanadmin.domain.dto.UserExportRow;
+import cn.shoanadmin.domain.dto.UserProfileView;
 import cn.shoanadmin.domain.entity.WechatUser;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.cursor.Cursor;
+
+import java.util.Collection;
+import java.util.List;
 
 @Mapper
 public interface WechatUserMapper extends BaseMapper<WechatUser> {
 
+    /**
+     * 登录写入，新用户插入，已有用户更新会话密钥与登录信息
+     *
+     * @param user 登录用户，id为新用户使用的ID
+     * @return 影响行数，默认（useAffectedRows=false）下插入与主键冲突均返回1，不能据此判断是否插入成功
+     */
+    int upsertLogin(@Param("user") WechatUser user);
+
+    /**
+     * 按openid更新已有用户的会话密钥与登录信息
+     *
+     * @param user 登录用户
+     * @return 影响行数，0表示用户不存在或已删除
+     */
+    int updateLoginByOpenid(@Param("user") WechatUser user);
+
+    /**
+     * 按用户ID更新登录时间、IP与用户代理，库中登录时间更新时不覆盖
+     *
+     * @param loginInfo 登录信息
+     * @return 影响行数
+     */
+    int updateLoginInfoById(WechatUser loginInfo);
+
+    /**
+     * 根据openid查询未删除的用户
+     *
+     * @param openid 微信openid
+     * @return 用户信息，不存在返回null
+     */
+    WechatUser selectByOpenid(@Param("openid") String openid);
+
+    /**
+     * 根据用户ID查询未删除用户的资料视图
+     *
+     * @param id 用户ID
+     * @return 用户资料，不存在返回null
+     */
+    UserProfileView selectProfileById(@Param("id") String id);
+
+    /**
+     * 根据openid查询未删除用户的资料视图
+     *
+     * @param openid 微信openid
+     * @return 用户资料，不存在返回null
+     */
+    UserProfileView selectProfileByOpenid(@Param("openid") String openid);
+
+    /**
+     * 根据openid查询未删除用户的会话密钥，缓存中的用户不带会话密钥时使用
+     *
+     * @param openid 微信openid
+     * @return 会话密钥，用户不存在返回null
+     */
+    String selectSessionKeyByOpenid(@Param("openid") String openid);
+
+    /**
+     * 插入用户，写入全部列，供批量插入使用
+     *
+     * @param user 用户
+     * @return 影响行数
+     */
+    int insertForBatch(WechatUser user);
+
+    /**
+     * 按用户ID补全资料，为null的字段保留原值，供批量更新使用
+     *
+     * @param user 用户资料，需包含id、updatedTime
+     * @return 影响行数
+     */
+    int updateProfileForBatch(WechatUser user);
+
+    /**
+     * 根据openid批量查询用户ID，包含已删除用户
+     *
+     * @param openids 微信openid，不能为空集合
+     * @return 用户ID、openid与删除标记
+     */
+    List<WechatUser> selectIdsByOpenids(@Param("openids") Collection<String> openids);
+
+    /**
+     * 按用户ID顺序逐行读取未删除用户，需在SqlSession关闭前遍历完游标
+     *
+     * @param afterId 从该用户ID之后开始读取，null表示从头开始
+     * @param limit   最多读取的行数
+     * @return 导出记录游标
+     */
+    Cursor<UserExportRow> selectExportPage(@Param("afterId") String afterId, @Param("limit") int limit);
+
+    /**
+     * 按用户ID顺序读取一页未删除用户，供分片导出归并使用
+     *
+     * @param afterId 从该用户ID之后开始读取，null表示从头开始
+     * @param limit   最多读取的行数
+     * @return 导出记录
+     */
+    List<UserExportRow> selectExportRows(@Param("afterId") String afterId, @Param("limit") int limit);
+
+    /**
+     * 按用户ID顺序读取分片桶中的用户，包含已删除用户，供分片迁移使用
+     *
+     * @param bucket  分片桶
+     * @param buckets 分片桶总数
+     * @param afterId 从该用户ID之后开始读取，null表示从头开始
+     * @param toId    读取到该用户ID（包含）为止，null表示不限
+     * @param limit   最多读取的行数
+     * @return 用户
+     */
+    List<WechatUser> selectByShardBucket(@Param("bucket") int bucket, @Param("buckets") int buckets,
+                                         @Param("afterId") String afterId, @Param("toId") String toId,
+                                         @Param("limit") int limit);
+
+    /**
+     * 统计分片桶中的用户数，包含已删除用户
+     *
+     * @param bucket  分片桶
+     * @param buckets 分片桶总数
+     * @return 用户数
+     */
+    long countByShardBucket(@Param("bucket") int bucket, @Param("buckets") int buckets);
+
+    /**
+     * 删除分片桶中的全部用户，供分片迁移清理使用
+     *
+     * @param bucket  分片桶
+     * @param buckets 分片桶总数
+     * @return 影响行数
+     */
+    int deleteByShardBucket(@Param("bucket") int bucket, @Param("buckets") int buckets);
+
+    /**
+     * 按源分片的数据覆盖目标分片上的用户，供分片迁移校验后修正使用，在 SqlSession 批量模式下逐条执行
+     *
+     * @param user 源分片上的用户，包含已删除用户
+     * @return 影响行数
+     */
+    int replaceForMigration(WechatUser user);
+
+    /**
+     * 物理删除目标分片上源分片已不存在的用户，供分片迁移校验后修正使用
+     *
+     * @param ids 用户ID
+     * @return 影响行数
+     */
+    int deleteByIdsForMigration(@Param("ids") Collection<String> ids);
 }
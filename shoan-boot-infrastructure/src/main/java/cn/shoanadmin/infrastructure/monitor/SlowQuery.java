@@ -0,0 +1,46 @@
+package cn.shoanadmin.infrastructure.monitor;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * 一次慢SQL执行记录
+ * SQL为带占位符的文本，不记录参数值
+ *
+ * @author FruitPieces
+ * @since 2024-01-20
+ */
+@Getter
+@AllArgsConstructor
+public class SlowQuery {
+
+    /**
+     * Mapper语句ID，即Mapper接口全名 + 方法名
+     */
+    private final String statementId;
+
+    /**
+     * 实际执行的SQL，空白已压缩
+     */
+    private final String sql;
+
+    /**
+     * 执行耗时（毫秒）
+     */
+    private final long durationMillis;
+
+    /**
+     * 执行结束时间（时间戳）
+     */
+    private final long timestamp;
+
+    /**
+     * 触发该语句的请求路由，如 GET /api/v1/auth/user/info；非请求线程（定时任务、异步写入）为null
+     */
+    private final String route;
+
+    /**
+     * 执行线程名
+     */
+    private final String thread;
+}
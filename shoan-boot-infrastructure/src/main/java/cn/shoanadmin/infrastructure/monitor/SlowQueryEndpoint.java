@@ -0,0 +1,42 @@
+package cn.shoanadmin.infrastructure.monitor;
+
+import cn.shoanadmin.common.config.SlowQueryConfig;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 慢SQL监控端点 /actuator/slowqueries
+ * 返回慢SQL阈值、累计次数、最近的慢SQL（时间倒序）与各慢SQL形态（按最大耗时倒序，含EXPLAIN结果）。
+ * 内容包含SQL与表结构信息，默认不暴露，需要时在内部管理端口（management.server.port）加入 management.endpoints.web.exposure.include
+ *
+ * @author FruitPieces
+ * @since 2024-01-20
+ */
+@Component
+@Endpoint(id = "slowqueries")
+@RequiredArgsConstructor
+public class SlowQueryEndpoint {
+
+    private final SlowQueryConfig config;
+    private final SlowQueryRecorder recorder;
+
+    @ReadOperation
+    public Map<String, Object> slowQueries() {
+        List<SlowQueryShape> shapes = recorder.shapes().stream()
+                .sorted(Comparator.comparingLong(SlowQueryShape::getMaxMillis).reversed())
+                .toList();
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("thresholdMillis", config.getThresholdMillis());
+        result.put("total", recorder.total());
+        result.put("recent", recorder.recent());
+        result.put("shapes", shapes);
+        return result;
+    }
+}
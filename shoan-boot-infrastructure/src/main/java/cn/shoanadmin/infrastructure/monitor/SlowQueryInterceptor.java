@@ -0,0 +1,106 @@
+package cn.shoanadmin.infrastructure.monitor;
+
+import cn.shoanadmin.common.config.SlowQueryConfig;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.cache.CacheKey;
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Signature;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.session.RowBounds;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mapper语句耗时拦截器
+ * 由MyBatis-Plus自动配置注册到 SqlSessionFactory，统计每条Mapper语句的执行耗时，按语句输出直方图指标 mybatis.statement；
+ * 超过 app.slow-query.threshold-millis 的执行交给 {@link SlowQueryRecorder} 记录。
+ * 批量执行器中的 update 只是加入批次，耗时不含真正的批量提交；游标查询（queryCursor）不经过这里
+ *
+ * @author FruitPieces
+ * @since 2024-01-20
+ */
+@Slf4j
+@Component
+@Intercepts({
+        @Signature(type = Executor.class, method = "query",
+                args = {MappedStatement.class, Object.class, RowBounds.class, ResultHandler.class}),
+        @Signature(type = Executor.class, method = "query",
+                args = {MappedStatement.class, Object.class, RowBounds.class, ResultHandler.class, CacheKey.class,
+                        BoundSql.class}),
+        @Signature(type = Executor.class, method = "update", args = {MappedStatement.class, Object.class})})
+public class SlowQueryInterceptor implements Interceptor {
+
+    private static final String METRIC_NAME = "mybatis.statement";
+
+    private final SlowQueryConfig config;
+    private final SlowQueryRecorder recorder;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+    private final long thresholdNanos;
+
+    public SlowQueryInterceptor(SlowQueryConfig config, SlowQueryRecorder recorder, MeterRegistry meterRegistry) {
+        this.config = config;
+        this.recorder = recorder;
+        this.meterRegistry = meterRegistry;
+        this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(config.getThresholdMillis());
+    }
+
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+        if (!Boolean.TRUE.equals(config.getEnabled())) {
+            return invocation.proceed();
+        }
+        long start = System.nanoTime();
+        try {
+            return invocation.proceed();
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            try {
+                record(invocation.getArgs(), elapsed);
+            } catch (RuntimeException e) {
+                log.warn("记录语句耗时失败：{}", e.getMessage());
+            }
+        }
+    }
+
+    private void record(Object[] args, long elapsedNanos) {
+        MappedStatement mappedStatement = (MappedStatement) args[0];
+        timers.computeIfAbsent(mappedStatement.getId(), this::newTimer).record(elapsedNanos, TimeUnit.NANOSECONDS);
+        if (elapsedNanos < thresholdNanos) {
+            return;
+        }
+        Object parameter = args[1];
+        BoundSql boundSql = args.length == 6 ? (BoundSql) args[5] : mappedStatement.getBoundSql(parameter);
+        recorder.record(mappedStatement, parameter, boundSql, TimeUnit.NANOSECONDS.toMillis(elapsedNanos));
+    }
+
+    private Timer newTimer(String statementId) {
+        return Timer.builder(METRIC_NAME)
+                .description("Mapper语句执行耗时")
+                .tag("statement", shortName(statementId))
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofMillis(1))
+                .maximumExpectedValue(Duration.ofSeconds(10))
+                .register(meterRegistry);
+    }
+
+    /**
+     * 去掉包名，只保留Mapper接口名与方法名，如 WechatUserMapper.selectByOpenid
+     */
+    private static String shortName(String statementId) {
+        int methodDot = statementId.lastIndexOf('.');
+        int classDot = methodDot > 0 ? statementId.lastIndexOf('.', methodDot - 1) : -1;
+        return statementId.substring(classDot + 1);
+    }
+}
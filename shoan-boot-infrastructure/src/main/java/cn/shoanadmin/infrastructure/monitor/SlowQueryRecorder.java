@@ -0,0 +1,272 @@
+package cn.shoanadmin.infrastructure.monitor;
+
+import cn.shoanadmin.common.config.SlowQueryConfig;
+import cn.shoanadmin.infrastructure.sharding.UserShard;
+import cn.shoanadmin.infrastructure.sharding.UserShardRouter;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.SqlCommandType;
+import org.apache.ibatis.mapping.StatementType;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.servlet.HandlerMapping;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 慢SQL记录器
+ * 最近的慢SQL保存在定长环形缓冲区中，写入无锁、覆盖最旧的记录；同时按形态（语句ID + SQL文本）累计次数与最大耗时。
+ * 形态首次出现时在执行线程上取出绑定参数，交给单独的后台线程在默认数据源上执行 EXPLAIN，不阻塞业务语句；
+ * 在用户分片上执行的语句改在该分片的数据源与物理表上执行 EXPLAIN；
+ * EXPLAIN队列已满时放弃本次，该形态下次出现时重试
+ *
+ * @author FruitPieces
+ * @since 2024-01-20
+ */
+@Slf4j
+@Component
+public class SlowQueryRecorder implements DisposableBean {
+
+    private static final int EXPLAIN_QUEUE_CAPACITY = 16;
+
+    private final SlowQueryConfig config;
+    private final DataSource dataSource;
+    private final ObjectProvider<UserShardRouter> shardRouterProvider;
+    private final AtomicReferenceArray<SlowQuery> recent;
+    private final AtomicLong sequence = new AtomicLong();
+    private final Map<String, SlowQueryShape> shapes = new ConcurrentHashMap<>();
+    private final ThreadPoolExecutor explainExecutor;
+
+    /**
+     * @param shardRouterProvider 分片路由依赖Mapper，Mapper所在的SqlSessionFactory又依赖本记录器所在的拦截器，使用时再获取
+     */
+    public SlowQueryRecorder(SlowQueryConfig config, DataSource dataSource,
+                             ObjectProvider<UserShardRouter> shardRouterProvider) {
+        this.config = config;
+        this.dataSource = dataSource;
+        this.shardRouterProvider = shardRouterProvider;
+        this.recent = new AtomicReferenceArray<>(Math.max(1, config.getBufferSize()));
+        this.explainExecutor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(EXPLAIN_QUEUE_CAPACITY),
+                runnable -> Thread.ofPlatform().name("slow-query-explain").daemon(true).unstarted(runnable));
+    }
+
+    /**
+     * 记录一次慢SQL
+     *
+     * @param mappedStatement 语句
+     * @param parameter       参数对象，用于EXPLAIN时绑定参数
+     * @param boundSql        实际执行的SQL
+     * @param durationMillis  执行耗时（毫秒）
+     */
+    public void record(MappedStatement mappedStatement, Object parameter, BoundSql boundSql, long durationMillis) {
+        String statementId = mappedStatement.getId();
+        String sql = normalize(boundSql.getSql());
+        long now = System.currentTimeMillis();
+        SlowQuery slowQuery = new SlowQuery(statementId, sql, durationMillis, now, currentRoute(),
+                Thread.currentThread().getName());
+        long seq = sequence.getAndIncrement();
+        recent.set((int) (seq % recent.length()), slowQuery);
+
+        String key = statementId + '\n' + sql;
+        SlowQueryShape shape = shapes.get(key);
+        if (shape == null) {
+            if (shapes.size() >= config.getMaxShapes()) {
+                return;
+            }
+            SlowQueryShape created = new SlowQueryShape(statementId, sql, now);
+            shape = shapes.putIfAbsent(key, created);
+            if (shape == null) {
+                shape = created;
+                log.warn("新的慢SQL：statement={}, {}ms, route={}, sql={}", statementId, durationMillis,
+                        slowQuery.getRoute(), sql);
+            }
+        }
+        shape.record(durationMillis, now);
+        if (Boolean.TRUE.equals(config.getExplainEnabled()) && isExplainable(mappedStatement)
+                && shape.requestExplain()) {
+            submitExplain(shape, mappedStatement, parameter, boundSql);
+        }
+    }
+
+    /**
+     * 最近的慢SQL，按时间倒序
+     */
+    public List<SlowQuery> recent() {
+        long end = sequence.get();
+        long start = Math.max(0, end - recent.length());
+        List<SlowQuery> result = new ArrayList<>((int) (end - start));
+        for (long seq = end - 1; seq >= start; seq--) {
+            SlowQuery slowQuery = recent.get((int) (seq % recent.length()));
+            if (slowQuery != null) {
+                result.add(slowQuery);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 已跟踪的慢SQL形态
+     */
+    public Collection<SlowQueryShape> shapes() {
+        return shapes.values();
+    }
+
+    /**
+     * 累计记录的慢SQL次数
+     */
+    public long total() {
+        return sequence.get();
+    }
+
+    @Override
+    public void destroy() {
+        explainExecutor.shutdownNow();
+    }
+
+    private void submitExplain(SlowQueryShape shape, MappedStatement mappedStatement, Object parameter,
+                               BoundSql boundSql) {
+        List<ParameterCall> parameters;
+        try {
+            // 参数对象可能在语句执行后被调用方修改，在当前线程按MyBatis的类型处理器取出参数，由后台线程原样重放
+            parameters = captureParameters(mappedStatement, parameter, boundSql);
+        } catch (SQLException | RuntimeException e) {
+            shape.explainFailed("绑定参数失败：" + e.getMessage());
+            return;
+        }
+        UserShard shard = UserShardRouter.currentShard();
+        try {
+            explainExecutor.execute(() -> explain(shape, shard, boundSql.getSql(), parameters));
+        } catch (RejectedExecutionException e) {
+            shape.cancelExplain();
+        }
+    }
+
+    private void explain(SlowQueryShape shape, UserShard shard, String sql, List<ParameterCall> parameters) {
+        if (shard == null) {
+            explain(shape, sql, parameters);
+            return;
+        }
+        try {
+            shardRouterProvider.getObject().run(shard, () -> explain(shape, UserShardRouter.physicalSql(sql), parameters));
+        } catch (RuntimeException e) {
+            shape.explainFailed(e.getMessage());
+            log.warn("慢SQL执行EXPLAIN失败：statement={}, shard={}, {}", shape.getStatementId(), shard.getName(),
+                    e.getMessage());
+        }
+    }
+
+    private void explain(SlowQueryShape shape, String sql, List<ParameterCall> parameters) {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement("EXPLAIN " + sql)) {
+            statement.setQueryTimeout(config.getExplainTimeoutSeconds());
+            for (ParameterCall call : parameters) {
+                call.replay(statement);
+            }
+            List<Map<String, Object>> rows = new ArrayList<>();
+            try (ResultSet resultSet = statement.executeQuery()) {
+                ResultSetMetaData metaData = resultSet.getMetaData();
+                while (resultSet.next()) {
+                    Map<String, Object> row = new LinkedHashMap<>();
+                    for (int i = 1; i <= metaData.getColumnCount(); i++) {
+                        row.put(metaData.getColumnLabel(i), resultSet.getObject(i));
+                    }
+                    rows.add(row);
+                }
+            }
+            shape.explainDone(rows);
+            log.info("慢SQL执行计划：statement={}, explain={}", shape.getStatementId(), rows);
+        } catch (SQLException | RuntimeException e) {
+            shape.explainFailed(e.getMessage());
+            log.warn("慢SQL执行EXPLAIN失败：statement={}, {}", shape.getStatementId(), e.getMessage());
+        }
+    }
+
+    /**
+     * 只对单条预编译的查询、更新与删除执行EXPLAIN，存储过程与多语句不支持
+     */
+    private static boolean isExplainable(MappedStatement mappedStatement) {
+        SqlCommandType type = mappedStatement.getSqlCommandType();
+        return mappedStatement.getStatementType() == StatementType.PREPARED
+                && (type == SqlCommandType.SELECT || type == SqlCommandType.UPDATE || type == SqlCommandType.DELETE);
+    }
+
+    /**
+     * 用只记录 setXxx 调用的PreparedStatement代理执行MyBatis的参数设置，得到与实际执行相同的参数绑定
+     */
+    private static List<ParameterCall> captureParameters(MappedStatement mappedStatement, Object parameter,
+                                                         BoundSql boundSql) throws SQLException {
+        List<ParameterCall> calls = new ArrayList<>();
+        PreparedStatement recorder = (PreparedStatement) Proxy.newProxyInstance(
+                SlowQueryRecorder.class.getClassLoader(), new Class<?>[]{PreparedStatement.class},
+                (proxy, method, args) -> {
+                    if (method.getName().startsWith("set") && args != null && args.length >= 2) {
+                        calls.add(new ParameterCall(method, args));
+                        return null;
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+        mappedStatement.getConfiguration().newParameterHandler(mappedStatement, parameter, boundSql)
+                .setParameters(recorder);
+        return calls;
+    }
+
+    private static String currentRoute() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (!(attributes instanceof ServletRequestAttributes servletAttributes)) {
+            return null;
+        }
+        HttpServletRequest request = servletAttributes.getRequest();
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        return request.getMethod() + " " + (pattern != null ? pattern : request.getRequestURI());
+    }
+
+    private static String normalize(String sql) {
+        return sql.replaceAll("\\s+", " ").trim();
+    }
+
+    /**
+     * 一次参数设置调用
+     */
+    private record ParameterCall(Method method, Object[] args) {
+
+        void replay(PreparedStatement statement) throws SQLException {
+            try {
+                method.invoke(statement, args);
+            } catch (InvocationTargetException e) {
+                if (e.getCause() instanceof SQLException sqlException) {
+                    throw sqlException;
+                }
+                throw new IllegalStateException(e.getCause());
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package cn.shoanadmin.infrastructure.monitor;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 慢SQL形态
+ * 同一语句ID与SQL文本的慢SQL归为一种形态，累计次数与最大耗时，并保存首次出现时异步执行的EXPLAIN结果
+ *
+ * @author FruitPieces
+ * @since 2024-01-20
+ */
+public class SlowQueryShape {
+
+    public static final String EXPLAIN_PENDING = "pending";
+    public static final String EXPLAIN_DONE = "done";
+    public static final String EXPLAIN_SKIPPED = "skipped";
+    public static final String EXPLAIN_FAILED = "failed";
+
+    private final String statementId;
+    private final String sql;
+    private final long firstSeen;
+    private final LongAdder count = new LongAdder();
+    private final LongAccumulator maxMillis = new LongAccumulator(Math::max, 0);
+    private final AtomicBoolean explainRequested = new AtomicBoolean();
+    private volatile long lastSeen;
+    private volatile String explainStatus = EXPLAIN_SKIPPED;
+    private volatile String explainError;
+    private volatile List<Map<String, Object>> explain;
+
+    SlowQueryShape(String statementId, String sql, long firstSeen) {
+        this.statementId = statementId;
+        this.sql = sql;
+        this.firstSeen = firstSeen;
+    }
+
+    void record(long durationMillis, long timestamp) {
+        count.increment();
+        maxMillis.accumulate(durationMillis);
+        lastSeen = timestamp;
+    }
+
+    /**
+     * 申请执行EXPLAIN，每种形态只有第一次申请成功
+     */
+    boolean requestExplain() {
+        if (!explainRequested.compareAndSet(false, true)) {
+            return false;
+        }
+        explainStatus = EXPLAIN_PENDING;
+        return true;
+    }
+
+    /**
+     * EXPLAIN任务未能提交时撤回申请，下次出现时重试
+     */
+    void cancelExplain() {
+        explainStatus = EXPLAIN_SKIPPED;
+        explainRequested.set(false);
+    }
+
+    void explainDone(List<Map<String, Object>> rows) {
+        explain = rows;
+        explainStatus = EXPLAIN_DONE;
+    }
+
+    void explainFailed(String error) {
+        explainError = error;
+        explainStatus = EXPLAIN_FAILED;
+    }
+
+    public String getStatementId() {
+        return statementId;
+    }
+
+    public String getSql() {
+        return sql;
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getMaxMillis() {
+        return maxMillis.get();
+    }
+
+    public long getFirstSeen() {
+        return firstSeen;
+    }
+
+    public long getLastSeen() {
+        return lastSeen;
+    }
+
+    public String getExplainStatus() {
+        return explainStatus;
+    }
+
+    public String getExplainError() {
+        return explainError;
+    }
+
+    public List<Map<String, Object>> getExplain() {
+        return explain;
+    }
+}
@@ -0,0 +1,134 @@
+package cn.shoanadmin.infrastructure.sharding;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * 分片路由数据源
+ * 默认路由到主库；{@link #useDataSource} 范围内的语句路由到指定分片数据源。外层需包一层LazyConnectionDataSourceProxy，
+ * 使连接在第一条语句执行时才按当时的路由获取。
+ * 事务（或事务同步）中第一次获取连接时记录所用的数据源，之后在同一事务中切换到其他数据源会抛出异常，
+ * 避免语句沿用事务已绑定的连接而写入错误的库；事务内访问其他数据源上的分片后，也不应再访问主库上的其他表
+ *
+ * @author FruitPieces
+ * @since 2024-01-20
+ */
+@Slf4j
+public class ShardRoutingDataSource extends AbstractRoutingDataSource implements AutoCloseable {
+
+    public static final String PRIMARY = "primary";
+
+    private static final ThreadLocal<String> CURRENT_DATA_SOURCE = new ThreadLocal<>();
+
+    /**
+     * 事务资源键，值为事务中所用连接的数据源名称
+     */
+    private static final Object TRANSACTION_DATA_SOURCE = new Object();
+
+    private final DataSource primary;
+    private final boolean closePrimary;
+    private final Map<String, DataSource> dataSources;
+
+    /**
+     * @param primary      主库
+     * @param closePrimary 关闭时是否同时关闭主库，主库为读写分离数据源时由其自身关闭
+     * @param dataSources  其他分片数据源，按名称索引，名称不能为 {@link #PRIMARY}
+     */
+    public ShardRoutingDataSource(DataSource primary, boolean closePrimary, Map<String, DataSource> dataSources) {
+        if (dataSources.containsKey(PRIMARY)) {
+            throw new IllegalArgumentException("分片数据源名称不能为" + PRIMARY);
+        }
+        this.primary = primary;
+        this.closePrimary = closePrimary;
+        this.dataSources = Collections.unmodifiableMap(dataSources);
+        Map<Object, Object> targets = new HashMap<>(dataSources);
+        targets.put(PRIMARY, primary);
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+        setLenientFallback(false);
+        initialize();
+    }
+
+    /**
+     * 全部数据源名称，含 {@link #PRIMARY}
+     */
+    public Set<String> getDataSourceNames() {
+        Set<String> names = new LinkedHashSet<>();
+        names.add(PRIMARY);
+        names.addAll(dataSources.keySet());
+        return names;
+    }
+
+    /**
+     * 在指定数据源上执行
+     *
+     * @param name   数据源名称
+     * @param action 操作
+     * @return 操作结果
+     * @throws IllegalStateException 当前事务已在其他数据源上获取了连接
+     */
+    public <T> T useDataSource(String name, Supplier<T> action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            Object bound = TransactionSynchronizationManager.getResource(TRANSACTION_DATA_SOURCE);
+            if (bound != null && !bound.equals(name)) {
+                throw new IllegalStateException("同一事务内不能访问多个数据源：" + bound + ", " + name);
+            }
+        }
+        String previous = CURRENT_DATA_SOURCE.get();
+        CURRENT_DATA_SOURCE.set(name);
+        try {
+            return action.get();
+        } finally {
+            if (previous == null) {
+                CURRENT_DATA_SOURCE.remove();
+            } else {
+                CURRENT_DATA_SOURCE.set(previous);
+            }
+        }
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        String name = CURRENT_DATA_SOURCE.get();
+        String key = name != null ? name : PRIMARY;
+        if (TransactionSynchronizationManager.isSynchronizationActive()
+                && !TransactionSynchronizationManager.hasResource(TRANSACTION_DATA_SOURCE)) {
+            TransactionSynchronizationManager.bindResource(TRANSACTION_DATA_SOURCE, key);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(TRANSACTION_DATA_SOURCE);
+                }
+            });
+        }
+        return key;
+    }
+
+    @Override
+    public void close() {
+        dataSources.forEach(ShardRoutingDataSource::closeQuietly);
+        if (closePrimary) {
+            closeQuietly(PRIMARY, primary);
+        }
+    }
+
+    private static void closeQuietly(String name, DataSource dataSource) {
+        if (dataSource instanceof AutoCloseable closeable) {
+            try {
+                closeable.close();
+            } catch (Exception e) {
+                log.warn("关闭数据源失败：{}, {}", name, e.getMessage());
+            }
+        }
+    }
+}
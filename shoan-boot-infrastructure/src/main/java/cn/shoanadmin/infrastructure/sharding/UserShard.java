@@ -0,0 +1,42 @@
+package cn.shoanadmin.infrastructure.sharding;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * 用户物理分片：一个数据源上的一张与 wechat_user 结构相同的表
+ *
+ * @author FruitPieces
+ * @since 2024-01-20
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class UserShard {
+
+    /**
+     * 逻辑表名，SQL中的该表名在执行时替换为分片的物理表名
+     */
+    public static final String LOGICAL_TABLE = "wechat_user";
+
+    /**
+     * 未启用分片时唯一的分片，即主库上的 wechat_user 表
+     */
+    public static final UserShard UNSHARDED = new UserShard(LOGICAL_TABLE, ShardRoutingDataSource.PRIMARY, LOGICAL_TABLE);
+
+    /**
+     * 分片名称，写入路由表
+     */
+    private final String name;
+
+    /**
+     * 数据源名称
+     */
+    private final String dataSource;
+
+    /**
+     * 物理表名
+     */
+    private final String table;
+}
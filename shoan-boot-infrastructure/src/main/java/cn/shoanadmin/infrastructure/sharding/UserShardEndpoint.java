@@ -0,0 +1,74 @@
+package cn.shoanadmin.infrastructure.sharding;
+
+import cn.shoanadmin.common.util.UidGenerator;
+import cn.shoanadmin.infrastructure.mapper.WechatUserMapper;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 用户分片管理端点 /actuator/usershards
+ * GET 返回各分片的分片桶数与未删除用户数（逐个分片统计，包含迁移后尚未清理的副本），以及迁移中的分片桶；
+ * POST /{bucket}?shard= 把分片桶迁移到指定分片，DELETE /{bucket}?shard= 清理迁移后留在源分片上的数据。
+ * 包含写操作，默认不暴露，仅在迁移时于内部管理端口加入 management.endpoints.web.exposure.include
+ *
+ * @author FruitPieces
+ * @since 2024-01-20
+ */
+@Component
+@Endpoint(id = "usershards")
+@RequiredArgsConstructor
+public class UserShardEndpoint {
+
+    private final UserShardRouter shardRouter;
+    private final UserShardMigrator migrator;
+    private final WechatUserMapper wechatUserMapper;
+
+    @ReadOperation
+    public Map<String, Object> shards() {
+        Map<String, Integer> buckets = new LinkedHashMap<>();
+        List<Integer> migrating = new ArrayList<>();
+        for (int bucket = 0; bucket < UidGenerator.SHARD_BUCKETS; bucket++) {
+            buckets.merge(shardRouter.shardOfBucket(bucket).getName(), 1, Integer::sum);
+            if (shardRouter.isMigrating(bucket)) {
+                migrating.add(bucket);
+            }
+        }
+        List<Map<String, Object>> shards = new ArrayList<>();
+        for (UserShard shard : shardRouter.getShards()) {
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("name", shard.getName());
+            item.put("dataSource", shard.getDataSource());
+            item.put("table", shard.getTable());
+            item.put("buckets", buckets.getOrDefault(shard.getName(), 0));
+            item.put("users", shardRouter.execute(shard, () -> wechatUserMapper.selectCount(null)));
+            shards.add(item);
+        }
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("enabled", shardRouter.isEnabled());
+        result.put("shards", shards);
+        result.put("migrating", migrating);
+        return result;
+    }
+
+    @WriteOperation
+    public Map<String, Object> move(@Selector int bucket, String shard) {
+        long copied = migrator.moveBucket(bucket, shard);
+        return Map.of("bucket", bucket, "shard", shard, "copied", copied);
+    }
+
+    @DeleteOperation
+    public Map<String, Object> purge(@Selector int bucket, String shard) {
+        int deleted = migrator.purgeBucket(bucket, shard);
+        return Map.of("bucket", bucket, "shard", shard, "deleted", deleted);
+    }
+}
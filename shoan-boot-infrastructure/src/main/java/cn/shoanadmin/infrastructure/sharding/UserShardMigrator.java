@@ -0,0 +1,239 @@
+package cn.shoanadmin.infrastructure.sharding;
+
+import cn.shoanadmin.common.config.ShardingConfig;
+import cn.shoanadmin.common.util.UidGenerator;
+import cn.shoanadmin.domain.entity.UserShardRoute;
+import cn.shoanadmin.domain.entity.WechatUser;
+import cn.shoanadmin.infrastructure.mapper.UserShardRouteMapper;
+import cn.shoanadmin.infrastructure.mapper.WechatUserMapper;
+import com.baomidou.mybatisplus.extension.toolkit.SqlHelper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.logging.Log;
+import org.apache.ibatis.logging.LogFactory;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 用户分片桶迁移
+ * 迁移一个分片桶：路由标记为迁移中（只读）并等待 routeMaxStaleness + maxWriteDuration，使各节点都已停止按旧路由开始写入，
+ * 且已开始的写入都已提交；清理目标分片上的残留数据后按用户ID分页复制，再逐页比对源分片与目标分片，
+ * 复制期间源分片上仍有提交的写入（执行时间超过 maxWriteDuration）时以源分片为准修正并重新比对，
+ * 比对一致且行数相同后把路由切换到目标分片。多次比对仍不一致或其他失败时路由恢复到源分片。
+ * 迁移完成后源分片上的数据保留，确认无误后调用 {@link #purgeBucket} 清理。
+ * 同一时间只应有一个迁移任务，迁移期间该桶用户的登录与资料更新返回繁忙，异步写入的登录信息在切换后写入
+ *
+ * @author FruitPieces
+ * @since 2024-01-20
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class UserShardMigrator {
+
+    private static final String INSERT_BATCH_STATEMENT = WechatUserMapper.class.getName() + ".insertForBatch";
+    private static final String REPLACE_BATCH_STATEMENT = WechatUserMapper.class.getName() + ".replaceForMigration";
+    private static final int VERIFY_PASSES = 3;
+    private static final Log BATCH_LOG = LogFactory.getLog(UserShardMigrator.class);
+
+    private final ShardingConfig config;
+    private final UserShardRouter shardRouter;
+    private final UserShardRouteMapper routeMapper;
+    private final WechatUserMapper wechatUserMapper;
+    private final SqlSessionFactory sqlSessionFactory;
+    private final TransactionTemplate transactionTemplate;
+
+    /**
+     * 把分片桶迁移到目标分片
+     *
+     * @param bucket      分片桶
+     * @param targetShard 目标分片名称
+     * @return 复制的用户数
+     * @throws IllegalArgumentException 分片桶或目标分片无效
+     * @throws IllegalStateException    分片桶已在迁移中，或复制后多次比对仍不一致
+     */
+    public synchronized long moveBucket(int bucket, String targetShard) {
+        UserShard target = requireShard(bucket, targetShard);
+        shardRouter.refreshRoutes();
+        if (shardRouter.isMigrating(bucket)) {
+            throw new IllegalStateException("分片桶已在迁移中：" + bucket);
+        }
+        UserShard source = shardRouter.shardOfBucket(bucket);
+        if (source.getName().equals(target.getName())) {
+            log.info("分片桶已在目标分片上：bucket={}, shard={}", bucket, targetShard);
+            return 0L;
+        }
+        log.info("开始迁移分片桶：bucket={}, {} -> {}", bucket, source.getName(), target.getName());
+        saveRoute(bucket, source, UserShardRoute.STATUS_MIGRATING);
+        long copied;
+        try {
+            awaitRouteConvergence();
+            copyBucket(bucket, source, target);
+            copied = verifyBucket(bucket, source, target);
+        } catch (RuntimeException e) {
+            saveRoute(bucket, source, UserShardRoute.STATUS_ACTIVE);
+            log.error("迁移分片桶失败，路由已恢复到源分片：bucket={}, shard={}", bucket, source.getName(), e);
+            throw e;
+        }
+        saveRoute(bucket, target, UserShardRoute.STATUS_ACTIVE);
+        log.info("分片桶迁移完成：bucket={}, {} -> {}, count={}", bucket, source.getName(), target.getName(), copied);
+        return copied;
+    }
+
+    /**
+     * 清理迁移后留在源分片上的分片桶数据
+     *
+     * @param bucket    分片桶
+     * @param shardName 要清理的分片名称，不能是分片桶当前所在的分片
+     * @return 删除的用户数
+     */
+    public synchronized int purgeBucket(int bucket, String shardName) {
+        UserShard shard = requireShard(bucket, shardName);
+        shardRouter.refreshRoutes();
+        if (shardRouter.shardOfBucket(bucket).getName().equals(shard.getName())) {
+            throw new IllegalStateException("不能清理分片桶当前所在的分片：bucket=" + bucket + ", shard=" + shardName);
+        }
+        int deleted = shardRouter.execute(shard,
+                () -> wechatUserMapper.deleteByShardBucket(bucket, UidGenerator.SHARD_BUCKETS));
+        log.info("已清理分片桶数据：bucket={}, shard={}, count={}", bucket, shardName, deleted);
+        return deleted;
+    }
+
+    private void copyBucket(int bucket, UserShard source, UserShard target) {
+        int buckets = UidGenerator.SHARD_BUCKETS;
+        int batchSize = config.getMigrationBatchSize();
+        int leftover = shardRouter.execute(target, () -> wechatUserMapper.deleteByShardBucket(bucket, buckets));
+        if (leftover > 0) {
+            log.warn("已删除目标分片上的残留数据：bucket={}, shard={}, count={}", bucket, target.getName(), leftover);
+        }
+        String lastId = null;
+        while (true) {
+            String afterId = lastId;
+            List<WechatUser> users = shardRouter.execute(source,
+                    () -> wechatUserMapper.selectByShardBucket(bucket, buckets, afterId, null, batchSize));
+            if (users.isEmpty()) {
+                break;
+            }
+            shardRouter.run(target, () -> transactionTemplate.executeWithoutResult(status ->
+                    SqlHelper.executeBatch(sqlSessionFactory, BATCH_LOG, users, batchSize,
+                            (sqlSession, user) -> sqlSession.insert(INSERT_BATCH_STATEMENT, user))));
+            lastId = users.get(users.size() - 1).getId();
+            if (users.size() < batchSize) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * 比对源分片与目标分片，直到一次比对没有差异
+     *
+     * @return 分片桶的用户数
+     */
+    private long verifyBucket(int bucket, UserShard source, UserShard target) {
+        int buckets = UidGenerator.SHARD_BUCKETS;
+        for (int pass = 1; pass <= VERIFY_PASSES; pass++) {
+            long repaired = syncBucket(bucket, source, target);
+            if (repaired == 0L) {
+                long sourceCount = shardRouter.execute(source, () -> wechatUserMapper.countByShardBucket(bucket, buckets));
+                long targetCount = shardRouter.execute(target, () -> wechatUserMapper.countByShardBucket(bucket, buckets));
+                if (sourceCount != targetCount) {
+                    throw new IllegalStateException("分片桶复制后行数不一致：bucket=" + bucket
+                            + ", source=" + sourceCount + ", target=" + targetCount);
+                }
+                return targetCount;
+            }
+            log.warn("分片桶复制期间源分片仍有写入，已按源分片修正：bucket={}, pass={}, count={}", bucket, pass, repaired);
+        }
+        throw new IllegalStateException("分片桶复制后多次比对仍不一致，源分片可能仍在写入：bucket=" + bucket);
+    }
+
+    /**
+     * 按用户ID分页比对源分片与目标分片，目标分片上不同或缺少的行以源分片覆盖，源分片上已不存在的行删除
+     *
+     * @return 修正的行数
+     */
+    private long syncBucket(int bucket, UserShard source, UserShard target) {
+        int buckets = UidGenerator.SHARD_BUCKETS;
+        int batchSize = config.getMigrationBatchSize();
+        long repaired = 0L;
+        String lastId = null;
+        while (true) {
+            String afterId = lastId;
+            List<WechatUser> sourceUsers = shardRouter.execute(source,
+                    () -> wechatUserMapper.selectByShardBucket(bucket, buckets, afterId, null, batchSize));
+            boolean lastPage = sourceUsers.size() < batchSize;
+            // 目标分片按源分片本页的用户ID范围读取，最后一页不设上限，以便发现目标分片上多出的行
+            String toId = lastPage ? null : sourceUsers.get(sourceUsers.size() - 1).getId();
+            List<WechatUser> targetUsers = shardRouter.execute(target,
+                    () -> wechatUserMapper.selectByShardBucket(bucket, buckets, afterId, toId, Integer.MAX_VALUE));
+            Map<String, WechatUser> targetById = new HashMap<>();
+            targetUsers.forEach(user -> targetById.put(user.getId(), user));
+            List<WechatUser> changed = new ArrayList<>();
+            for (WechatUser user : sourceUsers) {
+                if (!user.equals(targetById.remove(user.getId()))) {
+                    changed.add(user);
+                }
+            }
+            List<String> removed = List.copyOf(targetById.keySet());
+            if (!changed.isEmpty() || !removed.isEmpty()) {
+                shardRouter.run(target, () -> transactionTemplate.executeWithoutResult(status -> {
+                    if (!removed.isEmpty()) {
+                        wechatUserMapper.deleteByIdsForMigration(removed);
+                    }
+                    if (!changed.isEmpty()) {
+                        SqlHelper.executeBatch(sqlSessionFactory, BATCH_LOG, changed, batchSize,
+                                (sqlSession, user) -> sqlSession.insert(REPLACE_BATCH_STATEMENT, user));
+                    }
+                }));
+                repaired += changed.size() + removed.size();
+            }
+            if (lastPage) {
+                return repaired;
+            }
+            lastId = toId;
+        }
+    }
+
+    /**
+     * 等待所有节点刷新路由：路由表超过 routeMaxStaleness 未刷新的节点已自行停止写入，
+     * 再等待 maxWriteDuration 使按旧路由已开始的写入提交
+     */
+    private void awaitRouteConvergence() {
+        try {
+            Thread.sleep(config.getRouteMaxStaleness() + config.getMaxWriteDuration());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("等待路由刷新时被中断", e);
+        }
+    }
+
+    private void saveRoute(int bucket, UserShard shard, int status) {
+        routeMapper.upsertRoute(UserShardRoute.builder()
+                .bucket(bucket)
+                .shard(shard.getName())
+                .status(status)
+                .updatedTime(System.currentTimeMillis())
+                .build());
+        shardRouter.refreshRoutes();
+    }
+
+    private UserShard requireShard(int bucket, String shardName) {
+        if (!shardRouter.isEnabled()) {
+            throw new IllegalStateException("未启用分片");
+        }
+        if (bucket < 0 || bucket >= UidGenerator.SHARD_BUCKETS) {
+            throw new IllegalArgumentException("分片桶超出范围：" + bucket);
+        }
+        UserShard shard = shardRouter.getShard(shardName);
+        if (shard == null) {
+            throw new IllegalArgumentException("分片不存在：" + shardName);
+        }
+        return shard;
+    }
+}
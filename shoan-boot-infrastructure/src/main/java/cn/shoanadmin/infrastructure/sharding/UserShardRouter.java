@@ -0,0 +1,437 @@
+package cn.shoanadmin.infrastructure.sharding;
+
+import cn.shoanadmin.common.config.ShardingConfig;
+import cn.shoanadmin.common.enums.BusinessCodeEnum;
+import cn.shoanadmin.common.exception.BusinessException;
+import cn.shoanadmin.common.util.UidGenerator;
+import cn.shoanadmin.domain.entity.UserShardRoute;
+import cn.shoanadmin.infrastructure.mapper.UserShardRouteMapper;
+import com.baomidou.mybatisplus.core.toolkit.TableNameParser;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * 用户分片路由
+ * 未启用分片时所有操作直接执行，使用主库上的 wechat_user 单表。启用后用户按openid散列到分片桶（{@link UidGenerator#shardBucket}），
+ * 按路由表找到桶所在的分片，在该分片的数据源与物理表上执行：SQL中的 wechat_user 由MyBatis-Plus动态表名拦截器替换为
+ * {@link #physicalTable} 返回的物理表，连接由 {@link ShardRoutingDataSource} 按分片的数据源获取。
+ * 新用户ID带有分片桶，按用户ID读取时直接定位分片；不带分片桶的已有用户ID依次查询各分片。
+ * 分片桶迁移后源分片上的数据在清理前仍然保留，依次查询各分片或逐个分片遍历时，只采用openid当前路由到该分片的行（{@link #ownsOpenid}）。
+ * 写入一律按openid定位分片，迁移中的桶只读，写入抛出繁忙异常；路由表超过 routeMaxStaleness 未刷新成功时同样拒绝写入，
+ * 保证迁移分片桶冻结写入后，等待该时长即不会再有节点按旧路由开始写入
+ *
+ * @author FruitPieces
+ * @since 2024-01-20
+ */
+@Slf4j
+@Component
+public class UserShardRouter {
+
+    private static final ThreadLocal<UserShard> CURRENT_SHARD = new ThreadLocal<>();
+
+    private final ShardingConfig config;
+    private final UserShardRouteMapper routeMapper;
+    private final ShardRoutingDataSource routingDataSource;
+    private final boolean enabled;
+    private final Map<String, UserShard> shards;
+    private final UserShard[] defaultRoutes;
+    private final Counter scatterReads;
+    private final Counter rejectedWrites;
+    private final Counter refreshFailures;
+
+    /**
+     * 当前路由表，刷新成功前 loadedAt 为0，拒绝一切写入
+     */
+    private volatile RouteTable routeTable;
+
+    public UserShardRouter(ShardingConfig config, UserShardRouteMapper routeMapper,
+                           ObjectProvider<ShardRoutingDataSource> routingDataSourceProvider,
+                           MeterRegistry meterRegistry) {
+        this.config = config;
+        this.routeMapper = routeMapper;
+        this.routingDataSource = routingDataSourceProvider.getIfAvailable();
+        this.enabled = Boolean.TRUE.equals(config.getEnabled());
+        this.shards = enabled ? buildShards(config, routingDataSource) : Map.of(UserShard.LOGICAL_TABLE, UserShard.UNSHARDED);
+        this.defaultRoutes = defaultRoutes(List.copyOf(shards.values()));
+        this.routeTable = new RouteTable(defaultRoutes, new boolean[UidGenerator.SHARD_BUCKETS], 0L);
+        this.scatterReads = Counter.builder("wechat.user.shard.scatter_reads")
+                .description("不带分片桶的用户ID依次查询各分片的次数")
+                .register(meterRegistry);
+        this.rejectedWrites = Counter.builder("wechat.user.shard.rejected_writes")
+                .description("分片桶迁移中或路由表过期而拒绝的写入次数")
+                .register(meterRegistry);
+        this.refreshFailures = Counter.builder("wechat.user.shard.route_refresh_failures")
+                .description("路由表刷新失败次数")
+                .register(meterRegistry);
+        Gauge.builder("wechat.user.shard.route_age", this, router -> router.routeAgeMillis() / 1000.0)
+                .description("距上次成功刷新路由表的时间（秒）")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+        if (enabled) {
+            refreshRoutes();
+            log.info("启用用户分片：shards={}, routeRefreshInterval={}ms, routeMaxStaleness={}ms", shards.values(),
+                    config.getRouteRefreshInterval(), config.getRouteMaxStaleness());
+        }
+    }
+
+    /**
+     * 当前分片下SQL中表名对应的物理表，供MyBatis-Plus动态表名拦截器使用
+     *
+     * @param table SQL中的表名
+     * @return 物理表名，不是 wechat_user 时原样返回
+     * @throws IllegalStateException 访问 wechat_user 但未指定分片
+     */
+    public static String physicalTable(String table) {
+        if (!UserShard.LOGICAL_TABLE.equalsIgnoreCase(table)) {
+            return table;
+        }
+        UserShard shard = CURRENT_SHARD.get();
+        if (shard == null) {
+            throw new IllegalStateException("已启用分片，访问" + UserShard.LOGICAL_TABLE + "需通过UserShardRouter指定分片");
+        }
+        return shard.getTable();
+    }
+
+    /**
+     * 按当前分片改写SQL中的表名，供不经过MyBatis执行的语句使用，如慢SQL的EXPLAIN
+     *
+     * @param sql 逻辑SQL
+     * @return 物理SQL
+     */
+    public static String physicalSql(String sql) {
+        List<TableNameParser.SqlToken> tokens = new ArrayList<>();
+        new TableNameParser(sql).accept(tokens::add);
+        tokens.sort(null);
+        StringBuilder builder = new StringBuilder(sql.length());
+        int last = 0;
+        for (TableNameParser.SqlToken token : tokens) {
+            builder.append(sql, last, token.getStart()).append(physicalTable(token.getValue()));
+            last = token.getEnd();
+        }
+        return builder.append(sql, last, sql.length()).toString();
+    }
+
+    /**
+     * 当前线程所在的分片
+     *
+     * @return 分片，不在 {@link #execute} 范围内或未启用分片时返回null
+     */
+    public static UserShard currentShard() {
+        return CURRENT_SHARD.get();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 全部分片，未启用分片时只有 {@link UserShard#UNSHARDED}
+     */
+    public List<UserShard> getShards() {
+        return List.copyOf(shards.values());
+    }
+
+    /**
+     * 按名称查找分片
+     *
+     * @param name 分片名称
+     * @return 分片，不存在返回null
+     */
+    public UserShard getShard(String name) {
+        return shards.get(name);
+    }
+
+    /**
+     * 分片桶当前所在的分片
+     *
+     * @param bucket 分片桶
+     * @return 分片
+     */
+    public UserShard shardOfBucket(int bucket) {
+        return routeTable.shards[bucket];
+    }
+
+    /**
+     * 分片桶是否正在迁移
+     *
+     * @param bucket 分片桶
+     * @return true-迁移中，只读
+     */
+    public boolean isMigrating(int bucket) {
+        return routeTable.migrating[bucket];
+    }
+
+    /**
+     * openid当前是否路由到指定分片，用于丢弃迁移后留在源分片（或迁移中已复制到目标分片）的副本
+     *
+     * @param shard  分片
+     * @param openid 微信openid
+     * @return true-该分片上的行是openid的有效数据
+     */
+    public boolean ownsOpenid(UserShard shard, String openid) {
+        return !enabled || shardOfBucket(UidGenerator.shardBucket(openid)).equals(shard);
+    }
+
+    /**
+     * 按openid读取
+     *
+     * @param openid 微信openid
+     * @param query  查询
+     * @return 查询结果
+     */
+    public <T> T readByOpenid(String openid, Supplier<T> query) {
+        if (!enabled) {
+            return query.get();
+        }
+        return execute(shardOfBucket(UidGenerator.shardBucket(openid)), query);
+    }
+
+    /**
+     * 按用户ID读取，ID不带分片桶时依次查询各分片，返回第一个openid路由到所在分片的结果
+     *
+     * @param userId   用户ID
+     * @param query    查询，用户不存在时返回null
+     * @param openidOf 取结果的openid，用于丢弃迁移后留在其他分片上的副本
+     * @return 查询结果
+     */
+    public <T> T readByUserId(String userId, Supplier<T> query, Function<T, String> openidOf) {
+        if (!enabled) {
+            return query.get();
+        }
+        int bucket = UidGenerator.parseShardBucket(userId);
+        if (bucket >= 0) {
+            return execute(shardOfBucket(bucket), query);
+        }
+        scatterReads.increment();
+        for (UserShard shard : shards.values()) {
+            T result = execute(shard, query);
+            if (result != null && ownsOpenid(shard, openidOf.apply(result))) {
+                return result;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 按openid写入
+     *
+     * @param openid 微信openid
+     * @param action 写操作
+     * @return 操作结果
+     * @throws BusinessException 分片桶迁移中或路由表过期，稍后重试
+     */
+    public <T> T writeByOpenid(String openid, Supplier<T> action) {
+        if (!enabled) {
+            return action.get();
+        }
+        return execute(writableShard(UidGenerator.shardBucket(openid)), action);
+    }
+
+    /**
+     * openid当前是否可以写入
+     *
+     * @param openid 微信openid
+     * @return false-分片桶迁移中或路由表过期
+     */
+    public boolean isWritable(String openid) {
+        if (!enabled) {
+            return true;
+        }
+        RouteTable table = routeTable;
+        return !table.isStale(config.getRouteMaxStaleness()) && !table.migrating[UidGenerator.shardBucket(openid)];
+    }
+
+    /**
+     * 按openid所在的分片分组，分组按分片配置顺序排列
+     *
+     * @param items    待处理的数据
+     * @param openidOf 取openid
+     * @param write    是否用于写入，为true时任一数据不可写入即抛出繁忙异常
+     * @return 分片到该分片数据的映射，未启用分片时只有 {@link UserShard#UNSHARDED} 一组
+     */
+    public <T> Map<UserShard, List<T>> partitionByOpenid(Collection<T> items, Function<T, String> openidOf,
+                                                         boolean write) {
+        Map<UserShard, List<T>> groups = new LinkedHashMap<>();
+        if (!enabled) {
+            groups.put(UserShard.UNSHARDED, List.copyOf(items));
+            return groups;
+        }
+        shards.values().forEach(shard -> groups.put(shard, new ArrayList<>()));
+        for (T item : items) {
+            int bucket = UidGenerator.shardBucket(openidOf.apply(item));
+            groups.get(write ? writableShard(bucket) : shardOfBucket(bucket)).add(item);
+        }
+        groups.values().removeIf(List::isEmpty);
+        return groups;
+    }
+
+    /**
+     * 在指定分片上执行，未启用分片时直接执行
+     *
+     * @param shard  分片
+     * @param action 操作
+     * @return 操作结果
+     */
+    public <T> T execute(UserShard shard, Supplier<T> action) {
+        if (!enabled) {
+            return action.get();
+        }
+        UserShard previous = CURRENT_SHARD.get();
+        CURRENT_SHARD.set(shard);
+        try {
+            return routingDataSource.useDataSource(shard.getDataSource(), action);
+        } finally {
+            if (previous == null) {
+                CURRENT_SHARD.remove();
+            } else {
+                CURRENT_SHARD.set(previous);
+            }
+        }
+    }
+
+    /**
+     * 在指定分片上执行无返回值的操作
+     *
+     * @param shard  分片
+     * @param action 操作
+     */
+    public void run(UserShard shard, Runnable action) {
+        execute(shard, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    /**
+     * 从 user_shard_route 刷新路由表，失败时保留原路由表，超过 routeMaxStaleness 后拒绝写入
+     */
+    @Scheduled(fixedDelayString = "${app.sharding.route-refresh-interval:10000}")
+    public void refreshRoutes() {
+        if (!enabled) {
+            return;
+        }
+        // 以查询开始时间作为加载时间：查询期间写入的迁移标记可能未读到，路由表的有效期从查询开始计算
+        long loadStart = System.currentTimeMillis();
+        try {
+            List<UserShardRoute> routes = routeMapper.selectRoutes();
+            UserShard[] routed = defaultRoutes.clone();
+            boolean[] migrating = new boolean[UidGenerator.SHARD_BUCKETS];
+            for (UserShardRoute route : routes) {
+                int bucket = route.getBucket();
+                UserShard shard = shards.get(route.getShard());
+                if (bucket < 0 || bucket >= UidGenerator.SHARD_BUCKETS || shard == null) {
+                    // 按默认分配路由可能读写错误的分片，保留原路由表直到路由记录或分片配置被修正
+                    throw new IllegalStateException("无效的分片路由：bucket=" + bucket + ", shard=" + route.getShard());
+                }
+                routed[bucket] = shard;
+                migrating[bucket] = Integer.valueOf(UserShardRoute.STATUS_MIGRATING).equals(route.getStatus());
+            }
+            RouteTable previous = routeTable;
+            routeTable = new RouteTable(routed, migrating, loadStart);
+            if (previous.loadedAt == 0L || previous.differsFrom(routeTable)) {
+                log.info("分片路由表已更新：routes={}", routes.size());
+            }
+        } catch (RuntimeException e) {
+            refreshFailures.increment();
+            log.error("刷新分片路由表失败，路由表已{}ms未更新：{}", routeAgeMillis(), e.getMessage());
+        }
+    }
+
+    private UserShard writableShard(int bucket) {
+        RouteTable table = routeTable;
+        if (table.isStale(config.getRouteMaxStaleness())) {
+            rejectedWrites.increment();
+            throw new BusinessException(BusinessCodeEnum.SYSTEM_BUSY, "分片路由表未能及时更新，暂停写入");
+        }
+        if (table.migrating[bucket]) {
+            rejectedWrites.increment();
+            throw new BusinessException(BusinessCodeEnum.SYSTEM_BUSY, "用户数据迁移中，请稍后再试");
+        }
+        return table.shards[bucket];
+    }
+
+    private long routeAgeMillis() {
+        long loadedAt = routeTable.loadedAt;
+        return loadedAt == 0L ? -1L : System.currentTimeMillis() - loadedAt;
+    }
+
+    private static Map<String, UserShard> buildShards(ShardingConfig config, ShardRoutingDataSource routingDataSource) {
+        if (config.getShards().isEmpty()) {
+            throw new IllegalStateException("已启用分片但未配置分片：app.sharding.shards");
+        }
+        if (routingDataSource == null) {
+            throw new IllegalStateException("已启用分片但未创建分片路由数据源");
+        }
+        Set<String> dataSourceNames = routingDataSource.getDataSourceNames();
+        Set<String> tables = new HashSet<>();
+        Map<String, UserShard> shards = new LinkedHashMap<>();
+        for (ShardingConfig.Shard shard : config.getShards()) {
+            if (!StringUtils.hasText(shard.getName()) || !StringUtils.hasText(shard.getTable())) {
+                throw new IllegalStateException("分片未配置名称或物理表：" + shard);
+            }
+            if (!dataSourceNames.contains(shard.getDataSource())) {
+                throw new IllegalStateException("分片的数据源不存在：" + shard.getName() + ", " + shard.getDataSource());
+            }
+            if (!tables.add(shard.getDataSource() + "/" + shard.getTable())) {
+                throw new IllegalStateException("多个分片使用同一张物理表：" + shard.getDataSource() + "/" + shard.getTable());
+            }
+            if (shards.putIfAbsent(shard.getName(),
+                    new UserShard(shard.getName(), shard.getDataSource(), shard.getTable())) != null) {
+                throw new IllegalStateException("分片名称重复：" + shard.getName());
+            }
+        }
+        return shards;
+    }
+
+    /**
+     * 默认分配：按分片顺序把桶平均分成连续区间
+     */
+    private static UserShard[] defaultRoutes(List<UserShard> shards) {
+        UserShard[] routes = new UserShard[UidGenerator.SHARD_BUCKETS];
+        for (int bucket = 0; bucket < routes.length; bucket++) {
+            routes[bucket] = shards.get(bucket * shards.size() / routes.length);
+        }
+        return routes;
+    }
+
+    /**
+     * 不可变的路由表快照
+     */
+    private static final class RouteTable {
+
+        private final UserShard[] shards;
+        private final boolean[] migrating;
+        private final long loadedAt;
+
+        private RouteTable(UserShard[] shards, boolean[] migrating, long loadedAt) {
+            this.shards = shards;
+            this.migrating = migrating;
+            this.loadedAt = loadedAt;
+        }
+
+        private boolean isStale(long maxStaleness) {
+            return System.currentTimeMillis() - loadedAt > maxStaleness;
+        }
+
+        private boolean differsFrom(RouteTable other) {
+            return !Arrays.equals(shards, other.shards) || !Arrays.equals(migrating, other.migrating);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package cn.shoanadmin.common.config;
+
+import cn.shoanadmin.common.util.AdaptiveTimeout;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.hc.client5.http.HttpRoute;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.io.ConnectionEndpoint;
+import org.apache.hc.core5.http.HttpHost;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * 微信HTTP客户端配置测试
+ * 使用JDK自带的HttpServer作为本地桩服务，按 {@link HttpClientConfig} 组装连接池、HTTP客户端与RestTemplate，
+ * 验证连接复用、响应超时与获取连接超时
+ *
+ * @author FruitPieces
+ * @since 2024-01-20
+ */
+class HttpClientConfigTest {
+
+    private static final int READ_TIMEOUT = 300;
+    private static final int CONNECTION_REQUEST_TIMEOUT = 200;
+
+    private final Set<Integer> clientPorts = ConcurrentHashMap.newKeySet();
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private PoolingHttpClientConnectionManager connectionManager;
+    private CloseableHttpClient httpClient;
+    private RestTemplate restTemplate;
+    private String baseUrl;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/ok", exchange -> {
+            clientPorts.add(exchange.getRemoteAddress().getPort());
+            respond(exchange, "ok");
+        });
+        server.createContext("/slow", exchange -> {
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            respond(exchange, "slow");
+        });
+        serverExecutor = Executors.newFixedThreadPool(4);
+        server.setExecutor(serverExecutor);
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+
+        WechatMiniappConfig wechatConfig = new WechatMiniappConfig();
+        wechatConfig.setReadTimeout(READ_TIMEOUT);
+        wechatConfig.setConnectionRequestTimeout(CONNECTION_REQUEST_TIMEOUT);
+        wechatConfig.setMaxConnPerRoute(1);
+        wechatConfig.getResilience().setMinTimeout(100L);
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        HttpClientConfig config = new HttpClientConfig();
+        AdaptiveTimeout adaptiveTimeout = new WechatResilienceConfig().wechatAdaptiveTimeout(wechatConfig, meterRegistry);
+        connectionManager = config.wechatConnectionManager(wechatConfig, meterRegistry);
+        httpClient = config.wechatHttpClient(connectionManager, wechatConfig);
+        restTemplate = config.restTemplate(new RestTemplateBuilder(), httpClient, wechatConfig, adaptiveTimeout);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        release.countDown();
+        httpClient.close();
+        connectionManager.close();
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    @Test
+    void sequentialRequestsReuseOnePooledConnection() {
+        for (int i = 0; i < 10; i++) {
+            assertThat(restTemplate.getForObject(baseUrl + "/ok", String.class)).isEqualTo("ok");
+        }
+
+        assertThat(clientPorts).hasSize(1);
+        assertThat(connectionManager.getTotalStats().getAvailable()).isEqualTo(1);
+        assertThat(connectionManager.getTotalStats().getLeased()).isZero();
+    }
+
+    @Test
+    void slowResponseFailsAfterReadTimeout() {
+        long start = System.nanoTime();
+
+        assertThatThrownBy(() -> restTemplate.getForObject(baseUrl + "/slow", String.class))
+                .isInstanceOf(ResourceAccessException.class)
+                .hasRootCauseInstanceOf(SocketTimeoutException.class);
+
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertThat(elapsed).isBetween((long) READ_TIMEOUT, 3000L);
+    }
+
+    @Test
+    void exhaustedRouteFailsAfterConnectionRequestTimeout() throws Exception {
+        // 占用该路由唯一的连接
+        HttpRoute route = new HttpRoute(new HttpHost("127.0.0.1", server.getAddress().getPort()));
+        ConnectionEndpoint held = connectionManager.lease("held", route, Timeout.ofSeconds(1), null)
+                .get(Timeout.ofSeconds(1));
+        try {
+            long start = System.nanoTime();
+
+            assertThatThrownBy(() -> restTemplate.getForObject(baseUrl + "/ok", String.class))
+                    .isInstanceOf(ResourceAccessException.class);
+
+            long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            assertThat(elapsed).isBetween((long) CONNECTION_REQUEST_TIMEOUT, 3000L);
+            assertThat(clientPorts).isEmpty();
+        } finally {
+            connectionManager.release(held, null, TimeValue.ZERO_MILLISECONDS);
+        }
+    }
+
+    private static void respond(HttpExchange exchange, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain");
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package cn.shoanadmin.infrastructure.cache;
+
+import cn.shoanadmin.common.config.JwtConfig;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+/**
+ * 令牌吊销缓存测试
+ *
+ * @author FruitPieces
+ * @since 2024-01-20
+ */
+class TokenRevocationCacheTest {
+
+    @Test
+    void userRevocationRejectsTokensIssuedBeforeIt() {
+        TokenRevocationCache cache = new TokenRevocationCache(new JwtConfig(), mock(StringRedisTemplate.class));
+        long revokedAt = System.currentTimeMillis();
+
+        cache.addUser("FP1", revokedAt);
+
+        assertThat(cache.isUserRevoked("FP1", revokedAt - 1)).isTrue();
+        assertThat(cache.isUserRevoked("FP1", 0L)).isTrue();
+        assertThat(cache.isUserRevoked("FP1", revokedAt + 1)).isFalse();
+        assertThat(cache.isUserRevoked("FP2", revokedAt - 1)).isFalse();
+    }
+
+    @Test
+    void reloadDropsUserRevocationsOlderThanTokenLifetime() {
+        JwtConfig jwtConfig = new JwtConfig();
+        TokenRevocationCache cache = new TokenRevocationCache(jwtConfig, mock(StringRedisTemplate.class));
+        long now = System.currentTimeMillis();
+        cache.addUser("expired", now - jwtConfig.getExpiration() - 1000);
+
+        cache.reload(Map.of(), Map.of("FP1", now));
+
+        assertThat(cache.isUserRevoked("expired", 0L)).isFalse();
+        assertThat(cache.isUserRevoked("FP1", now - 1)).isTrue();
+    }
+
+    @Test
+    void listenerAppliesUserRevocationFromOtherNodes() {
+        TokenRevocationCache cache = new TokenRevocationCache(new JwtConfig(), mock(StringRedisTemplate.class));
+        TokenRevocationListener listener = new TokenRevocationListener(cache);
+        String body = "{\"nodeId\":\"other\",\"userId\":\"FP1\",\"revokedAt\":1000}";
+
+        listener.onMessage(new DefaultMessage(new byte[0], body.getBytes(StandardCharsets.UTF_8)), null);
+
+        assertThat(cache.isUserRevoked("FP1", 999L)).isTrue();
+        assertThat(cache.isRevoked("FP1")).isFalse();
+    }
+}
@@ -0,0 +1,90 @@
+package cn.shoanadmin.infrastructure.cache;
+
+import cn.shoanadmin.common.config.AppCacheConfig;
+import cn.shoanadmin.domain.dto.UserProfileView;
+import cn.shoanadmin.domain.entity.WechatUser;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 用户缓存与失效竞争的测试：加载过程中发生失效时，加载结果不能留在缓存中
+ *
+ * @author FruitPieces
+ * @since 2024-01-20
+ */
+class WechatUserCacheTest {
+
+    private WechatUserRedisCache redisCache;
+    private WechatUserCache cache;
+
+    @BeforeEach
+    void setUp() {
+        redisCache = mock(WechatUserRedisCache.class);
+        when(redisCache.isEnabled()).thenReturn(true);
+        cache = new WechatUserCache(new AppCacheConfig(), new SimpleMeterRegistry(), redisCache);
+    }
+
+    @Test
+    void getByIdDiscardsLoadRacingEviction() {
+        AtomicInteger loads = new AtomicInteger();
+        WechatUser stale = user("old");
+
+        // 加载读到旧数据后、写入缓存前，写操作提交并失效缓存
+        WechatUser first = cache.getById("FP1", id -> {
+            loads.incrementAndGet();
+            cache.evict("FP1", "openid-1");
+            return stale;
+        });
+        assertThat(first.getNickname()).isEqualTo("old");
+        verify(redisCache).put(stale);
+        verify(redisCache).evict("FP1", "openid-1");
+
+        WechatUser second = cache.getById("FP1", id -> {
+            loads.incrementAndGet();
+            return user("new");
+        });
+        assertThat(second.getNickname()).isEqualTo("new");
+        assertThat(loads).hasValue(2);
+
+        assertThat(cache.getById("FP1", id -> {
+            throw new AssertionError("应命中本地缓存");
+        }).getNickname()).isEqualTo("new");
+    }
+
+    @Test
+    void getByOpenidDiscardsLoadRacingEviction() {
+        cache.getByOpenid("openid-1", openid -> {
+            cache.evict("FP1", openid);
+            return user("old");
+        });
+
+        assertThat(cache.getByOpenid("openid-1", openid -> user("new")).getNickname()).isEqualTo("new");
+    }
+
+    @Test
+    void getProfileByIdDiscardsLoadRacingEviction() {
+        UserProfileView stale = UserProfileView.builder().id("FP1").openid("openid-1").nickname("old").build();
+        cache.getProfileById("FP1", id -> {
+            cache.evict("FP1", "openid-1");
+            return stale;
+        });
+        verify(redisCache).putProfile(stale);
+        verify(redisCache).evict("FP1", null);
+
+        UserProfileView loaded = cache.getProfileById("FP1",
+                id -> UserProfileView.builder().id("FP1").openid("openid-1").nickname("new").build());
+        assertThat(loaded.getNickname()).isEqualTo("new");
+    }
+
+    private static WechatUser user(String nickname) {
+        return WechatUser.builder().id("FP1").openid("openid-1").nickname(nickname).build();
+    }
+}
@@ -0,0 +1,43 @@
+package cn.shoanadmin.infrastructure.cache;
+
+import cn.shoanadmin.common.config.AppCacheConfig;
+import cn.shoanadmin.domain.entity.WechatUser;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Redis用户缓存测试
+ *
+ * @author FruitPieces
+ * @since 2024-01-20
+ */
+class WechatUserRedisCacheTest {
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void putDoesNotStoreSessionKey() {
+        StringRedisTemplate redisTemplate = mock(StringRedisTemplate.class);
+        ValueOperations<String, String> values = mock(ValueOperations.class);
+        when(redisTemplate.opsForValue()).thenReturn(values);
+        WechatUserRedisCache cache = new WechatUserRedisCache(redisTemplate, new AppCacheConfig());
+        WechatUser user = WechatUser.builder().id("FP1").openid("openid-1").nickname("n").sessionKey("secret").build();
+
+        cache.put(user);
+
+        ArgumentCaptor<String> json = ArgumentCaptor.forClass(String.class);
+        verify(values).set(eq("wechat:user:id:FP1"), json.capture(), any(Duration.class));
+        assertThat(json.getValue()).contains("openid-1").doesNotContain("secret");
+        assertThat(user.getSessionKey()).isEqualTo("secret");
+    }
+}
@@ -0,0 +1,174 @@
+package cn.shoanadmin.infrastructure.datasource;
+
+import cn.shoanadmin.common.config.DataSourceRoutingConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 读写分离路由测试：两个H2内存库模拟主库与从库，复制由测试把主库心跳拷贝到从库模拟，
+ * 每个库的 node 表记录库名，用于判断查询实际路由到的库
+ *
+ * @author FruitPieces
+ * @since 2024-01-20
+ */
+class ReadWriteRoutingTest {
+
+    private static final String REPLICA = "replica-1";
+
+    private JdbcTemplate primaryJdbc;
+    private JdbcTemplate replicaJdbc;
+    private ReadWriteRoutingDataSource routingDataSource;
+    private ReplicaLagMonitor lagMonitor;
+    private ReplicaReadRouter readRouter;
+    private JdbcTemplate routedJdbc;
+    private TransactionTemplate transactionTemplate;
+
+    @BeforeEach
+    void setUp() {
+        DataSource primary = h2("primary");
+        DataSource replica = h2("replica");
+        primaryJdbc = new JdbcTemplate(primary);
+        replicaJdbc = new JdbcTemplate(replica);
+        createSchema(primaryJdbc, ReadWriteRoutingDataSource.PRIMARY);
+        createSchema(replicaJdbc, REPLICA);
+
+        DataSourceRoutingConfig config = new DataSourceRoutingConfig();
+        config.setEnabled(true);
+        config.setMaxLag(1000L);
+        config.setLagProbeInterval(100L);
+        config.setStickyWindow(300L);
+
+        routingDataSource = new ReadWriteRoutingDataSource(primary, Map.of(REPLICA, replica));
+        lagMonitor = new ReplicaLagMonitor(routingDataSource, config, new SimpleMeterRegistry());
+        StaticListableBeanFactory beanFactory = new StaticListableBeanFactory();
+        beanFactory.addBean("readWriteRoutingDataSource", routingDataSource);
+        readRouter = new ReplicaReadRouter(config, beanFactory.getBeanProvider(ReadWriteRoutingDataSource.class),
+                new SimpleMeterRegistry());
+
+        DataSource dataSource = new LazyConnectionDataSourceProxy(routingDataSource);
+        routedJdbc = new JdbcTemplate(dataSource);
+        transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+    }
+
+    @AfterEach
+    void tearDown() {
+        routingDataSource.close();
+    }
+
+    @Test
+    void replicaJoinsAndLeavesReadRotationByLag() {
+        // 尚未写入心跳，延迟未知，读主库
+        lagMonitor.probe();
+        assertThat(lagMonitor.getLags()).containsEntry(REPLICA, -1L);
+        assertThat(readNode("FP1")).isEqualTo(ReadWriteRoutingDataSource.PRIMARY);
+
+        // 心跳已复制到从库，延迟正常，加入读轮询
+        replicate();
+        lagMonitor.probe();
+        assertThat(lagMonitor.getLags().get(REPLICA)).isBetween(0L, 1000L);
+        assertThat(readNode("FP1")).isEqualTo(REPLICA);
+
+        // 复制停滞，从库心跳落后超过 maxLag，移出读轮询
+        replicaJdbc.update("UPDATE ds_heartbeat SET heartbeat_time = heartbeat_time - 5000 WHERE id = 1");
+        lagMonitor.probe();
+        assertThat(lagMonitor.getLags().get(REPLICA)).isGreaterThan(1000L);
+        assertThat(readNode("FP1")).isEqualTo(ReadWriteRoutingDataSource.PRIMARY);
+
+        // 复制追上后自动加回
+        replicate();
+        lagMonitor.probe();
+        assertThat(readNode("FP1")).isEqualTo(REPLICA);
+    }
+
+    @Test
+    void failedReplicaReadFallsBackToPrimary() {
+        joinReadRotation();
+        assertThat(readNode("FP1")).isEqualTo(REPLICA);
+
+        replicaJdbc.execute("DROP TABLE node");
+        assertThat(readNode("FP1")).isEqualTo(ReadWriteRoutingDataSource.PRIMARY);
+        assertThat(routingDataSource.nextReplica()).isNull();
+    }
+
+    @Test
+    void readsAfterWriteStickToPrimary() throws InterruptedException {
+        joinReadRotation();
+        assertThat(readNode("FP1")).isEqualTo(REPLICA);
+
+        readRouter.markWritten("FP1", "openid-1");
+        assertThat(readNode("FP1")).isEqualTo(ReadWriteRoutingDataSource.PRIMARY);
+        assertThat(readNode("openid-1")).isEqualTo(ReadWriteRoutingDataSource.PRIMARY);
+        assertThat(readNode("FP2")).isEqualTo(REPLICA);
+
+        // 事务内的读始终走主库
+        String inTransaction = transactionTemplate.execute(status -> readNode("FP2"));
+        assertThat(inTransaction).isEqualTo(ReadWriteRoutingDataSource.PRIMARY);
+
+        // 事务中的写入在事务结束后重新开始计时
+        transactionTemplate.executeWithoutResult(status -> {
+            readRouter.markWritten("FP3", null);
+            sleep(400);
+        });
+        assertThat(readNode("FP3")).isEqualTo(ReadWriteRoutingDataSource.PRIMARY);
+
+        // 超出 stickyWindow 后恢复读从库
+        Thread.sleep(400);
+        assertThat(readNode("FP1")).isEqualTo(REPLICA);
+        assertThat(readNode("FP3")).isEqualTo(REPLICA);
+    }
+
+    private String readNode(String key) {
+        return readRouter.read(key, () -> routedJdbc.queryForObject("SELECT name FROM node", String.class));
+    }
+
+    /**
+     * 写入心跳并复制到从库，使从库加入读轮询
+     */
+    private void joinReadRotation() {
+        lagMonitor.probe();
+        replicate();
+        lagMonitor.probe();
+    }
+
+    /**
+     * 模拟复制：把主库当前心跳拷贝到从库
+     */
+    private void replicate() {
+        Long heartbeat = primaryJdbc.queryForObject("SELECT heartbeat_time FROM ds_heartbeat WHERE id = 1", Long.class);
+        replicaJdbc.update("MERGE INTO ds_heartbeat (id, heartbeat_time) KEY (id) VALUES (1, ?)", heartbeat);
+    }
+
+    private static void createSchema(JdbcTemplate jdbc, String name) {
+        jdbc.execute("CREATE TABLE ds_heartbeat (id INT NOT NULL PRIMARY KEY, heartbeat_time BIGINT NOT NULL)");
+        jdbc.execute("CREATE TABLE node (name VARCHAR(32) NOT NULL)");
+        jdbc.update("INSERT INTO node (name) VALUES (?)", name);
+    }
+
+    private static DataSource h2(String name) {
+        return new DriverManagerDataSource("jdbc:h2:mem:" + name + "-" + UUID.randomUUID()
+                + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1", "sa", "");
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}
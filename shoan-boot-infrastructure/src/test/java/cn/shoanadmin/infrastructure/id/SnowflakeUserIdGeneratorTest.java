@@ -0,0 +1,155 @@
+package cn.shoanadmin.infrastructure.id;
+
+import cn.shoanadmin.common.config.IdGeneratorConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Snowflake用户ID生成的测试：多线程、多节点生成不重复，未取得租约时拒绝生成并在续约任务中重新抢占
+ *
+ * @author FruitPieces
+ * @since 2024-01-20
+ */
+class SnowflakeUserIdGeneratorTest {
+
+    private static final int THREADS = 8;
+    private static final int IDS_PER_THREAD = 5000;
+
+    /**
+     * 模拟Redis中的租约，键为 id:worker:{n}，值为节点标识
+     */
+    private final Map<String, String> leases = new ConcurrentHashMap<>();
+    private final AtomicBoolean redisDown = new AtomicBoolean();
+    private StringRedisTemplate redisTemplate;
+    private IdGeneratorConfig config;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        redisTemplate = mock(StringRedisTemplate.class);
+        ValueOperations<String, String> valueOperations = mock(ValueOperations.class);
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        when(valueOperations.setIfAbsent(anyString(), anyString(), any(Duration.class))).thenAnswer(invocation -> {
+            checkRedis();
+            return leases.putIfAbsent(invocation.getArgument(0), invocation.getArgument(1)) == null;
+        });
+        // 续约脚本：租约仍属于当前节点时返回1
+        when(redisTemplate.execute(any(RedisScript.class), anyList(), any(Object[].class))).thenAnswer(invocation -> {
+            checkRedis();
+            List<String> keys = invocation.getArgument(1);
+            Object nodeId = invocation.getArgument(2);
+            return nodeId.equals(leases.get(keys.get(0))) ? 1L : 0L;
+        });
+        config = new IdGeneratorConfig();
+    }
+
+    @Test
+    void generatesUniqueIdsAcrossThreadsAndNodes() throws Exception {
+        SnowflakeUserIdGenerator first = newGenerator();
+        SnowflakeUserIdGenerator second = newGenerator();
+        assertThat(leases).hasSize(2);
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS * 2);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<List<String>>> futures = new ArrayList<>();
+            for (int i = 0; i < THREADS * 2; i++) {
+                SnowflakeUserIdGenerator generator = i % 2 == 0 ? first : second;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    List<String> ids = new ArrayList<>(IDS_PER_THREAD);
+                    for (int n = 0; n < IDS_PER_THREAD; n++) {
+                        // 同一openid落在同一分片桶，唯一性只能依赖Snowflake部分
+                        ids.add(generator.nextUserId("openid-1"));
+                    }
+                    return ids;
+                }));
+            }
+            start.countDown();
+
+            Set<String> ids = ConcurrentHashMap.newKeySet();
+            for (Future<List<String>> future : futures) {
+                ids.addAll(future.get());
+            }
+            assertThat(ids).hasSize(THREADS * 2 * IDS_PER_THREAD);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void refusesIdsUntilLeaseIsAcquiredInBackground() {
+        redisDown.set(true);
+        SnowflakeUserIdGenerator generator = newGenerator();
+        assertThat(generator.hasValidWorkerId()).isFalse();
+        assertThatThrownBy(() -> generator.nextUserId("openid-1")).isInstanceOf(IllegalStateException.class);
+
+        // Redis恢复前续约任务不会取得租约
+        generator.renewLease();
+        assertThatThrownBy(() -> generator.nextUserId("openid-1")).isInstanceOf(IllegalStateException.class);
+
+        redisDown.set(false);
+        generator.renewLease();
+        assertThat(leases).hasSize(1);
+        assertThat(generator.hasValidWorkerId()).isTrue();
+        assertThat(generator.nextUserId("openid-1")).startsWith("FP");
+    }
+
+    @Test
+    void reacquiresAnotherWorkerIdWhenLeaseIsLost() {
+        SnowflakeUserIdGenerator generator = newGenerator();
+        String lostKey = leases.keySet().iterator().next();
+        // 租约过期后被其他节点抢占
+        leases.put(lostKey, "other-node");
+
+        generator.renewLease();
+        assertThat(generator.hasValidWorkerId()).isTrue();
+        assertThat(leases).hasSize(2).containsEntry(lostKey, "other-node");
+        generator.nextUserId("openid-1");
+    }
+
+    @Test
+    void fallsBackToHashedWorkerIdWhenAllowed() {
+        redisDown.set(true);
+        config.setAllowUnleasedWorker(true);
+        SnowflakeUserIdGenerator generator = newGenerator();
+
+        assertThat(generator.hasValidWorkerId()).isFalse();
+        assertThat(generator.nextUserId("openid-1")).startsWith("FP");
+    }
+
+    private SnowflakeUserIdGenerator newGenerator() {
+        return new SnowflakeUserIdGenerator(config, redisTemplate, new SimpleMeterRegistry());
+    }
+
+    private void checkRedis() {
+        if (redisDown.get()) {
+            throw new RedisConnectionFailureException("模拟Redis不可用");
+        }
+    }
+}
@@ -0,0 +1,293 @@
+package cn.shoanadmin.infrastructure.sharding;
+
+import cn.shoanadmin.common.config.DataSourceRoutingConfig;
+import cn.shoanadmin.common.config.ShardingConfig;
+import cn.shoanadmin.common.util.UidGenerator;
+import cn.shoanadmin.domain.dto.UserExportRow;
+import cn.shoanadmin.domain.entity.WechatUser;
+import cn.shoanadmin.infrastructure.cache.WechatUserCache;
+import cn.shoanadmin.infrastructure.datasource.ReadWriteRoutingDataSource;
+import cn.shoanadmin.infrastructure.datasource.ReplicaReadRouter;
+import cn.shoanadmin.infrastructure.manager.LoginInfoWriteBehind;
+import cn.shoanadmin.infrastructure.manager.WechatUserManager;
+import cn.shoanadmin.infrastructure.manager.WechatUserUpdate;
+import cn.shoanadmin.infrastructure.mapper.UserShardRouteMapper;
+import cn.shoanadmin.infrastructure.mapper.WechatUserMapper;
+import com.baomidou.mybatisplus.core.MybatisConfiguration;
+import com.baomidou.mybatisplus.extension.plugins.MybatisPlusInterceptor;
+import com.baomidou.mybatisplus.extension.plugins.inner.DynamicTableNameInnerInterceptor;
+import com.baomidou.mybatisplus.extension.spring.MybatisSqlSessionFactoryBean;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.type.JdbcType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.AdditionalAnswers;
+import org.mybatis.spring.SqlSessionTemplate;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.zip.CRC32;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 用户分片路由测试：两个H2内存库模拟主库与分片库，主库上 s0、s1，分片库上 s2、s3
+ *
+ * @author FruitPieces
+ * @since 2024-01-20
+ */
+class UserShardRouterTest {
+
+    private static final String[] SHARD_TABLES = {"wechat_user_0", "wechat_user_1", "wechat_user_2", "wechat_user_3"};
+    private static final String[] SHARD_DATA_SOURCES = {"primary", "primary", "users", "users"};
+    private static final int USERS = 40;
+
+    private Map<String, JdbcTemplate> jdbc;
+    private ShardingConfig config;
+    private UserShardRouter router;
+    private UserShardMigrator migrator;
+    private WechatUserMapper wechatUserMapper;
+    private WechatUserManager manager;
+    private WechatUserCache cache;
+    private Runnable lateWrite;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        DataSource primary = h2("primary");
+        DataSource users = h2("users");
+        jdbc = Map.of("primary", new JdbcTemplate(primary), "users", new JdbcTemplate(users));
+        createSchema();
+
+        config = new ShardingConfig();
+        config.setEnabled(true);
+        config.setRouteMaxStaleness(200L);
+        config.setMaxWriteDuration(100L);
+        config.setMergeFetchSize(7);
+        config.setMigrationBatchSize(3);
+        for (int i = 0; i < SHARD_TABLES.length; i++) {
+            ShardingConfig.Shard shard = new ShardingConfig.Shard();
+            shard.setName("s" + i);
+            shard.setDataSource(SHARD_DATA_SOURCES[i]);
+            shard.setTable(SHARD_TABLES[i]);
+            config.getShards().add(shard);
+        }
+
+        ShardRoutingDataSource routingDataSource = new ShardRoutingDataSource(primary, false, Map.of("users", users));
+        DataSource dataSource = new LazyConnectionDataSourceProxy(routingDataSource);
+        SqlSessionFactory sqlSessionFactory = sqlSessionFactory(dataSource);
+        SqlSessionTemplate sqlSessionTemplate = new SqlSessionTemplate(sqlSessionFactory);
+        TransactionTemplate transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        wechatUserMapper = sqlSessionTemplate.getMapper(WechatUserMapper.class);
+        UserShardRouteMapper routeMapper = sqlSessionTemplate.getMapper(UserShardRouteMapper.class);
+
+        StaticListableBeanFactory beanFactory = new StaticListableBeanFactory();
+        beanFactory.addBean("shardRoutingDataSource", routingDataSource);
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        router = new UserShardRouter(config, routeMapper, beanFactory.getBeanProvider(ShardRoutingDataSource.class),
+                meterRegistry);
+        // 复制读取源分片第一页后模拟一次迟到的写入，迁移需在比对时发现并修正
+        WechatUserMapper migratorMapper = mock(WechatUserMapper.class, AdditionalAnswers.delegatesTo(wechatUserMapper));
+        doAnswer(invocation -> {
+            List<WechatUser> result = wechatUserMapper.selectByShardBucket(invocation.getArgument(0),
+                    invocation.getArgument(1), invocation.getArgument(2), invocation.getArgument(3),
+                    invocation.getArgument(4));
+            if (lateWrite != null) {
+                lateWrite.run();
+                lateWrite = null;
+            }
+            return result;
+        }).when(migratorMapper).selectByShardBucket(anyInt(), anyInt(), any(), any(), anyInt());
+        migrator = new UserShardMigrator(config, router, routeMapper, migratorMapper, sqlSessionFactory,
+                transactionTemplate);
+
+        cache = mock(WechatUserCache.class);
+        when(cache.getById(any(), any())).thenAnswer(invocation ->
+                invocation.<Function<String, WechatUser>>getArgument(1).apply(invocation.getArgument(0)));
+        ReplicaReadRouter replicaReadRouter = new ReplicaReadRouter(new DataSourceRoutingConfig(),
+                beanFactory.getBeanProvider(ReadWriteRoutingDataSource.class), meterRegistry);
+        manager = new WechatUserManager(wechatUserMapper, cache, mock(LoginInfoWriteBehind.class), replicaReadRouter,
+                sqlSessionFactory, transactionTemplate, router, config);
+    }
+
+    @Test
+    void scatterReadAndExportIgnoreCopiesLeftOnSourceShard() {
+        List<String> openids = seedLegacyUsers();
+        String openid = openids.stream()
+                .filter(candidate -> router.shardOfBucket(UidGenerator.shardBucket(candidate)).getName().equals("s0"))
+                .findFirst()
+                .orElseThrow();
+        int bucket = UidGenerator.shardBucket(openid);
+        String userId = legacyId(openids.indexOf(openid));
+        long bucketUsers = openids.stream().filter(candidate -> UidGenerator.shardBucket(candidate) == bucket).count();
+
+        assertThat(migrator.moveBucket(bucket, "s3")).isEqualTo(bucketUsers);
+        // 迁移后的写入只落在目标分片，源分片上未清理的副本不再更新
+        jdbc.get("users").update("UPDATE wechat_user_3 SET nickname = ? WHERE id = ?", "moved", userId);
+
+        WechatUser user = manager.findByUserId(userId);
+        assertThat(user).isNotNull();
+        assertThat(user.getNickname()).isEqualTo("moved");
+
+        List<UserExportRow> rows = new ArrayList<>();
+        int count = manager.exportUsers(null, USERS + 10, rows::add);
+        assertThat(count).isEqualTo(USERS);
+        Set<String> ids = new HashSet<>();
+        rows.forEach(row -> assertThat(ids.add(row.getId())).isTrue());
+        assertThat(rows).extracting(UserExportRow::getId).isSorted();
+        assertThat(rows).filteredOn(row -> row.getId().equals(userId))
+                .singleElement()
+                .extracting(UserExportRow::getNickname)
+                .isEqualTo("moved");
+
+        // 分页导出跨过源分片上的副本时同样不重复、不遗漏
+        List<String> paged = new ArrayList<>();
+        String afterId = null;
+        int page;
+        do {
+            page = manager.exportUsers(afterId, 3, row -> paged.add(row.getId()));
+            if (page > 0) {
+                afterId = paged.get(paged.size() - 1);
+            }
+        } while (page == 3);
+        assertThat(paged).containsExactlyElementsOf(ids.stream().sorted().toList());
+
+        assertThat(migrator.purgeBucket(bucket, "s0")).isEqualTo((int) bucketUsers);
+        assertThat(manager.findByUserId(userId).getNickname()).isEqualTo("moved");
+    }
+
+    @Test
+    void updateUserWritesOnlyChangedColumns() {
+        List<String> openids = seedLegacyUsers();
+        String openid = openids.get(0);
+        String userId = legacyId(0);
+        int shard = UidGenerator.shardBucket(openid) * SHARD_TABLES.length / UidGenerator.SHARD_BUCKETS;
+        JdbcTemplate shardJdbc = jdbc.get(SHARD_DATA_SOURCES[shard]);
+        String selectRow = "SELECT nickname, city, updated_time FROM " + SHARD_TABLES[shard] + " WHERE id = ?";
+        // 基准用户来自过期的缓存，昵称与库中不同，不参与比较
+        WechatUser stale = WechatUser.builder().id(userId).openid(openid).nickname("stale").build();
+
+        assertThat(manager.updateUser(WechatUserUpdate.of(stale).nickname("user-0").city(null))).isZero();
+        assertThat(shardJdbc.queryForMap(selectRow, userId)).containsEntry("updated_time", 1L);
+        verify(cache, never()).evict(userId, openid);
+
+        assertThat(manager.updateUser(WechatUserUpdate.of(stale).nickname("renamed").city(null))).isEqualTo(1);
+        Map<String, Object> row = shardJdbc.queryForMap(selectRow, userId);
+        assertThat(row).containsEntry("nickname", "renamed").containsEntry("city", null);
+        assertThat((Long) row.get("updated_time")).isGreaterThan(1L);
+        verify(cache).evict(userId, openid);
+    }
+
+    @Test
+    void moveBucketRepairsWritesCommittedDuringCopy() {
+        List<String> openids = seedLegacyUsers();
+        String openid = openids.stream()
+                .filter(candidate -> router.shardOfBucket(UidGenerator.shardBucket(candidate)).getName().equals("s1"))
+                .findFirst()
+                .orElseThrow();
+        int bucket = UidGenerator.shardBucket(openid);
+        String userId = legacyId(openids.indexOf(openid));
+        lateWrite = () -> jdbc.get("primary").update(
+                "UPDATE wechat_user_1 SET nickname = ?, deleted = 1 WHERE id = ?", "late", userId);
+
+        migrator.moveBucket(bucket, "s2");
+
+        assertThat(jdbc.get("users").queryForMap("SELECT nickname, deleted FROM wechat_user_2 WHERE id = ?", userId))
+                .containsEntry("nickname", "late")
+                .containsEntry("deleted", 1);
+        assertThat(router.shardOfBucket(bucket).getName()).isEqualTo("s2");
+        assertThat(router.isMigrating(bucket)).isFalse();
+    }
+
+    /**
+     * 按默认分配写入不带分片桶的旧格式用户
+     */
+    private List<String> seedLegacyUsers() {
+        List<String> openids = new ArrayList<>();
+        for (int i = 0; i < USERS; i++) {
+            String openid = "openid-" + i;
+            openids.add(openid);
+            int shard = UidGenerator.shardBucket(openid) * SHARD_TABLES.length / UidGenerator.SHARD_BUCKETS;
+            jdbc.get(SHARD_DATA_SOURCES[shard]).update("INSERT INTO " + SHARD_TABLES[shard]
+                            + " (id, openid, nickname, status, created_time, updated_time, deleted)"
+                            + " VALUES (?, ?, ?, 1, ?, ?, 0)",
+                    legacyId(i), openid, "user-" + i, 1L, 1L);
+        }
+        return openids;
+    }
+
+    private static String legacyId(int index) {
+        return String.format("FP1735%04d", index);
+    }
+
+    private void createSchema() {
+        for (JdbcTemplate template : jdbc.values()) {
+            template.execute("CREATE ALIAS CRC32 FOR \"" + H2Functions.class.getName() + ".crc32\"");
+        }
+        jdbc.get("primary").execute("CREATE TABLE user_shard_route (bucket INT NOT NULL PRIMARY KEY,"
+                + " shard VARCHAR(64) NOT NULL, status TINYINT NOT NULL DEFAULT 0, updated_time BIGINT NOT NULL)");
+        for (int i = 0; i < SHARD_TABLES.length; i++) {
+            jdbc.get(SHARD_DATA_SOURCES[i]).execute("CREATE TABLE " + SHARD_TABLES[i] + " ("
+                    + "id VARCHAR(32) NOT NULL PRIMARY KEY, openid VARCHAR(64) NOT NULL, unionid VARCHAR(64),"
+                    + " nickname VARCHAR(64), avatar_url VARCHAR(512), gender INT, country VARCHAR(64),"
+                    + " province VARCHAR(64), city VARCHAR(64), language VARCHAR(32), session_key VARCHAR(128),"
+                    + " last_login_time BIGINT, last_login_ip VARCHAR(64), user_agent VARCHAR(512), status INT,"
+                    + " created_time BIGINT, updated_time BIGINT, deleted INT NOT NULL DEFAULT 0,"
+                    + " CONSTRAINT uk_openid_" + i + " UNIQUE (openid))");
+        }
+    }
+
+    private static DataSource h2(String name) {
+        return new DriverManagerDataSource("jdbc:h2:mem:" + name + "-" + UUID.randomUUID()
+                + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1", "sa", "");
+    }
+
+    private static SqlSessionFactory sqlSessionFactory(DataSource dataSource) throws Exception {
+        MybatisConfiguration configuration = new MybatisConfiguration();
+        configuration.setMapUnderscoreToCamelCase(true);
+        configuration.setCallSettersOnNulls(true);
+        configuration.setJdbcTypeForNull(JdbcType.NULL);
+        MybatisPlusInterceptor interceptor = new MybatisPlusInterceptor();
+        interceptor.addInnerInterceptor(new DynamicTableNameInnerInterceptor(
+                (sql, tableName) -> UserShardRouter.physicalTable(tableName)));
+        MybatisSqlSessionFactoryBean factory = new MybatisSqlSessionFactoryBean();
+        factory.setDataSource(dataSource);
+        factory.setConfiguration(configuration);
+        factory.setPlugins(interceptor);
+        factory.setMapperLocations(new PathMatchingResourcePatternResolver().getResources("classpath*:/mapper/*.xml"));
+        return factory.getObject();
+    }
+
+    /**
+     * H2 没有 CRC32 函数，建表前注册为与MySQL结果一致的别名；H2通过反射调用，需为public
+     */
+    public static final class H2Functions {
+
+        public static long crc32(String value) {
+            CRC32 crc = new CRC32();
+            crc.update(value.getBytes(StandardCharsets.UTF_8));
+            return crc.getValue();
+        }
+    }
+}
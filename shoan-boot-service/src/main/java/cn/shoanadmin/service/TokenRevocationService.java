@@ -0,0 +1,26 @@
+package cn.shoanadmin.service;
+
+import cn.shoanadmin.common.security.TokenClaims;
+
+public interface TokenRevocationService {
+    /**
+     * 吊销访问令牌，无效或已过期的令牌直接忽略
+     * @param token 访问令牌
+     * @param ipAddress 客户端IP
+     * @param userAgent 客户端User-Agent
+     */
+    void revoke(String token, String ipAddress, String userAgent);
+
+    /**
+     * 吊销用户当前时间之前签发的全部令牌，用户被禁用或删除时调用
+     * @param userId 用户ID
+     */
+    void revokeUser(String userId);
+
+    /**
+     * 判断令牌是否已吊销，包括令牌本身被吊销和所属用户被吊销，只查询内存
+     * @param claims 已验证的令牌声明
+     * @return true-已吊销，false-未吊销
+     */
+    boolean isRevoked(TokenClaims claims);
+}
@@ -2,6 +2,8 @@ package cn.shoanadmin.service;
 
 
 import cn.shoanadmin.domain.api.ApiResult;
+import cn.shoanadmin.domain.dto.WechatPhoneInfo;
+import cn.shoanadmin.domain.dto.WechatUserInfo;
 import cn.shoanadmin.domain.request.LoginReq;
 import cn.shoanadmin.domain.response.LoginRes;
 import jakarta.servlet.http.HttpServletRequest;
@@ -15,4 +17,22 @@ public interface WechatAuthService {
      */
     ApiResult<LoginRes> miniAppLogin(LoginReq request, HttpServletRequest httpRequest);
 
+    /**
+     * 解密微信用户信息（wx.getUserInfo 的 encryptedData）
+     * @param sessionKey
+     * @param encryptedData
+     * @param iv
+     * @return
+     */
+    WechatUserInfo decryptUserInfo(String sessionKey, String encryptedData, String iv);
+
+    /**
+     * 解密微信手机号（getPhoneNumber 的 encryptedData）
+     * @param sessionKey
+     * @param encryptedData
+     * @param iv
+     * @return
+     */
+    WechatPhoneInfo decryptPhoneInfo(String sessionKey, String encryptedData, String iv);
+
 }
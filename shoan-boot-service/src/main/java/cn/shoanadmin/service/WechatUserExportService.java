@@ -0,0 +1,14 @@
+package cn.shoanadmin.service;
+
+import cn.shoanadmin.domain.request.UserExportReq;
+import jakarta.servlet.http.HttpServletResponse;
+
+public interface WechatUserExportService {
+    /**
+     * 按用户ID顺序把未删除用户以NDJSON或CSV格式流式写入响应，客户端断开时停止导出
+     * @param request
+     * @param response
+     * @return 导出的用户数
+     */
+    long exportUsers(UserExportReq request, HttpServletResponse response);
+}
@@ -0,0 +1,14 @@
+package cn.shoanadmin.service;
+
+import cn.shoanadmin.domain.dto.UserImportResult;
+
+import java.nio.file.Path;
+
+public interface WechatUserImportService {
+    /**
+     * 从CSV或JSONL文件批量导入用户，新用户创建，已有用户补全资料；中断后再次导入同一文件时从断点继续
+     * @param file
+     * @return 导入结果
+     */
+    UserImportResult importUsers(Path file);
+}
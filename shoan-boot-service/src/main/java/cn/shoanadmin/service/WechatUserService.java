@@ -1,6 +1,7 @@
 package cn.shoanadmin.service;
 
 import cn.shoanadmin.domain.api.ApiResult;
+import cn.shoanadmin.domain.dto.UserProfileView;
 import cn.shoanadmin.domain.entity.WechatUser;
 import cn.shoanadmin.domain.request.UpdateUserNicknameReq;
 import com.baomidou.mybatisplus.extension.service.IService;
@@ -21,6 +22,13 @@ public interface WechatUserService extends IService<WechatUser> {
      */
      WechatUser findById(String userId);
 
+    /**
+     * 通过用户ID查询用户资料视图，只包含认证上下文与用户信息接口需要的列
+     * @param userId
+     * @return 用户资料，不存在返回null
+     */
+     UserProfileView findProfileById(String userId);
+
     /**
      * 用户注册
      * @param openid
@@ -41,6 +49,19 @@ public interface WechatUserService extends IService<WechatUser> {
      */
      WechatUser updateUser(String userId, String nickname, String avatarUrl, String sessionKey);
 
+    /**
+     * 用户登录写入，新用户注册、已有用户更新会话密钥与登录信息
+     * @param openid
+     * @param sessionKey
+     * @param nickname
+     * @param avatarUrl
+     * @param loginIp
+     * @param userAgent
+     * @return 登录用户资料，用户已被删除时返回null
+     */
+     UserProfileView saveLoginUser(String openid, String sessionKey, String nickname, String avatarUrl,
+                              String loginIp, String userAgent);
+
     /**
      * 更新用户登录信息
      * @param userId
@@ -54,4 +75,12 @@ public interface WechatUserService extends IService<WechatUser> {
      * @return 更新后的用户信息
      */
      ApiResult<Boolean> updateUserNickname(UpdateUserNicknameReq request);
+
+    /**
+     * 更新用户状态，禁用时吊销该用户已签发的全部令牌
+     * @param userId 用户ID
+     * @param status 状态：0-禁用，1-正常
+     * @return 是否修改了用户记录
+     */
+     boolean updateUserStatus(String userId, Integer status);
 }
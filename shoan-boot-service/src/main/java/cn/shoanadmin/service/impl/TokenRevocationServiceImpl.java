@@ -0,0 +1,143 @@
+package cn.shoanadmin.service.impl;
+
+import cn.shoanadmin.common.config.JwtConfig;
+import cn.shoanadmin.common.exception.BusinessException;
+import cn.shoanadmin.common.security.AccessTokenService;
+import cn.shoanadmin.common.security.TokenClaims;
+import cn.shoanadmin.domain.dto.UserToken;
+import cn.shoanadmin.infrastructure.cache.TokenRevocationCache;
+import cn.shoanadmin.infrastructure.manager.UserTokenManager;
+import cn.shoanadmin.service.TokenRevocationService;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 令牌吊销服务
+ * 吊销记录持久化到 user_token 表，判断时只查询内存中的 {@link TokenRevocationCache}
+ * 用户被禁用或删除时写入一条用户吊销记录，该用户此前签发的令牌由吊销检查拒绝，认证时不再查询用户状态
+ * 启动时从数据库加载，之后定期全量对齐，弥补Redis通知丢失并清理已过期记录
+ *
+ * @author FruitPieces
+ * @since 2024-01-20
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class TokenRevocationServiceImpl implements TokenRevocationService {
+
+    private final JwtConfig jwtConfig;
+    private final AccessTokenService accessTokenService;
+    private final TokenRevocationCache tokenRevocationCache;
+    private final UserTokenManager userTokenManager;
+
+    @Override
+    public void revoke(String token, String ipAddress, String userAgent) {
+        TokenClaims claims;
+        try {
+            claims = accessTokenService.verify(token);
+        } catch (BusinessException e) {
+            log.info("忽略无效令牌的吊销请求：{}", e.getMessage());
+            return;
+        }
+        if (tokenRevocationCache.isRevoked(claims.getTokenId())) {
+            return;
+        }
+
+        // 先写本地与通知其他节点，持久化失败时由本地缓存与其他节点兜底到令牌过期
+        tokenRevocationCache.add(claims.getTokenId(), claims.getExpiresAt());
+        tokenRevocationCache.publish(claims.getTokenId(), claims.getExpiresAt());
+        try {
+            LocalDateTime now = LocalDateTime.now();
+            UserToken userToken = new UserToken();
+            userToken.setUserId(claims.getUserId());
+            userToken.setAccessToken(claims.getTokenId());
+            userToken.setAccessTokenExpiresAt(toLocalDateTime(claims.getExpiresAt()));
+            userToken.setDeviceType(claims.getDeviceType());
+            userToken.setIpAddress(ipAddress);
+            userToken.setUserAgent(userAgent);
+            userToken.setStatus(UserTokenManager.STATUS_REVOKED);
+            userToken.setCreatedTime(now);
+            userToken.setUpdatedTime(now);
+            userTokenManager.saveRevokedToken(userToken);
+        } catch (Exception e) {
+            log.error("持久化吊销令牌失败：userId={}", claims.getUserId(), e);
+        }
+    }
+
+    @Override
+    public void revokeUser(String userId) {
+        long revokedAt = System.currentTimeMillis();
+        tokenRevocationCache.addUser(userId, revokedAt);
+        tokenRevocationCache.publishUser(userId, revokedAt);
+        try {
+            LocalDateTime now = toLocalDateTime(revokedAt);
+            UserToken userToken = new UserToken();
+            userToken.setUserId(userId);
+            userToken.setAccessToken(UserTokenManager.ALL_TOKENS);
+            // 此前签发的令牌最晚在吊销时间加有效期后过期，记录保留到那时
+            userToken.setAccessTokenExpiresAt(toLocalDateTime(revokedAt + jwtConfig.getExpiration()));
+            userToken.setStatus(UserTokenManager.STATUS_REVOKED);
+            userToken.setCreatedTime(now);
+            userToken.setUpdatedTime(now);
+            userTokenManager.saveRevokedToken(userToken);
+        } catch (Exception e) {
+            log.error("持久化用户令牌吊销失败：userId={}", userId, e);
+        }
+        log.info("已吊销用户全部令牌：userId={}", userId);
+    }
+
+    @Override
+    public boolean isRevoked(TokenClaims claims) {
+        return tokenRevocationCache.isRevoked(claims.getTokenId())
+                || tokenRevocationCache.isUserRevoked(claims.getUserId(), claims.getIssuedAt());
+    }
+
+    /**
+     * 启动时加载吊销记录，数据库不可用时不阻断启动，等待下一次定期同步
+     */
+    @PostConstruct
+    public void init() {
+        refresh();
+    }
+
+    /**
+     * 定期与数据库对齐吊销记录
+     */
+    @Scheduled(initialDelayString = "${app.jwt.revocation.refresh-interval:300000}",
+            fixedDelayString = "${app.jwt.revocation.refresh-interval:300000}")
+    public void refresh() {
+        try {
+            List<UserToken> revokedTokens = userTokenManager.listUnexpiredRevokedTokens(LocalDateTime.now());
+            Map<String, Long> persisted = new HashMap<>(revokedTokens.size() * 2);
+            Map<String, Long> persistedUsers = new HashMap<>();
+            for (UserToken revokedToken : revokedTokens) {
+                if (UserTokenManager.ALL_TOKENS.equals(revokedToken.getAccessToken())) {
+                    persistedUsers.merge(revokedToken.getUserId(), toEpochMilli(revokedToken.getCreatedTime()), Math::max);
+                } else {
+                    persisted.put(revokedToken.getAccessToken(), toEpochMilli(revokedToken.getAccessTokenExpiresAt()));
+                }
+            }
+            tokenRevocationCache.reload(persisted, persistedUsers);
+        } catch (Exception e) {
+            log.error("同步吊销令牌失败", e);
+        }
+    }
+
+    private static LocalDateTime toLocalDateTime(long epochMilli) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMilli), ZoneId.systemDefault());
+    }
+
+    private static long toEpochMilli(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
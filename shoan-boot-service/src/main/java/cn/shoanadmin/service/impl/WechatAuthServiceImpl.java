@@ -1,19 +1,33 @@
 package cn.shoanadmin.service.impl;
 
 
+import cn.shoanadmin.common.config.AppCacheConfig;
 import cn.shoanadmin.common.config.WechatMiniappConfig;
 import cn.shoanadmin.common.enums.BusinessCodeEnum;
 import cn.shoanadmin.common.exception.BusinessException;
+import cn.shoanadmin.common.security.AccessTokenService;
+import cn.shoanadmin.common.security.WechatDataCipher;
 import cn.shoanadmin.common.util.IpUtil;
-import cn.shoanadmin.common.util.TokenUtil;
+import cn.shoanadmin.common.util.SingleFlight;
 import cn.shoanadmin.domain.api.ApiResult;
-import cn.shoanadmin.domain.entity.WechatUser;
+import cn.shoanadmin.domain.dto.UserProfileView;
+import cn.shoanadmin.domain.dto.WechatDecryptedData;
+import cn.shoanadmin.domain.dto.WechatPhoneInfo;
+import cn.shoanadmin.domain.dto.WechatUserInfo;
 import cn.shoanadmin.domain.request.LoginReq;
 import cn.shoanadmin.domain.response.LoginRes;
+import cn.shoanadmin.infrastructure.ratelimit.LoginRateLimiter;
 import cn.shoanadmin.service.WechatAuthService;
 import cn.shoanadmin.service.WechatUserService;
 import com.alibaba.fastjson2.JSON;
 import com.alibaba.fastjson2.JSONObject;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import jakarta.annotation.PostConstruct;
 import jakarta.servlet.http.HttpServletRequest;
 import lombok.Data;
 import lombok.RequiredArgsConstructor;
@@ -23,9 +37,13 @@ import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
 import org.springframework.web.client.RestTemplate;
 
+import java.time.Duration;
+import java.util.function.Supplier;
+
 /**
  * 微信认证服务
  * 负责与微信服务器交互，获取用户openid和session_key
+ * 同一授权码的并发登录只调用一次微信接口，成功结果按授权码短暂缓存，客户端重试时直接返回
  * 
  * @author FruitPieces
  * @since 2024-01-20
@@ -38,6 +56,30 @@ public class WechatAuthServiceImpl implements WechatAuthService {
     private final WechatMiniappConfig wechatConfig;
     private final RestTemplate restTemplate;
     private final WechatUserService wechatUserService;
+    private final AccessTokenService accessTokenService;
+    private final AppCacheConfig cacheConfig;
+    private final CircuitBreaker wechatCircuitBreaker;
+    private final Bulkhead wechatBulkhead;
+    private final WechatDataCipher wechatDataCipher;
+    private final LoginRateLimiter loginRateLimiter;
+
+    /**
+     * 按授权码合并进行中的登录
+     */
+    private final SingleFlight<String, LoginRes> loginFlight = new SingleFlight<>();
+
+    /**
+     * 按授权码缓存的成功登录结果
+     */
+    private Cache<String, LoginRes> loginResults;
+
+    @PostConstruct
+    public void init() {
+        this.loginResults = Caffeine.newBuilder()
+                .maximumSize(cacheConfig.getLoginResultMaxSize())
+                .expireAfterWrite(Duration.ofSeconds(cacheConfig.getLoginResultTtl()))
+                .build();
+    }
 
     /**
      * 微信登录响应结果
@@ -67,55 +109,83 @@ public class WechatAuthServiceImpl implements WechatAuthService {
                 throw new BusinessException(BusinessCodeEnum.PARAM_ERROR);
             }
 
-            log.info("开始小程序登录：code={}", request.getCode());
-
-            // 调用微信接口获取用户信息
-            WechatLoginResult authResult = getWechatUserInfo(request.getCode());
-
-            // 查询用户是否已存在
-            WechatUser existingUser = wechatUserService.findByOpenid(authResult.getOpenid());
-
-            WechatUser user = null;
-            if (existingUser == null) {
-                // 用户不存在，创建新用户
-                log.info("用户不存在，创建新用户：openid={}", authResult.getOpenid());
-                user = wechatUserService.createUser(
-                        authResult.getOpenid(),
-                        authResult.getSessionKey(),
-                        request.getNickname(),
-                        request.getAvatarUrl()
-                );
+            // 同一授权码的重试直接返回已有结果，微信授权码只能使用一次
+            String code = request.getCode();
+            LoginRes memoized = loginResults.getIfPresent(code);
+            if (memoized == null) {
+                memoized = loginFlight.execute(code, () -> {
+                    LoginRes cached = loginResults.getIfPresent(code);
+                    if (cached != null) {
+                        return cached;
+                    }
+                    LoginRes loginRes = doLogin(request, httpRequest);
+                    loginResults.put(code, loginRes);
+                    return loginRes;
+                });
             } else {
-                user = existingUser;
-            }
-
-            // 更新登录信息
-            String clientIp = IpUtil.getClientIp(httpRequest);
-            String userAgent = httpRequest.getHeader("User-Agent");
-            if (user != null) {
-                wechatUserService.updateLoginInfo(user.getId(), clientIp, userAgent);
-                // 生成访问令牌
-                String accessToken = TokenUtil.generateToken(user.getId(), "miniapp");
-
-                LoginRes loginRes = buildUserInfo(user, accessToken);
-
-                log.info("小程序登录成功：userId={}, openid={}", user.getId(), user.getOpenid());
-                return ApiResult.success(loginRes);
+                log.info("复用授权码的登录结果：userId={}", memoized.getUserId());
             }
+            return ApiResult.success(memoized);
+        } catch (BusinessException e) {
+            log.warn("小程序登录失败：{}", e.getMessage());
+            return ApiResult.error(e);
         } catch (Exception e) {
             log.error("小程序登录异常", e);
             return ApiResult.error(BusinessCodeEnum.WECHAT_LOGIN_FAILED);
         }
-        return ApiResult.error(BusinessCodeEnum.WECHAT_LOGIN_FAILED);
+    }
+
+    /**
+     * 执行登录：调用微信接口、创建或更新用户并生成访问令牌
+     *
+     * @param request     登录请求参数
+     * @param httpRequest HTTP请求
+     * @return 登录结果
+     */
+    private LoginRes doLogin(LoginReq request, HttpServletRequest httpRequest) {
+        log.info("开始小程序登录：code={}", request.getCode());
+
+        // 调用微信接口获取用户信息
+        WechatLoginResult authResult = getWechatUserInfo(request.getCode());
+
+        // 按openid限流，同一用户的登录风暴不再写库
+        loginRateLimiter.checkOpenid(authResult.getOpenid());
+
+        // 注册或更新登录信息，一次写入完成
+        String clientIp = IpUtil.getClientIp(httpRequest);
+        String userAgent = httpRequest.getHeader("User-Agent");
+        UserProfileView user = wechatUserService.saveLoginUser(
+                authResult.getOpenid(),
+                authResult.getSessionKey(),
+                request.getNickname(),
+                request.getAvatarUrl(),
+                clientIp,
+                userAgent
+        );
+        if (user == null) {
+            throw new BusinessException(BusinessCodeEnum.WECHAT_LOGIN_FAILED);
+        }
+        // 已禁用的用户不再签发新令牌，已签发的令牌在禁用时已吊销
+        if (!Integer.valueOf(1).equals(user.getStatus())) {
+            throw new BusinessException(BusinessCodeEnum.AUTH_USER_DISABLED);
+        }
+
+        // 生成访问令牌
+        String accessToken = accessTokenService.generateToken(user.getId(), "miniapp");
+
+        LoginRes loginRes = buildUserInfo(user, accessToken);
+
+        log.info("小程序登录成功：userId={}, openid={}", user.getId(), user.getOpenid());
+        return loginRes;
     }
 
     /**
      * 构建用户信息返回对象
      *
-     * @param user 用户实体
+     * @param user 用户资料
      * @return 用户信息Map
      */
-    private LoginRes buildUserInfo(WechatUser user, String accessToken) {
+    private LoginRes buildUserInfo(UserProfileView user, String accessToken) {
         LoginRes build = LoginRes.builder()
                 .userId(user.getId())
                 .nickname(user.getNickname())
@@ -146,7 +216,7 @@ public class WechatAuthServiceImpl implements WechatAuthService {
             log.info("调用微信jscode2session接口，code: {}", code);
             
             // 调用微信API
-            ResponseEntity<String> response = restTemplate.getForEntity(url, String.class);
+            ResponseEntity<String> response = callWechatApi(() -> restTemplate.getForEntity(url, String.class));
             String responseBody = response.getBody();
             
             log.info("微信jscode2session接口响应: {}", responseBody);
@@ -179,6 +249,26 @@ public class WechatAuthServiceImpl implements WechatAuthService {
         }
     }
 
+    /**
+     * 在熔断器与并发隔离保护下调用微信接口
+     * 熔断打开或并发已满时不发起请求，直接抛出 {@link BusinessCodeEnum#WECHAT_API_ERROR}
+     *
+     * @param call 接口调用
+     * @return 接口响应
+     */
+    private <T> T callWechatApi(Supplier<T> call) {
+        try {
+            return CircuitBreaker.decorateSupplier(wechatCircuitBreaker,
+                    Bulkhead.decorateSupplier(wechatBulkhead, call)).get();
+        } catch (CallNotPermittedException e) {
+            log.warn("微信接口熔断中，快速失败");
+            throw new BusinessException(BusinessCodeEnum.WECHAT_API_ERROR, "微信服务暂不可用，请稍后重试");
+        } catch (BulkheadFullException e) {
+            log.warn("微信接口并发已满，快速失败");
+            throw new BusinessException(BusinessCodeEnum.WECHAT_API_ERROR, "微信服务繁忙，请稍后重试");
+        }
+    }
+
     /**
      * 构建jscode2session接口URL
      * 
@@ -219,18 +309,41 @@ public class WechatAuthServiceImpl implements WechatAuthService {
     }
 
     /**
-     * 验证微信用户数据的完整性
-     * 
-     * @param sessionKey 会话密钥
+     * 解密微信用户信息
+     *
+     * @param sessionKey    会话密钥
      * @param encryptedData 加密数据
-     * @param iv 初始向量
+     * @param iv            初始向量
      * @return 解密后的用户信息
      */
-    public JSONObject decryptUserInfo(String sessionKey, String encryptedData, String iv) {
-        // TODO: 实现微信用户数据解密逻辑
-        // 这里需要使用AES解密算法解密encryptedData
-        // 暂时返回空对象，后续可以根据需要实现
-        log.warn("微信用户数据解密功能暂未实现");
-        return new JSONObject();
+    @Override
+    public WechatUserInfo decryptUserInfo(String sessionKey, String encryptedData, String iv) {
+        return decrypt(sessionKey, encryptedData, iv, WechatUserInfo.class);
+    }
+
+    /**
+     * 解密微信手机号
+     *
+     * @param sessionKey    会话密钥
+     * @param encryptedData 加密数据
+     * @param iv            初始向量
+     * @return 解密后的手机号信息
+     */
+    @Override
+    public WechatPhoneInfo decryptPhoneInfo(String sessionKey, String encryptedData, String iv) {
+        return decrypt(sessionKey, encryptedData, iv, WechatPhoneInfo.class);
+    }
+
+    /**
+     * 解密并校验数据水印，防止使用其他小程序的加密数据
+     */
+    private <T extends WechatDecryptedData> T decrypt(String sessionKey, String encryptedData, String iv, Class<T> type) {
+        T data = wechatDataCipher.decrypt(sessionKey, encryptedData, iv, type);
+        WechatDecryptedData.Watermark watermark = data.getWatermark();
+        if (watermark == null || !wechatConfig.getAppId().equals(watermark.getAppid())) {
+            log.warn("微信解密数据水印不匹配：appid={}", watermark != null ? watermark.getAppid() : null);
+            throw new BusinessException(BusinessCodeEnum.WECHAT_DECRYPT_FAILED, "数据水印不匹配");
+        }
+        return data;
     }
-}
\ No newline at end of file
+}
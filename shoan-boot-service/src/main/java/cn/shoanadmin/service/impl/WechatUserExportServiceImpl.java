@@ -0,0 +1,146 @@
+package cn.shoanadmin.service.impl;
+
+import cn.shoanadmin.common.config.UserExportConfig;
+import cn.shoanadmin.common.enums.BusinessCodeEnum;
+import cn.shoanadmin.common.exception.BusinessException;
+import cn.shoanadmin.common.util.CsvWriter;
+import cn.shoanadmin.domain.dto.UserExportRow;
+import cn.shoanadmin.domain.request.UserExportReq;
+import cn.shoanadmin.infrastructure.manager.WechatUserManager;
+import cn.shoanadmin.service.WechatUserExportService;
+import com.alibaba.fastjson2.JSON;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+
+/**
+ * 用户导出服务
+ * 按用户ID做游标分页，每页一条流式查询，读到一行就写一行到响应输出流：内存中同时只有一行，
+ * 客户端读得慢时写操作阻塞，数据库读取随之暂停。每页结束后刷出响应并归还连接，客户端断开时最多丢弃一页未读的结果。
+ * 导出不是快照，导出过程中新增的用户若ID大于当前位置也会被导出
+ *
+ * @author FruitPieces
+ * @since 2024-01-20
+ */
+@Slf4j
+@Service
+public class WechatUserExportServiceImpl implements WechatUserExportService {
+
+    private static final String FORMAT_CSV = "csv";
+    private static final int WRITE_BUFFER_SIZE = 16 * 1024;
+
+    /**
+     * CSV表头，与用户导入的CSV表头一致
+     */
+    private static final Object[] CSV_HEADER = {"id", "openid", "unionid", "nickname", "avatar_url", "gender",
+            "country", "province", "city", "language", "status", "last_login_time", "created_time", "updated_time"};
+
+    private final UserExportConfig config;
+    private final WechatUserManager wechatUserManager;
+    private final Semaphore exportPermits;
+    private final Counter exportedCounter;
+
+    public WechatUserExportServiceImpl(UserExportConfig config, WechatUserManager wechatUserManager,
+                                       MeterRegistry meterRegistry) {
+        this.config = config;
+        this.wechatUserManager = wechatUserManager;
+        this.exportPermits = new Semaphore(config.getMaxConcurrent());
+        this.exportedCounter = Counter.builder("wechat.user.export.rows")
+                .description("导出的用户数")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public long exportUsers(UserExportReq request, HttpServletResponse response) {
+        if (!exportPermits.tryAcquire()) {
+            throw new BusinessException(BusinessCodeEnum.SYSTEM_BUSY, "已有" + config.getMaxConcurrent() + "个导出正在进行");
+        }
+        boolean csv = FORMAT_CSV.equals(request.getFormat());
+        long limit = request.getLimit() != null ? request.getLimit() : Long.MAX_VALUE;
+        long startTime = System.currentTimeMillis();
+        ExportSink sink = null;
+        try {
+            response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+            response.setContentType(csv ? "text/csv" : "application/x-ndjson");
+            response.setHeader("Content-Disposition",
+                    "attachment; filename=users-" + startTime + (csv ? ".csv" : ".ndjson"));
+            Writer writer = new BufferedWriter(
+                    new OutputStreamWriter(response.getOutputStream(), StandardCharsets.UTF_8), WRITE_BUFFER_SIZE);
+            sink = new ExportSink(writer, csv ? new CsvWriter(writer) : null, request.getAfterId());
+            if (sink.csvWriter != null) {
+                sink.csvWriter.writeRecord(CSV_HEADER);
+            }
+            long remaining = limit;
+            while (remaining > 0) {
+                int pageLimit = (int) Math.min(config.getPageSize(), remaining);
+                int exported = wechatUserManager.exportUsers(sink.lastId, pageLimit, sink);
+                remaining -= exported;
+                writer.flush();
+                if (exported < pageLimit) {
+                    break;
+                }
+            }
+            log.info("导出用户完成：format={}, afterId={}, count={}, lastId={}, 耗时{}ms", request.getFormat(),
+                    request.getAfterId(), sink.count, sink.lastId, System.currentTimeMillis() - startTime);
+            return sink.count;
+        } catch (IOException | UncheckedIOException e) {
+            // 客户端断开或网络异常，响应已无法继续写入；客户端可用已收到的最后一个用户ID继续导出
+            long count = sink != null ? sink.count : 0;
+            log.warn("导出用户中断：afterId={}, count={}, lastId={}, {}", request.getAfterId(), count,
+                    sink != null ? sink.lastId : null, e.getMessage());
+            return count;
+        } finally {
+            if (sink != null) {
+                exportedCounter.increment(sink.count);
+            }
+            exportPermits.release();
+        }
+    }
+
+    /**
+     * 把导出记录逐行写入响应，记录写入位置
+     */
+    private static final class ExportSink implements Consumer<UserExportRow> {
+
+        private final Writer writer;
+        private final CsvWriter csvWriter;
+        private String lastId;
+        private long count;
+
+        private ExportSink(Writer writer, CsvWriter csvWriter, String afterId) {
+            this.writer = writer;
+            this.csvWriter = csvWriter;
+            this.lastId = afterId;
+        }
+
+        @Override
+        public void accept(UserExportRow row) {
+            try {
+                if (csvWriter != null) {
+                    csvWriter.writeRecord(row.getId(), row.getOpenid(), row.getUnionid(), row.getNickname(),
+                            row.getAvatarUrl(), row.getGender(), row.getCountry(), row.getProvince(), row.getCity(),
+                            row.getLanguage(), row.getStatus(), row.getLastLoginTime(), row.getCreatedTime(),
+                            row.getUpdatedTime());
+                } else {
+                    writer.write(JSON.toJSONString(row));
+                    writer.write('\n');
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            lastId = row.getId();
+            count++;
+        }
+    }
+}
@@ -0,0 +1,566 @@
+package cn.shoanadmin.service.impl;
+
+import cn.shoanadmin.common.config.UserImportConfig;
+import cn.shoanadmin.common.util.CsvReader;
+import cn.shoanadmin.domain.dto.UserImportResult;
+import cn.shoanadmin.domain.dto.UserImportRow;
+import cn.shoanadmin.domain.entity.WechatUser;
+import cn.shoanadmin.infrastructure.id.UserIdGenerator;
+import cn.shoanadmin.infrastructure.manager.WechatUserManager;
+import cn.shoanadmin.service.WechatUserImportService;
+import com.alibaba.fastjson2.JSON;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.regex.Pattern;
+
+/**
+ * 用户批量导入服务
+ * 流式读取CSV或JSONL文件，每次只读入一批记录：批内解析与校验在ForkJoin线程池中并行执行，
+ * 再按openid区分新老用户，新用户生成ID后批量插入，已有用户批量补全资料。内存占用只与批量大小有关，与文件大小无关。
+ * 每批提交后把已处理的记录数写入 {文件}.checkpoint，中断后重新导入同一文件时跳过已处理的记录；
+ * 断点之后的记录可能已部分写入，重放时这些用户已存在，按补全资料处理，结果一致。
+ * 校验失败的记录写入 {文件}.rejected：从头导入时清空上次的内容，从断点继续时追加，文件内容始终对应同一次导入
+ *
+ * @author FruitPieces
+ * @since 2024-01-20
+ */
+@Slf4j
+@Service
+public class WechatUserImportServiceImpl implements WechatUserImportService {
+
+    private static final String CHECKPOINT_SUFFIX = ".checkpoint";
+    private static final String REJECTED_SUFFIX = ".rejected";
+    private static final String DEFAULT_NICKNAME = "微信用户";
+
+    private static final Pattern WECHAT_ID_PATTERN = Pattern.compile("[A-Za-z0-9_-]{1,64}");
+    private static final int MAX_NICKNAME_LENGTH = 64;
+    private static final int MAX_AVATAR_URL_LENGTH = 512;
+    private static final int MAX_REGION_LENGTH = 64;
+    private static final int MAX_LANGUAGE_LENGTH = 16;
+
+    /**
+     * CSV表头（去掉下划线并转小写）到字段的映射
+     */
+    private static final Map<String, BiConsumer<UserImportRow, String>> CSV_COLUMNS = Map.of(
+            "openid", UserImportRow::setOpenid,
+            "unionid", UserImportRow::setUnionid,
+            "nickname", UserImportRow::setNickname,
+            "avatarurl", UserImportRow::setAvatarUrl,
+            "gender", (row, value) -> row.setGender(Integer.valueOf(value)),
+            "country", UserImportRow::setCountry,
+            "province", UserImportRow::setProvince,
+            "city", UserImportRow::setCity,
+            "language", UserImportRow::setLanguage);
+
+    private final UserImportConfig config;
+    private final WechatUserManager wechatUserManager;
+    private final UserIdGenerator userIdGenerator;
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final AtomicLong processedRecords = new AtomicLong();
+    private final Counter createdCounter;
+    private final Counter updatedCounter;
+    private final Counter rejectedCounter;
+    private final Timer batchTimer;
+
+    public WechatUserImportServiceImpl(UserImportConfig config, WechatUserManager wechatUserManager,
+                                       UserIdGenerator userIdGenerator, MeterRegistry meterRegistry) {
+        this.config = config;
+        this.wechatUserManager = wechatUserManager;
+        this.userIdGenerator = userIdGenerator;
+        Gauge.builder("wechat.user.import.processed", processedRecords, AtomicLong::get)
+                .description("当前导入任务已处理的记录数（含断点前跳过的记录）")
+                .register(meterRegistry);
+        this.createdCounter = Counter.builder("wechat.user.import.rows")
+                .description("导入的记录数")
+                .tag("result", "created")
+                .register(meterRegistry);
+        this.updatedCounter = Counter.builder("wechat.user.import.rows")
+                .description("导入的记录数")
+                .tag("result", "updated")
+                .register(meterRegistry);
+        this.rejectedCounter = Counter.builder("wechat.user.import.rows")
+                .description("导入的记录数")
+                .tag("result", "rejected")
+                .register(meterRegistry);
+        this.batchTimer = Timer.builder("wechat.user.import.batch")
+                .description("每批记录的校验与写入耗时")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public UserImportResult importUsers(Path file) {
+        if (!Files.isRegularFile(file)) {
+            throw new IllegalArgumentException("导入文件不存在：" + file);
+        }
+        if (!running.compareAndSet(false, true)) {
+            throw new IllegalStateException("已有用户导入任务正在执行");
+        }
+        int parallelism = config.getParallelism() > 0 ? config.getParallelism() : Runtime.getRuntime().availableProcessors();
+        ForkJoinPool validationPool = new ForkJoinPool(parallelism);
+        Path checkpoint = file.resolveSibling(file.getFileName() + CHECKPOINT_SUFFIX);
+        Path rejectedFile = file.resolveSibling(file.getFileName() + REJECTED_SUFFIX);
+        long startTime = System.currentTimeMillis();
+        try (RecordSource source = openSource(file);
+             BufferedWriter rejectedWriter = openRejectedWriter(rejectedFile, checkpoint)) {
+            long skipped = readCheckpoint(checkpoint);
+            for (long i = 0; i < skipped; i++) {
+                if (source.next() == null) {
+                    break;
+                }
+            }
+            processedRecords.set(skipped);
+            log.info("开始导入用户：file={}, resumeFrom={}, batchSize={}, parallelism={}",
+                    file, skipped, config.getBatchSize(), parallelism);
+
+            BatchStats total = new BatchStats();
+            long nextProgressLog = skipped + config.getProgressLogInterval();
+            List<RawRecord> batch;
+            while (!(batch = readBatch(source)).isEmpty()) {
+                List<RawRecord> records = batch;
+                BatchStats stats = batchTimer.record(() -> importBatch(records, source, validationPool, rejectedWriter));
+                total.add(stats);
+                rejectedWriter.flush();
+                writeCheckpoint(checkpoint, processedRecords.addAndGet(records.size()));
+                if (processedRecords.get() >= nextProgressLog) {
+                    nextProgressLog = processedRecords.get() + config.getProgressLogInterval();
+                    log.info("导入进度：processed={}, created={}, updated={}, rejected={}, {}条/秒", processedRecords.get(),
+                            total.created, total.updated, total.rejected, ratePerSecond(processedRecords.get() - skipped, startTime));
+                }
+            }
+            Files.deleteIfExists(checkpoint);
+            UserImportResult result = UserImportResult.builder()
+                    .file(file.toString())
+                    .skipped(skipped)
+                    .processed(processedRecords.get() - skipped)
+                    .created(total.created)
+                    .updated(total.updated)
+                    .merged(total.merged)
+                    .rejected(total.rejected)
+                    .elapsedMillis(System.currentTimeMillis() - startTime)
+                    .build();
+            log.info("导入用户完成：{}", result);
+            return result;
+        } catch (IOException e) {
+            throw new UncheckedIOException("导入用户失败：" + file, e);
+        } finally {
+            validationPool.shutdown();
+            running.set(false);
+        }
+    }
+
+    private BatchStats importBatch(List<RawRecord> records, RecordSource source, ForkJoinPool validationPool,
+                                   BufferedWriter rejectedWriter) {
+        // 解析与校验是批内唯一可并行的CPU开销，写库按批顺序执行以保证断点准确
+        List<ValidatedRecord> validated = validationPool.submit(() -> records.parallelStream()
+                .map(record -> validate(record, source))
+                .toList()).join();
+
+        BatchStats stats = new BatchStats();
+        Map<String, ValidatedRecord> byOpenid = new LinkedHashMap<>(validated.size() * 2);
+        for (ValidatedRecord record : validated) {
+            if (record.error() != null) {
+                reject(rejectedWriter, record.raw(), record.error(), stats);
+            } else {
+                ValidatedRecord previous = byOpenid.putIfAbsent(record.row().getOpenid(), record);
+                if (previous != null) {
+                    mergeInto(previous.row(), record.row());
+                    stats.merged++;
+                }
+            }
+        }
+        if (byOpenid.isEmpty()) {
+            return stats;
+        }
+        try {
+            writeUsers(byOpenid, rejectedWriter, stats);
+        } catch (DuplicateKeyException e) {
+            // 查询已有用户之后，同一openid被并发登录注册，重新区分新老用户后重试一次
+            log.warn("批量创建用户时openid冲突，重新区分新老用户后重试：{}", e.getMostSpecificCause().getMessage());
+            BatchStats retry = new BatchStats();
+            retry.merged = stats.merged;
+            retry.rejected = stats.rejected;
+            writeUsers(byOpenid, rejectedWriter, retry);
+            stats = retry;
+        }
+        createdCounter.increment(stats.created);
+        updatedCounter.increment(stats.updated);
+        return stats;
+    }
+
+    private void writeUsers(Map<String, ValidatedRecord> byOpenid, BufferedWriter rejectedWriter, BatchStats stats) {
+        Map<String, WechatUser> existing = new HashMap<>(byOpenid.size() * 2);
+        wechatUserManager.findIdsByOpenids(byOpenid.keySet()).forEach(user -> existing.put(user.getOpenid(), user));
+
+        long now = System.currentTimeMillis();
+        List<WechatUser> creates = new ArrayList<>();
+        List<WechatUser> updates = new ArrayList<>();
+        for (ValidatedRecord record : byOpenid.values()) {
+            UserImportRow row = record.row();
+            WechatUser current = existing.get(row.getOpenid());
+            if (current == null) {
+                creates.add(toNewUser(row, now));
+            } else if (Integer.valueOf(1).equals(current.getDeleted())) {
+                reject(rejectedWriter, record.raw(), "用户已删除", stats);
+            } else {
+                updates.add(toProfileUpdate(current.getId(), row, now));
+            }
+        }
+        wechatUserManager.createUsers(creates, config.getBatchSize());
+        wechatUserManager.updateUserProfiles(updates, config.getBatchSize());
+        stats.created += creates.size();
+        stats.updated += updates.size();
+    }
+
+    private WechatUser toNewUser(UserImportRow row, long now) {
+        return WechatUser.builder()
+                .id(userIdGenerator.nextUserId(row.getOpenid()))
+                .openid(row.getOpenid())
+                .unionid(row.getUnionid())
+                .nickname(row.getNickname() != null ? row.getNickname() : DEFAULT_NICKNAME)
+                .avatarUrl(row.getAvatarUrl() != null ? row.getAvatarUrl() : "")
+                .gender(row.getGender())
+                .country(row.getCountry())
+                .province(row.getProvince())
+                .city(row.getCity())
+                .language(row.getLanguage())
+                .status(1)
+                .createdTime(now)
+                .updatedTime(now)
+                .build();
+    }
+
+    private static WechatUser toProfileUpdate(String userId, UserImportRow row, long now) {
+        return WechatUser.builder()
+                .id(userId)
+                .openid(row.getOpenid())
+                .unionid(row.getUnionid())
+                .nickname(row.getNickname())
+                .avatarUrl(row.getAvatarUrl())
+                .gender(row.getGender())
+                .country(row.getCountry())
+                .province(row.getProvince())
+                .city(row.getCity())
+                .language(row.getLanguage())
+                .updatedTime(now)
+                .build();
+    }
+
+    private ValidatedRecord validate(RawRecord raw, RecordSource source) {
+        UserImportRow row;
+        try {
+            row = source.parse(raw);
+        } catch (RuntimeException e) {
+            return new ValidatedRecord(raw, null, "格式错误：" + e.getMessage());
+        }
+        if (row == null) {
+            return new ValidatedRecord(raw, null, "格式错误：记录为空");
+        }
+        normalize(row);
+        String error = checkRow(row);
+        return new ValidatedRecord(raw, error == null ? row : null, error);
+    }
+
+    private static String checkRow(UserImportRow row) {
+        if (row.getOpenid() == null) {
+            return "openid不能为空";
+        }
+        if (!WECHAT_ID_PATTERN.matcher(row.getOpenid()).matches()) {
+            return "openid格式错误";
+        }
+        if (row.getUnionid() != null && !WECHAT_ID_PATTERN.matcher(row.getUnionid()).matches()) {
+            return "unionid格式错误";
+        }
+        if (row.getNickname() != null && row.getNickname().length() > MAX_NICKNAME_LENGTH) {
+            return "昵称超过" + MAX_NICKNAME_LENGTH + "个字符";
+        }
+        String avatarUrl = row.getAvatarUrl();
+        if (avatarUrl != null && (avatarUrl.length() > MAX_AVATAR_URL_LENGTH
+                || !(avatarUrl.startsWith("https://") || avatarUrl.startsWith("http://")))) {
+            return "头像URL格式错误";
+        }
+        if (row.getGender() != null && (row.getGender() < 0 || row.getGender() > 2)) {
+            return "性别取值错误";
+        }
+        if (tooLong(row.getCountry(), MAX_REGION_LENGTH) || tooLong(row.getProvince(), MAX_REGION_LENGTH)
+                || tooLong(row.getCity(), MAX_REGION_LENGTH)) {
+            return "地区超过" + MAX_REGION_LENGTH + "个字符";
+        }
+        if (tooLong(row.getLanguage(), MAX_LANGUAGE_LENGTH)) {
+            return "语言超过" + MAX_LANGUAGE_LENGTH + "个字符";
+        }
+        return null;
+    }
+
+    /**
+     * 同一批内openid重复时合并为一条，后出现的非空字段覆盖先出现的
+     */
+    private static void mergeInto(UserImportRow target, UserImportRow source) {
+        if (source.getUnionid() != null) {
+            target.setUnionid(source.getUnionid());
+        }
+        if (source.getNickname() != null) {
+            target.setNickname(source.getNickname());
+        }
+        if (source.getAvatarUrl() != null) {
+            target.setAvatarUrl(source.getAvatarUrl());
+        }
+        if (source.getGender() != null) {
+            target.setGender(source.getGender());
+        }
+        if (source.getCountry() != null) {
+            target.setCountry(source.getCountry());
+        }
+        if (source.getProvince() != null) {
+            target.setProvince(source.getProvince());
+        }
+        if (source.getCity() != null) {
+            target.setCity(source.getCity());
+        }
+        if (source.getLanguage() != null) {
+            target.setLanguage(source.getLanguage());
+        }
+    }
+
+    /**
+     * 去掉首尾空白，空字符串视为未提供
+     */
+    private static void normalize(UserImportRow row) {
+        row.setOpenid(trimToNull(row.getOpenid()));
+        row.setUnionid(trimToNull(row.getUnionid()));
+        row.setNickname(trimToNull(row.getNickname()));
+        row.setAvatarUrl(trimToNull(row.getAvatarUrl()));
+        row.setCountry(trimToNull(row.getCountry()));
+        row.setProvince(trimToNull(row.getProvince()));
+        row.setCity(trimToNull(row.getCity()));
+        row.setLanguage(trimToNull(row.getLanguage()));
+    }
+
+    private static String trimToNull(String value) {
+        return StringUtils.hasText(value) ? value.trim() : null;
+    }
+
+    private static boolean tooLong(String value, int maxLength) {
+        return value != null && value.length() > maxLength;
+    }
+
+    private void reject(BufferedWriter rejectedWriter, RawRecord raw, String reason, BatchStats stats) {
+        stats.rejected++;
+        rejectedCounter.increment();
+        try {
+            rejectedWriter.write("line " + raw.line() + ": " + reason);
+            rejectedWriter.newLine();
+        } catch (IOException e) {
+            throw new UncheckedIOException("写入校验失败记录失败", e);
+        }
+    }
+
+    private List<RawRecord> readBatch(RecordSource source) throws IOException {
+        int batchSize = config.getBatchSize();
+        List<RawRecord> batch = new ArrayList<>(batchSize);
+        RawRecord record;
+        while (batch.size() < batchSize && (record = source.next()) != null) {
+            batch.add(record);
+        }
+        return batch;
+    }
+
+    /**
+     * 存在断点时接着上次的记录追加，否则清空
+     */
+    private static BufferedWriter openRejectedWriter(Path rejectedFile, Path checkpoint) throws IOException {
+        StandardOpenOption mode = Files.exists(checkpoint) ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING;
+        return Files.newBufferedWriter(rejectedFile, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, mode);
+    }
+
+    private static long readCheckpoint(Path checkpoint) throws IOException {
+        if (!Files.exists(checkpoint)) {
+            return 0;
+        }
+        String content = Files.readString(checkpoint, StandardCharsets.UTF_8).trim();
+        return content.isEmpty() ? 0 : Long.parseLong(content);
+    }
+
+    /**
+     * 先写临时文件再原子替换，中断时断点文件不会只写一半
+     */
+    private static void writeCheckpoint(Path checkpoint, long processed) throws IOException {
+        Path temp = checkpoint.resolveSibling(checkpoint.getFileName() + ".tmp");
+        Files.writeString(temp, Long.toString(processed), StandardCharsets.UTF_8);
+        Files.move(temp, checkpoint, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static long ratePerSecond(long count, long startTime) {
+        long elapsed = Math.max(1, System.currentTimeMillis() - startTime);
+        return count * 1000 / elapsed;
+    }
+
+    private static RecordSource openSource(Path file) throws IOException {
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        if (name.endsWith(".jsonl")) {
+            return new JsonLinesSource(Files.newBufferedReader(file, StandardCharsets.UTF_8));
+        }
+        if (name.endsWith(".csv")) {
+            return new CsvSource(new CsvReader(Files.newBufferedReader(file, StandardCharsets.UTF_8)));
+        }
+        throw new IllegalArgumentException("不支持的导入文件格式，仅支持 .csv 与 .jsonl：" + file);
+    }
+
+    /**
+     * 原始记录，在读取线程上产生，解析放到校验线程上
+     *
+     * @param line    记录所在行号
+     * @param json    JSONL的一行
+     * @param columns CSV的字段
+     */
+    private record RawRecord(long line, String json, List<String> columns) {
+    }
+
+    private record ValidatedRecord(RawRecord raw, UserImportRow row, String error) {
+    }
+
+    private interface RecordSource extends Closeable {
+
+        /**
+         * 读取下一条非空记录
+         *
+         * @return 记录，文件结束返回null
+         */
+        RawRecord next() throws IOException;
+
+        /**
+         * 解析记录，可在多个线程上并发调用
+         */
+        UserImportRow parse(RawRecord record);
+    }
+
+    private static final class JsonLinesSource implements RecordSource {
+
+        private final BufferedReader reader;
+        private long lineNumber;
+
+        private JsonLinesSource(BufferedReader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public RawRecord next() throws IOException {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (!line.isBlank()) {
+                    return new RawRecord(lineNumber, line, null);
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public UserImportRow parse(RawRecord record) {
+            return JSON.parseObject(record.json(), UserImportRow.class);
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+
+    private static final class CsvSource implements RecordSource {
+
+        private final CsvReader reader;
+        private final List<BiConsumer<UserImportRow, String>> setters = new ArrayList<>();
+
+        private CsvSource(CsvReader reader) throws IOException {
+            this.reader = reader;
+            List<String> header = reader.readRecord();
+            if (header == null) {
+                throw new IOException("CSV文件缺少表头");
+            }
+            boolean hasOpenid = false;
+            for (String column : header) {
+                String key = column.trim().replace("_", "").toLowerCase(Locale.ROOT);
+                hasOpenid |= "openid".equals(key);
+                setters.add(CSV_COLUMNS.get(key));
+            }
+            if (!hasOpenid) {
+                throw new IOException("CSV表头缺少openid列");
+            }
+        }
+
+        @Override
+        public RawRecord next() throws IOException {
+            List<String> columns;
+            while ((columns = reader.readRecord()) != null) {
+                if (columns.size() > 1 || !columns.get(0).isBlank()) {
+                    return new RawRecord(reader.getLineNumber(), null, columns);
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public UserImportRow parse(RawRecord record) {
+            List<String> columns = record.columns();
+            if (columns.size() != setters.size()) {
+                throw new IllegalArgumentException("列数与表头不一致");
+            }
+            UserImportRow row = new UserImportRow();
+            for (int i = 0; i < columns.size(); i++) {
+                BiConsumer<UserImportRow, String> setter = setters.get(i);
+                String value = columns.get(i).trim();
+                if (setter != null && !value.isEmpty()) {
+                    setter.accept(row, value);
+                }
+            }
+            return row;
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+
+    private static final class BatchStats {
+
+        private long created;
+        private long updated;
+        private long merged;
+        private long rejected;
+
+        private void add(BatchStats other) {
+            created += other.created;
+            updated += other.updated;
+            merged += other.merged;
+            rejected += other.rejected;
+        }
+    }
+}
@@ -2,13 +2,16 @@ package cn.shoanadmin.service.impl;
 
 import cn.shoanadmin.common.enums.BusinessCodeEnum;
 import cn.shoanadmin.common.exception.BusinessException;
-import cn.shoanadmin.common.util.UidGenerator;
 import cn.shoanadmin.domain.api.ApiResult;
 import cn.shoanadmin.domain.dto.UserContext;
+import cn.shoanadmin.domain.dto.UserProfileView;
 import cn.shoanadmin.domain.entity.WechatUser;
 import cn.shoanadmin.domain.request.UpdateUserNicknameReq;
+import cn.shoanadmin.infrastructure.id.UserIdGenerator;
 import cn.shoanadmin.infrastructure.manager.WechatUserManager;
+import cn.shoanadmin.infrastructure.manager.WechatUserUpdate;
 import cn.shoanadmin.infrastructure.mapper.WechatUserMapper;
+import cn.shoanadmin.service.TokenRevocationService;
 import cn.shoanadmin.service.WechatUserService;
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
@@ -32,6 +35,8 @@ import org.springframework.util.StringUtils;
 public class WechatUserServiceImpl extends ServiceImpl<WechatUserMapper, WechatUser> implements WechatUserService {
 
     private final WechatUserManager wechatUserManager;
+    private final UserIdGenerator userIdGenerator;
+    private final TokenRevocationService tokenRevocationService;
 
     /**
      * 根据openid查询用户
@@ -65,6 +70,20 @@ public class WechatUserServiceImpl extends ServiceImpl<WechatUserMapper, WechatU
         return wechatUser;
     }
 
+    /**
+     * 根据用户ID查询用户资料视图
+     *
+     * @param userId 用户ID
+     * @return 用户资料，不存在返回null
+     */
+    public UserProfileView findProfileById(String userId) {
+        if (!StringUtils.hasText(userId)) {
+            log.warn("查询用户资料失败：用户ID为空");
+            throw new BusinessException(BusinessCodeEnum.PARAM_ERROR);
+        }
+        return wechatUserManager.findProfileByUserId(userId);
+    }
+
     /**
      * 创建新用户
      *
@@ -87,7 +106,7 @@ public class WechatUserServiceImpl extends ServiceImpl<WechatUserMapper, WechatU
 
         try {
             // 生成唯一用户ID
-            String userId = UidGenerator.generateUserId();
+            String userId = userIdGenerator.nextUserId(openid);
 
             // 创建用户对象
             WechatUser wechatUser = WechatUser.builder()
@@ -107,6 +126,46 @@ public class WechatUserServiceImpl extends ServiceImpl<WechatUserMapper, WechatU
         }
     }
 
+    /**
+     * 用户登录写入
+     * 已有用户的登录信息异步批量写入，会话密钥变化时单条UPDATE同步更新，新用户单条 INSERT ... ON DUPLICATE KEY UPDATE 注册，
+     * 并发的首次登录不会重复创建用户
+     *
+     * @param openid     微信openid
+     * @param sessionKey 会话密钥
+     * @param nickname   用户昵称（可选，仅新用户使用）
+     * @param avatarUrl  头像URL（可选，仅新用户使用）
+     * @param loginIp    登录IP
+     * @param userAgent  用户代理
+     * @return 登录用户资料，用户已被删除时返回null
+     */
+    public UserProfileView saveLoginUser(String openid, String sessionKey, String nickname, String avatarUrl,
+                                    String loginIp, String userAgent) {
+        if (!StringUtils.hasText(openid) || !StringUtils.hasText(sessionKey)) {
+            log.error("登录写入失败：openid或sessionKey为空");
+            throw new BusinessException(BusinessCodeEnum.PARAM_ERROR);
+        }
+
+        long now = System.currentTimeMillis();
+        WechatUser loginUser = WechatUser.builder()
+                .id(userIdGenerator.nextUserId(openid))
+                .openid(openid)
+                .sessionKey(sessionKey)
+                .nickname(StringUtils.hasText(nickname) ? nickname : "微信用户")
+                .avatarUrl(StringUtils.hasText(avatarUrl) ? avatarUrl : "")
+                .lastLoginTime(now)
+                .lastLoginIp(loginIp)
+                .userAgent(userAgent)
+                .status(1)
+                .createdTime(now)
+                .updatedTime(now).build();
+        UserProfileView user = wechatUserManager.saveLogin(loginUser);
+        if (user == null) {
+            log.warn("登录写入后未查询到用户，用户可能已被删除：openid={}", openid);
+        }
+        return user;
+    }
+
     /**
      * 更新用户信息
      *
@@ -131,23 +190,23 @@ public class WechatUserServiceImpl extends ServiceImpl<WechatUserMapper, WechatU
         }
 
         try {
-            // 更新用户信息
+            // 更新用户信息，只写入设置的字段，不修改缓存中的用户对象
+            WechatUserUpdate update = WechatUserUpdate.of(existingUser);
             if (StringUtils.hasText(nickname)) {
-                existingUser.setNickname(nickname);
+                update.nickname(nickname);
             }
             if (StringUtils.hasText(avatarUrl)) {
-                existingUser.setAvatarUrl(avatarUrl);
+                update.avatarUrl(avatarUrl);
             }
             if (StringUtils.hasText(sessionKey)) {
-                existingUser.setSessionKey(sessionKey);
+                update.sessionKey(sessionKey);
             }
 
             // 更新最后登录时间
-            existingUser.setLastLoginTime(System.currentTimeMillis());
-            existingUser.setUpdatedTime(System.currentTimeMillis());
-            wechatUserManager.updateUser(existingUser);
+            update.lastLoginTime(System.currentTimeMillis());
+            wechatUserManager.updateUser(update);
             log.info("更新用户成功：userId={}", userId);
-            return existingUser;
+            return update.getUpdatedUser();
 
         } catch (Exception e) {
             log.error("更新用户失败：userId={}", userId, e);
@@ -157,12 +216,12 @@ public class WechatUserServiceImpl extends ServiceImpl<WechatUserMapper, WechatU
 
     /**
      * 更新用户登录信息
+     * 登录信息异步批量写入，不在调用方的请求内等待数据库提交
      *
      * @param userId    用户ID
      * @param loginIp   登录IP
      * @param userAgent 用户代理
      */
-    @Transactional(rollbackFor = Exception.class)
     public void updateLoginInfo(String userId, String loginIp, String userAgent) {
         if (!StringUtils.hasText(userId)) {
             log.error("更新登录信息失败：用户ID不能为空");
@@ -176,11 +235,10 @@ public class WechatUserServiceImpl extends ServiceImpl<WechatUserMapper, WechatU
         }
 
         try {
-            user.setLastLoginTime(System.currentTimeMillis());
-            user.setLastLoginIp(loginIp);
-            user.setUserAgent(userAgent);
-            user.setUpdatedTime(System.currentTimeMillis());
-            wechatUserManager.updateUser(user);
+            wechatUserManager.updateLoginInfo(WechatUserUpdate.of(user)
+                    .lastLoginTime(System.currentTimeMillis())
+                    .lastLoginIp(loginIp)
+                    .userAgent(userAgent));
             log.info("更新用户登录信息成功：userId={}", userId);
 
         } catch (Exception e) {
@@ -209,20 +267,22 @@ public class WechatUserServiceImpl extends ServiceImpl<WechatUserMapper, WechatU
                 throw new BusinessException(BusinessCodeEnum.PARAM_ERROR);
             }
 
-            // 查询现有用户
-            WechatUser existingUser = findById(userId);
+            // 获取当前用户，同一请求内只加载一次
+            UserProfileView existingUser = UserContext.getCurrentUser();
             if (existingUser == null) {
                 log.error("更新用户昵称失败：用户不存在，userId={}", userId);
                 throw new BusinessException(BusinessCodeEnum.PARAM_ERROR);
             }
 
-            // 更新昵称
-            existingUser.setNickname(request.getNickname());
-            existingUser.setId(userId);
-            existingUser.setUpdatedTime(System.currentTimeMillis());
-            int rows = wechatUserManager.updateUser(existingUser);
-            log.info("更新用户昵称成功：userId={}, nickname={}", userId, request.getNickname());
-            return ApiResult.success(rows > 0);
+            // 更新昵称，与库中昵称相同时不写入，上下文中的用户可能来自过期的缓存，比较以库中当前行为准
+            WechatUserUpdate update = WechatUserUpdate.of(existingUser).nickname(request.getNickname());
+            boolean updated = wechatUserManager.updateUser(update) > 0;
+            if (updated) {
+                log.info("更新用户昵称成功：userId={}, nickname={}", userId, request.getNickname());
+            } else {
+                log.info("用户昵称未变化，跳过更新：userId={}", userId);
+            }
+            return ApiResult.success(updated);
         } catch (BusinessException e) {
             log.error("更新用户昵称失败：{}", e.getMessage());
             throw e;
@@ -231,4 +291,33 @@ public class WechatUserServiceImpl extends ServiceImpl<WechatUserMapper, WechatU
             throw new BusinessException(BusinessCodeEnum.PARAM_ERROR);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * 更新用户状态
+     * 认证时不查询用户状态，禁用后通过吊销该用户此前签发的全部令牌使其立即失效；
+     * 状态未变化时同样吊销，用于补救绕过本接口直接修改数据库的禁用
+     *
+     * @param userId 用户ID
+     * @param status 状态：0-禁用，1-正常
+     * @return 是否修改了用户记录
+     */
+    public boolean updateUserStatus(String userId, Integer status) {
+        if (!StringUtils.hasText(userId) || status == null) {
+            log.error("更新用户状态失败：用户ID或状态为空");
+            throw new BusinessException(BusinessCodeEnum.PARAM_ERROR);
+        }
+
+        WechatUser user = findById(userId);
+        if (user == null) {
+            log.error("更新用户状态失败：用户不存在，userId={}", userId);
+            throw new BusinessException(BusinessCodeEnum.AUTH_USER_NOT_FOUND);
+        }
+
+        boolean updated = wechatUserManager.updateUser(WechatUserUpdate.of(user).status(status)) > 0;
+        if (!Integer.valueOf(1).equals(status)) {
+            tokenRevocationService.revokeUser(userId);
+        }
+        log.info("更新用户状态：userId={}, status={}, updated={}", userId, status, updated);
+        return updated;
+    }
+}
@@ -1,6 +1,8 @@
 package cn.shoanadmin.web.config;
 
+import cn.shoanadmin.web.interceptor.AdminAuthInterceptor;
 import cn.shoanadmin.web.interceptor.AuthInterceptor;
+import cn.shoanadmin.web.interceptor.LoginRateLimitInterceptor;
 import lombok.RequiredArgsConstructor;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.stereotype.Component;
@@ -20,9 +22,15 @@ import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 public class WebConfig implements WebMvcConfigurer {
 
     private final AuthInterceptor authInterceptor;
+    private final LoginRateLimitInterceptor loginRateLimitInterceptor;
+    private final AdminAuthInterceptor adminAuthInterceptor;
 
     @Override
     public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(loginRateLimitInterceptor)
+                .addPathPatterns("/api/v1/auth/miniapp/login");
+        registry.addInterceptor(adminAuthInterceptor)
+                .addPathPatterns("/api/v1/admin/**");
         registry.addInterceptor(authInterceptor)
                 .addPathPatterns("/**")
                 .excludePathPatterns(
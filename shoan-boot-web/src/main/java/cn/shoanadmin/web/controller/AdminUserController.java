@@ -0,0 +1,59 @@
+package cn.shoanadmin.web.controller;
+
+import cn.shoanadmin.domain.api.ApiResult;
+import cn.shoanadmin.domain.request.UpdateUserStatusReq;
+import cn.shoanadmin.domain.request.UserExportReq;
+import cn.shoanadmin.service.WechatUserExportService;
+import cn.shoanadmin.service.WechatUserService;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.validation.Valid;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * 用户管理控制器
+ * 供运营后台与数据分析任务调用，需在请求头中携带管理令牌
+ *
+ * @author FruitPieces
+ * @since 2024-01-20
+ */
+@Slf4j
+@RestController
+@RequestMapping("/api/v1/admin/users")
+@RequiredArgsConstructor
+public class AdminUserController {
+
+    private final WechatUserExportService wechatUserExportService;
+    private final WechatUserService wechatUserService;
+
+    /**
+     * 导出用户
+     * 按用户ID顺序流式输出未删除用户，响应体为NDJSON或CSV文件；
+     * 导出中断后以已收到的最后一个用户ID作为afterId重新请求即可继续
+     *
+     * @param request 导出请求参数
+     */
+    @GetMapping("/export")
+    public void exportUsers(@Valid UserExportReq request, HttpServletResponse response) {
+        wechatUserExportService.exportUsers(request, response);
+    }
+
+    /**
+     * 更新用户状态
+     * 禁用用户时吊销其已签发的全部令牌，各节点在下一次请求时即拒绝这些令牌
+     *
+     * @param userId  用户ID
+     * @param request 状态请求参数
+     * @return 是否修改了用户记录
+     */
+    @PutMapping("/{userId}/status")
+    public ApiResult<Boolean> updateUserStatus(@PathVariable String userId, @Valid @RequestBody UpdateUserStatusReq request) {
+        return ApiResult.success(wechatUserService.updateUserStatus(userId, request.getStatus()));
+    }
+}
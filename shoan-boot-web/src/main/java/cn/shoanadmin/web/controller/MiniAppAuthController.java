@@ -2,15 +2,18 @@ package cn.shoanadmin.web.controller;
 
 
 import cn.shoanadmin.common.annotation.RequireAuth;
+import cn.shoanadmin.common.constant.ComStrConstant;
 import cn.shoanadmin.common.enums.BusinessCodeEnum;
 import cn.shoanadmin.common.exception.BusinessException;
+import cn.shoanadmin.common.util.IpUtil;
 import cn.shoanadmin.domain.api.ApiResult;
 import cn.shoanadmin.domain.dto.UserContext;
-import cn.shoanadmin.domain.entity.WechatUser;
+import cn.shoanadmin.domain.dto.UserProfileView;
 import cn.shoanadmin.domain.request.LoginReq;
 import cn.shoanadmin.domain.request.UpdateUserNicknameReq;
 import cn.shoanadmin.domain.response.LoginRes;
 import cn.shoanadmin.domain.response.UserProfileRes;
+import cn.shoanadmin.service.TokenRevocationService;
 import cn.shoanadmin.service.WechatAuthService;
 import cn.shoanadmin.service.WechatUserService;
 import jakarta.servlet.http.HttpServletRequest;
@@ -35,6 +38,7 @@ public class MiniAppAuthController {
     
     private final WechatAuthService wechatAuthService;
     private final WechatUserService wechatUserService;
+    private final TokenRevocationService tokenRevocationService;
 
     /**
      * 小程序登录接口
@@ -56,6 +60,7 @@ public class MiniAppAuthController {
      * @return 用户信息
      */
     @GetMapping("/user/info")
+    @RequireAuth
     public ApiResult<UserProfileRes> getUserInfo() {
         try {
             // 从上下文获取当前用户ID
@@ -65,8 +70,8 @@ public class MiniAppAuthController {
                 throw new BusinessException(BusinessCodeEnum.AUTH_TOKEN_INVALID);
             }
 
-            // 查询用户信息
-            WechatUser user = wechatUserService.findById(userId);
+            // 获取用户资料，同一请求内只加载一次
+            UserProfileView user = UserContext.getCurrentUser();
             if (user == null) {
                 log.warn("获取用户信息失败：用户不存在，userId={}", userId);
                 throw new BusinessException(BusinessCodeEnum.AUTH_TOKEN_INVALID);
@@ -87,13 +92,19 @@ public class MiniAppAuthController {
 
     /**
      * 退出登录
-     * 清除用户上下文信息
+     * 吊销请求头中的访问令牌并清除用户上下文信息
      * 
      * @return 退出结果
      */
     @PostMapping("/logout")
-    public ApiResult<String> logout() {
+    public ApiResult<String> logout(HttpServletRequest httpRequest) {
         try {
+            // 吊销当前访问令牌，之后携带该令牌的请求在所有节点都会被拒绝
+            String token = httpRequest.getHeader(ComStrConstant.authTokenHeader);
+            if (StringUtils.hasText(token)) {
+                tokenRevocationService.revoke(token, IpUtil.getClientIp(httpRequest), httpRequest.getHeader("User-Agent"));
+            }
+
             // 从上下文获取当前用户ID
             String userId = UserContext.getCurrentUserId();
             if (StringUtils.hasText(userId)) {
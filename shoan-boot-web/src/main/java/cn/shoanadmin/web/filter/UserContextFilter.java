@@ -0,0 +1,53 @@
+package cn.shoanadmin.web.filter;
+
+import cn.shoanadmin.domain.dto.UserContext;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+/**
+ * 用户上下文过滤器
+ * 为每个请求绑定一个ScopedValue作用域，认证拦截器写入的用户上下文随请求结束自动失效，
+ * 适用于Tomcat运行在虚拟线程上、每个请求一个线程的部署方式
+ *
+ * @author FruitPieces
+ * @since 2024-01-20
+ */
+@Slf4j
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 10)
+@ConditionalOnProperty(prefix = "app.context", name = "scoped-value-enabled", havingValue = "true")
+public class UserContextFilter extends OncePerRequestFilter {
+
+    public UserContextFilter() {
+        if (UserContext.enableScopedValue()) {
+            log.info("用户上下文使用ScopedValue存储");
+        } else {
+            log.warn("当前JDK不支持ScopedValue，用户上下文继续使用ThreadLocal存储");
+        }
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        try {
+            UserContext.callInScope(() -> {
+                filterChain.doFilter(request, response);
+                return null;
+            });
+        } catch (ServletException | IOException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new ServletException(e);
+        }
+    }
+}
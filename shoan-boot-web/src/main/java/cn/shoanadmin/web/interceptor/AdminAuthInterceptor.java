@@ -0,0 +1,44 @@
+package cn.shoanadmin.web.interceptor;
+
+import cn.shoanadmin.common.config.AdminConfig;
+import cn.shoanadmin.common.constant.ComStrConstant;
+import cn.shoanadmin.common.enums.BusinessCodeEnum;
+import cn.shoanadmin.common.exception.BusinessException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+/**
+ * 管理接口鉴权拦截器
+ * 校验请求头中的管理令牌，未配置 app.admin.token 时拒绝所有管理接口请求
+ *
+ * @author FruitPieces
+ * @since 2024-01-20
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class AdminAuthInterceptor implements HandlerInterceptor {
+
+    private final AdminConfig adminConfig;
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        String expected = adminConfig.getToken();
+        String token = request.getHeader(ComStrConstant.adminTokenHeader);
+        // 按字节恒定时间比较，避免通过响应时间逐位猜测令牌
+        if (!StringUtils.hasText(expected) || token == null || !MessageDigest.isEqual(
+                expected.getBytes(StandardCharsets.UTF_8), token.getBytes(StandardCharsets.UTF_8))) {
+            log.warn("管理接口鉴权失败：uri={}", request.getRequestURI());
+            throw new BusinessException(BusinessCodeEnum.AUTH_ADMIN_DENIED);
+        }
+        return true;
+    }
+}
@@ -1,11 +1,13 @@
 package cn.shoanadmin.web.interceptor;
 
 import cn.shoanadmin.common.annotation.RequireAuth;
+import cn.shoanadmin.common.constant.ComStrConstant;
 import cn.shoanadmin.common.enums.BusinessCodeEnum;
 import cn.shoanadmin.common.exception.BusinessException;
-import cn.shoanadmin.common.util.TokenUtil;
+import cn.shoanadmin.common.security.AccessTokenService;
+import cn.shoanadmin.common.security.TokenClaims;
 import cn.shoanadmin.domain.dto.UserContext;
-import cn.shoanadmin.domain.entity.WechatUser;
+import cn.shoanadmin.service.TokenRevocationService;
 import cn.shoanadmin.service.WechatUserService;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
@@ -32,6 +34,12 @@ public class AuthInterceptor implements HandlerInterceptor {
     @Autowired
     private WechatUserService wechatUserService;
 
+    @Autowired
+    private AccessTokenService accessTokenService;
+
+    @Autowired
+    private TokenRevocationService tokenRevocationService;
+
     @Override
     public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
         // 如果不是HandlerMethod，直接放行
@@ -55,26 +63,23 @@ public class AuthInterceptor implements HandlerInterceptor {
         }
 
         // 提取访问令牌
-        String token = request.getHeader("en-bit-token");
+        String token = request.getHeader(ComStrConstant.authTokenHeader);
         if (!StringUtils.hasText(token)) {
             throw new BusinessException(BusinessCodeEnum.AUTH_TOKEN_MISSING);
         }
 
         try {
-            // 验证令牌并获取用户ID
-            String userId = TokenUtil.getUserIdFromToken(token);
-            if (!StringUtils.hasText(userId)) {
-                throw new BusinessException(BusinessCodeEnum.AUTH_TOKEN_INVALID);
-            }
+            // 验证令牌签名与有效期，仅在内存中完成
+            TokenClaims claims = accessTokenService.verify(token);
 
-            // 查询用户信息
-            WechatUser user = wechatUserService.findById(userId);
-            if (user == null) {
-                throw new BusinessException(BusinessCodeEnum.AUTH_USER_NOT_FOUND);
+            // 检查令牌是否已吊销，同样只查询内存；用户被禁用时其此前签发的令牌已整体吊销，这里不再查询用户状态
+            if (tokenRevocationService.isRevoked(claims)) {
+                throw new BusinessException(BusinessCodeEnum.AUTH_TOKEN_REVOKED);
             }
 
-            // 设置用户上下文
-            UserContext.setCurrentUser(user);
+            // 设置用户上下文，只保存用户ID，用户资料在业务代码需要时才查询
+            UserContext.setCurrentUser(claims.getUserId(), wechatUserService::findProfileById);
+            UserContext.setCurrentToken(token);
             return true;
 
         } catch (Exception e) {
@@ -0,0 +1,29 @@
+package cn.shoanadmin.web.interceptor;
+
+import cn.shoanadmin.common.util.IpUtil;
+import cn.shoanadmin.infrastructure.ratelimit.LoginRateLimiter;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+/**
+ * 登录限流拦截器
+ * 在进入登录服务之前按客户端IP限流，被拒绝的请求不会调用微信接口或访问数据库
+ *
+ * @author FruitPieces
+ * @since 2024-01-20
+ */
+@Component
+@RequiredArgsConstructor
+public class LoginRateLimitInterceptor implements HandlerInterceptor {
+
+    private final LoginRateLimiter loginRateLimiter;
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        loginRateLimiter.checkIp(IpUtil.getClientIp(request));
+        return true;
+    }
+}
@@ -0,0 +1,27 @@
+-- =====================================================================
+-- 01 加宽用户ID
+-- 用户ID由 FP{13位Base32} 改为 FP{13位Base32}{2位分片桶}，共17位，无论是否启用分片都使用新格式，
+-- 部署新版本前必须执行。主库执行；已有的旧格式ID（10位/15位）不受影响。
+-- 本项目库中 user_token.user_id 保存用户ID（令牌吊销记录与用户吊销记录），与 wechat_user.id 一起加宽；
+-- 业务库中保存用户ID的其他列同样需要加宽到 VARCHAR(32)。
+-- MODIFY 会重写列定义，执行前用 SHOW CREATE TABLE wechat_user / user_token 核对字符集、可空与注释并补在下面语句中
+-- =====================================================================
+
+ALTER TABLE wechat_user
+    MODIFY COLUMN id VARCHAR(32) NOT NULL COMMENT '用户ID';
+
+ALTER TABLE user_token
+    MODIFY COLUMN user_id VARCHAR(32) NOT NULL COMMENT '用户ID';
+
+-- 登录写入（upsertLogin）依赖 openid 唯一索引，已存在时跳过
+SET @has_uk_openid = (SELECT COUNT(*)
+                      FROM information_schema.statistics
+                      WHERE table_schema = DATABASE()
+                        AND table_name = 'wechat_user'
+                        AND index_name = 'uk_openid');
+SET @ddl = IF(@has_uk_openid = 0,
+              'ALTER TABLE wechat_user ADD UNIQUE KEY uk_openid (openid)',
+              'SELECT ''uk_openid exists''');
+PREPARE stmt FROM @ddl;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
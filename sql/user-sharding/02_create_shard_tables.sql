@@ -0,0 +1,22 @@
+-- =====================================================================
+-- 02 创建分片表与路由表
+-- 与 application-prod.yml 中 app.sharding.shards 对应：
+--   s0 -> 主库 wechat_user_0，s1 -> 主库 wechat_user_1，
+--   s2 -> 分片库 users-2 wechat_user_2，s3 -> 分片库 users-2 wechat_user_3
+-- 在主库上执行，需先执行 01：分片表用 LIKE 复制 wechat_user 的列、主键与 uk_openid 唯一索引。
+-- wechat_user_2、wechat_user_3 先在主库建好用于回填（03），回填后整表导入分片库（见 03 末尾）
+-- =====================================================================
+
+CREATE TABLE IF NOT EXISTS wechat_user_0 LIKE wechat_user;
+CREATE TABLE IF NOT EXISTS wechat_user_1 LIKE wechat_user;
+CREATE TABLE IF NOT EXISTS wechat_user_2 LIKE wechat_user;
+CREATE TABLE IF NOT EXISTS wechat_user_3 LIKE wechat_user;
+
+-- 用户分片路由表（主库）：只保存偏离默认分配或正在迁移的分片桶，初始为空即按默认分配路由
+-- status：0-正常，1-迁移中（只读）
+CREATE TABLE IF NOT EXISTS user_shard_route (
+    bucket       INT         NOT NULL PRIMARY KEY COMMENT '分片桶，CRC32(openid) % 1024',
+    shard        VARCHAR(64) NOT NULL COMMENT '分片名称，对应 app.sharding.shards[].name',
+    status       TINYINT     NOT NULL DEFAULT 0 COMMENT '0-正常，1-迁移中',
+    updated_time BIGINT      NOT NULL COMMENT '更新时间（毫秒）'
+) ENGINE = InnoDB DEFAULT CHARSET = utf8mb4 COMMENT = '用户分片路由';
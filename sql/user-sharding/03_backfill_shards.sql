@@ -0,0 +1,41 @@
+-- =====================================================================
+-- 03 把 wechat_user 中的已有用户回填到分片表
+-- 分片桶与 UidGenerator.shardBucket 一致：CRC32(openid) % 1024；
+-- 默认分配与 UserShardRouter 一致：按分片配置顺序把桶平均分成连续区间，桶 b 属于第 b * 分片数 / 1024 个分片，
+-- 4个分片时依次为桶 0~255、256~511、512~767、768~1023。分片数变化时同步修改下面的 4。
+--
+-- 执行步骤（需停机窗口：逻辑删除不更新 updated_time，无法按时间增量补齐回填期间的写入）：
+--   1. 停止所有应用节点的写入（停服或摘除流量），确认 LoginInfoWriteBehind 已写完（正常停机会等待写完）
+--   2. 主库执行本脚本，核对末尾的行数检查
+--   3. 把 wechat_user_2、wechat_user_3 导入分片库 users-2 后从主库删除（见末尾命令）
+--   4. 设置 USER_SHARDING_ENABLED=true 启动应用；wechat_user 保留作为备份，确认无误后再处理
+-- =====================================================================
+
+SET @shards = 4;
+
+TRUNCATE TABLE wechat_user_0;
+TRUNCATE TABLE wechat_user_1;
+TRUNCATE TABLE wechat_user_2;
+TRUNCATE TABLE wechat_user_3;
+
+-- 分片表由 LIKE 创建，列顺序与 wechat_user 相同
+INSERT INTO wechat_user_0 SELECT * FROM wechat_user WHERE (CRC32(openid) % 1024) * @shards DIV 1024 = 0;
+INSERT INTO wechat_user_1 SELECT * FROM wechat_user WHERE (CRC32(openid) % 1024) * @shards DIV 1024 = 1;
+INSERT INTO wechat_user_2 SELECT * FROM wechat_user WHERE (CRC32(openid) % 1024) * @shards DIV 1024 = 2;
+INSERT INTO wechat_user_3 SELECT * FROM wechat_user WHERE (CRC32(openid) % 1024) * @shards DIV 1024 = 3;
+
+-- 行数检查：各分片之和等于 wechat_user，且每个分片内没有不属于它的行
+SELECT (SELECT COUNT(*) FROM wechat_user)   AS total,
+       (SELECT COUNT(*) FROM wechat_user_0) AS s0,
+       (SELECT COUNT(*) FROM wechat_user_1) AS s1,
+       (SELECT COUNT(*) FROM wechat_user_2) AS s2,
+       (SELECT COUNT(*) FROM wechat_user_3) AS s3,
+       (SELECT COUNT(*) FROM wechat_user_0) + (SELECT COUNT(*) FROM wechat_user_1)
+           + (SELECT COUNT(*) FROM wechat_user_2) + (SELECT COUNT(*) FROM wechat_user_3) AS shard_total;
+
+-- 分片库 users-2 上的分片整表导入（在能同时访问两个库的机器上执行）：
+--   mysqldump -h <主库> -u <用户> -p --single-transaction <库名> wechat_user_2 wechat_user_3 \
+--       | mysql -h <分片库users-2> -u <用户> -p <库名>
+-- 导入后在分片库核对两张表的行数与上面的 s2、s3 一致，再在主库执行：
+--   DROP TABLE wechat_user_2;
+--   DROP TABLE wechat_user_3;